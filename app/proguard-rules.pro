@@ -18,4 +18,26 @@
 
 # If you keep the line number information, uncomment this to
 # hide the original source file name.
-#-renamesourcefileattribute SourceFile
\ No newline at end of file
+#-renamesourcefileattribute SourceFile
+
+# Debug logging is compiled out of release builds. AppLog.ENABLED is false
+# there, so every AppLog guard is constant false and the guarded string
+# building is dead code; these rules also drop any unguarded verbose and debug
+# calls together with their arguments.
+-assumevalues class com.example.yoloandfeedonpcandcameraonphone.AppLog {
+    public static boolean isDebug(...) return false;
+    public static boolean isTraced(...) return false;
+}
+-assumenosideeffects class com.example.yoloandfeedonpcandcameraonphone.AppLog {
+    public static void d(...);
+}
+-assumenosideeffects class android.util.Log {
+    public static int v(...);
+    public static int d(...);
+}
+
+# YFPMessage payloads are bound by hand-written adapters in YFPJsonCodec, but
+# keep the serialized field names for any reflective fallback.
+-keepclassmembers class com.example.yoloandfeedonpcandcameraonphone.YFPMessage$* {
+    @com.google.gson.annotations.SerializedName <fields>;
+}
@@ -0,0 +1,237 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+/**
+ * Feedback controller for send rate, JPEG quality and downscale factor.
+ *
+ * Each frame handed to the network is recorded with {@link #onFrameSent}; the
+ * matching DETECTIONS result closes the loop in {@link #onDetectionsReceived}.
+ * Frames the device drops before writing them are taken back with
+ * {@link #onFrameDropped}, so only results lost on the way count as loss.
+ * From those the controller tracks a smoothed round trip, the
+ * server's share of it and the number of frames still in flight, and steers
+ * the three outputs to keep latency under {@link Config#targetLatencyMs}:
+ *
+ * <ul>
+ *   <li>Over budget and the server dominates: send less often.</li>
+ *   <li>Over budget and the link dominates: lower quality, then downscale, then
+ *       send less often.</li>
+ *   <li>Comfortably under budget: undo the above in reverse order.</li>
+ * </ul>
+ *
+ * Decreases are multiplicative and increases additive, and at most one step is
+ * taken per {@link Config#adjustIntervalMs}, which keeps the loop stable. Time is
+ * supplied by the caller in monotonic milliseconds so traces can be simulated.
+ * All methods are thread-safe.
+ */
+public class AdaptiveFrameController {
+
+    public static class Config {
+        public long targetLatencyMs = 150;
+        public long minSendIntervalMs = 33;
+        public long maxSendIntervalMs = 1000;
+        public int minQuality = 40;
+        public int maxQuality = 85;
+        public int qualityStepDown = 10;
+        public int qualityStepUp = 2;
+        public int maxScaleDivisor = 4;
+        public int maxInFlight = 3;
+        public long lossTimeoutMs = 2000;
+        public long adjustIntervalMs = 200;
+        /** Fraction of the target below which the controller starts ramping up. */
+        public float headroom = 0.7f;
+        /** Weight of each new sample in the smoothed round trip. */
+        public float smoothing = 0.25f;
+    }
+
+    private static final int TRACKED_FRAMES = 64;
+
+    private final Config config;
+    private final long[] trackedFrameIds = new long[TRACKED_FRAMES];
+    private final long[] trackedSendTimes = new long[TRACKED_FRAMES];
+    private final boolean[] trackedActive = new boolean[TRACKED_FRAMES];
+    private int nextSlot;
+    private int inFlight;
+
+    private long sendIntervalMs;
+    private int quality;
+    private int scaleDivisor = 1;
+    private long lastSendTimeMs = Long.MIN_VALUE / 2;
+    private long lastAdjustTimeMs = Long.MIN_VALUE / 2;
+
+    private float smoothedRttMs = -1;
+    private float smoothedProcessingMs = -1;
+    private long lastRttMs = -1;
+    private long framesAcked;
+    private long framesLost;
+    private boolean lossSinceAdjust;
+
+    public AdaptiveFrameController() {
+        this(new Config());
+    }
+
+    public AdaptiveFrameController(Config config) {
+        this.config = config;
+        this.sendIntervalMs = config.minSendIntervalMs * 3;
+        this.quality = config.maxQuality;
+    }
+
+    /**
+     * Returns true if a frame captured at {@code nowMs} should be sent. Also
+     * expires frames that were never answered.
+     */
+    public synchronized boolean shouldSend(long nowMs) {
+        expireLostFrames(nowMs);
+        maybeAdjust(nowMs);
+        if (inFlight >= config.maxInFlight) {
+            return false;
+        }
+        return nowMs - lastSendTimeMs >= sendIntervalMs;
+    }
+
+    public synchronized void onFrameSent(long frameId, long nowMs) {
+        lastSendTimeMs = nowMs;
+        int slot = nextSlot;
+        nextSlot = (nextSlot + 1) % TRACKED_FRAMES;
+        if (trackedActive[slot]) {
+            // Oldest tracked frame was never answered
+            markLost(slot);
+        }
+        trackedFrameIds[slot] = frameId;
+        trackedSendTimes[slot] = nowMs;
+        trackedActive[slot] = true;
+        inFlight++;
+    }
+
+    /** Stops waiting for a frame that was dropped before it reached the network; not a loss. */
+    public synchronized void onFrameDropped(long frameId) {
+        for (int i = 0; i < TRACKED_FRAMES; i++) {
+            if (trackedActive[i] && trackedFrameIds[i] == frameId) {
+                trackedActive[i] = false;
+                inFlight--;
+                return;
+            }
+        }
+    }
+
+    public synchronized void onDetectionsReceived(long frameId, long processingTimeMs, long nowMs) {
+        for (int i = 0; i < TRACKED_FRAMES; i++) {
+            if (trackedActive[i] && trackedFrameIds[i] == frameId) {
+                long rtt = nowMs - trackedSendTimes[i];
+                trackedActive[i] = false;
+                inFlight--;
+                framesAcked++;
+                lastRttMs = rtt;
+                smoothedRttMs = smooth(smoothedRttMs, rtt);
+                smoothedProcessingMs = smooth(smoothedProcessingMs, Math.max(0, processingTimeMs));
+                break;
+            }
+        }
+        maybeAdjust(nowMs);
+    }
+
+    private float smooth(float current, float sample) {
+        return current < 0 ? sample : current + config.smoothing * (sample - current);
+    }
+
+    private void expireLostFrames(long nowMs) {
+        for (int i = 0; i < TRACKED_FRAMES; i++) {
+            if (trackedActive[i] && nowMs - trackedSendTimes[i] > config.lossTimeoutMs) {
+                markLost(i);
+            }
+        }
+    }
+
+    private void markLost(int slot) {
+        trackedActive[slot] = false;
+        inFlight--;
+        framesLost++;
+        lossSinceAdjust = true;
+    }
+
+    private void maybeAdjust(long nowMs) {
+        if (nowMs - lastAdjustTimeMs < config.adjustIntervalMs) {
+            return;
+        }
+        if (smoothedRttMs < 0 && !lossSinceAdjust) {
+            return;
+        }
+        lastAdjustTimeMs = nowMs;
+
+        boolean overBudget = lossSinceAdjust || smoothedRttMs > config.targetLatencyMs;
+        boolean underBudget = !overBudget
+            && smoothedRttMs < config.targetLatencyMs * config.headroom
+            && inFlight < config.maxInFlight;
+        lossSinceAdjust = false;
+
+        if (overBudget) {
+            decrease();
+        } else if (underBudget) {
+            increase();
+        }
+    }
+
+    private boolean serverBound() {
+        return smoothedProcessingMs >= 0 && smoothedProcessingMs > smoothedRttMs * 0.5f;
+    }
+
+    private void decrease() {
+        if (serverBound()) {
+            // Smaller frames would not make the server any faster
+            slowDown();
+        } else if (quality > config.minQuality) {
+            quality = Math.max(config.minQuality, quality - config.qualityStepDown);
+        } else if (scaleDivisor < config.maxScaleDivisor) {
+            scaleDivisor *= 2;
+        } else {
+            slowDown();
+        }
+    }
+
+    private void slowDown() {
+        sendIntervalMs = Math.min(config.maxSendIntervalMs, sendIntervalMs * 3 / 2);
+    }
+
+    private void increase() {
+        if (sendIntervalMs > config.minSendIntervalMs) {
+            sendIntervalMs = Math.max(config.minSendIntervalMs, sendIntervalMs - 10);
+        } else if (scaleDivisor > 1) {
+            scaleDivisor /= 2;
+        } else if (quality < config.maxQuality) {
+            quality = Math.min(config.maxQuality, quality + config.qualityStepUp);
+        }
+    }
+
+    public synchronized int getJpegQuality() {
+        return quality;
+    }
+
+    /** Integer factor to divide the capture resolution by before encoding. */
+    public synchronized int getScaleDivisor() {
+        return scaleDivisor;
+    }
+
+    public synchronized long getSendIntervalMs() {
+        return sendIntervalMs;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /** Smoothed send-to-detections round trip, or -1 before the first result. */
+    public synchronized float getSmoothedRttMs() {
+        return smoothedRttMs;
+    }
+
+    public synchronized long getLastRttMs() {
+        return lastRttMs;
+    }
+
+    public synchronized long getFramesAcked() {
+        return framesAcked;
+    }
+
+    public synchronized long getFramesLost() {
+        return framesLost;
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import android.util.Log;
+
+/**
+ * Debug logging with a level per {@link Category}.
+ *
+ * Callers guard anything that builds a string, so a disabled log costs one
+ * array read and no allocation:
+ *
+ * <pre>
+ *     if (AppLog.isDebug(AppLog.Category.BASIC)) {
+ *         Log.d(TAG, "BASIC_DEBUG: Connected to " + address);
+ *     }
+ * </pre>
+ *
+ * Per-frame output goes through {@link #isTraced}, which is only true at
+ * VERBOSE and then only for every n-th frame, see
+ * {@link #setTraceSampleInterval}. Levels come from the usual log tag
+ * properties, so they can be changed without a rebuild:
+ *
+ * <pre>
+ *     adb shell setprop log.tag.YFP-DETECTION VERBOSE
+ * </pre>
+ *
+ * and take effect on the next {@link #refreshLevels()} (called at startup).
+ * In release builds {@link #ENABLED} is false, every guard folds to false and
+ * R8 removes the guarded code; see proguard-rules.pro.
+ */
+public final class AppLog {
+    public static final boolean ENABLED = BuildConfig.DEBUG;
+
+    public enum Category {
+        /** Connection lifecycle and frame sending. */
+        BASIC,
+        /** Detection results, decoding and conversion. */
+        DETECTION,
+        /** Overlay updates and drawing. */
+        OVERLAY;
+
+        final String tag = "YFP-" + name();
+    }
+
+    private static final int DEFAULT_LEVEL = Log.INFO;
+    private static final int DEFAULT_TRACE_SAMPLE_INTERVAL = 30;
+
+    private static final int[] levels = new int[Category.values().length];
+    private static volatile int traceSampleInterval = DEFAULT_TRACE_SAMPLE_INTERVAL;
+
+    static {
+        refreshLevels();
+    }
+
+    private AppLog() {
+    }
+
+    /** Re-reads every category's level from its {@code log.tag.YFP-<CATEGORY>} property. */
+    public static void refreshLevels() {
+        for (Category category : Category.values()) {
+            levels[category.ordinal()] = readLevel(category.tag);
+        }
+    }
+
+    private static int readLevel(String tag) {
+        try {
+            for (int level = Log.VERBOSE; level < Log.INFO; level++) {
+                if (Log.isLoggable(tag, level)) {
+                    return level;
+                }
+            }
+        } catch (RuntimeException e) {
+            // android.util.Log is not available in plain JVM tests
+        }
+        return DEFAULT_LEVEL;
+    }
+
+    public static void setLevel(Category category, int level) {
+        levels[category.ordinal()] = level;
+    }
+
+    public static int getLevel(Category category) {
+        return levels[category.ordinal()];
+    }
+
+    /**
+     * Traces one frame in {@code frames}, chosen by frame id so all categories
+     * trace the same frames. 1 traces every frame.
+     */
+    public static void setTraceSampleInterval(int frames) {
+        traceSampleInterval = Math.max(1, frames);
+    }
+
+    /** True if one-off DEBUG messages for {@code category} should be logged. */
+    public static boolean isDebug(Category category) {
+        return ENABLED && levels[category.ordinal()] <= Log.DEBUG;
+    }
+
+    /** True if per-frame messages about {@code frameId} should be logged. */
+    public static boolean isTraced(Category category, long frameId) {
+        return ENABLED && levels[category.ordinal()] <= Log.VERBOSE
+            && frameId % traceSampleInterval == 0;
+    }
+
+    /** Logs a message that needs no building, such as a constant, at DEBUG. */
+    public static void d(Category category, String tag, String message) {
+        if (isDebug(category)) {
+            Log.d(tag, message);
+        }
+    }
+}
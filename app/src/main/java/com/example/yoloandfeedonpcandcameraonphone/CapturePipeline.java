@@ -0,0 +1,264 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import android.util.Log;
+
+import androidx.camera.core.ImageProxy;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntSupplier;
+
+/**
+ * Camera frame pipeline running entirely off the main thread:
+ *
+ * <pre>
+ *  acquire (CameraX analyzer thread) -> convert -> encode -> sink (network)
+ * </pre>
+ *
+ * The analyzer thread only decides whether a frame is wanted and queues the
+ * {@link ImageProxy}. The convert stage copies the region chosen by a
+ * {@link FramePreprocessor.Plan} into a pooled NV21 buffer at the planned size
+ * and closes the image, the encode stage compresses to JPEG and hands the
+ * result to the {@link FrameSink}. Each stage has a small latest-wins queue, so
+ * a slow stage drops stale frames instead of delaying new ones.
+ *
+ * When the negotiated frame format is a video codec, the encode stage feeds a
+ * {@link VideoFrameEncoder} instead, which hands access units to the sink from
+ * its own callback thread. If the video encoder cannot be used, frames fall
+ * back to JPEG, which every server accepts.
+ *
+ * Otherwise each frame is sent as JPEG or as raw planes ({@link RawFrameEncoder}),
+ * whichever the {@link FrameFormatSelector} estimates gets it to the server
+ * sooner; the caller keeps the selector informed of what the server accepts
+ * and the link throughput.
+ */
+public class CapturePipeline {
+    private static final String TAG = "CapturePipeline";
+    private static final int CONVERT_QUEUE_SIZE = 1;
+    private static final int ENCODE_QUEUE_SIZE = 1;
+    // Enough holders for every queue slot and stage in progress
+    private static final int FRAME_POOL_SIZE = 6;
+
+    public interface FrameSink {
+        /**
+         * Takes ownership of {@code payload}, in one of the {@link FrameCodec}
+         * formats, and must release it. Returns false if this or an earlier
+         * frame was dropped instead of sent.
+         */
+        boolean onEncodedFrame(FrameBuffer payload, long frameId, long captureTimestampNs,
+                               int width, int height, int format, int quality);
+    }
+
+    static class CaptureFrame {
+        ImageProxy image;
+        FrameBuffer nv21;
+        long frameId;
+        long captureTimestampNs;
+        int regionLeft;
+        int regionTop;
+        int regionWidth;
+        int regionHeight;
+        int width;
+        int height;
+        int quality;
+    }
+
+    private final JpegFrameEncoder encoder;
+    private final RawFrameEncoder rawEncoder;
+    private final FrameFormatSelector formatSelector = new FrameFormatSelector();
+    private final ArrayBlockingQueue<CaptureFrame> freeFrames = new ArrayBlockingQueue<>(FRAME_POOL_SIZE);
+    private final ExecutorService analyzerExecutor =
+        Executors.newSingleThreadExecutor(r -> new Thread(r, "camera-acquire"));
+    private final PipelineStage<CaptureFrame> convertStage;
+    private final PipelineStage<CaptureFrame> encodeStage;
+    private final FrameSink sink;
+    private final IntSupplier frameFormat;
+    private final boolean directOutput;
+    private final PipelineTimings timings;
+    // Written by the encode stage
+    private volatile VideoFrameEncoder videoEncoder;
+    private volatile int jpegQuality = 80;
+    private volatile int scaleDivisor = 1;
+
+    /**
+     * @param frameFormat {@link FrameCodec} format to encode each frame in, read per frame
+     * @param directOutput encode into direct buffers, see {@link FrameTransport#prefersDirectBuffers()}
+     * @param timings receives the convert and encode stage of each frame
+     */
+    public CapturePipeline(FrameSink sink, IntSupplier frameFormat, boolean directOutput,
+                           PipelineTimings timings) {
+        this.sink = sink;
+        this.frameFormat = frameFormat;
+        this.directOutput = directOutput;
+        this.timings = timings;
+        this.encoder = new JpegFrameEncoder(directOutput);
+        this.rawEncoder = new RawFrameEncoder(directOutput);
+        for (int i = 0; i < FRAME_POOL_SIZE; i++) {
+            freeFrames.add(new CaptureFrame());
+        }
+        PipelineStage.ErrorHandler errorHandler = (stage, e) -> Log.e(TAG, "Stage " + stage + " failed", e);
+        convertStage = new PipelineStage<>("frame-convert", CONVERT_QUEUE_SIZE,
+            this::convert, this::recycle, errorHandler);
+        encodeStage = new PipelineStage<>("frame-encode", ENCODE_QUEUE_SIZE,
+            this::encode, this::recycle, errorHandler);
+    }
+
+    public void start() {
+        encodeStage.start();
+        convertStage.start();
+    }
+
+    public void stop() {
+        convertStage.stop();
+        encodeStage.stop();
+        if (videoEncoder != null) {
+            videoEncoder.release();
+            videoEncoder = null;
+        }
+    }
+
+    public void shutdown() {
+        stop();
+        analyzerExecutor.shutdown();
+    }
+
+    /** Executor to pass to {@code ImageAnalysis.setAnalyzer}. */
+    public ExecutorService getAnalyzerExecutor() {
+        return analyzerExecutor;
+    }
+
+    public void setJpegQuality(int quality) {
+        this.jpegQuality = quality;
+    }
+
+    /**
+     * True while frames go out as video. A video stream has a fixed frame
+     * size, and every size change restarts it with a keyframe, so callers
+     * should not crop frames to a moving region of interest meanwhile.
+     */
+    public boolean isStreamingVideo() {
+        VideoFrameEncoder encoder = videoEncoder;
+        return VideoCodec.forFrameFormat(frameFormat.getAsInt()) != null
+            && (encoder == null || !encoder.isFailed());
+    }
+
+    /** Integer factor the planned output size is divided by before encoding. */
+    public void setScaleDivisor(int scaleDivisor) {
+        this.scaleDivisor = Math.max(1, scaleDivisor);
+    }
+
+    /**
+     * Queues a frame for conversion. Takes ownership of {@code image} and closes
+     * it, whether or not the frame makes it through the pipeline. The plan is
+     * copied.
+     */
+    public void submit(ImageProxy image, long frameId, FramePreprocessor.Plan plan) {
+        CaptureFrame frame = freeFrames.poll();
+        if (frame == null) {
+            image.close();
+            return;
+        }
+        frame.image = image;
+        frame.frameId = frameId;
+        frame.captureTimestampNs = image.getImageInfo().getTimestamp();
+        frame.quality = jpegQuality;
+        frame.regionLeft = plan.left;
+        frame.regionTop = plan.top;
+        frame.regionWidth = plan.width;
+        frame.regionHeight = plan.height;
+        frame.width = Nv21Packer.scaledDimension(plan.outWidth, scaleDivisor);
+        frame.height = Nv21Packer.scaledDimension(plan.outHeight, scaleDivisor);
+        convertStage.offer(frame);
+    }
+
+    // A stage that throws leaves the frame to its drop handler, so the stages
+    // below recycle a frame only on the way out of a successful call.
+    private void convert(CaptureFrame frame) {
+        try {
+            frame.nv21 = encoder.toNv21(frame.image, frame.regionLeft, frame.regionTop,
+                frame.regionWidth, frame.regionHeight, frame.width, frame.height);
+        } finally {
+            frame.image.close();
+            frame.image = null;
+        }
+        if (frame.nv21 == null) {
+            recycle(frame);
+            return;
+        }
+        timings.mark(PipelineTimings.Stage.CONVERTED, frame.frameId, System.nanoTime());
+        encodeStage.offer(frame);
+    }
+
+    private void encode(CaptureFrame frame) {
+        VideoFrameEncoder video = videoEncoderFor(frameFormat.getAsInt());
+        if (video != null) {
+            // Marked as encoded and sent from the encoder's callback thread
+            video.encode(frame.nv21, frame.width, frame.height, frame.frameId,
+                frame.captureTimestampNs, frame.quality);
+            recycle(frame);
+            return;
+        }
+        int pixels = frame.width * frame.height;
+        int format = formatSelector.choose(pixels);
+        long startNs = System.nanoTime();
+        FrameBuffer payload = RawFrameEncoder.isRawFormat(format)
+            ? rawEncoder.encode(frame.nv21, frame.width, frame.height, format)
+            : encoder.compress(frame.nv21, frame.width, frame.height, frame.quality);
+        if (payload != null) {
+            long encodedNs = System.nanoTime();
+            formatSelector.onEncoded(format, pixels, encodedNs - startNs, payload.length());
+            timings.mark(PipelineTimings.Stage.ENCODED, frame.frameId, encodedNs);
+            sink.onEncodedFrame(payload, frame.frameId, frame.captureTimestampNs,
+                frame.width, frame.height, format, frame.quality);
+        }
+        recycle(frame);
+    }
+
+    /** Encode stage: the video encoder for a format, or null to send JPEG. */
+    private VideoFrameEncoder videoEncoderFor(int format) {
+        VideoCodec codec = VideoCodec.forFrameFormat(format);
+        if (videoEncoder != null && videoEncoder.getCodec() != codec) {
+            videoEncoder.release();
+            videoEncoder = null;
+        }
+        if (codec != null && videoEncoder == null) {
+            videoEncoder = new VideoFrameEncoder(codec, new VideoFrameEncoder.Config(), sink,
+                directOutput, timings);
+        }
+        return videoEncoder != null && !videoEncoder.isFailed() ? videoEncoder : null;
+    }
+
+    private void recycle(CaptureFrame frame) {
+        if (frame.image != null) {
+            frame.image.close();
+            frame.image = null;
+        }
+        if (frame.nv21 != null) {
+            frame.nv21.release();
+            frame.nv21 = null;
+        }
+        freeFrames.offer(frame);
+    }
+
+    public PipelineStage<CaptureFrame> getConvertStage() {
+        return convertStage;
+    }
+
+    public PipelineStage<CaptureFrame> getEncodeStage() {
+        return encodeStage;
+    }
+
+    public JpegFrameEncoder getEncoder() {
+        return encoder;
+    }
+
+    public RawFrameEncoder getRawEncoder() {
+        return rawEncoder;
+    }
+
+    /** Chooses between JPEG and raw formats when not streaming video. */
+    public FrameFormatSelector getFormatSelector() {
+        return formatSelector;
+    }
+}
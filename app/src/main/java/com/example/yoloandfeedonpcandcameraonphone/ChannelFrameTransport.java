@@ -0,0 +1,81 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Frame transport over a blocking {@link SocketChannel}. Header and payload go
+ * out in a single gathering write, normally one system call per frame. Direct
+ * payload buffers are handed to the kernel as is; heap buffers are copied once
+ * by the JDK into its own direct buffer.
+ */
+public class ChannelFrameTransport implements FrameTransport {
+    private final ByteBuffer headerBuffer = ByteBuffer.allocateDirect(FrameCodec.HEADER_SIZE);
+    private final FrameCodec.FrameHeader header = new FrameCodec.FrameHeader();
+    private final ByteBuffer[] gather = new ByteBuffer[2];
+    private SocketChannel channel;
+    private long writeCallCount;
+
+    @Override
+    public void connect(InetSocketAddress address, int timeoutMs) throws IOException {
+        channel = SocketChannel.open();
+        try {
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            // SocketChannel.connect has no timeout, so go through the adaptor socket
+            channel.socket().connect(address, timeoutMs);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void writeFrame(FrameBuffer payload, long frameId, long captureTimestampNs,
+                           int width, int height, int format, int quality) throws IOException {
+        header.set(frameId, captureTimestampNs, width, height, format, quality, payload.length());
+        headerBuffer.clear();
+        FrameCodec.encodeHeader(header, headerBuffer);
+        headerBuffer.flip();
+
+        gather[0] = headerBuffer;
+        gather[1] = payload.byteBuffer();
+        try {
+            while (gather[1].hasRemaining() || headerBuffer.hasRemaining()) {
+                channel.write(gather);
+                writeCallCount++;
+            }
+        } finally {
+            gather[1] = null;
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel != null && channel.isConnected();
+    }
+
+    @Override
+    public int getLocalPort() {
+        return channel != null ? Math.max(0, channel.socket().getLocalPort()) : 0;
+    }
+
+    @Override
+    public boolean prefersDirectBuffers() {
+        return true;
+    }
+
+    @Override
+    public long getWriteCallCount() {
+        return writeCallCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+}
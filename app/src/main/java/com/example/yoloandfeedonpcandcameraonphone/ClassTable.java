@@ -0,0 +1,41 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import java.util.Arrays;
+
+/**
+ * Class id to name mapping for binary DETECTIONS. The server sends the table
+ * once in CONNECT_ACK; results from servers that only send names (JSON) get ids
+ * assigned on first sight. Reads are lock-free and never allocate.
+ */
+public class ClassTable {
+    private volatile String[] names = new String[0];
+
+    /** Replaces the table with the server's list, indexed by class id. */
+    public synchronized void setNames(String[] classNames) {
+        names = classNames != null ? classNames.clone() : new String[0];
+    }
+
+    /** Returns the name for {@code id}, or null if the id is unknown. */
+    public String name(int id) {
+        String[] current = names;
+        return id >= 0 && id < current.length ? current[id] : null;
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    /** Returns the id for {@code name}, adding it to the table if it is new. */
+    public synchronized int idFor(String name) {
+        String[] current = names;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] != null && current[i].equals(name)) {
+                return i;
+            }
+        }
+        String[] grown = Arrays.copyOf(current, current.length + 1);
+        grown[current.length] = name;
+        names = grown;
+        return current.length;
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+/**
+ * NTP-style estimate of the server's monotonic clock relative to this
+ * device's {@link System#nanoTime()}, from PING/PONG exchanges.
+ *
+ * Each exchange gives four timestamps: client send (t1), server receive (t2),
+ * server send (t3) and client receive (t4). Then
+ * <pre>
+ *   offset = ((t2 - t1) + (t3 - t4)) / 2     server clock minus client clock
+ *   rtt    = (t4 - t1) - (t3 - t2)           network time both ways
+ * </pre>
+ * The offset is exact when both directions take equally long, and off by at
+ * most half the round trip otherwise. Queueing only ever adds delay, so the
+ * sample with the smallest round trip among the last {@code window} exchanges
+ * is the least distorted one and is the one used.
+ *
+ * Both clocks are monotonic, so the offset only drifts slowly; a new server
+ * process starts a new clock, so call {@link #reset()} on every connection.
+ */
+public class ClockOffsetEstimator {
+    public static final int DEFAULT_WINDOW = 16;
+
+    private final long[] offsets;
+    private final long[] rtts;
+    private int count;
+    private int next;
+    private int best = -1;
+
+    public ClockOffsetEstimator() {
+        this(DEFAULT_WINDOW);
+    }
+
+    /** @param window number of recent exchanges the minimum round trip is taken over */
+    public ClockOffsetEstimator(int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("window must be at least 1");
+        }
+        offsets = new long[window];
+        rtts = new long[window];
+    }
+
+    /**
+     * Adds one exchange. Client times are {@link System#nanoTime()}, server
+     * times are the server's monotonic clock.
+     *
+     * @return false if the timestamps are inconsistent and the sample was dropped
+     */
+    public synchronized boolean addSample(long clientSendNs, long serverReceiveNs,
+                                          long serverSendNs, long clientReceiveNs) {
+        long serverTime = serverSendNs - serverReceiveNs;
+        long rtt = (clientReceiveNs - clientSendNs) - serverTime;
+        if (serverTime < 0 || rtt < 0) {
+            return false;
+        }
+        offsets[next] = ((serverReceiveNs - clientSendNs) + (serverSendNs - clientReceiveNs)) / 2;
+        rtts[next] = rtt;
+        next = (next + 1) % rtts.length;
+        count = Math.min(count + 1, rtts.length);
+
+        best = 0;
+        for (int i = 1; i < count; i++) {
+            if (rtts[i] < rtts[best]) {
+                best = i;
+            }
+        }
+        return true;
+    }
+
+    public synchronized boolean hasEstimate() {
+        return best >= 0;
+    }
+
+    /** Server clock minus client clock; 0 before the first sample. */
+    public synchronized long getOffsetNs() {
+        return best >= 0 ? offsets[best] : 0;
+    }
+
+    /** Round trip of the sample the offset comes from, also twice the offset's error bound; 0 before the first sample. */
+    public synchronized long getRttNs() {
+        return best >= 0 ? rtts[best] : 0;
+    }
+
+    /** Converts a server timestamp to the {@link System#nanoTime()} clock. */
+    public synchronized long toLocalNs(long serverNs) {
+        return serverNs - getOffsetNs();
+    }
+
+    public synchronized void reset() {
+        count = 0;
+        next = 0;
+        best = -1;
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+/**
+ * Reusable struct-of-arrays holder for one DETECTIONS result. Coordinates are
+ * normalised to the frame (0..1), as in {@link YFPMessage.Detection}; classes
+ * are ids into a {@link ClassTable}. Arrays only grow, so refilling a buffer
+ * with a similar number of boxes does not allocate.
+ */
+public final class DetectionBuffer {
+    public long frameId;
+    public long processingTimeMs;
+    /** Server monotonic clock when it read the frame and sent the result; 0 if not reported. */
+    public long serverReceiveNs;
+    public long serverSendNs;
+    /** The server answered without running the model, as for a frame it could not decode; no boxes. */
+    public boolean skipped;
+    public int count;
+    public float[] x;
+    public float[] y;
+    public float[] width;
+    public float[] height;
+    public float[] confidence;
+    public int[] classId;
+
+    public DetectionBuffer() {
+        this(64);
+    }
+
+    public DetectionBuffer(int initialCapacity) {
+        allocate(Math.max(1, initialCapacity));
+    }
+
+    private void allocate(int capacity) {
+        x = new float[capacity];
+        y = new float[capacity];
+        width = new float[capacity];
+        height = new float[capacity];
+        confidence = new float[capacity];
+        classId = new int[capacity];
+    }
+
+    public int capacity() {
+        return x.length;
+    }
+
+    /**
+     * Resets the buffer to hold {@code count} boxes, growing the arrays if
+     * needed. Server times and {@link #skipped} are cleared.
+     */
+    public void reset(long frameId, long processingTimeMs, int count) {
+        if (count > x.length) {
+            allocate(Math.max(count, x.length * 2));
+        }
+        this.frameId = frameId;
+        this.processingTimeMs = processingTimeMs;
+        this.serverReceiveNs = 0;
+        this.serverSendNs = 0;
+        this.skipped = false;
+        this.count = count;
+    }
+
+    public void set(int i, float x, float y, float width, float height, int classId, float confidence) {
+        this.x[i] = x;
+        this.y[i] = y;
+        this.width[i] = width;
+        this.height[i] = height;
+        this.classId[i] = classId;
+        this.confidence[i] = confidence;
+    }
+
+    public void copyFrom(DetectionBuffer other) {
+        reset(other.frameId, other.processingTimeMs, other.count);
+        serverReceiveNs = other.serverReceiveNs;
+        serverSendNs = other.serverSendNs;
+        skipped = other.skipped;
+        System.arraycopy(other.x, 0, x, 0, other.count);
+        System.arraycopy(other.y, 0, y, 0, other.count);
+        System.arraycopy(other.width, 0, width, 0, other.count);
+        System.arraycopy(other.height, 0, height, 0, other.count);
+        System.arraycopy(other.confidence, 0, confidence, 0, other.count);
+        System.arraycopy(other.classId, 0, classId, 0, other.count);
+    }
+
+    /**
+     * Maps boxes detected in a region of the frame back to the whole frame. The
+     * region is given normalised to the frame.
+     */
+    public void mapFromRegion(float left, float top, float regionWidth, float regionHeight) {
+        for (int i = 0; i < count; i++) {
+            x[i] = left + x[i] * regionWidth;
+            y[i] = top + y[i] * regionHeight;
+            width[i] *= regionWidth;
+            height[i] *= regionHeight;
+        }
+    }
+
+    /** Fills the buffer from a JSON result, mapping class names to ids. */
+    public void setFrom(YFPMessage.DetectionsData data, ClassTable classTable) {
+        YFPMessage.Detection[] detections = data.detections;
+        int n = detections != null ? detections.length : 0;
+        reset(data.frameId, data.processingTimeMs, n);
+        serverReceiveNs = data.serverReceiveNs;
+        serverSendNs = data.serverSendNs;
+        skipped = data.skipped;
+        for (int i = 0; i < n; i++) {
+            YFPMessage.Detection d = detections[i];
+            set(i, d.x, d.y, d.width, d.height, classTable.idFor(d.className), d.confidence);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+/**
+ * An overlay backend that shows detection boxes over the camera preview.
+ * {@link DetectionOverlayView} draws on the main thread as part of the view
+ * hierarchy; {@link SurfaceDetectionOverlay} draws on its own render thread.
+ * Both are driven from the main thread.
+ */
+public interface DetectionOverlay {
+    /** Names for the class ids in the detections passed to {@link #setDetections}. */
+    void setClassTable(ClassTable classTable);
+
+    /**
+     * Shows {@code detections} from the next frame on. The boxes are copied, so
+     * the caller keeps ownership of the buffer. Null clears the overlay.
+     */
+    void setDetections(DetectionBuffer detections);
+
+    /** Receives the {@link PipelineTimings.Stage#DRAWN} stage of each result shown. */
+    void setPipelineTimings(PipelineTimings timings);
+
+    /** Number of boxes in the detections most recently passed to {@link #setDetections}. */
+    int getDetectionCount();
+}
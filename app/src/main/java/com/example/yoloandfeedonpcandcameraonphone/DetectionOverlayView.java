@@ -2,20 +2,33 @@ package com.example.yoloandfeedonpcandcameraonphone;
 
 import android.content.Context;
 import android.graphics.Canvas;
-import android.graphics.Color;
 import android.graphics.Paint;
-import android.graphics.RectF;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.View;
 
-import java.util.ArrayList;
-import java.util.List;
-
-public class DetectionOverlayView extends View {
+/**
+ * Draws detection boxes over the camera preview. Drawing allocates nothing:
+ * paints are created once per palette colour, labels come from the
+ * {@link OverlayRenderer} cache and detections are copied into one of two
+ * reused buffers.
+ */
+public class DetectionOverlayView extends View implements DetectionOverlay {
     private static final String TAG = "DetectionOverlayView";
-    private Paint paint;
-    private List<DetectionBox> detectionBoxes;
+    static final float BOX_STROKE_WIDTH = 4f;
+    static final float LABEL_TEXT_SIZE = 40f;
+
+    private final OverlayRenderer renderer = new OverlayRenderer();
+    private final CanvasTarget target = new CanvasTarget();
+    private Paint[] boxPaints;
+    private Paint[] labelPaints;
+    private ClassTable classTable = new ClassTable();
+    private PipelineTimings timings;
+    // setDetections fills back and swaps it with front, which onDraw renders
+    private DetectionBuffer front = new DetectionBuffer();
+    private DetectionBuffer back = new DetectionBuffer();
+    private long updateCount;
+    private long drawCount;
 
     public DetectionOverlayView(Context context) {
         super(context);
@@ -28,71 +41,98 @@ public class DetectionOverlayView extends View {
     }
 
     private void init() {
-        paint = new Paint();
-        paint.setColor(Color.RED);
-        paint.setStyle(Paint.Style.STROKE);
-        paint.setStrokeWidth(4f);
-        detectionBoxes = new ArrayList<>();
+        boxPaints = createBoxPaints();
+        labelPaints = createLabelPaints();
+    }
+
+    static Paint[] createBoxPaints() {
+        Paint[] paints = new Paint[OverlayRenderer.PALETTE.length];
+        for (int i = 0; i < paints.length; i++) {
+            Paint paint = new Paint();
+            paint.setColor(OverlayRenderer.PALETTE[i]);
+            paint.setStyle(Paint.Style.STROKE);
+            paint.setStrokeWidth(BOX_STROKE_WIDTH);
+            paints[i] = paint;
+        }
+        return paints;
     }
 
-    public void setDetections(List<DetectionBox> detections) {
-        Log.d(TAG, "OVERLAY_DEBUG: setDetections called");
-        this.detectionBoxes = detections != null ? detections : new ArrayList<>();
-        Log.d(TAG, "OVERLAY_DEBUG: Detection boxes count: " + this.detectionBoxes.size());
-        for (int i = 0; i < this.detectionBoxes.size(); i++) {
-            DetectionBox box = this.detectionBoxes.get(i);
-            Log.d(TAG, "OVERLAY_DEBUG: Box " + i + ": " + box.label +
-                  " at (" + box.x + "," + box.y + "," + box.width + "," + box.height + ")");
+    static Paint[] createLabelPaints() {
+        Paint[] paints = new Paint[OverlayRenderer.PALETTE.length];
+        for (int i = 0; i < paints.length; i++) {
+            Paint paint = new Paint();
+            paint.setColor(OverlayRenderer.PALETTE[i]);
+            paint.setTextSize(LABEL_TEXT_SIZE);
+            paints[i] = paint;
         }
-        Log.d(TAG, "OVERLAY_DEBUG: Calling invalidate() to trigger redraw");
+        return paints;
+    }
+
+    @Override
+    public void setClassTable(ClassTable classTable) {
+        this.classTable = classTable;
         invalidate();
     }
 
+    @Override
+    public void setPipelineTimings(PipelineTimings timings) {
+        this.timings = timings;
+    }
+
+    @Override
+    public void setDetections(DetectionBuffer detections) {
+        if (detections != null) {
+            back.copyFrom(detections);
+        } else {
+            back.reset(0, 0, 0);
+        }
+        DetectionBuffer shown = back;
+        back = front;
+        front = shown;
+
+        if (AppLog.isTraced(AppLog.Category.OVERLAY, updateCount++)) {
+            Log.v(TAG, "OVERLAY_DEBUG: setDetections with " + shown.count + " boxes for frame " + shown.frameId);
+            for (int i = 0; i < shown.count; i++) {
+                Log.v(TAG, "OVERLAY_DEBUG: Box " + i + ": class " + shown.classId[i] +
+                      " at (" + shown.x[i] + "," + shown.y[i] + "," + shown.width[i] + "," + shown.height[i] + ")");
+            }
+        }
+        invalidate();
+    }
+
+    @Override
+    public int getDetectionCount() {
+        return front.count;
+    }
+
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
 
-        Log.d(TAG, "OVERLAY_DEBUG: onDraw called, view size: " + getWidth() + "x" + getHeight());
-        Log.d(TAG, "OVERLAY_DEBUG: Drawing " + detectionBoxes.size() + " detection boxes");
-
-        for (int i = 0; i < detectionBoxes.size(); i++) {
-            DetectionBox box = detectionBoxes.get(i);
-            RectF rect = new RectF(
-                box.x * getWidth(),
-                box.y * getHeight(),
-                (box.x + box.width) * getWidth(),
-                (box.y + box.height) * getHeight()
-            );
-
-            Log.d(TAG, "OVERLAY_DEBUG: Box " + i + " converted to pixels: " +
-                  rect.left + "," + rect.top + "," + rect.right + "," + rect.bottom);
-
-            canvas.drawRect(rect, paint);
-
-            if (box.label != null && !box.label.isEmpty()) {
-                Paint textPaint = new Paint();
-                textPaint.setColor(Color.RED);
-                textPaint.setTextSize(40f);
-                canvas.drawText(box.label + " " + String.format("%.2f", box.confidence),
-                    rect.left, rect.top - 10, textPaint);
-            }
+        if (AppLog.isTraced(AppLog.Category.OVERLAY, drawCount++)) {
+            Log.v(TAG, "OVERLAY_DEBUG: Drawing " + front.count + " detection boxes on "
+                + getWidth() + "x" + getHeight());
         }
 
-        Log.d(TAG, "OVERLAY_DEBUG: onDraw completed");
+        target.canvas = canvas;
+        renderer.render(front, classTable, getWidth(), getHeight(), target);
+        target.canvas = null;
+        if (timings != null) {
+            timings.mark(PipelineTimings.Stage.DRAWN, front.frameId, System.nanoTime());
+        }
     }
 
-    public static class DetectionBox {
-        public float x, y, width, height;
-        public String label;
-        public float confidence;
-
-        public DetectionBox(float x, float y, float width, float height, String label, float confidence) {
-            this.x = x;
-            this.y = y;
-            this.width = width;
-            this.height = height;
-            this.label = label;
-            this.confidence = confidence;
+    private final class CanvasTarget implements OverlayRenderer.Target {
+        Canvas canvas;
+
+        @Override
+        public void drawBox(float left, float top, float right, float bottom, int colorIndex) {
+            canvas.drawRect(left, top, right, bottom, boxPaints[colorIndex]);
+        }
+
+        @Override
+        public void drawLabel(String label, float x, float y, int colorIndex) {
+            canvas.drawText(label, x, y, labelPaints[colorIndex]);
         }
     }
-}
\ No newline at end of file
+}
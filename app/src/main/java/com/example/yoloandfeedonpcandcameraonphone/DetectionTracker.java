@@ -0,0 +1,333 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import java.util.Arrays;
+
+/**
+ * Lightweight multi-object tracker that keeps boxes moving between server
+ * results.
+ *
+ * Each {@link #update} matches the new detections to the existing tracks by
+ * IoU with an optimal (Hungarian) assignment, restricted to boxes of the same
+ * class; unmatched detections start new tracks and tracks unseen for
+ * {@link Config#maxCoastMs} are dropped. Every track holds a constant-velocity
+ * Kalman filter per box coordinate (centre x, centre y, width, height), so
+ * {@link #predict} can place the boxes at any later time, such as the display
+ * frame being drawn, rather than where they were when the frame was captured.
+ *
+ * Coordinates are normalised to the frame, as in {@link DetectionBuffer}.
+ * Time is supplied by the caller in monotonic nanoseconds so traces can be
+ * simulated. Track state is kept in flat arrays that only grow, so steady-state
+ * updates and predictions allocate nothing. Not thread-safe.
+ */
+public class DetectionTracker {
+
+    public static class Config {
+        /** Minimum IoU between a track's predicted box and a detection to match them. */
+        public float minIou = 0.2f;
+        /** Matched detections a track needs before {@link #predict} reports it. */
+        public int minHits = 1;
+        /** Tracks unmatched for longer than this are dropped. */
+        public long maxCoastMs = 1000;
+        /** Predictions extrapolate at most this far past the last update. */
+        public long maxPredictionMs = 500;
+        /** Standard deviation of detection coordinates, in frame units. */
+        public float measurementNoise = 0.01f;
+        /** Spectral density of the random acceleration, in frame units squared per s^3. */
+        public float processNoise = 0.5f;
+        /** Variance of a new track's unknown velocity, in (frame units / s) squared. */
+        public float initialVelocityVariance = 0.25f;
+    }
+
+    private static final int DIMS = 4;
+    private static final int CX = 0;
+    private static final int CY = 1;
+    private static final int W = 2;
+    private static final int H = 3;
+
+    private final Config config;
+    private final HungarianAssigner assigner = new HungarianAssigner();
+
+    private int trackCount;
+    private long nextTrackId = 1;
+    private long[] trackIds = new long[0];
+    private int[] classIds = new int[0];
+    private float[] confidences = new float[0];
+    private int[] hits = new int[0];
+    private long[] lastSeenNs = new long[0];
+    // Per track and dimension at index track * DIMS + dim
+    private float[] position = new float[0];
+    private float[] velocity = new float[0];
+    private float[] covPP = new float[0];
+    private float[] covPV = new float[0];
+    private float[] covVV = new float[0];
+
+    // All filters are advanced together, so they share one state time
+    private long stateTimeNs;
+    private long lastFrameId;
+    private long lastProcessingTimeMs;
+
+    private float[] costs = new float[0];
+    private int[] trackToDetection = new int[0];
+    private boolean[] detectionMatched = new boolean[0];
+
+    public DetectionTracker() {
+        this(new Config());
+    }
+
+    public DetectionTracker(Config config) {
+        this.config = config;
+    }
+
+    /** Folds in the detections for a frame captured at {@code timestampNs}. */
+    public void update(DetectionBuffer detections, long timestampNs) {
+        if (trackCount > 0 && timestampNs > stateTimeNs) {
+            advance(seconds(timestampNs - stateTimeNs));
+        }
+        // Late results are matched against the current state rather than rewound
+        stateTimeNs = Math.max(stateTimeNs, timestampNs);
+        lastFrameId = detections.frameId;
+        lastProcessingTimeMs = detections.processingTimeMs;
+
+        int rows = trackCount;
+        int cols = detections.count;
+        ensureScratch(rows, cols);
+        for (int c = 0; c < cols; c++) {
+            detectionMatched[c] = false;
+        }
+        if (rows > 0 && cols > 0) {
+            for (int t = 0; t < rows; t++) {
+                for (int c = 0; c < cols; c++) {
+                    costs[t * cols + c] = 1f - gatedIou(t, detections, c);
+                }
+            }
+            assigner.solve(costs, rows, cols, trackToDetection);
+            for (int t = 0; t < rows; t++) {
+                int c = trackToDetection[t];
+                if (c >= 0 && gatedIou(t, detections, c) > 0) {
+                    correct(t, detections, c, timestampNs);
+                    detectionMatched[c] = true;
+                }
+            }
+        }
+
+        for (int t = trackCount - 1; t >= 0; t--) {
+            if (timestampNs - lastSeenNs[t] > config.maxCoastMs * 1_000_000L) {
+                removeTrack(t);
+            }
+        }
+        for (int c = 0; c < cols; c++) {
+            if (!detectionMatched[c]) {
+                addTrack(detections, c, timestampNs);
+            }
+        }
+    }
+
+    /**
+     * Keeps every track in place and visible up to {@code timestampNs}, for
+     * when the scene is known not to have changed although no detections
+     * arrived, e.g. because unchanged frames were not sent.
+     */
+    public void hold(long timestampNs) {
+        for (int t = 0; t < trackCount; t++) {
+            lastSeenNs[t] = Math.max(lastSeenNs[t], timestampNs);
+            for (int d = 0; d < DIMS; d++) {
+                velocity[t * DIMS + d] = 0f;
+            }
+        }
+        stateTimeNs = Math.max(stateTimeNs, timestampNs);
+    }
+
+    /**
+     * Writes the boxes of all confirmed tracks, extrapolated to
+     * {@code timestampNs}, into {@code out}.
+     *
+     * @return the number of boxes written
+     */
+    public int predict(long timestampNs, DetectionBuffer out) {
+        long maxCoastNs = config.maxCoastMs * 1_000_000L;
+        int visible = 0;
+        for (int t = 0; t < trackCount; t++) {
+            if (isVisible(t, timestampNs, maxCoastNs)) {
+                visible++;
+            }
+        }
+        out.reset(lastFrameId, lastProcessingTimeMs, visible);
+
+        float dt = seconds(Math.min(timestampNs - stateTimeNs, config.maxPredictionMs * 1_000_000L));
+        if (dt < 0) {
+            dt = 0;
+        }
+        int i = 0;
+        for (int t = 0; t < trackCount; t++) {
+            if (!isVisible(t, timestampNs, maxCoastNs)) {
+                continue;
+            }
+            int base = t * DIMS;
+            float w = Math.max(0f, position[base + W] + velocity[base + W] * dt);
+            float h = Math.max(0f, position[base + H] + velocity[base + H] * dt);
+            float cx = position[base + CX] + velocity[base + CX] * dt;
+            float cy = position[base + CY] + velocity[base + CY] * dt;
+            out.set(i++, cx - w / 2, cy - h / 2, w, h, classIds[t], confidences[t]);
+        }
+        return visible;
+    }
+
+    private boolean isVisible(int track, long timestampNs, long maxCoastNs) {
+        return hits[track] >= config.minHits && timestampNs - lastSeenNs[track] <= maxCoastNs;
+    }
+
+    public int getTrackCount() {
+        return trackCount;
+    }
+
+    /** Stable id of the track at {@code index}, for tests and debugging. */
+    public long getTrackId(int index) {
+        return trackIds[index];
+    }
+
+    public void clear() {
+        trackCount = 0;
+    }
+
+    /** IoU of the track's current box with detection {@code c}, or 0 if they cannot match. */
+    private float gatedIou(int track, DetectionBuffer detections, int c) {
+        if (classIds[track] != detections.classId[c]) {
+            return 0f;
+        }
+        int base = track * DIMS;
+        float w = Math.max(0f, position[base + W]);
+        float h = Math.max(0f, position[base + H]);
+        float left = position[base + CX] - w / 2;
+        float top = position[base + CY] - h / 2;
+
+        float dLeft = detections.x[c];
+        float dTop = detections.y[c];
+        float dw = detections.width[c];
+        float dh = detections.height[c];
+
+        float iw = Math.min(left + w, dLeft + dw) - Math.max(left, dLeft);
+        float ih = Math.min(top + h, dTop + dh) - Math.max(top, dTop);
+        if (iw <= 0 || ih <= 0) {
+            return 0f;
+        }
+        float intersection = iw * ih;
+        float iou = intersection / (w * h + dw * dh - intersection);
+        return iou >= config.minIou ? iou : 0f;
+    }
+
+    /** Kalman predict step for every track: x += v dt, P = F P F' + Q. */
+    private void advance(float dt) {
+        float q = config.processNoise;
+        float qPP = q * dt * dt * dt / 3f;
+        float qPV = q * dt * dt / 2f;
+        float qVV = q * dt;
+        int n = trackCount * DIMS;
+        for (int i = 0; i < n; i++) {
+            position[i] += velocity[i] * dt;
+            float pv = covPV[i];
+            float vv = covVV[i];
+            covPP[i] += dt * (2f * pv + dt * vv) + qPP;
+            covPV[i] = pv + dt * vv + qPV;
+            covVV[i] = vv + qVV;
+        }
+    }
+
+    /** Kalman update step with detection {@code c} as the measured position. */
+    private void correct(int track, DetectionBuffer detections, int c, long timestampNs) {
+        float r = config.measurementNoise * config.measurementNoise;
+        int base = track * DIMS;
+        measure(base + CX, detections.x[c] + detections.width[c] / 2, r);
+        measure(base + CY, detections.y[c] + detections.height[c] / 2, r);
+        measure(base + W, detections.width[c], r);
+        measure(base + H, detections.height[c], r);
+        confidences[track] = detections.confidence[c];
+        hits[track]++;
+        lastSeenNs[track] = timestampNs;
+    }
+
+    private void measure(int i, float z, float r) {
+        float pp = covPP[i];
+        float pv = covPV[i];
+        float s = pp + r;
+        float gainP = pp / s;
+        float gainV = pv / s;
+        float residual = z - position[i];
+        position[i] += gainP * residual;
+        velocity[i] += gainV * residual;
+        covPP[i] = (1f - gainP) * pp;
+        covPV[i] = (1f - gainP) * pv;
+        covVV[i] -= gainV * pv;
+    }
+
+    private void addTrack(DetectionBuffer detections, int c, long timestampNs) {
+        if (trackCount == trackIds.length) {
+            grow(Math.max(16, trackCount * 2));
+        }
+        int t = trackCount++;
+        trackIds[t] = nextTrackId++;
+        classIds[t] = detections.classId[c];
+        confidences[t] = detections.confidence[c];
+        hits[t] = 1;
+        lastSeenNs[t] = timestampNs;
+
+        float r = config.measurementNoise * config.measurementNoise;
+        int base = t * DIMS;
+        position[base + CX] = detections.x[c] + detections.width[c] / 2;
+        position[base + CY] = detections.y[c] + detections.height[c] / 2;
+        position[base + W] = detections.width[c];
+        position[base + H] = detections.height[c];
+        for (int d = 0; d < DIMS; d++) {
+            velocity[base + d] = 0f;
+            covPP[base + d] = r;
+            covPV[base + d] = 0f;
+            covVV[base + d] = config.initialVelocityVariance;
+        }
+    }
+
+    /** Removes a track by moving the last one into its slot. */
+    private void removeTrack(int t) {
+        int last = --trackCount;
+        if (t == last) {
+            return;
+        }
+        trackIds[t] = trackIds[last];
+        classIds[t] = classIds[last];
+        confidences[t] = confidences[last];
+        hits[t] = hits[last];
+        lastSeenNs[t] = lastSeenNs[last];
+        System.arraycopy(position, last * DIMS, position, t * DIMS, DIMS);
+        System.arraycopy(velocity, last * DIMS, velocity, t * DIMS, DIMS);
+        System.arraycopy(covPP, last * DIMS, covPP, t * DIMS, DIMS);
+        System.arraycopy(covPV, last * DIMS, covPV, t * DIMS, DIMS);
+        System.arraycopy(covVV, last * DIMS, covVV, t * DIMS, DIMS);
+    }
+
+    private void grow(int capacity) {
+        trackIds = Arrays.copyOf(trackIds, capacity);
+        classIds = Arrays.copyOf(classIds, capacity);
+        confidences = Arrays.copyOf(confidences, capacity);
+        hits = Arrays.copyOf(hits, capacity);
+        lastSeenNs = Arrays.copyOf(lastSeenNs, capacity);
+        position = Arrays.copyOf(position, capacity * DIMS);
+        velocity = Arrays.copyOf(velocity, capacity * DIMS);
+        covPP = Arrays.copyOf(covPP, capacity * DIMS);
+        covPV = Arrays.copyOf(covPV, capacity * DIMS);
+        covVV = Arrays.copyOf(covVV, capacity * DIMS);
+    }
+
+    private void ensureScratch(int rows, int cols) {
+        if (costs.length < rows * cols) {
+            costs = new float[Math.max(rows * cols, costs.length * 2)];
+        }
+        if (trackToDetection.length < rows) {
+            trackToDetection = new int[Math.max(rows, trackToDetection.length * 2)];
+        }
+        if (detectionMatched.length < cols) {
+            detectionMatched = new boolean[Math.max(cols, detectionMatched.length * 2)];
+        }
+    }
+
+    private static float seconds(long nanos) {
+        return nanos / 1e9f;
+    }
+}
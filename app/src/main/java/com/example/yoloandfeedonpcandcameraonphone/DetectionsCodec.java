@@ -0,0 +1,165 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Compact binary encoding of DETECTIONS datagrams, used instead of JSON when
+ * both sides advertise {@link #VERSION}. Classes travel as ids; the server sends
+ * the id to name table once, in CONNECT_ACK.
+ *
+ * <pre>
+ *  offset size field
+ *       0    4 magic ("YFPD")
+ *       4    1 version
+ *       5    1 flags
+ *       6    2 detection count
+ *       8    8 frame id
+ *      16    4 processing time (ms)
+ *      20   12 per detection:
+ *              x, y, width, height  4 x u16, normalised coordinate * 65535
+ *              class id             u16
+ *              confidence           u16, confidence * 65535
+ *  if flags has {@link #FLAG_SERVER_TIMES}, after the detections:
+ *           8 server receive time (ns, server monotonic clock)
+ *           8 server send time (ns, server monotonic clock)
+ * </pre>
+ *
+ * {@link #FLAG_SKIPPED} marks the answer to a frame the server read but did
+ * not run the model on, such as a video frame it could not decode yet; it
+ * returns the frame's credit without replacing the boxes on screen.
+ *
+ * The server times come after the detections so that decoders that predate
+ * them still read the boxes. All fields are big-endian. Decoding reads straight from the receive buffer into
+ * a {@link DetectionBuffer} and does not allocate.
+ */
+public final class DetectionsCodec {
+    public static final int MAGIC = 0x59465044; // "YFPD"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 20;
+    public static final int RECORD_SIZE = 12;
+    public static final int FLAG_SERVER_TIMES = 0x01;
+    public static final int FLAG_SKIPPED = 0x02;
+    public static final int SERVER_TIMES_SIZE = 16;
+
+    private static final float UNIT_SCALE = 65535f;
+
+    private DetectionsCodec() {
+    }
+
+    /** Largest detection count that fits, with server times, in a datagram of {@code datagramSize} bytes. */
+    public static int maxDetections(int datagramSize) {
+        return Math.min(0xFFFF, Math.max(0, (datagramSize - HEADER_SIZE - SERVER_TIMES_SIZE) / RECORD_SIZE));
+    }
+
+    /** True if the datagram starts with the binary DETECTIONS magic rather than JSON. */
+    public static boolean isBinary(byte[] data, int offset, int length) {
+        return length >= 4
+            && data[offset] == 'Y' && data[offset + 1] == 'F'
+            && data[offset + 2] == 'P' && data[offset + 3] == 'D';
+    }
+
+    /**
+     * Decodes one datagram into {@code into}.
+     *
+     * @throws ProtocolException if the magic or version is wrong or the datagram is
+     *                           shorter than its detection count requires
+     */
+    public static DetectionBuffer decode(byte[] data, int offset, int length, DetectionBuffer into)
+            throws ProtocolException {
+        if (length < HEADER_SIZE) {
+            throw new ProtocolException("Detections datagram too short: " + length);
+        }
+        if (readInt(data, offset) != MAGIC) {
+            throw new ProtocolException("Bad detections magic");
+        }
+        int version = data[offset + 4] & 0xFF;
+        if (version != VERSION) {
+            throw new ProtocolException("Unsupported detections version: " + version);
+        }
+        int flags = data[offset + 5] & 0xFF;
+        int count = readU16(data, offset + 6);
+        int size = HEADER_SIZE + count * RECORD_SIZE;
+        boolean serverTimes = (flags & FLAG_SERVER_TIMES) != 0;
+        if (length < size + (serverTimes ? SERVER_TIMES_SIZE : 0)) {
+            throw new ProtocolException("Detections datagram truncated: " + count + " boxes in " + length + " bytes");
+        }
+        long frameId = readLong(data, offset + 8);
+        long processingTimeMs = readInt(data, offset + 16) & 0xFFFFFFFFL;
+
+        into.reset(frameId, processingTimeMs, count);
+        float[] x = into.x;
+        float[] y = into.y;
+        float[] width = into.width;
+        float[] height = into.height;
+        float[] confidence = into.confidence;
+        int[] classId = into.classId;
+        int p = offset + HEADER_SIZE;
+        for (int i = 0; i < count; i++, p += RECORD_SIZE) {
+            x[i] = readU16(data, p) / UNIT_SCALE;
+            y[i] = readU16(data, p + 2) / UNIT_SCALE;
+            width[i] = readU16(data, p + 4) / UNIT_SCALE;
+            height[i] = readU16(data, p + 6) / UNIT_SCALE;
+            classId[i] = readU16(data, p + 8);
+            confidence[i] = readU16(data, p + 10) / UNIT_SCALE;
+        }
+        if (serverTimes) {
+            into.serverReceiveNs = readLong(data, p);
+            into.serverSendNs = readLong(data, p + 8);
+        }
+        into.skipped = (flags & FLAG_SKIPPED) != 0;
+        return into;
+    }
+
+    /**
+     * Writes {@code detections} at the buffer's current position, with server
+     * times if either is set. Used by tests and local stand-in servers; the
+     * phone only decodes.
+     */
+    public static void encode(DetectionBuffer detections, ByteBuffer out) {
+        if (detections.count > 0xFFFF) {
+            throw new IllegalArgumentException("Too many detections: " + detections.count);
+        }
+        ByteOrder order = out.order();
+        out.order(ByteOrder.BIG_ENDIAN);
+        out.putInt(MAGIC);
+        boolean serverTimes = detections.serverReceiveNs != 0 || detections.serverSendNs != 0;
+        out.put((byte) VERSION);
+        out.put((byte) ((serverTimes ? FLAG_SERVER_TIMES : 0) | (detections.skipped ? FLAG_SKIPPED : 0)));
+        out.putShort((short) detections.count);
+        out.putLong(detections.frameId);
+        out.putInt((int) detections.processingTimeMs);
+        for (int i = 0; i < detections.count; i++) {
+            out.putShort(toUnit(detections.x[i]));
+            out.putShort(toUnit(detections.y[i]));
+            out.putShort(toUnit(detections.width[i]));
+            out.putShort(toUnit(detections.height[i]));
+            out.putShort((short) detections.classId[i]);
+            out.putShort(toUnit(detections.confidence[i]));
+        }
+        if (serverTimes) {
+            out.putLong(detections.serverReceiveNs);
+            out.putLong(detections.serverSendNs);
+        }
+        out.order(order);
+    }
+
+    private static short toUnit(float value) {
+        float clamped = Math.max(0f, Math.min(1f, value));
+        return (short) Math.round(clamped * UNIT_SCALE);
+    }
+
+    private static int readInt(byte[] data, int p) {
+        return (data[p] & 0xFF) << 24 | (data[p + 1] & 0xFF) << 16
+            | (data[p + 2] & 0xFF) << 8 | (data[p + 3] & 0xFF);
+    }
+
+    private static long readLong(byte[] data, int p) {
+        return ((long) readInt(data, p) << 32) | (readInt(data, p + 4) & 0xFFFFFFFFL);
+    }
+
+    private static int readU16(byte[] data, int p) {
+        return (data[p] & 0xFF) << 8 | (data[p + 1] & 0xFF);
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A reusable byte buffer handed out by a {@link FrameBufferPool}. Holders must
+ * call {@link #release()} exactly once when they are done with the data.
+ *
+ * A buffer is backed either by a heap array ({@link #data()}) or, for pools
+ * created as direct, by a direct {@link ByteBuffer} that NIO channels can
+ * write without an extra copy. {@link #byteBuffer()} works for both.
+ */
+public final class FrameBuffer {
+    private final FrameBufferPool pool;
+    private final BufferOutputStream outputStream = new BufferOutputStream();
+    byte[] data;
+    ByteBuffer direct;
+    private ByteBuffer heapView;
+    int length;
+    volatile boolean inUse;
+
+    FrameBuffer(FrameBufferPool pool, int capacity, boolean isDirect) {
+        this.pool = pool;
+        if (isDirect) {
+            this.direct = ByteBuffer.allocateDirect(capacity);
+        } else {
+            this.data = new byte[capacity];
+        }
+    }
+
+    public boolean isDirect() {
+        return direct != null;
+    }
+
+    /** Backing array of a heap buffer. */
+    public byte[] data() {
+        if (data == null) {
+            throw new IllegalStateException("Direct buffer has no backing array");
+        }
+        return data;
+    }
+
+    /**
+     * Returns a buffer positioned at 0 with its limit at {@link #length()}. The
+     * view is cached, so it must not be held past {@link #release()}.
+     */
+    public ByteBuffer byteBuffer() {
+        ByteBuffer view;
+        if (direct != null) {
+            view = direct;
+        } else {
+            if (heapView == null || heapView.array() != data) {
+                heapView = ByteBuffer.wrap(data);
+            }
+            view = heapView;
+        }
+        view.clear();
+        view.limit(length);
+        return view;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public void setLength(int length) {
+        if (length < 0 || length > capacity()) {
+            throw new IllegalArgumentException("Invalid length " + length + " for capacity " + capacity());
+        }
+        this.length = length;
+    }
+
+    public int capacity() {
+        return direct != null ? direct.capacity() : data.length;
+    }
+
+    /**
+     * Returns a stream that appends to this buffer, starting from an empty buffer.
+     * The stream instance is reused, so it must not be held past {@link #release()}.
+     */
+    public OutputStream resetOutputStream() {
+        length = 0;
+        return outputStream;
+    }
+
+    void ensureCapacity(int capacity) {
+        int current = capacity();
+        if (capacity <= current) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, current * 2);
+        if (direct != null) {
+            ByteBuffer grown = ByteBuffer.allocateDirect(newCapacity);
+            direct.clear();
+            direct.limit(length);
+            grown.put(direct);
+            direct = grown;
+        } else {
+            data = Arrays.copyOf(data, newCapacity);
+        }
+        pool.onGrow(newCapacity);
+    }
+
+    public void release() {
+        pool.release(this);
+    }
+
+    private final class BufferOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {
+            ensureCapacity(length + 1);
+            if (direct != null) {
+                direct.put(length, (byte) b);
+            } else {
+                data[length] = (byte) b;
+            }
+            length++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(length + len);
+            if (direct != null) {
+                direct.clear();
+                direct.position(length);
+                direct.put(b, off, len);
+            } else {
+                System.arraycopy(b, off, data, length, len);
+            }
+            length += len;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of {@link FrameBuffer}s. At most {@code maxBuffers} buffers ever
+ * exist; when all of them are in use {@link #acquire(int)} returns null and the
+ * caller is expected to drop the frame rather than allocate.
+ *
+ * The counters make it possible to check that the steady state allocates
+ * nothing: once warmed up, {@link #getAllocationCount()} stops increasing.
+ */
+public class FrameBufferPool {
+    private final String name;
+    private final int maxBuffers;
+    private final boolean direct;
+    private final ArrayBlockingQueue<FrameBuffer> free;
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong allocationCount = new AtomicLong();
+    private final AtomicLong allocatedBytes = new AtomicLong();
+    private final AtomicLong acquireCount = new AtomicLong();
+    private final AtomicLong exhaustedCount = new AtomicLong();
+
+    public FrameBufferPool(String name, int maxBuffers) {
+        this(name, maxBuffers, false);
+    }
+
+    /**
+     * @param direct allocate direct buffers, for payloads written to NIO channels
+     */
+    public FrameBufferPool(String name, int maxBuffers, boolean direct) {
+        if (maxBuffers <= 0) {
+            throw new IllegalArgumentException("maxBuffers must be positive");
+        }
+        this.name = name;
+        this.maxBuffers = maxBuffers;
+        this.direct = direct;
+        this.free = new ArrayBlockingQueue<>(maxBuffers);
+    }
+
+    /**
+     * Returns a buffer with at least {@code minCapacity} bytes and length 0, or
+     * null if every buffer is currently in use.
+     */
+    public FrameBuffer acquire(int minCapacity) {
+        acquireCount.incrementAndGet();
+        FrameBuffer buffer = free.poll();
+        if (buffer == null) {
+            if (created.incrementAndGet() > maxBuffers) {
+                created.decrementAndGet();
+                exhaustedCount.incrementAndGet();
+                return null;
+            }
+            buffer = new FrameBuffer(this, minCapacity, direct);
+            allocationCount.incrementAndGet();
+            allocatedBytes.addAndGet(minCapacity);
+        } else {
+            buffer.ensureCapacity(minCapacity);
+        }
+        buffer.length = 0;
+        buffer.inUse = true;
+        return buffer;
+    }
+
+    void release(FrameBuffer buffer) {
+        if (!buffer.inUse) {
+            throw new IllegalStateException("Buffer released twice to pool " + name);
+        }
+        buffer.inUse = false;
+        free.offer(buffer);
+    }
+
+    void onGrow(int newCapacity) {
+        allocationCount.incrementAndGet();
+        allocatedBytes.addAndGet(newCapacity);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isDirect() {
+        return direct;
+    }
+
+    public int getMaxBuffers() {
+        return maxBuffers;
+    }
+
+    public int getAvailableCount() {
+        return free.size();
+    }
+
+    /** Number of backing arrays allocated, including growth of existing buffers. */
+    public long getAllocationCount() {
+        return allocationCount.get();
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    public long getAcquireCount() {
+        return acquireCount.get();
+    }
+
+    /** Number of acquire calls that returned null because the pool was empty. */
+    public long getExhaustedCount() {
+        return exhaustedCount.get();
+    }
+}
@@ -0,0 +1,272 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Binary framing for the TCP image channel.
+ *
+ * Every frame is a fixed-size big-endian header followed by exactly
+ * {@code payloadLength} payload bytes, so the receiver never has to scan for
+ * JPEG end markers or test-decode partial data:
+ *
+ * <pre>
+ *  offset size field
+ *       0    4 magic ("YFPF")
+ *       4    1 version
+ *       5    1 format
+ *       6    1 quality
+ *       7    1 flags
+ *       8    8 frame id
+ *      16    8 capture timestamp (ns, camera clock)
+ *      24    4 width
+ *      28    4 height
+ *      32    4 payload length
+ * </pre>
+ *
+ * The version is advertised by the client in {@link YFPMessage.ConnectData}.
+ */
+public final class FrameCodec {
+    public static final int MAGIC = 0x59465046; // "YFPF"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 36;
+    public static final int MAX_PAYLOAD_SIZE = 16 * 1024 * 1024;
+
+    public static final int FORMAT_JPEG = 1;
+    /** Video access unit, see {@link VideoPacketizer} for the payload layout. */
+    public static final int FORMAT_H264 = 2;
+    public static final int FORMAT_HEVC = 3;
+    /** Uncompressed image planes, see {@link RawFrameEncoder} for the payload layout. */
+    public static final int FORMAT_NV21 = 4;
+    public static final int FORMAT_NV21_LZ4 = 5;
+    /** Luma plane only. */
+    public static final int FORMAT_GRAY = 6;
+    public static final int FORMAT_GRAY_LZ4 = 7;
+
+    private FrameCodec() {
+    }
+
+    public static int formatCode(String format) {
+        switch (format) {
+            case "JPEG":
+                return FORMAT_JPEG;
+            case "H264":
+                return FORMAT_H264;
+            case "HEVC":
+                return FORMAT_HEVC;
+            case "NV21":
+                return FORMAT_NV21;
+            case "NV21_LZ4":
+                return FORMAT_NV21_LZ4;
+            case "GRAY":
+                return FORMAT_GRAY;
+            case "GRAY_LZ4":
+                return FORMAT_GRAY_LZ4;
+            default:
+                throw new IllegalArgumentException("Unknown frame format: " + format);
+        }
+    }
+
+    public static String formatName(int format) {
+        switch (format) {
+            case FORMAT_JPEG:
+                return "JPEG";
+            case FORMAT_H264:
+                return "H264";
+            case FORMAT_HEVC:
+                return "HEVC";
+            case FORMAT_NV21:
+                return "NV21";
+            case FORMAT_NV21_LZ4:
+                return "NV21_LZ4";
+            case FORMAT_GRAY:
+                return "GRAY";
+            case FORMAT_GRAY_LZ4:
+                return "GRAY_LZ4";
+            default:
+                return "UNKNOWN(" + format + ")";
+        }
+    }
+
+    public static class FrameHeader {
+        public int version = VERSION;
+        public int format = FORMAT_JPEG;
+        public int quality;
+        public int flags;
+        public long frameId;
+        public long captureTimestampNs;
+        public int width;
+        public int height;
+        public int payloadLength;
+
+        public FrameHeader set(long frameId, long captureTimestampNs, int width, int height,
+                               int format, int quality, int payloadLength) {
+            this.version = VERSION;
+            this.frameId = frameId;
+            this.captureTimestampNs = captureTimestampNs;
+            this.width = width;
+            this.height = height;
+            this.format = format;
+            this.quality = quality;
+            this.flags = 0;
+            this.payloadLength = payloadLength;
+            return this;
+        }
+    }
+
+    /**
+     * Writes the header at the buffer's current position. The buffer must have
+     * at least {@link #HEADER_SIZE} bytes remaining.
+     */
+    public static void encodeHeader(FrameHeader header, ByteBuffer out) {
+        if (header.payloadLength < 0 || header.payloadLength > MAX_PAYLOAD_SIZE) {
+            throw new IllegalArgumentException("Invalid payload length: " + header.payloadLength);
+        }
+        ByteOrder order = out.order();
+        out.order(ByteOrder.BIG_ENDIAN);
+        out.putInt(MAGIC);
+        out.put((byte) header.version);
+        out.put((byte) header.format);
+        out.put((byte) header.quality);
+        out.put((byte) header.flags);
+        out.putLong(header.frameId);
+        out.putLong(header.captureTimestampNs);
+        out.putInt(header.width);
+        out.putInt(header.height);
+        out.putInt(header.payloadLength);
+        out.order(order);
+    }
+
+    /**
+     * Reads a header from the buffer's current position into {@code into}.
+     *
+     * @throws ProtocolException if the magic, version or payload length is invalid,
+     *                           which means the stream is out of sync
+     */
+    public static FrameHeader decodeHeader(ByteBuffer in, FrameHeader into) throws ProtocolException {
+        ByteOrder order = in.order();
+        in.order(ByteOrder.BIG_ENDIAN);
+        try {
+            int magic = in.getInt();
+            if (magic != MAGIC) {
+                throw new ProtocolException("Bad frame magic: 0x" + Integer.toHexString(magic));
+            }
+            into.version = in.get() & 0xFF;
+            if (into.version != VERSION) {
+                throw new ProtocolException("Unsupported frame version: " + into.version);
+            }
+            into.format = in.get() & 0xFF;
+            into.quality = in.get() & 0xFF;
+            into.flags = in.get() & 0xFF;
+            into.frameId = in.getLong();
+            into.captureTimestampNs = in.getLong();
+            into.width = in.getInt();
+            into.height = in.getInt();
+            into.payloadLength = in.getInt();
+            if (into.payloadLength < 0 || into.payloadLength > MAX_PAYLOAD_SIZE) {
+                throw new ProtocolException("Invalid payload length: " + into.payloadLength);
+            }
+            return into;
+        } finally {
+            in.order(order);
+        }
+    }
+
+    /**
+     * Encoder for blocking streams. Reuses one header buffer, so an instance must
+     * only be used by one writer thread.
+     */
+    public static class Encoder {
+        private final ByteBuffer headerBuffer = ByteBuffer.allocate(HEADER_SIZE);
+        private final FrameHeader header = new FrameHeader();
+
+        public void writeFrame(OutputStream out, long frameId, long captureTimestampNs,
+                               int width, int height, int format, int quality,
+                               byte[] payload, int offset, int length) throws IOException {
+            writeHeader(out, frameId, captureTimestampNs, width, height, format, quality, length);
+            out.write(payload, offset, length);
+        }
+
+        /** Writes only the header; the caller must follow it with exactly {@code payloadLength} bytes. */
+        public void writeHeader(OutputStream out, long frameId, long captureTimestampNs,
+                                int width, int height, int format, int quality,
+                                int payloadLength) throws IOException {
+            header.set(frameId, captureTimestampNs, width, height, format, quality, payloadLength);
+            headerBuffer.clear();
+            encodeHeader(header, headerBuffer);
+            out.write(headerBuffer.array(), 0, HEADER_SIZE);
+        }
+    }
+
+    /**
+     * Incremental decoder. Bytes can be fed in chunks of any size; each complete
+     * frame is delivered to the listener exactly once. The payload buffer passed to
+     * the listener is reused and is only valid for the duration of the callback.
+     */
+    public static class Decoder {
+        public interface FrameListener {
+            void onFrame(FrameHeader header, byte[] payload, int length);
+        }
+
+        private final FrameListener listener;
+        private final ByteBuffer headerBuffer = ByteBuffer.allocate(HEADER_SIZE);
+        private final FrameHeader header = new FrameHeader();
+        private byte[] payload = new byte[64 * 1024];
+        private int payloadFilled;
+        private boolean readingPayload;
+        private long framesDecoded;
+
+        public Decoder(FrameListener listener) {
+            this.listener = listener;
+        }
+
+        public void feed(byte[] data, int offset, int length) throws ProtocolException {
+            feed(ByteBuffer.wrap(data, offset, length));
+        }
+
+        public void feed(ByteBuffer data) throws ProtocolException {
+            while (data.hasRemaining()) {
+                if (!readingPayload) {
+                    int n = Math.min(headerBuffer.remaining(), data.remaining());
+                    int limit = data.limit();
+                    data.limit(data.position() + n);
+                    headerBuffer.put(data);
+                    data.limit(limit);
+                    if (headerBuffer.hasRemaining()) {
+                        return;
+                    }
+                    headerBuffer.flip();
+                    decodeHeader(headerBuffer, header);
+                    headerBuffer.clear();
+                    if (payload.length < header.payloadLength) {
+                        payload = new byte[header.payloadLength];
+                    }
+                    payloadFilled = 0;
+                    readingPayload = true;
+                }
+
+                int n = Math.min(header.payloadLength - payloadFilled, data.remaining());
+                data.get(payload, payloadFilled, n);
+                payloadFilled += n;
+                if (payloadFilled == header.payloadLength) {
+                    // Zero-length payloads complete here too, straight after the header
+                    readingPayload = false;
+                    framesDecoded++;
+                    listener.onFrame(header, payload, payloadFilled);
+                }
+            }
+        }
+
+        /** True when no partially received frame is buffered. */
+        public boolean isAtFrameBoundary() {
+            return !readingPayload && headerBuffer.position() == 0;
+        }
+
+        public long getFramesDecoded() {
+            return framesDecoded;
+        }
+    }
+}
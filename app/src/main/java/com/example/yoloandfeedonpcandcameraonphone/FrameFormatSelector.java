@@ -0,0 +1,172 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import java.util.Arrays;
+
+/**
+ * Picks the still-image format of each frame (JPEG, raw NV21, or LZ4-compressed
+ * NV21) from what each one costs on this device and link.
+ *
+ * A frame's cost is its encode time plus its transfer time, both estimated
+ * per pixel so that estimates survive changes of frame size: JPEG is slow to
+ * encode but small, raw planes are free to encode but ten times larger. Each
+ * encoded frame updates the smoothed encode time and size of its format,
+ * starting from rough priors; the link throughput is supplied by the caller.
+ * The cheapest format is used, switching only when another one is clearly
+ * cheaper. Every {@link Config#probeInterval} frames, the best alternative
+ * is tried once so that its estimates follow the device and link too.
+ *
+ * Only formats the server accepts are considered; JPEG is always accepted.
+ * All methods are thread-safe.
+ */
+public class FrameFormatSelector {
+
+    public static class Config {
+        /** Frames between tries of the best format not in use. */
+        public int probeInterval = 150;
+        /** Only tried if estimated to cost at most this much more than the current format. */
+        public float probeMargin = 0.5f;
+        /** Another format must be estimated this much cheaper before switching to it. */
+        public float switchMargin = 0.15f;
+        /** Weight of each new sample in the smoothed estimates. */
+        public float smoothing = 0.2f;
+        /** Assumed until the caller reports a measured throughput; roughly Wi-Fi. */
+        public long defaultBytesPerSecond = 2_500_000;
+        /** Also consider grayscale, which drops colour the detector may rely on. */
+        public boolean allowGray = false;
+    }
+
+    // Preferred first when costs tie
+    private static final int[] CANDIDATES = {
+        FrameCodec.FORMAT_JPEG, FrameCodec.FORMAT_NV21_LZ4, FrameCodec.FORMAT_NV21,
+        FrameCodec.FORMAT_GRAY_LZ4, FrameCodec.FORMAT_GRAY,
+    };
+    private static final int FORMATS = 8;
+
+    private final Config config;
+    // Indexed by format code; negative until measured
+    private final float[] encodeNsPerPixel = new float[FORMATS];
+    private final float[] bytesPerPixel = new float[FORMATS];
+    private int acceptedFormats = 1 << FrameCodec.FORMAT_JPEG;
+    private long linkBytesPerSecond;
+    private int currentFormat = FrameCodec.FORMAT_JPEG;
+    private int framesSinceProbe;
+
+    public FrameFormatSelector() {
+        this(new Config());
+    }
+
+    public FrameFormatSelector(Config config) {
+        this.config = config;
+        Arrays.fill(encodeNsPerPixel, -1f);
+        Arrays.fill(bytesPerPixel, -1f);
+    }
+
+    /** Formats the server accepts, one bit per format code ({@code 1 << format}). */
+    public synchronized void setAcceptedFormats(int formatMask) {
+        this.acceptedFormats = formatMask | 1 << FrameCodec.FORMAT_JPEG;
+    }
+
+    /** Measured uplink throughput, or 0 if unknown. */
+    public synchronized void setLinkThroughput(long bytesPerSecond) {
+        this.linkBytesPerSecond = bytesPerSecond;
+    }
+
+    /** Format for the next frame of {@code pixels} pixels. */
+    public synchronized int choose(int pixels) {
+        if (!isCandidate(currentFormat)) {
+            currentFormat = FrameCodec.FORMAT_JPEG;
+        }
+        long currentCost = estimatedCostNs(currentFormat, pixels);
+        int best = currentFormat;
+        long bestCost = currentCost;
+        int alternative = -1;
+        long alternativeCost = Long.MAX_VALUE;
+        for (int format : CANDIDATES) {
+            if (format == currentFormat || !isCandidate(format)) {
+                continue;
+            }
+            long cost = estimatedCostNs(format, pixels);
+            if (cost < bestCost) {
+                best = format;
+                bestCost = cost;
+            }
+            if (cost < alternativeCost) {
+                alternative = format;
+                alternativeCost = cost;
+            }
+        }
+        if (best != currentFormat && bestCost < currentCost * (1 - config.switchMargin)) {
+            currentFormat = best;
+            framesSinceProbe = 0;
+            return currentFormat;
+        }
+
+        if (++framesSinceProbe >= config.probeInterval) {
+            framesSinceProbe = 0;
+            if (alternative >= 0 && alternativeCost <= currentCost * (1 + config.probeMargin)) {
+                return alternative;
+            }
+        }
+        return currentFormat;
+    }
+
+    /** Records the cost of a frame encoded in {@code format}. */
+    public synchronized void onEncoded(int format, int pixels, long encodeNs, int payloadBytes) {
+        if (format < 0 || format >= FORMATS || pixels <= 0) {
+            return;
+        }
+        encodeNsPerPixel[format] = smooth(encodeNsPerPixel[format], encodeNs / (float) pixels);
+        bytesPerPixel[format] = smooth(bytesPerPixel[format], payloadBytes / (float) pixels);
+    }
+
+    /** Estimated encode plus transfer time of a frame of {@code pixels} pixels. */
+    public synchronized long estimatedCostNs(int format, int pixels) {
+        float ns = encodeNsPerPixel[format] >= 0 ? encodeNsPerPixel[format] : priorEncodeNsPerPixel(format);
+        float bytes = bytesPerPixel[format] >= 0 ? bytesPerPixel[format] : priorBytesPerPixel(format);
+        long throughput = linkBytesPerSecond > 0 ? linkBytesPerSecond : config.defaultBytesPerSecond;
+        return (long) (ns * pixels + bytes * pixels * 1e9 / throughput);
+    }
+
+    public synchronized int getCurrentFormat() {
+        return currentFormat;
+    }
+
+    private boolean isCandidate(int format) {
+        if (!config.allowGray && (format == FrameCodec.FORMAT_GRAY || format == FrameCodec.FORMAT_GRAY_LZ4)) {
+            return false;
+        }
+        return (acceptedFormats & 1 << format) != 0;
+    }
+
+    private float smooth(float average, float sample) {
+        return average < 0 ? sample : average + config.smoothing * (sample - average);
+    }
+
+    // Mid-range phone figures, only used until a format has been measured
+    private static float priorEncodeNsPerPixel(int format) {
+        switch (format) {
+            case FrameCodec.FORMAT_JPEG:
+                return 40f;
+            case FrameCodec.FORMAT_NV21_LZ4:
+            case FrameCodec.FORMAT_GRAY_LZ4:
+                return 4f;
+            default:
+                return 0.5f;
+        }
+    }
+
+    private static float priorBytesPerPixel(int format) {
+        switch (format) {
+            case FrameCodec.FORMAT_JPEG:
+                return 0.15f;
+            case FrameCodec.FORMAT_NV21:
+                return 1.5f;
+            case FrameCodec.FORMAT_NV21_LZ4:
+                return 1.0f;
+            case FrameCodec.FORMAT_GRAY_LZ4:
+                return 0.7f;
+            default:
+                return 1.0f;
+        }
+    }
+}
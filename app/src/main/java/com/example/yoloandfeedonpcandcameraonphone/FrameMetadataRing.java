@@ -0,0 +1,158 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size record of the frames sent to the server, keyed by frame id, so a
+ * DETECTIONS result can be matched to the frame it describes: when it was
+ * captured, how it was rotated, which region of it was sent, and when it went
+ * out.
+ *
+ * Entries live in primitive arrays indexed by {@code frameId} modulo the
+ * capacity; a newer frame with the same slot replaces an older one, and
+ * {@link #get} reports the older one as gone. Nothing is allocated after
+ * construction. All methods are thread-safe: captures are recorded on the
+ * camera thread, sends on the writer thread and lookups on the main thread.
+ *
+ * Camera timestamps come from the camera's clock, which may not be
+ * {@link System#nanoTime()}. Each capture is also recorded with the local time
+ * it reached the app; the smallest difference seen between the two is taken
+ * as the clock offset, giving {@link Entry#captureTimeNs} in local time.
+ */
+public class FrameMetadataRing {
+    public static final int DEFAULT_CAPACITY = 128;
+    // Larger jumps mean the camera clock moved against ours (e.g. after sleep)
+    private static final long CLOCK_RESYNC_NS = 1_000_000_000L;
+    private static final long NO_FRAME = Long.MIN_VALUE;
+
+    /** One frame's metadata, filled by {@link #get}. */
+    public static final class Entry {
+        public long frameId;
+        /** Camera clock, as reported by the image. */
+        public long captureTimestampNs;
+        /** Capture time on the {@link System#nanoTime()} clock. */
+        public long captureTimeNs;
+        public int rotationDegrees;
+        /** Size of the camera frame. */
+        public int frameWidth;
+        public int frameHeight;
+        /** Region of the camera frame that was sent, in frame pixels. */
+        public int cropLeft;
+        public int cropTop;
+        public int cropRight;
+        public int cropBottom;
+        /** When the frame was handed to the transport, or 0 if it has not been. */
+        public long sendTimeNs;
+        /** Bytes of frame payload sent, or 0 if it has not been sent. */
+        public int payloadLength;
+    }
+
+    private final int mask;
+    private final long[] frameIds;
+    private final long[] captureTimestamps;
+    private final long[] captureTimes;
+    private final int[] rotations;
+    // width, height per slot
+    private final int[] frameSizes;
+    // left, top, right, bottom per slot
+    private final int[] crops;
+    private final long[] sendTimes;
+    private final int[] payloadLengths;
+
+    private long clockOffsetNs;
+    private boolean hasClockOffset;
+
+    public FrameMetadataRing() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /** @param capacity frames remembered, rounded up to a power of two */
+    public FrameMetadataRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        mask = size - 1;
+        frameIds = new long[size];
+        captureTimestamps = new long[size];
+        captureTimes = new long[size];
+        rotations = new int[size];
+        frameSizes = new int[size * 2];
+        crops = new int[size * 4];
+        sendTimes = new long[size];
+        payloadLengths = new int[size];
+        Arrays.fill(frameIds, NO_FRAME);
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Records a frame about to be sent.
+     *
+     * @param captureTimestampNs the image's timestamp, on the camera clock
+     * @param receivedNs {@link System#nanoTime()} when the image reached the app
+     * @param cropLeft left edge of the region sent; the crop is the whole frame if nothing was cut
+     * @return the capture time on the {@link System#nanoTime()} clock
+     */
+    public synchronized long recordCapture(long frameId, long captureTimestampNs, long receivedNs,
+                                           int rotationDegrees, int frameWidth, int frameHeight,
+                                           int cropLeft, int cropTop, int cropRight, int cropBottom) {
+        // Delivery only ever adds delay, so the smallest difference is closest to the offset
+        long offset = receivedNs - captureTimestampNs;
+        if (!hasClockOffset || offset < clockOffsetNs || offset - clockOffsetNs > CLOCK_RESYNC_NS) {
+            clockOffsetNs = offset;
+            hasClockOffset = true;
+        }
+
+        int slot = (int) (frameId & mask);
+        frameIds[slot] = frameId;
+        captureTimestamps[slot] = captureTimestampNs;
+        captureTimes[slot] = captureTimestampNs + clockOffsetNs;
+        rotations[slot] = rotationDegrees;
+        frameSizes[slot * 2] = frameWidth;
+        frameSizes[slot * 2 + 1] = frameHeight;
+        crops[slot * 4] = cropLeft;
+        crops[slot * 4 + 1] = cropTop;
+        crops[slot * 4 + 2] = cropRight;
+        crops[slot * 4 + 3] = cropBottom;
+        sendTimes[slot] = 0;
+        payloadLengths[slot] = 0;
+        return captureTimes[slot];
+    }
+
+    /**
+     * Records when {@code frameId} was handed to the transport, and its payload
+     * size. Ignored if it is no longer held.
+     */
+    public synchronized void recordSend(long frameId, long sendTimeNs, int payloadLength) {
+        int slot = (int) (frameId & mask);
+        if (frameIds[slot] == frameId) {
+            sendTimes[slot] = sendTimeNs;
+            payloadLengths[slot] = payloadLength;
+        }
+    }
+
+    /**
+     * Copies the metadata for {@code frameId} into {@code into}.
+     *
+     * @return false if the frame was never recorded or has been overwritten
+     */
+    public synchronized boolean get(long frameId, Entry into) {
+        int slot = (int) (frameId & mask);
+        if (frameIds[slot] != frameId) {
+            return false;
+        }
+        into.frameId = frameId;
+        into.captureTimestampNs = captureTimestamps[slot];
+        into.captureTimeNs = captureTimes[slot];
+        into.rotationDegrees = rotations[slot];
+        into.frameWidth = frameSizes[slot * 2];
+        into.frameHeight = frameSizes[slot * 2 + 1];
+        into.cropLeft = crops[slot * 4];
+        into.cropTop = crops[slot * 4 + 1];
+        into.cropRight = crops[slot * 4 + 2];
+        into.cropBottom = crops[slot * 4 + 3];
+        into.sendTimeNs = sendTimes[slot];
+        into.payloadLength = payloadLengths[slot];
+        return true;
+    }
+}
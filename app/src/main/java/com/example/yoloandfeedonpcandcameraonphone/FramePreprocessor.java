@@ -0,0 +1,185 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+/**
+ * Decides which part of each camera frame is sent, and at what size, before
+ * it is converted and compressed.
+ *
+ * Frames are downscaled so their long side is at most {@link Config#targetSize},
+ * the detector's input size; sending more pixels only costs encode time and
+ * bandwidth, since the server scales them away again. While recent detections
+ * exist, the frame is also cropped to a region of interest around them, with
+ * a margin for motion. Objects entering elsewhere would go unseen in a crop,
+ * so every few frames, and whenever nothing has been detected recently, the
+ * whole frame is sent instead.
+ *
+ * Detections for a cropped frame are relative to the crop; map them back with
+ * {@link DetectionBuffer#mapFromRegion} before passing them to
+ * {@link #onDetections}. Time is supplied by the caller in monotonic
+ * milliseconds. All methods are thread-safe.
+ */
+public class FramePreprocessor {
+
+    public static class Config {
+        /** Longest side of the image sent to the server, in pixels. */
+        public int targetSize = 640;
+        public boolean roiEnabled = true;
+        /** Added on each side of the detections' bounding box, as a fraction of its size. */
+        public float roiMargin = 0.25f;
+        /** Smallest region of interest, as a fraction of each frame dimension. */
+        public float minRoiFraction = 0.4f;
+        /** Cropped frames in a row before a full frame is sent again. */
+        public int maxConsecutiveRoiFrames = 7;
+        /** Detections older than this no longer define a region of interest. */
+        public long roiHoldMs = 1000;
+        public float minConfidence = 0.3f;
+    }
+
+    /** Where to read a frame from and how large to send it. Filled by {@link #plan}. */
+    public static final class Plan {
+        /** Region of the frame to send, in frame pixels; always even. */
+        public int left;
+        public int top;
+        public int width;
+        public int height;
+        /** Size to scale the region to; always even. */
+        public int outWidth;
+        public int outHeight;
+        /** True if the region is the whole frame (within the camera crop). */
+        public boolean fullFrame;
+    }
+
+    private final Config config;
+
+    // Union of recent detections, normalised to the full frame
+    private boolean hasRoi;
+    private float roiLeft;
+    private float roiTop;
+    private float roiRight;
+    private float roiBottom;
+    private long roiTimeMs;
+    private int consecutiveRoiFrames;
+    private boolean roiSuspended;
+
+    public FramePreprocessor() {
+        this(new Config());
+    }
+
+    public FramePreprocessor(Config config) {
+        this.config = config;
+    }
+
+    public Config getConfig() {
+        return config;
+    }
+
+    /**
+     * Sends full frames while {@code suspended}, e.g. while streaming video,
+     * without touching {@link Config#roiEnabled}; cropping resumes as configured.
+     */
+    public synchronized void setRoiSuspended(boolean suspended) {
+        roiSuspended = suspended;
+    }
+
+    /** Takes the region of interest from a result, in full-frame coordinates. */
+    public synchronized void onDetections(DetectionBuffer detections, long nowMs) {
+        float left = 1f;
+        float top = 1f;
+        float right = 0f;
+        float bottom = 0f;
+        boolean any = false;
+        for (int i = 0; i < detections.count; i++) {
+            if (detections.confidence[i] < config.minConfidence) {
+                continue;
+            }
+            left = Math.min(left, detections.x[i]);
+            top = Math.min(top, detections.y[i]);
+            right = Math.max(right, detections.x[i] + detections.width[i]);
+            bottom = Math.max(bottom, detections.y[i] + detections.height[i]);
+            any = true;
+        }
+        // An empty result means the next frames should look everywhere
+        hasRoi = any;
+        if (any) {
+            roiLeft = Math.max(0f, left);
+            roiTop = Math.max(0f, top);
+            roiRight = Math.min(1f, right);
+            roiBottom = Math.min(1f, bottom);
+            roiTimeMs = nowMs;
+        }
+    }
+
+    /**
+     * Plans the next frame. The region stays within the camera's crop
+     * rectangle; pass the whole frame if there is none.
+     */
+    public synchronized void plan(int frameWidth, int frameHeight, int cropLeft, int cropTop,
+                                  int cropRight, int cropBottom, long nowMs, Plan out) {
+        int boundsLeft = evenDown(Math.max(0, cropLeft));
+        int boundsTop = evenDown(Math.max(0, cropTop));
+        int boundsRight = evenDown(Math.min(frameWidth, cropRight));
+        int boundsBottom = evenDown(Math.min(frameHeight, cropBottom));
+        if (boundsRight - boundsLeft < 2 || boundsBottom - boundsTop < 2) {
+            boundsLeft = 0;
+            boundsTop = 0;
+            boundsRight = evenDown(frameWidth);
+            boundsBottom = evenDown(frameHeight);
+        }
+        int boundsWidth = boundsRight - boundsLeft;
+        int boundsHeight = boundsBottom - boundsTop;
+
+        boolean crop = config.roiEnabled && !roiSuspended && hasRoi
+            && nowMs - roiTimeMs <= config.roiHoldMs
+            && consecutiveRoiFrames < config.maxConsecutiveRoiFrames;
+        if (crop) {
+            float marginX = (roiRight - roiLeft) * config.roiMargin;
+            float marginY = (roiBottom - roiTop) * config.roiMargin;
+            int left = (int) Math.floor((roiLeft - marginX) * frameWidth);
+            int top = (int) Math.floor((roiTop - marginY) * frameHeight);
+            int right = (int) Math.ceil((roiRight + marginX) * frameWidth);
+            int bottom = (int) Math.ceil((roiBottom + marginY) * frameHeight);
+            int width = clampSpan(right - left, boundsWidth);
+            int height = clampSpan(bottom - top, boundsHeight);
+            // Grow or shrink around the centre, then slide back inside the bounds.
+            // Bounds and spans are even, so rounding the start down keeps the region inside.
+            out.left = evenDown(clampStart((left + right - width) / 2, width, boundsLeft, boundsRight));
+            out.top = evenDown(clampStart((top + bottom - height) / 2, height, boundsTop, boundsBottom));
+            out.width = width;
+            out.height = height;
+        } else {
+            out.left = boundsLeft;
+            out.top = boundsTop;
+            out.width = boundsWidth;
+            out.height = boundsHeight;
+        }
+        out.fullFrame = out.width == boundsWidth && out.height == boundsHeight;
+        consecutiveRoiFrames = out.fullFrame ? 0 : consecutiveRoiFrames + 1;
+
+        int longSide = Math.max(out.width, out.height);
+        if (longSide > config.targetSize) {
+            float scale = config.targetSize / (float) longSide;
+            out.outWidth = Math.max(2, evenDown(Math.round(out.width * scale)));
+            out.outHeight = Math.max(2, evenDown(Math.round(out.height * scale)));
+        } else {
+            out.outWidth = out.width;
+            out.outHeight = out.height;
+        }
+    }
+
+    /** Even span between {@link Config#minRoiFraction} of the (even) bounds and the bounds. */
+    private int clampSpan(int span, int bounds) {
+        int min = (int) Math.ceil(bounds * config.minRoiFraction);
+        return Math.max(2, Math.min(bounds, evenUp(Math.max(span, min))));
+    }
+
+    private static int clampStart(int start, int span, int boundsStart, int boundsEnd) {
+        return Math.max(boundsStart, Math.min(start, boundsEnd - span));
+    }
+
+    private static int evenDown(int value) {
+        return value & ~1;
+    }
+
+    private static int evenUp(int value) {
+        return (value + 1) & ~1;
+    }
+}
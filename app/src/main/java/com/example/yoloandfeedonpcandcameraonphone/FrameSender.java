@@ -0,0 +1,314 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import java.io.IOException;
+
+/**
+ * Single ordered writer for one connection with credit-based flow control.
+ *
+ * At most {@code maxInFlight} frames may be written and not yet answered. A
+ * credit comes back when DETECTIONS for a frame arrive ({@link #onAck}); since
+ * the server answers frames in order, an ack also returns the credits of any
+ * older frames whose results were lost. Credits also come back after
+ * {@code ackTimeoutMs} so a lost result can never stall the stream.
+ *
+ * Frames waiting for a credit sit in a bounded queue. When it is full, the
+ * oldest unsent frame is dropped, so what goes out is always the most recent.
+ * Only the writer thread touches the transport, so frame bytes can never be
+ * interleaved.
+ */
+public class FrameSender {
+    public interface FrameWriter {
+        void writeFrame(FrameBuffer payload, long frameId, long captureTimestampNs,
+                        int width, int height, int format, int quality) throws IOException;
+    }
+
+    public interface ErrorListener {
+        /** Called once from the writer thread when a write fails; the sender has stopped. */
+        void onWriteError(IOException e);
+    }
+
+    public interface DropListener {
+        /** Called for each frame given up on before it was fully written, on the thread dropping it. */
+        void onFrameDropped(long frameId);
+    }
+
+    private static class Slot {
+        FrameBuffer payload;
+        long frameId;
+        long captureTimestampNs;
+        int width;
+        int height;
+        int format;
+        int quality;
+    }
+
+    private final FrameWriter writer;
+    private final ErrorListener errorListener;
+    private final int maxInFlight;
+    private final long ackTimeoutNs;
+
+    // Unsent frames, ring buffer
+    private final Slot[] pending;
+    private int pendingHead;
+    private int pendingCount;
+
+    // Written but unacknowledged frames, in send order
+    private final long[] inFlightIds;
+    private final long[] inFlightSendTimes;
+    private int inFlightHead;
+    private int inFlightCount;
+
+    private final Slot writing = new Slot();
+    private volatile DropListener dropListener;
+    private Thread writerThread;
+    private boolean running;
+
+    private long sentCount;
+    private long sentBytes;
+    private long droppedCount;
+    private long ackedCount;
+    private long timedOutCount;
+
+    public FrameSender(FrameWriter writer, ErrorListener errorListener,
+                       int maxInFlight, int maxPending, long ackTimeoutMs) {
+        if (maxInFlight <= 0 || maxPending <= 0) {
+            throw new IllegalArgumentException("maxInFlight and maxPending must be positive");
+        }
+        this.writer = writer;
+        this.errorListener = errorListener;
+        this.maxInFlight = maxInFlight;
+        this.ackTimeoutNs = ackTimeoutMs * 1_000_000L;
+        this.pending = new Slot[maxPending];
+        for (int i = 0; i < maxPending; i++) {
+            pending[i] = new Slot();
+        }
+        this.inFlightIds = new long[maxInFlight];
+        this.inFlightSendTimes = new long[maxInFlight];
+    }
+
+    /** Set before {@link #start()}. */
+    public void setDropListener(DropListener listener) {
+        this.dropListener = listener;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        writerThread = new Thread(this::writeLoop, "frame-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /** Stops the writer and releases every frame that was not sent. */
+    public void stop() {
+        Thread thread;
+        synchronized (this) {
+            running = false;
+            thread = writerThread;
+            writerThread = null;
+            notifyAll();
+        }
+        if (thread != null && thread != Thread.currentThread()) {
+            thread.interrupt();
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        while (true) {
+            FrameBuffer payload;
+            long frameId;
+            synchronized (this) {
+                if (pendingCount == 0) {
+                    inFlightCount = 0;
+                    return;
+                }
+                Slot slot = pollPending();
+                payload = slot.payload;
+                frameId = slot.frameId;
+                slot.payload = null;
+                droppedCount++;
+            }
+            payload.release();
+            notifyDropped(frameId);
+        }
+    }
+
+    /**
+     * Queues a frame. Takes ownership of {@code payload}, which is released once it
+     * has been written or dropped.
+     *
+     * @return false if a frame was dropped to make room for this one, or this
+     *         one was dropped because the sender has stopped
+     */
+    public boolean submit(FrameBuffer payload, long frameId, long captureTimestampNs,
+                       int width, int height, int format, int quality) {
+        FrameBuffer dropped = null;
+        long droppedId = frameId;
+        synchronized (this) {
+            if (!running) {
+                dropped = payload;
+            } else {
+                if (pendingCount == pending.length) {
+                    Slot oldest = pollPending();
+                    dropped = oldest.payload;
+                    droppedId = oldest.frameId;
+                }
+                Slot slot = pending[(pendingHead + pendingCount) % pending.length];
+                pendingCount++;
+                slot.payload = payload;
+                slot.frameId = frameId;
+                slot.captureTimestampNs = captureTimestampNs;
+                slot.width = width;
+                slot.height = height;
+                slot.format = format;
+                slot.quality = quality;
+                notifyAll();
+            }
+            if (dropped != null) {
+                droppedCount++;
+            }
+        }
+        if (dropped != null) {
+            dropped.release();
+            notifyDropped(droppedId);
+            return false;
+        }
+        return true;
+    }
+
+    /** Returns credits for {@code frameId} and every older frame still in flight. */
+    public synchronized void onAck(long frameId) {
+        for (int i = 0; i < inFlightCount; i++) {
+            if (inFlightIds[(inFlightHead + i) % maxInFlight] == frameId) {
+                ackedCount++;
+                timedOutCount += i;
+                inFlightHead = (inFlightHead + i + 1) % maxInFlight;
+                inFlightCount -= i + 1;
+                notifyAll();
+                return;
+            }
+        }
+    }
+
+    private void notifyDropped(long frameId) {
+        DropListener listener = dropListener;
+        if (listener != null) {
+            listener.onFrameDropped(frameId);
+        }
+    }
+
+    private Slot pollPending() {
+        Slot slot = pending[pendingHead];
+        pendingHead = (pendingHead + 1) % pending.length;
+        pendingCount--;
+        return slot;
+    }
+
+    private void expireCredits(long now) {
+        while (inFlightCount > 0 && now - inFlightSendTimes[inFlightHead] > ackTimeoutNs) {
+            inFlightHead = (inFlightHead + 1) % maxInFlight;
+            inFlightCount--;
+            timedOutCount++;
+        }
+    }
+
+    private void writeLoop() {
+        while (true) {
+            synchronized (this) {
+                while (true) {
+                    if (!running) {
+                        return;
+                    }
+                    expireCredits(System.nanoTime());
+                    if (pendingCount > 0 && inFlightCount < maxInFlight) {
+                        break;
+                    }
+                    try {
+                        if (pendingCount > 0) {
+                            // Waiting for a credit; wake up in time to expire the oldest one
+                            long waitNs = inFlightSendTimes[inFlightHead] + ackTimeoutNs - System.nanoTime();
+                            wait(Math.max(1, waitNs / 1_000_000L + 1));
+                        } else {
+                            wait();
+                        }
+                    } catch (InterruptedException e) {
+                        // Re-check running
+                    }
+                }
+
+                Slot slot = pollPending();
+                writing.payload = slot.payload;
+                writing.frameId = slot.frameId;
+                writing.captureTimestampNs = slot.captureTimestampNs;
+                writing.width = slot.width;
+                writing.height = slot.height;
+                writing.format = slot.format;
+                writing.quality = slot.quality;
+                slot.payload = null;
+
+                int tail = (inFlightHead + inFlightCount) % maxInFlight;
+                inFlightIds[tail] = writing.frameId;
+                inFlightSendTimes[tail] = System.nanoTime();
+                inFlightCount++;
+            }
+
+            try {
+                writer.writeFrame(writing.payload, writing.frameId, writing.captureTimestampNs,
+                    writing.width, writing.height, writing.format, writing.quality);
+                synchronized (this) {
+                    sentCount++;
+                    sentBytes += writing.payload.length();
+                }
+            } catch (IOException e) {
+                synchronized (this) {
+                    running = false;
+                    droppedCount++;
+                }
+                writing.payload.release();
+                writing.payload = null;
+                notifyDropped(writing.frameId);
+                if (errorListener != null) {
+                    errorListener.onWriteError(e);
+                }
+                return;
+            }
+            writing.payload.release();
+            writing.payload = null;
+        }
+    }
+
+    public synchronized long getSentCount() {
+        return sentCount;
+    }
+
+    /** Payload bytes of the frames written so far. */
+    public synchronized long getSentBytes() {
+        return sentBytes;
+    }
+
+    /** Frames discarded unsent, because a newer frame replaced them or the sender stopped. */
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    public synchronized long getAckedCount() {
+        return ackedCount;
+    }
+
+    /** Frames whose credit came back without a result of their own. */
+    public synchronized long getTimedOutCount() {
+        return timedOutCount;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlightCount;
+    }
+
+    public synchronized int getPendingCount() {
+        return pendingCount;
+    }
+}
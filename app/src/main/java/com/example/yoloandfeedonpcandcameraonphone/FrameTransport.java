@@ -0,0 +1,41 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+/**
+ * Connection that carries binary frames (see {@link FrameCodec}) to the server.
+ * Frames are written from a single thread, the {@link FrameSender} writer.
+ */
+public interface FrameTransport extends FrameSender.FrameWriter, Closeable {
+    enum Type {
+        /** Blocking {@link java.net.Socket} output stream. */
+        STREAM,
+        /** {@link java.nio.channels.SocketChannel} with gathering writes. */
+        CHANNEL
+    }
+
+    void connect(InetSocketAddress address, int timeoutMs) throws IOException;
+
+    boolean isOpen();
+
+    /** Local port of the connection, or 0 if it is not connected. */
+    int getLocalPort();
+
+    /** Whether payloads are best supplied in direct buffers to avoid a copy. */
+    boolean prefersDirectBuffers();
+
+    /** Number of write system calls issued so far. */
+    long getWriteCallCount();
+
+    static FrameTransport create(Type type) {
+        switch (type) {
+            case CHANNEL:
+                return new ChannelFrameTransport();
+            case STREAM:
+            default:
+                return new StreamFrameTransport();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import java.util.Arrays;
+
+/**
+ * Minimum-cost assignment of rows to columns (the Hungarian algorithm with
+ * potentials, O(n^3) for n = max(rows, columns)). Rectangular problems are
+ * padded to square with zero-cost dummy cells, so every row gets a column if
+ * there are enough columns and vice versa.
+ *
+ * Work arrays are kept between calls and only grow, so a reused assigner
+ * allocates nothing once it has solved the largest problem. Not thread-safe.
+ */
+public class HungarianAssigner {
+    private double[] u = new double[0];
+    private double[] v = new double[0];
+    private double[] minV = new double[0];
+    private int[] match = new int[0];
+    private int[] way = new int[0];
+    private boolean[] used = new boolean[0];
+
+    /**
+     * Solves the {@code rows} x {@code cols} problem in row-major {@code cost}
+     * and writes the column assigned to each row into {@code rowToCol}, or -1
+     * for rows left over when there are more rows than columns.
+     *
+     * @return the number of rows assigned a real column
+     */
+    public int solve(float[] cost, int rows, int cols, int[] rowToCol) {
+        int n = Math.max(rows, cols);
+        ensureCapacity(n + 1);
+        Arrays.fill(u, 0, n + 1, 0);
+        Arrays.fill(v, 0, n + 1, 0);
+        Arrays.fill(match, 0, n + 1, 0);
+
+        // 1-based: match[j] is the row holding column j, column 0 is a sentinel
+        for (int i = 1; i <= n; i++) {
+            match[0] = i;
+            int j0 = 0;
+            Arrays.fill(minV, 0, n + 1, Double.POSITIVE_INFINITY);
+            Arrays.fill(used, 0, n + 1, false);
+            do {
+                used[j0] = true;
+                int i0 = match[j0];
+                double delta = Double.POSITIVE_INFINITY;
+                int j1 = 0;
+                for (int j = 1; j <= n; j++) {
+                    if (used[j]) {
+                        continue;
+                    }
+                    double c = i0 <= rows && j <= cols ? cost[(i0 - 1) * cols + (j - 1)] : 0;
+                    double reduced = c - u[i0] - v[j];
+                    if (reduced < minV[j]) {
+                        minV[j] = reduced;
+                        way[j] = j0;
+                    }
+                    if (minV[j] < delta) {
+                        delta = minV[j];
+                        j1 = j;
+                    }
+                }
+                for (int j = 0; j <= n; j++) {
+                    if (used[j]) {
+                        u[match[j]] += delta;
+                        v[j] -= delta;
+                    } else {
+                        minV[j] -= delta;
+                    }
+                }
+                j0 = j1;
+            } while (match[j0] != 0);
+            do {
+                int j1 = way[j0];
+                match[j0] = match[j1];
+                j0 = j1;
+            } while (j0 != 0);
+        }
+
+        Arrays.fill(rowToCol, 0, rows, -1);
+        int assigned = 0;
+        for (int j = 1; j <= cols; j++) {
+            int row = match[j];
+            if (row != 0 && row <= rows) {
+                rowToCol[row - 1] = j - 1;
+                assigned++;
+            }
+        }
+        return assigned;
+    }
+
+    private void ensureCapacity(int size) {
+        if (u.length >= size) {
+            return;
+        }
+        int capacity = Math.max(size, u.length * 2);
+        u = new double[capacity];
+        v = new double[capacity];
+        minV = new double[capacity];
+        match = new int[capacity];
+        way = new int[capacity];
+        used = new boolean[capacity];
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
+
+import androidx.camera.core.ImageProxy;
+
+/**
+ * Converts camera frames to JPEG using pooled NV21 and output buffers, so the
+ * steady state does not allocate image-sized arrays. Conversion and compression
+ * are separate steps so they can run on different pipeline stages; every
+ * returned {@link FrameBuffer} must be released by its holder.
+ *
+ * {@link #toNv21} and {@link #compress} may be called from different threads,
+ * but each method must only be called from one thread at a time.
+ */
+public class JpegFrameEncoder {
+    private static final int NV21_POOL_SIZE = 3;
+    private static final int JPEG_POOL_SIZE = 4;
+
+    private final FrameBufferPool nv21Pool = new FrameBufferPool("nv21", NV21_POOL_SIZE);
+    private final FrameBufferPool jpegPool;
+    private final Nv21Packer packer = new Nv21Packer();
+    private final Rect cropRect = new Rect();
+
+    /**
+     * @param directOutput write JPEG data into direct buffers, for NIO transports
+     */
+    public JpegFrameEncoder(boolean directOutput) {
+        this.jpegPool = new FrameBufferPool("jpeg", JPEG_POOL_SIZE, directOutput);
+    }
+
+    /**
+     * Copies a region of the image planes into a pooled NV21 buffer, scaled to
+     * {@code outWidth x outHeight} (see {@link Nv21Packer#packRegion}). Returns
+     * null if every NV21 buffer is still in use. The image is not closed.
+     */
+    public FrameBuffer toNv21(ImageProxy image, int left, int top, int regionWidth, int regionHeight,
+                              int outWidth, int outHeight) {
+        int size = Nv21Packer.nv21Size(outWidth, outHeight);
+
+        FrameBuffer nv21 = nv21Pool.acquire(size);
+        if (nv21 == null) {
+            return null;
+        }
+
+        try {
+            ImageProxy.PlaneProxy[] planes = image.getPlanes();
+            packer.packRegion(planes[0].getBuffer(), planes[0].getRowStride(), planes[0].getPixelStride(),
+                planes[1].getBuffer(), planes[2].getBuffer(),
+                planes[1].getRowStride(), planes[1].getPixelStride(),
+                left, top, regionWidth, regionHeight, outWidth, outHeight, nv21.data());
+            nv21.setLength(size);
+            return nv21;
+        } catch (RuntimeException e) {
+            nv21.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Compresses an NV21 buffer to JPEG. Returns null if every output buffer is
+     * still waiting to be sent. The NV21 buffer is not released.
+     */
+    public FrameBuffer compress(FrameBuffer nv21, int width, int height, int quality) {
+        FrameBuffer jpeg = jpegPool.acquire(width * height / 4);
+        if (jpeg == null) {
+            return null;
+        }
+
+        try {
+            YuvImage yuvImage = new YuvImage(nv21.data(), ImageFormat.NV21, width, height, null);
+            cropRect.set(0, 0, width, height);
+            yuvImage.compressToJpeg(cropRect, quality, jpeg.resetOutputStream());
+            return jpeg;
+        } catch (RuntimeException e) {
+            jpeg.release();
+            throw e;
+        }
+    }
+
+    public FrameBufferPool getNv21Pool() {
+        return nv21Pool;
+    }
+
+    public FrameBufferPool getJpegPool() {
+        return jpegPool;
+    }
+}
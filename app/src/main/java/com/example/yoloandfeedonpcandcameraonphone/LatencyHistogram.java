@@ -0,0 +1,112 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with HDR-style log-linear buckets: values are
+ * kept in microseconds, exact below 64 us and within about 3% above that, up
+ * to roughly four minutes. Larger values are clamped.
+ *
+ * {@link #record} is a couple of atomic increments and can be called from any
+ * thread; readers see a consistent-enough view for percentiles without
+ * stopping writers.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 22;
+    private static final int BUCKETS = (MAX_EXPONENT + 2) * SUB_BUCKETS;
+    static final long MAX_TRACKABLE_US = ((long) SUB_BUCKETS << (MAX_EXPONENT + 1)) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong maxUs = new AtomicLong();
+
+    /** Records one duration in nanoseconds. Negative durations count as 0. */
+    public void recordNanos(long durationNs) {
+        record(durationNs / 1000);
+    }
+
+    /** Records one duration in microseconds. Negative durations count as 0. */
+    public void record(long durationUs) {
+        long value = Math.max(0, Math.min(durationUs, MAX_TRACKABLE_US));
+        counts.incrementAndGet(bucketIndex(value));
+        totalCount.incrementAndGet();
+        long max = maxUs.get();
+        while (value > max && !maxUs.compareAndSet(max, value)) {
+            max = maxUs.get();
+        }
+    }
+
+    static int bucketIndex(long value) {
+        int exponent = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+        return (exponent << SUB_BUCKET_BITS) + (int) (value >>> exponent);
+    }
+
+    /** Largest value that falls into bucket {@code index}. */
+    static long bucketUpperBound(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = (index >> SUB_BUCKET_BITS) - 1;
+        long mantissa = index - ((long) exponent << SUB_BUCKET_BITS);
+        return ((mantissa + 1) << exponent) - 1;
+    }
+
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    public long getMaxMicros() {
+        return maxUs.get();
+    }
+
+    /**
+     * Value at or below which {@code percentile} percent of the recorded values
+     * fall, in microseconds; 0 if nothing was recorded. Accurate to the bucket
+     * width and never above the recorded maximum.
+     */
+    public long getPercentileMicros(double percentile) {
+        long total = totalCount.get();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), maxUs.get());
+            }
+        }
+        return maxUs.get();
+    }
+
+    /** Adds every value recorded in {@code other}, for example to combine per-client histograms. */
+    public void add(LatencyHistogram other) {
+        long added = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = other.counts.get(i);
+            if (count != 0) {
+                counts.addAndGet(i, count);
+                added += count;
+            }
+        }
+        totalCount.addAndGet(added);
+        long otherMax = other.maxUs.get();
+        long max = maxUs.get();
+        while (otherMax > max && !maxUs.compareAndSet(max, otherMax)) {
+            max = maxUs.get();
+        }
+    }
+
+    /** Clears the histogram. Values recorded concurrently may survive or be lost. */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        maxUs.set(0);
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import java.util.Arrays;
+
+/**
+ * Compressor for the LZ4 block format, as read by {@code lz4.block.decompress}
+ * and every other LZ4 implementation.
+ *
+ * A greedy single-probe matcher with a small hash table: it compresses less
+ * than the reference implementation's higher levels but runs at memory speed,
+ * which is what matters for sending raw camera planes over a fast link. The
+ * search skips ahead faster the longer it goes without a match, so
+ * incompressible (noisy) regions cost little. The hash table is reused, so
+ * compression allocates nothing; an instance must only be used from one
+ * thread at a time.
+ */
+public class Lz4BlockCompressor {
+    private static final int MIN_MATCH = 4;
+    // The format requires the last 5 bytes to be literals, and the last match
+    // to start at least 12 bytes before the end
+    private static final int LAST_LITERALS = 5;
+    private static final int MF_LIMIT = 12;
+    private static final int MAX_OFFSET = 65535;
+    private static final int HASH_LOG = 12;
+    private static final int SKIP_TRIGGER = 6;
+
+    private final int[] table = new int[1 << HASH_LOG];
+
+    /** Worst-case compressed size of {@code length} bytes. */
+    public static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * Compresses {@code src[srcOff, srcOff + srcLen)} into {@code dst} at
+     * {@code dstOff}, which must have {@link #maxCompressedLength} bytes of room.
+     *
+     * @return the compressed length
+     */
+    public int compress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff) {
+        if (dst.length - dstOff < maxCompressedLength(srcLen)) {
+            throw new IllegalArgumentException("Output buffer too small for " + srcLen + " bytes");
+        }
+        int srcEnd = srcOff + srcLen;
+        int matchLimit = srcEnd - LAST_LITERALS;
+        int mfLimit = srcEnd - MF_LIMIT;
+        int anchor = srcOff;
+        int op = dstOff;
+
+        if (srcLen > MF_LIMIT) {
+            Arrays.fill(table, -1);
+            int ip = srcOff;
+            int misses = 1 << SKIP_TRIGGER;
+            while (ip <= mfLimit) {
+                int sequence = readInt(src, ip);
+                int h = hash(sequence);
+                int ref = table[h];
+                table[h] = ip;
+                if (ref < 0 || ip - ref > MAX_OFFSET || readInt(src, ref) != sequence) {
+                    ip += misses++ >>> SKIP_TRIGGER;
+                    continue;
+                }
+                misses = 1 << SKIP_TRIGGER;
+
+                while (ip > anchor && ref > srcOff && src[ip - 1] == src[ref - 1]) {
+                    ip--;
+                    ref--;
+                }
+                int matchLength = MIN_MATCH;
+                while (ip + matchLength < matchLimit && src[ip + matchLength] == src[ref + matchLength]) {
+                    matchLength++;
+                }
+
+                int token = op;
+                op = writeSequence(src, anchor, ip - anchor, dst, op);
+                dst[op++] = (byte) (ip - ref);
+                dst[op++] = (byte) ((ip - ref) >>> 8);
+                int extra = matchLength - MIN_MATCH;
+                if (extra >= 15) {
+                    dst[token] |= 0x0F;
+                    op = writeLength(extra - 15, dst, op);
+                } else {
+                    dst[token] |= (byte) extra;
+                }
+                ip += matchLength;
+                anchor = ip;
+            }
+        }
+
+        // Trailing literals, in a sequence without a match
+        return writeSequence(src, anchor, srcEnd - anchor, dst, op) - dstOff;
+    }
+
+    /**
+     * Decompresses a block into {@code dst[dstOff, dstOff + dstLen)}, which must
+     * be exactly the original size.
+     *
+     * @throws IllegalArgumentException if the block is malformed or does not
+     *                                  decompress to {@code dstLen} bytes
+     */
+    public static void decompress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) {
+        int ip = srcOff;
+        int srcEnd = srcOff + srcLen;
+        int op = dstOff;
+        int dstEnd = dstOff + dstLen;
+        try {
+            while (true) {
+                int token = src[ip++] & 0xFF;
+                int literals = token >>> 4;
+                if (literals == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        literals += b;
+                    } while (b == 255);
+                }
+                if (literals > srcEnd - ip || literals > dstEnd - op) {
+                    throw new IllegalArgumentException("Literals run past the end of the block");
+                }
+                System.arraycopy(src, ip, dst, op, literals);
+                ip += literals;
+                op += literals;
+                if (ip == srcEnd) {
+                    break;
+                }
+
+                int offset = (src[ip++] & 0xFF) | (src[ip++] & 0xFF) << 8;
+                int matchLength = token & 0x0F;
+                if (matchLength == 15) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        matchLength += b;
+                    } while (b == 255);
+                }
+                matchLength += MIN_MATCH;
+                int ref = op - offset;
+                if (offset == 0 || ref < dstOff || matchLength > dstEnd - op) {
+                    throw new IllegalArgumentException("Bad match at output offset " + (op - dstOff));
+                }
+                // Byte by byte, since a match may overlap its own output
+                for (int i = 0; i < matchLength; i++) {
+                    dst[op++] = dst[ref++];
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated block", e);
+        }
+        if (op != dstEnd) {
+            throw new IllegalArgumentException("Block decompressed to " + (op - dstOff) + " bytes, expected " + dstLen);
+        }
+    }
+
+    private static int writeSequence(byte[] src, int literalStart, int literals, byte[] dst, int op) {
+        int tokenPos = op++;
+        // The low nibble is left for the match length, if a match follows
+        if (literals >= 15) {
+            dst[tokenPos] = (byte) 0xF0;
+            op = writeLength(literals - 15, dst, op);
+        } else {
+            dst[tokenPos] = (byte) (literals << 4);
+        }
+        System.arraycopy(src, literalStart, dst, op, literals);
+        return op + literals;
+    }
+
+    private static int writeLength(int length, byte[] dst, int op) {
+        while (length >= 255) {
+            dst[op++] = (byte) 255;
+            length -= 255;
+        }
+        dst[op++] = (byte) length;
+        return op;
+    }
+
+    private static int readInt(byte[] buf, int i) {
+        return (buf[i] & 0xFF) | (buf[i + 1] & 0xFF) << 8 | (buf[i + 2] & 0xFF) << 16 | (buf[i + 3] & 0xFF) << 24;
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+}
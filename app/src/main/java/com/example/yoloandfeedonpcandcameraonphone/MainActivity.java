@@ -2,14 +2,14 @@ package com.example.yoloandfeedonpcandcameraonphone;
 
 import android.Manifest;
 import android.content.pm.PackageManager;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.ImageFormat;
-import android.graphics.YuvImage;
+import android.graphics.Rect;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
+import android.util.Size;
+import android.view.Choreographer;
 import android.view.View;
 import android.widget.Button;
 import android.widget.TextView;
@@ -21,6 +21,8 @@ import androidx.camera.core.CameraSelector;
 import androidx.camera.core.ImageAnalysis;
 import androidx.camera.core.ImageProxy;
 import androidx.camera.core.Preview;
+import androidx.camera.core.resolutionselector.ResolutionSelector;
+import androidx.camera.core.resolutionselector.ResolutionStrategy;
 import androidx.camera.lifecycle.ProcessCameraProvider;
 import androidx.camera.view.PreviewView;
 import androidx.core.app.ActivityCompat;
@@ -28,31 +30,83 @@ import androidx.core.content.ContextCompat;
 
 import com.google.common.util.concurrent.ListenableFuture;
 
-import java.io.ByteArrayOutputStream;
-import java.nio.ByteBuffer;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class MainActivity extends AppCompatActivity implements NetworkClient.NetworkCallback {
     private static final String TAG = "MainActivity";
     private static final int CAMERA_PERMISSION_REQUEST_CODE = 1001;
+    // Draw boxes on a render thread (SurfaceDetectionOverlay) instead of in the view hierarchy
+    private static final boolean USE_SURFACE_OVERLAY = false;
+    // Show tracker predictions at display rate instead of raw results as they arrive
+    private static final boolean TRACK_DETECTIONS = true;
+    // Results for frames captured longer ago than this are not drawn
+    private static final long MAX_RESULT_AGE_MS = 600;
+    private static final long LATENCY_HUD_INTERVAL_MS = 500;
+    // Above the model input, so a cropped region of interest still has detail;
+    // only the pixels that are sent are read, so a larger frame costs little
+    private static final Size ANALYSIS_SIZE = new Size(1280, 720);
+    // Offer H.264/HEVC to the server; it only accepts formats it can decode
+    private static final boolean STREAM_VIDEO = true;
+    private static final String RECORDINGS_DIR = "recordings";
+    private static final int REPLAY_BUFFERS = 4;
     
     private PreviewView previewView;
-    private DetectionOverlayView overlayView;
-    private TextView connectionStatus, fpsCounter, detectionCount, latencyInfo;
+    private DetectionOverlay overlayView;
+    private TextView connectionStatus, fpsCounter, detectionCount, latencyInfo, latencyHud;
     private Button connectButton;
     private ListenableFuture<ProcessCameraProvider> cameraProviderFuture;
     private NetworkClient networkClient;
+    private CapturePipeline capturePipeline;
+    private final AdaptiveFrameController frameController = new AdaptiveFrameController();
+    private final FramePreprocessor preprocessor = new FramePreprocessor();
+    private final MotionGate motionGate = new MotionGate();
+    // Analyzer thread
+    private final FramePreprocessor.Plan framePlan = new FramePreprocessor.Plan();
+    private final DetectionTracker tracker = new DetectionTracker();
+    private final DetectionBuffer trackedDetections = new DetectionBuffer();
+    // Results, metrics and status text reach the views once per display frame,
+    // however fast they arrive; posted from any thread
+    private final Choreographer.FrameCallback uiFrame = this::doUiFrame;
+    private final AtomicBoolean uiFramePosted = new AtomicBoolean();
+    private Choreographer choreographer;
+    // Main thread; trackerDue while the tracker has boxes to draw
+    private boolean trackerDue;
+    private long heldSinceNs;
+    private int detectionCountValue;
+    private int shownDetectionCount = -1;
+    private YFPMessage.MetricsData pendingMetrics;
+    private long shownFpsSamples;
+    private final FrameMetadataRing.Entry resultFrame = new FrameMetadataRing.Entry();
+    private final StringBuilder latencyHudText = new StringBuilder();
+    private final Runnable updateLatencyHud = this::updateLatencyHud;
+    // Written by the analyzer thread when it skips an unchanged frame
+    private volatile long unchangedSinceNs;
+    // Written by the analyzer thread once a second, sample count last
+    private volatile float measuredFps;
+    private volatile long fpsSamples;
     private long frameCounter = 0;
     private long lastFpsTime = System.currentTimeMillis();
     private int framesSinceLastFps = 0;
     private Handler uiHandler;
+    // Main thread; camera frames are not sent while a recording replays
+    private SessionRecorder recorder;
+    private volatile SessionReplayer replayer;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        // Pick up log levels set with setprop since the process started
+        AppLog.refreshLevels();
         setContentView(R.layout.activity_main);
+        choreographer = Choreographer.getInstance();
         
         initViews();
         initNetworking();
@@ -68,12 +122,39 @@ public class MainActivity extends AppCompatActivity implements NetworkClient.Net
 
     private void initViews() {
         previewView = findViewById(R.id.previewView);
-        overlayView = findViewById(R.id.detectionOverlay);
+        DetectionOverlayView viewOverlay = findViewById(R.id.detectionOverlay);
+        SurfaceDetectionOverlay surfaceOverlay = findViewById(R.id.surfaceDetectionOverlay);
+        if (USE_SURFACE_OVERLAY) {
+            viewOverlay.setVisibility(View.GONE);
+            surfaceOverlay.setVisibility(View.VISIBLE);
+            overlayView = surfaceOverlay;
+        } else {
+            surfaceOverlay.setVisibility(View.GONE);
+            viewOverlay.setVisibility(View.VISIBLE);
+            overlayView = viewOverlay;
+        }
         connectionStatus = findViewById(R.id.connectionStatus);
         fpsCounter = findViewById(R.id.fpsCounter);
         detectionCount = findViewById(R.id.detectionCount);
         latencyInfo = findViewById(R.id.latencyInfo);
+        latencyHud = findViewById(R.id.latencyHud);
         connectButton = findViewById(R.id.connectButton);
+
+        // Debug HUD: long-press the latency readout to toggle it, tap it to export
+        latencyInfo.setOnLongClickListener(v -> {
+            toggleLatencyHud();
+            return true;
+        });
+        latencyHud.setOnClickListener(v -> exportLatencyReport());
+        // Long-press the status to start or stop recording, the button to replay the last recording
+        connectionStatus.setOnLongClickListener(v -> {
+            toggleRecording();
+            return true;
+        });
+        connectButton.setOnLongClickListener(v -> {
+            toggleReplay();
+            return true;
+        });
         
         connectButton.setOnClickListener(v -> {
             if (networkClient != null) {
@@ -86,6 +167,51 @@ public class MainActivity extends AppCompatActivity implements NetworkClient.Net
 
     private void initNetworking() {
         networkClient = new NetworkClient(this);
+        networkClient.setDeliveryWaker(this::postUiFrame);
+        int targetSize = preprocessor.getConfig().targetSize;
+        networkClient.setMaxFrameSize(targetSize, targetSize);
+        networkClient.setFrameFormats(supportedFrameFormats());
+        overlayView.setClassTable(networkClient.getClassTable());
+        overlayView.setPipelineTimings(networkClient.getPipelineTimings());
+        networkClient.setFrameDropListener(frameController::onFrameDropped);
+        // Every answer closes the controller's loop, not just those the UI gets to draw
+        networkClient.setResultAckListener((frameId, processingTimeMs) ->
+            frameController.onDetectionsReceived(frameId, processingTimeMs, SystemClock.elapsedRealtime()));
+        CapturePipeline.FrameSink sink = (payload, frameId, captureTimestampNs, width, height, format, quality) -> {
+            int bytes = payload.length();
+            frameController.onFrameSent(frameId, SystemClock.elapsedRealtime());
+            boolean sent = networkClient.sendFrame(payload, frameId, captureTimestampNs, width, height, format, quality);
+            // Only a frame that went out becomes what later frames are compared with
+            if (sent) {
+                motionGate.onFrameSent(frameId, bytes);
+            } else {
+                motionGate.onFrameDropped(frameId);
+            }
+            return sent;
+        };
+        capturePipeline = new CapturePipeline(sink, networkClient::getFrameFormat,
+            networkClient.getTransportType() == FrameTransport.Type.CHANNEL,
+            networkClient.getPipelineTimings());
+        capturePipeline.start();
+    }
+
+    /**
+     * Video codecs this device can encode, best compression first, then JPEG,
+     * then the raw formats the pipeline may switch to per frame on a fast link.
+     */
+    private static String[] supportedFrameFormats() {
+        List<String> formats = new ArrayList<>();
+        if (STREAM_VIDEO) {
+            for (VideoCodec codec : new VideoCodec[]{VideoCodec.HEVC, VideoCodec.H264}) {
+                if (VideoFrameEncoder.isSupported(codec)) {
+                    formats.add(FrameCodec.formatName(codec.frameFormat));
+                }
+            }
+        }
+        formats.add(FrameCodec.formatName(FrameCodec.FORMAT_JPEG));
+        formats.add(FrameCodec.formatName(FrameCodec.FORMAT_NV21_LZ4));
+        formats.add(FrameCodec.formatName(FrameCodec.FORMAT_NV21));
+        return formats.toArray(new String[0]);
     }
 
     private boolean checkCameraPermission() {
@@ -127,11 +253,16 @@ public class MainActivity extends AppCompatActivity implements NetworkClient.Net
     private void bindPreview(@NonNull ProcessCameraProvider cameraProvider) {
         Preview preview = new Preview.Builder().build();
         
+        ResolutionSelector analysisResolution = new ResolutionSelector.Builder()
+                .setResolutionStrategy(new ResolutionStrategy(ANALYSIS_SIZE,
+                    ResolutionStrategy.FALLBACK_RULE_CLOSEST_LOWER_THEN_HIGHER))
+                .build();
         ImageAnalysis imageAnalysis = new ImageAnalysis.Builder()
+                .setResolutionSelector(analysisResolution)
                 .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
                 .build();
         
-        imageAnalysis.setAnalyzer(ContextCompat.getMainExecutor(this), this::processImage);
+        imageAnalysis.setAnalyzer(capturePipeline.getAnalyzerExecutor(), this::processImage);
         
         CameraSelector cameraSelector = new CameraSelector.Builder()
                 .requireLensFacing(CameraSelector.LENS_FACING_BACK)
@@ -153,63 +284,71 @@ public class MainActivity extends AppCompatActivity implements NetworkClient.Net
         
         long currentTime = System.currentTimeMillis();
         if (currentTime - lastFpsTime >= 1000) {
-            float fps = framesSinceLastFps / ((currentTime - lastFpsTime) / 1000f);
-            uiHandler.post(() -> fpsCounter.setText("FPS: " + String.format("%.1f", fps)));
+            measuredFps = framesSinceLastFps / ((currentTime - lastFpsTime) / 1000f);
+            fpsSamples++;
+            postUiFrame();
             
             framesSinceLastFps = 0;
             lastFpsTime = currentTime;
         }
         
-        if (networkClient != null && frameCounter % 3 == 0) {
-            byte[] jpegData = imageProxyToJpeg(image);
-            if (jpegData != null) {
-                networkClient.sendFrame(jpegData, frameCounter, image.getWidth(), image.getHeight());
+        long now = SystemClock.elapsedRealtime();
+        if (networkClient != null && networkClient.isConnected() && replayer == null
+                && frameController.shouldSend(now)) {
+            Rect crop = image.getCropRect();
+            if (!passesMotionGate(image, frameCounter, crop, now)) {
+                image.close();
+                return;
             }
+            capturePipeline.setJpegQuality(frameController.getJpegQuality());
+            capturePipeline.setScaleDivisor(frameController.getScaleDivisor());
+            preprocessor.setRoiSuspended(capturePipeline.isStreamingVideo());
+            FrameFormatSelector formatSelector = capturePipeline.getFormatSelector();
+            formatSelector.setAcceptedFormats(networkClient.getAcceptedFrameFormats());
+            formatSelector.setLinkThroughput(networkClient.getUplinkBytesPerSecond());
+            preprocessor.plan(image.getWidth(), image.getHeight(),
+                crop.left, crop.top, crop.right, crop.bottom, now, framePlan);
+            long captureTimeNs = networkClient.getFrameMetadata().recordCapture(frameCounter,
+                image.getImageInfo().getTimestamp(), System.nanoTime(),
+                image.getImageInfo().getRotationDegrees(), image.getWidth(), image.getHeight(),
+                framePlan.left, framePlan.top, framePlan.left + framePlan.width, framePlan.top + framePlan.height);
+            networkClient.getPipelineTimings().mark(PipelineTimings.Stage.CAPTURED, frameCounter, captureTimeNs);
+            // Conversion and encoding happen on the pipeline threads, which close the image
+            capturePipeline.submit(image, frameCounter, framePlan);
+        } else {
+            image.close();
         }
-        
-        image.close();
     }
 
-    private byte[] imageProxyToJpeg(ImageProxy image) {
-        try {
-            ImageProxy.PlaneProxy[] planes = image.getPlanes();
-            ByteBuffer yBuffer = planes[0].getBuffer();
-            ByteBuffer uBuffer = planes[1].getBuffer();
-            ByteBuffer vBuffer = planes[2].getBuffer();
-
-            int ySize = yBuffer.remaining();
-            int uSize = uBuffer.remaining();
-            int vSize = vBuffer.remaining();
-
-            byte[] nv21 = new byte[ySize + uSize + vSize];
-
-            yBuffer.get(nv21, 0, ySize);
-            vBuffer.get(nv21, ySize, vSize);
-            uBuffer.get(nv21, ySize + vSize, uSize);
-
-            YuvImage yuvImage = new YuvImage(nv21, ImageFormat.NV21, 
-                image.getWidth(), image.getHeight(), null);
-            
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            yuvImage.compressToJpeg(new android.graphics.Rect(0, 0, 
-                image.getWidth(), image.getHeight()), 80, out);
-            
-            return out.toByteArray();
-        } catch (Exception e) {
-            Log.e(TAG, "Error converting image", e);
-            return null;
+    /**
+     * False if the scene has not changed since the last frame sent. Its
+     * detections then still hold, so the tracker keeps them on screen.
+     */
+    private boolean passesMotionGate(ImageProxy image, long frameId, Rect crop, long nowMs) {
+        ImageProxy.PlaneProxy luma = image.getPlanes()[0];
+        if (motionGate.shouldSend(frameId, luma.getBuffer(), luma.getRowStride(), luma.getPixelStride(),
+                crop.left, crop.top, crop.width(), crop.height(), nowMs)) {
+            return true;
         }
+        if (TRACK_DETECTIONS) {
+            unchangedSinceNs = System.nanoTime();
+            postUiFrame();
+        }
+        return false;
     }
 
     @Override
-    public void onServerDiscovered(String serverIP) {
-        connectionStatus.setText("Server found: " + serverIP);
-        networkClient.connect(serverIP);
+    public void onServersDiscovered(List<ServerPool.Server> servers) {
+        connectionStatus.setText(servers.size() == 1 ? "Server found: " + servers.get(0)
+            : servers.size() + " servers found");
+        networkClient.connect();
     }
 
     @Override
     public void onConnected() {
-        connectionStatus.setText("Connected");
+        motionGate.reset();
+        int servers = networkClient.getServers().getUpCount();
+        connectionStatus.setText(servers > 1 ? "Connected to " + servers + " servers" : "Connected");
         connectButton.setText("Disconnect");
         connectButton.setEnabled(true);
         connectButton.setOnClickListener(v -> {
@@ -231,58 +370,280 @@ public class MainActivity extends AppCompatActivity implements NetworkClient.Net
     }
 
     @Override
-    public void onDetectionsReceived(YFPMessage.DetectionsData detections) {
-        Log.d(TAG, "DETECTION_DEBUG: onDetectionsReceived called");
-        List<DetectionOverlayView.DetectionBox> boxes = new ArrayList<>();
-
-        if (detections != null) {
-            Log.d(TAG, "DETECTION_DEBUG: DetectionsData is not null, frame_id: " + detections.frameId);
-            if (detections.detections != null) {
-                Log.d(TAG, "DETECTION_DEBUG: detections array not null, length: " + detections.detections.length);
-                for (int i = 0; i < detections.detections.length; i++) {
-                    YFPMessage.Detection detection = detections.detections[i];
-                    Log.d(TAG, "DETECTION_DEBUG: Processing detection " + i + ": " + detection.className +
-                          " at (" + detection.x + "," + detection.y + "," + detection.width + "," + detection.height +
-                          ") conf=" + detection.confidence);
-
-                    // Validate coordinates
-                    if (detection.x < 0 || detection.x > 1 || detection.y < 0 || detection.y > 1 ||
-                        detection.width < 0 || detection.width > 1 || detection.height < 0 || detection.height > 1) {
-                        Log.w(TAG, "DETECTION_DEBUG: Invalid coordinates for detection " + i +
-                              ": values should be between 0.0 and 1.0");
-                    }
-
-                    if (detection.x + detection.width > 1 || detection.y + detection.height > 1) {
-                        Log.w(TAG, "DETECTION_DEBUG: Detection " + i + " extends beyond image bounds");
-                    }
-
-                    DetectionOverlayView.DetectionBox box = new DetectionOverlayView.DetectionBox(
-                        detection.x, detection.y, detection.width, detection.height,
-                        detection.className, detection.confidence);
-                    boxes.add(box);
-
-                    Log.d(TAG, "DETECTION_DEBUG: Successfully created DetectionBox " + i);
-                }
-            } else {
-                Log.w(TAG, "DETECTION_DEBUG: detections.detections array is null");
+    public void onDetectionsReceived(DetectionBuffer detections) {
+        if (AppLog.isTraced(AppLog.Category.DETECTION, detections.frameId)) {
+            traceDetections(detections);
+        }
+
+        long now = System.nanoTime();
+        long captureTimeNs;
+        if (networkClient.getFrameMetadata().get(detections.frameId, resultFrame)) {
+            captureTimeNs = resultFrame.captureTimeNs;
+        } else {
+            // No longer in the ring: assume it was captured one round trip ago
+            captureTimeNs = now - Math.max(0, frameController.getLastRttMs()) * 1_000_000L;
+        }
+        long ageMs = (now - captureTimeNs) / 1_000_000L;
+        detectionCountValue = detections.count;
+
+        if (ageMs > MAX_RESULT_AGE_MS) {
+            if (AppLog.isTraced(AppLog.Category.DETECTION, detections.frameId)) {
+                Log.v(TAG, "DETECTION_DEBUG: Hiding frame " + detections.frameId + ", " + ageMs + "ms old");
+            }
+            if (!TRACK_DETECTIONS) {
+                // Whatever is on screen is older still
+                overlayView.setDetections(null);
             }
+            return;
+        }
+
+        // Already mapped back to the full frame by the network client
+        preprocessor.onDetections(detections, SystemClock.elapsedRealtime());
+
+        if (TRACK_DETECTIONS) {
+            // Predictions start from when the frame was captured, not when the result arrived;
+            // drawn by the frame callback delivering this result
+            tracker.update(detections, captureTimeNs);
+            trackerDue = true;
         } else {
-            Log.w(TAG, "DETECTION_DEBUG: DetectionsData is null");
+            // Copies the boxes; the buffer is only valid during this call
+            overlayView.setDetections(detections);
         }
+    }
 
-        Log.d(TAG, "DETECTION_DEBUG: Setting " + boxes.size() + " detection boxes on overlay");
-        Log.d(TAG, "DETECTION_DEBUG: About to call overlayView.setDetections()");
+    /** Asks for {@link #doUiFrame} at the next vsync, unless it is already due. Any thread. */
+    private void postUiFrame() {
+        if (uiFramePosted.compareAndSet(false, true)) {
+            choreographer.postFrameCallback(uiFrame);
+        }
+    }
 
-        uiHandler.post(() -> {
-            overlayView.setDetections(boxes);
-            detectionCount.setText("Detections: " + boxes.size());
-            Log.d(TAG, "DETECTION_DEBUG: Updated UI with detection count: " + boxes.size());
-        });
+    /**
+     * Takes the latest result and metrics from the network client, then
+     * updates the overlay and the status text at most once each. Keeps
+     * running every vsync while tracked boxes are on screen.
+     */
+    private void doUiFrame(long frameTimeNanos) {
+        uiFramePosted.set(false);
+        networkClient.deliverResults();
+        if (TRACK_DETECTIONS) {
+            long since = unchangedSinceNs;
+            if (since != heldSinceNs) {
+                heldSinceNs = since;
+                tracker.hold(since);
+                trackerDue = true;
+            }
+            if (trackerDue) {
+                drawTrackedFrame(frameTimeNanos);
+            }
+        }
+        updateStatusText();
+    }
+
+    /** Draws the tracked boxes where they should be at this vsync, until none are left. */
+    private void drawTrackedFrame(long frameTimeNanos) {
+        int visible = tracker.predict(frameTimeNanos, trackedDetections);
+        overlayView.setDetections(trackedDetections);
+        trackerDue = visible > 0;
+        if (trackerDue) {
+            postUiFrame();
+        }
+    }
+
+    /** Sets each status line that changed since the last frame. */
+    private void updateStatusText() {
+        if (detectionCountValue != shownDetectionCount) {
+            shownDetectionCount = detectionCountValue;
+            detectionCount.setText("Detections: " + shownDetectionCount);
+        }
+        long samples = fpsSamples;
+        if (samples != shownFpsSamples) {
+            shownFpsSamples = samples;
+            fpsCounter.setText("FPS: " + String.format("%.1f", measuredFps));
+            updateLatencyInfo();
+        } else if (pendingMetrics != null) {
+            latencyInfo.setText("Latency: " + pendingMetrics.networkLatencyMs + "ms");
+        }
+        pendingMetrics = null;
+    }
+
+    /** Round trip from the clock estimate, then median uplink, server and downlink time. */
+    private void updateLatencyInfo() {
+        ClockOffsetEstimator clock = networkClient.getClockOffset();
+        if (!clock.hasEstimate()) {
+            return;
+        }
+        PipelineTimings timings = networkClient.getPipelineTimings();
+        latencyInfo.setText(String.format(Locale.ROOT, "RTT %dms | up %d / server %d / down %dms",
+            clock.getRttNs() / 1_000_000L,
+            timings.getUplink().getPercentileMicros(50) / 1000,
+            timings.getServer().getPercentileMicros(50) / 1000,
+            timings.getDownlink().getPercentileMicros(50) / 1000));
+    }
+
+    private void toggleLatencyHud() {
+        if (latencyHud.getVisibility() == View.VISIBLE) {
+            latencyHud.setVisibility(View.GONE);
+            uiHandler.removeCallbacks(updateLatencyHud);
+        } else {
+            latencyHud.setVisibility(View.VISIBLE);
+            updateLatencyHud();
+        }
+    }
+
+    private void updateLatencyHud() {
+        latencyHudText.setLength(0);
+        networkClient.getPipelineTimings().appendSummary(latencyHudText);
+        latencyHudText.append("ms; tap to export\n");
+        motionGate.appendSummary(latencyHudText);
+        latencyHud.setText(latencyHudText);
+        uiHandler.postDelayed(updateLatencyHud, LATENCY_HUD_INTERVAL_MS);
+    }
+
+    /** Writes the stage histograms as CSV to the app's external files directory. */
+    private void exportLatencyReport() {
+        File directory = getExternalFilesDir(null);
+        if (directory == null) {
+            Toast.makeText(this, "Failed to write latency report: External storage is not available",
+                Toast.LENGTH_LONG).show();
+            return;
+        }
+        File file = new File(directory, "latency-" + System.currentTimeMillis() + ".csv");
+        PipelineTimings timings = networkClient.getPipelineTimings();
+        new Thread(() -> {
+            String message;
+            try (Writer out = new FileWriter(file)) {
+                timings.writeCsv(out);
+                message = "Latency report saved to " + file.getAbsolutePath();
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to write latency report", e);
+                message = "Failed to write latency report: " + e.getMessage();
+            }
+            String result = message;
+            uiHandler.post(() -> Toast.makeText(this, result, Toast.LENGTH_LONG).show());
+        }, "latency-export").start();
+    }
+
+    /** Starts recording frames and results to the app's external files directory, or stops. */
+    private void toggleRecording() {
+        SessionRecorder current = recorder;
+        if (current != null) {
+            recorder = null;
+            networkClient.setRecorder(null);
+            closeRecorder(current);
+            return;
+        }
+        File recordings = getExternalFilesDir(RECORDINGS_DIR);
+        File directory = new File(recordings, "session-" + System.currentTimeMillis());
+        try {
+            if (recordings == null) {
+                throw new IOException("External storage is not available");
+            }
+            recorder = new SessionRecorder(directory);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to start recording", e);
+            Toast.makeText(this, "Failed to start recording: " + e.getMessage(), Toast.LENGTH_LONG).show();
+            return;
+        }
+        networkClient.setRecorder(recorder);
+        Toast.makeText(this, "Recording to " + directory.getAbsolutePath(), Toast.LENGTH_SHORT).show();
+    }
+
+    /** Flushes and closes a recording off the main thread. */
+    private void closeRecorder(SessionRecorder current) {
+        new Thread(() -> {
+            String message;
+            try {
+                current.close();
+                message = "Recording saved to " + current.getDirectory().getAbsolutePath() + ", "
+                    + current.getRecordsDropped() + " records dropped";
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to save recording", e);
+                message = "Failed to save recording: " + e.getMessage();
+            }
+            String result = message;
+            uiHandler.post(() -> Toast.makeText(this, result, Toast.LENGTH_LONG).show());
+        }, "recording-close").start();
+    }
+
+    /** Sends the latest recording to the connected servers at its recorded pace, or stops the replay. */
+    private void toggleReplay() {
+        SessionReplayer current = replayer;
+        if (current != null) {
+            current.stop();
+            return;
+        }
+        File latest = latestRecording();
+        if (!networkClient.isConnected() || latest == null) {
+            Toast.makeText(this, latest == null ? "No recordings" : "Connect before replaying",
+                Toast.LENGTH_SHORT).show();
+            return;
+        }
+        SessionRecording recording;
+        try {
+            recording = SessionRecording.open(latest);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to open recording " + latest, e);
+            Toast.makeText(this, "Failed to open recording: " + e.getMessage(), Toast.LENGTH_LONG).show();
+            return;
+        }
+        FrameBufferPool buffers = new FrameBufferPool("replay", REPLAY_BUFFERS,
+            networkClient.getTransportType() == FrameTransport.Type.CHANNEL);
+        SessionReplayer session = new SessionReplayer(recording, buffers, networkClient::sendFrame);
+        replayer = session;
+        Toast.makeText(this, "Replaying " + recording.getFrameCount() + " frames from " + latest.getName(),
+            Toast.LENGTH_SHORT).show();
+        new Thread(() -> {
+            String message;
+            try {
+                int sent = session.replay(1);
+                message = "Replayed " + sent + " of " + recording.getFrameCount() + " frames";
+            } catch (IOException e) {
+                Log.e(TAG, "Replay failed", e);
+                message = "Replay failed: " + e.getMessage();
+            } finally {
+                replayer = null;
+                try {
+                    recording.close();
+                } catch (IOException e) {
+                    Log.e(TAG, "Error closing recording", e);
+                }
+            }
+            String result = message;
+            uiHandler.post(() -> Toast.makeText(this, result, Toast.LENGTH_LONG).show());
+        }, "session-replay").start();
+    }
+
+    private File latestRecording() {
+        File directory = getExternalFilesDir(RECORDINGS_DIR);
+        File[] recordings = directory != null ? directory.listFiles(File::isDirectory) : null;
+        File latest = null;
+        if (recordings != null) {
+            for (File recording : recordings) {
+                if (latest == null || recording.getName().compareTo(latest.getName()) > 0) {
+                    latest = recording;
+                }
+            }
+        }
+        return latest;
+    }
+
+    private void traceDetections(DetectionBuffer detections) {
+        Log.v(TAG, "DETECTION_DEBUG: Frame " + detections.frameId + ": " + detections.count + " detections");
+        for (int i = 0; i < detections.count; i++) {
+            Log.v(TAG, "DETECTION_DEBUG: Detection " + i + ": class " + detections.classId[i] +
+                  " at (" + detections.x[i] + "," + detections.y[i] + "," + detections.width[i] + "," +
+                  detections.height[i] + ") conf=" + detections.confidence[i]);
+            if (detections.x[i] + detections.width[i] > 1 || detections.y[i] + detections.height[i] > 1) {
+                Log.v(TAG, "DETECTION_DEBUG: Detection " + i + " extends beyond image bounds");
+            }
+        }
     }
 
     @Override
     public void onMetricsReceived(YFPMessage.MetricsData metrics) {
-        latencyInfo.setText("Latency: " + metrics.networkLatencyMs + "ms");
+        // Shown by the frame callback delivering it
+        pendingMetrics = metrics;
     }
 
     @Override
@@ -295,8 +656,23 @@ public class MainActivity extends AppCompatActivity implements NetworkClient.Net
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        choreographer.removeFrameCallback(uiFrame);
+        uiHandler.removeCallbacks(updateLatencyHud);
+        if (capturePipeline != null) {
+            capturePipeline.shutdown();
+        }
+        SessionReplayer session = replayer;
+        if (session != null) {
+            session.stop();
+        }
         if (networkClient != null) {
+            networkClient.setDeliveryWaker(null);
+            networkClient.setRecorder(null);
             networkClient.shutdown();
         }
+        if (recorder != null) {
+            closeRecorder(recorder);
+            recorder = null;
+        }
     }
 }
\ No newline at end of file
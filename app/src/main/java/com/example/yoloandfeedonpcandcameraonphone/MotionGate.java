@@ -0,0 +1,235 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+/**
+ * Holds back frames of a scene that has not changed since the last frame sent.
+ *
+ * Fixed cameras often watch static scenes, where every frame sent returns the
+ * same detections. Before a frame is converted, its Y plane is reduced to a
+ * coarse grid of cell means from a few sampled pixels per cell, and compared
+ * with the grid of the last frame sent. The frame is only sent if at least
+ * {@link Config#minChangedCells} cells differ by more than
+ * {@link Config#cellThreshold}, or if nothing has been sent for
+ * {@link Config#maxSkipMs}, so that slow changes (lighting, an object put down)
+ * are still picked up. Counting changed cells rather than summing the
+ * differences over the frame keeps a small moving object from being averaged
+ * away by a large static background; comparing against the last frame sent
+ * rather than the previous frame keeps slow drift from slipping through
+ * frame by frame.
+ *
+ * A frame let through is only a candidate until the caller reports it sent
+ * with {@link #onFrameSent}; a frame dropped on the way never becomes the
+ * reference, so the server is always compared against what it last received.
+ *
+ * The grids are allocated once per grid size, so steady-state gating
+ * allocates nothing. Time is supplied by the caller in monotonic milliseconds.
+ * All methods are thread-safe.
+ */
+public class MotionGate {
+
+    public static class Config {
+        public boolean enabled = true;
+        public int gridColumns = 32;
+        public int gridRows = 24;
+        /** Pixels sampled along each side of a cell; 4 reads 16 pixels per cell. */
+        public int samplesPerSide = 4;
+        /** Change of a cell's mean luma, out of 255, for it to count as changed. */
+        public int cellThreshold = 8;
+        /** Changed cells a frame needs to be sent. */
+        public int minChangedCells = 2;
+        /** A frame is sent at least this often, changed or not. */
+        public long maxSkipMs = 2000;
+        /** Weight of each new payload size in the average used to estimate bytes saved. */
+        public float smoothing = 0.1f;
+    }
+
+    // Frames let through and not yet sent or dropped; as many as the capture pipeline holds
+    private static final int MAX_CANDIDATES = 4;
+
+    private final Config config;
+    // Cell means of the frame being tested and of the last frame sent
+    private int[] current = new int[0];
+    private int[] reference = new int[0];
+    // Frames let through, by slot; reused oldest first
+    private final int[][] candidates = new int[MAX_CANDIDATES][0];
+    private final long[] candidateIds = new long[MAX_CANDIDATES];
+    private final long[] candidateTimesMs = new long[MAX_CANDIDATES];
+    private final int[] candidateWidths = new int[MAX_CANDIDATES];
+    private final int[] candidateHeights = new int[MAX_CANDIDATES];
+    private final boolean[] candidateActive = new boolean[MAX_CANDIDATES];
+    private int nextCandidate;
+    private boolean hasReference;
+    private int referenceWidth;
+    private int referenceHeight;
+    private long lastSendMs;
+    private int lastChangedCells;
+    private float averagePayloadBytes;
+    private long framesSkipped;
+    private long framesPassed;
+    private long bytesSaved;
+
+    public MotionGate() {
+        this(new Config());
+    }
+
+    public MotionGate(Config config) {
+        this.config = config;
+    }
+
+    public Config getConfig() {
+        return config;
+    }
+
+    /**
+     * Returns true if frame {@code frameId}, whose luma region is given, should
+     * be sent, and if so keeps it as a candidate reference until
+     * {@link #onFrameSent} or {@link #onFrameDropped}. {@code yPlane} is read
+     * with absolute gets, so its position is left alone.
+     */
+    public synchronized boolean shouldSend(long frameId, ByteBuffer yPlane, int rowStride, int pixelStride,
+                                           int left, int top, int width, int height, long nowMs) {
+        int columns = Math.max(1, Math.min(config.gridColumns, width));
+        int rows = Math.max(1, Math.min(config.gridRows, height));
+        int cells = columns * rows;
+        if (current.length != cells) {
+            current = new int[cells];
+            reference = new int[cells];
+            for (int i = 0; i < MAX_CANDIDATES; i++) {
+                candidates[i] = new int[cells];
+                candidateActive[i] = false;
+            }
+            hasReference = false;
+        }
+        sample(yPlane, rowStride, pixelStride, left, top, width, height, columns, rows);
+
+        lastChangedCells = cells;
+        if (!config.enabled || !hasReference || width != referenceWidth || height != referenceHeight
+            || nowMs - lastSendMs >= config.maxSkipMs) {
+            return pass(frameId, width, height, nowMs);
+        }
+        int changed = 0;
+        for (int i = 0; i < cells; i++) {
+            if (Math.abs(current[i] - reference[i]) > config.cellThreshold) {
+                changed++;
+            }
+        }
+        lastChangedCells = changed;
+        if (changed >= config.minChangedCells) {
+            return pass(frameId, width, height, nowMs);
+        }
+        framesSkipped++;
+        bytesSaved += (long) averagePayloadBytes;
+        return false;
+    }
+
+    /** Sends the next frame whatever it contains, e.g. after reconnecting. */
+    public synchronized void reset() {
+        hasReference = false;
+    }
+
+    /**
+     * Makes a frame let through the reference for later frames, now that it
+     * has been handed to the network, and records its payload size to
+     * estimate the bytes skipping saves.
+     */
+    public synchronized void onFrameSent(long frameId, int bytes) {
+        averagePayloadBytes = averagePayloadBytes == 0
+            ? bytes : averagePayloadBytes + config.smoothing * (bytes - averagePayloadBytes);
+        int slot = candidateSlot(frameId);
+        if (slot < 0) {
+            return;
+        }
+        int[] previous = reference;
+        reference = candidates[slot];
+        candidates[slot] = previous;
+        candidateActive[slot] = false;
+        hasReference = true;
+        referenceWidth = candidateWidths[slot];
+        referenceHeight = candidateHeights[slot];
+        lastSendMs = candidateTimesMs[slot];
+    }
+
+    /** Forgets a frame let through that was dropped before it was sent. */
+    public synchronized void onFrameDropped(long frameId) {
+        int slot = candidateSlot(frameId);
+        if (slot >= 0) {
+            candidateActive[slot] = false;
+        }
+    }
+
+    /** Cells that changed in the last frame tested; every cell when it was sent unconditionally. */
+    public synchronized int getLastChangedCells() {
+        return lastChangedCells;
+    }
+
+    public synchronized long getFramesSkipped() {
+        return framesSkipped;
+    }
+
+    public synchronized long getFramesPassed() {
+        return framesPassed;
+    }
+
+    /** Estimated payload bytes not sent, from the average size of frames that were. */
+    public synchronized long getBytesSaved() {
+        return bytesSaved;
+    }
+
+    /** One line for the latency HUD. */
+    public synchronized void appendSummary(StringBuilder out) {
+        long tested = framesSkipped + framesPassed;
+        out.append(String.format(Locale.ROOT, "motion gate: %d of %d frames skipped, %.1f MB saved%n",
+            framesSkipped, tested, bytesSaved / 1e6));
+    }
+
+    private boolean pass(long frameId, int width, int height, long nowMs) {
+        int slot = nextCandidate;
+        nextCandidate = (nextCandidate + 1) % MAX_CANDIDATES;
+        int[] previous = candidates[slot];
+        candidates[slot] = current;
+        current = previous;
+        candidateIds[slot] = frameId;
+        candidateTimesMs[slot] = nowMs;
+        candidateWidths[slot] = width;
+        candidateHeights[slot] = height;
+        candidateActive[slot] = true;
+        framesPassed++;
+        return true;
+    }
+
+    private int candidateSlot(long frameId) {
+        for (int i = 0; i < MAX_CANDIDATES; i++) {
+            if (candidateActive[i] && candidateIds[i] == frameId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Fills {@link #current} with the mean of an evenly spaced sample of pixels in each cell. */
+    private void sample(ByteBuffer yPlane, int rowStride, int pixelStride, int left, int top,
+                        int width, int height, int columns, int rows) {
+        int samples = Math.max(1, config.samplesPerSide);
+        for (int row = 0; row < rows; row++) {
+            int cellTop = top + row * height / rows;
+            int cellHeight = top + (row + 1) * height / rows - cellTop;
+            for (int column = 0; column < columns; column++) {
+                int cellLeft = left + column * width / columns;
+                int cellWidth = left + (column + 1) * width / columns - cellLeft;
+                int sum = 0;
+                for (int sy = 0; sy < samples; sy++) {
+                    // Sample centres, so the cell edges shared with neighbours are not read twice
+                    int y = cellTop + (2 * sy + 1) * cellHeight / (2 * samples);
+                    int rowOffset = y * rowStride;
+                    for (int sx = 0; sx < samples; sx++) {
+                        int x = cellLeft + (2 * sx + 1) * cellWidth / (2 * samples);
+                        sum += yPlane.get(rowOffset + x * pixelStride) & 0xFF;
+                    }
+                }
+                current[row * columns + column] = sum / (samples * samples);
+            }
+        }
+    }
+}
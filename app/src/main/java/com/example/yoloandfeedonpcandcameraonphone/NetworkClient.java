@@ -1,306 +1,211 @@
 package com.example.yoloandfeedonpcandcameraonphone;
 
+import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
 
-import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.net.Socket;
-import java.net.SocketException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
+/**
+ * Android front of {@link YFPClient}: callbacks run on the main thread, log
+ * output goes through {@link AppLog} and the device is named after
+ * {@link Build}. The protocol itself lives in YFPClient.
+ */
 public class NetworkClient {
     private static final String TAG = "NetworkClient";
     private static final int SERVER_PORT = 8888;
     private static final int DISCOVERY_PORT = 8889;
-    
-    private DatagramSocket udpSocket;
-    private Socket tcpSocket;
-    private String serverIP;
-    private ExecutorService executor;
-    private Handler mainHandler;
-    private NetworkCallback callback;
-    private boolean isConnected = false;
-
-    public interface NetworkCallback {
-        void onServerDiscovered(String serverIP);
-        void onConnected();
-        void onDisconnected();
-        void onDetectionsReceived(YFPMessage.DetectionsData detections);
-        void onMetricsReceived(YFPMessage.MetricsData metrics);
-        void onError(String error);
+
+    private final YFPClient client;
+
+    public interface NetworkCallback extends YFPClient.Callback {
     }
 
     public NetworkClient(NetworkCallback callback) {
-        this.callback = callback;
-        this.executor = Executors.newFixedThreadPool(3);
-        this.mainHandler = new Handler(Looper.getMainLooper());
+        Handler mainHandler = new Handler(Looper.getMainLooper());
+        client = new YFPClient(callback, mainHandler::post, new AndroidLogger());
+        client.setDeviceNames(Build.MODEL, Build.DEVICE);
     }
 
+    /**
+     * Broadcasts DISCOVER and collects every server that answers. Call
+     * {@link #connect()} to stream to all of them.
+     */
     public void discoverServer() {
-        executor.execute(() -> {
-            try {
-                DatagramSocket discoverySocket = new DatagramSocket();
-                discoverySocket.setBroadcast(true);
-                
-                YFPMessage discoverMsg = new YFPMessage(YFPMessage.MessageType.DISCOVER, 
-                    new YFPMessage.DiscoverData(android.os.Build.MODEL, "1.0"));
-                
-                byte[] data = discoverMsg.toJson().getBytes();
-                InetAddress broadcastAddr = InetAddress.getByName("255.255.255.255");
-                DatagramPacket packet = new DatagramPacket(data, data.length, broadcastAddr, DISCOVERY_PORT);
-                
-                discoverySocket.send(packet);
-                
-                byte[] buffer = new byte[1024];
-                DatagramPacket response = new DatagramPacket(buffer, buffer.length);
-                discoverySocket.setSoTimeout(5000);
-                discoverySocket.receive(response);
-                
-                String responseData = new String(response.getData(), 0, response.getLength());
-                YFPMessage responseMsg = YFPMessage.fromJson(responseData);
-                
-                if (responseMsg.type == YFPMessage.MessageType.DISCOVER) {
-                    serverIP = response.getAddress().getHostAddress();
-                    mainHandler.post(() -> callback.onServerDiscovered(serverIP));
-                }
-                
-                discoverySocket.close();
-                
-            } catch (Exception e) {
-                Log.e(TAG, "Discovery failed", e);
-                mainHandler.post(() -> callback.onError("Server discovery failed: " + e.getMessage()));
-            }
-        });
+        client.discover(SERVER_PORT, new InetSocketAddress("255.255.255.255", DISCOVERY_PORT));
     }
 
+    /** Connects to a single server, instead of those found by discovery. */
     public void connect(String serverIP) {
-        this.serverIP = serverIP;
-        Log.d(TAG, "BASIC_DEBUG: Connecting to server: " + serverIP);
-        executor.execute(() -> {
-            try {
-                udpSocket = new DatagramSocket();
-                Log.d(TAG, "BASIC_DEBUG: UDP socket created");
-                Log.d(TAG, "BASIC_DEBUG: UDP socket local address: " + udpSocket.getLocalAddress());
-                Log.d(TAG, "BASIC_DEBUG: UDP socket local port: " + udpSocket.getLocalPort());
-                Log.d(TAG, "BASIC_DEBUG: UDP socket is bound: " + udpSocket.isBound());
-                Log.d(TAG, "BASIC_DEBUG: UDP socket is closed: " + udpSocket.isClosed());
-
-                YFPMessage connectMsg = new YFPMessage(YFPMessage.MessageType.CONNECT,
-                    new YFPMessage.ConnectData(android.os.Build.DEVICE, 1920, 1080));
-
-                sendUdpMessage(connectMsg);
-                Log.d(TAG, "BASIC_DEBUG: Sent CONNECT message to server");
-
-                tcpSocket = new Socket();
-                tcpSocket.connect(new InetSocketAddress(serverIP, SERVER_PORT), 5000);
-                Log.d(TAG, "BASIC_DEBUG: TCP connection established");
-
-                isConnected = true;
-                mainHandler.post(() -> callback.onConnected());
-
-                startListening();
-
-            } catch (Exception e) {
-                Log.e(TAG, "BASIC_DEBUG: Connection failed", e);
-                mainHandler.post(() -> callback.onError("Connection failed: " + e.getMessage()));
-            }
-        });
-    }
-
-    public void sendFrame(byte[] imageData, long frameId, int width, int height) {
-        if (!isConnected) {
-            Log.w(TAG, "BASIC_DEBUG: Tried to send frame but not connected");
-            return;
-        }
+        client.connect(new InetSocketAddress(serverIP, SERVER_PORT));
+    }
 
-        Log.d(TAG, "BASIC_DEBUG: Sending frame " + frameId + ", size=" + imageData.length);
-        executor.execute(() -> {
-            try {
-                YFPMessage frameMsg = new YFPMessage(YFPMessage.MessageType.FRAME,
-                    new YFPMessage.FrameData(frameId, width, height, "JPEG", 80));
-                
-                String header = frameMsg.toJson();
-                byte[] headerBytes = header.getBytes("UTF-8");
-                
-                // Use binary protocol: 4-byte header length + header + image
-                java.nio.ByteBuffer headerLengthBuffer = java.nio.ByteBuffer.allocate(4);
-                headerLengthBuffer.putInt(headerBytes.length);
-                byte[] headerLengthBytes = headerLengthBuffer.array();
-                
-                tcpSocket.getOutputStream().write(headerLengthBytes);
-                tcpSocket.getOutputStream().write(headerBytes);
-                tcpSocket.getOutputStream().write(imageData);
-                tcpSocket.getOutputStream().flush();
-                
-            } catch (IOException e) {
-                Log.e(TAG, "Failed to send frame", e);
-                mainHandler.post(() -> callback.onError("Failed to send frame"));
-            }
-        });
-    }
-
-    private void sendUdpMessage(YFPMessage message) throws IOException {
-        byte[] data = message.toJson().getBytes();
-        InetAddress serverAddr = InetAddress.getByName(serverIP);
-        DatagramPacket packet = new DatagramPacket(data, data.length, serverAddr, SERVER_PORT);
-        udpSocket.send(packet);
-    }
-
-    private void startListening() {
-        Log.d(TAG, "BASIC_DEBUG: Starting UDP listener thread");
-        executor.execute(() -> {
-            byte[] buffer = new byte[4096];
-            Log.d(TAG, "BASIC_DEBUG: UDP listener thread started, isConnected=" + isConnected);
-
-            // Set a timeout for the UDP socket to handle missed packets
-            try {
-                if (udpSocket != null) {
-                    udpSocket.setSoTimeout(10000); // 10 second timeout
-                    Log.d(TAG, "BASIC_DEBUG: Set UDP socket timeout to 10 seconds");
-                }
-            } catch (Exception e) {
-                Log.e(TAG, "BASIC_DEBUG: Failed to set UDP socket timeout", e);
-            }
-
-            while (isConnected) {
-                try {
-                    if (udpSocket == null || udpSocket.isClosed()) {
-                        Log.e(TAG, "BASIC_DEBUG: UDP socket is null or closed, exiting listener");
-                        break;
-                    }
-
-                    DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-                    Log.d(TAG, "BASIC_DEBUG: Waiting for UDP packet on port " + udpSocket.getLocalPort() + "...");
-                    udpSocket.receive(packet);
-
-                    String data = new String(packet.getData(), 0, packet.getLength());
-                    Log.d(TAG, "BASIC_DEBUG: Received UDP packet, length=" + packet.getLength());
-                    Log.d(TAG, "DETECTION_DEBUG: Received UDP data: " + data);
-
-                    try {
-                        YFPMessage message = YFPMessage.fromJson(data);
-                        Log.d(TAG, "DETECTION_DEBUG: Parsed message type: " + message.type);
-                        Log.d(TAG, "DETECTION_DEBUG: Message data object type: " +
-                              (message.data != null ? message.data.getClass().getSimpleName() : "null"));
-
-                        mainHandler.post(() -> handleMessage(message));
-                    } catch (Exception e) {
-                        Log.e(TAG, "DETECTION_DEBUG: Error parsing JSON message: " + e.getMessage());
-                        Log.e(TAG, "DETECTION_DEBUG: Raw JSON that failed to parse: " + data);
-                        e.printStackTrace();
-                    }
-                    
-                } catch (java.net.SocketTimeoutException e) {
-                    if (isConnected) {
-                        Log.d(TAG, "BASIC_DEBUG: UDP socket timeout, continuing to listen...");
-                        // Continue listening - this is normal if no packets are received for a while
-                        continue;
-                    } else {
-                        Log.d(TAG, "BASIC_DEBUG: Socket timeout during disconnect, stopping listener");
-                        break;
-                    }
-                } catch (SocketException e) {
-                    if (isConnected) {
-                        Log.e(TAG, "BASIC_DEBUG: Socket exception while listening", e);
-                    } else {
-                        Log.d(TAG, "BASIC_DEBUG: Socket closed, stopping UDP listener");
-                    }
-                    break;
-                } catch (IOException e) {
-                    Log.e(TAG, "BASIC_DEBUG: IOException in UDP listener", e);
-                    break;
-                } catch (Exception e) {
-                    Log.e(TAG, "BASIC_DEBUG: Unexpected exception in UDP listener", e);
-                    break;
-                }
-            }
-        });
-    }
-
-    private void handleMessage(YFPMessage message) {
-        Log.d(TAG, "DETECTION_DEBUG: Received message type: " + message.type);
-        switch (message.type) {
-            case DETECTIONS:
-                Log.d(TAG, "DETECTION_DEBUG: Processing DETECTIONS message");
-                if (callback != null) {
-                    try {
-                        YFPMessage.DetectionsData detections = (YFPMessage.DetectionsData) message.data;
-                        Log.d(TAG, "DETECTION_DEBUG: Cast successful, detections object: " + detections);
-                        if (detections != null) {
-                            Log.d(TAG, "DETECTION_DEBUG: DetectionsData not null, frame_id: " + detections.frameId);
-                            if (detections.detections != null) {
-                                Log.d(TAG, "DETECTION_DEBUG: Found " + detections.detections.length + " detections");
-                                for (int i = 0; i < detections.detections.length; i++) {
-                                    YFPMessage.Detection det = detections.detections[i];
-                                    Log.d(TAG, "DETECTION_DEBUG: Detection " + i + ": " + det.className +
-                                          " at (" + det.x + "," + det.y + "," + det.width + "," + det.height +
-                                          ") conf=" + det.confidence);
-                                }
-                            } else {
-                                Log.w(TAG, "DETECTION_DEBUG: detections.detections is null");
-                            }
-                            callback.onDetectionsReceived(detections);
-                        } else {
-                            Log.w(TAG, "DETECTION_DEBUG: DetectionsData is null after cast");
-                        }
-                    } catch (ClassCastException e) {
-                        Log.e(TAG, "DETECTION_DEBUG: ClassCastException when casting to DetectionsData", e);
-                        Log.e(TAG, "DETECTION_DEBUG: message.data class: " + (message.data != null ? message.data.getClass().getName() : "null"));
-                        Log.e(TAG, "DETECTION_DEBUG: message.data content: " + message.data);
-                    }
-                } else {
-                    Log.w(TAG, "DETECTION_DEBUG: callback is null");
-                }
-                break;
-            case METRICS:
-                if (callback != null) {
-                    YFPMessage.MetricsData metrics = (YFPMessage.MetricsData) message.data;
-                    callback.onMetricsReceived(metrics);
-                }
-                break;
-            case PING:
-                try {
-                    YFPMessage pong = new YFPMessage(YFPMessage.MessageType.PONG, null);
-                    sendUdpMessage(pong);
-                } catch (IOException e) {
-                    Log.e(TAG, "Failed to send pong", e);
-                }
-                break;
-        }
+    /**
+     * Connects to every known server. Frames are spread over those that
+     * accept the connection; servers that fail are left out.
+     */
+    public void connect() {
+        client.connect();
+    }
+
+    /** See {@link YFPClient#sendFrame}. */
+    public boolean sendFrame(FrameBuffer imageData, long frameId, long captureTimestampNs,
+                             int width, int height, int format, int quality) {
+        return client.sendFrame(imageData, frameId, captureTimestampNs, width, height, format, quality);
+    }
+
+    /** See {@link YFPClient#setResultAckListener}; the listener runs on the listener thread. */
+    public void setResultAckListener(YFPClient.ResultAckListener listener) {
+        client.setResultAckListener(listener);
+    }
+
+    /** See {@link YFPClient#setFrameDropListener}. */
+    public void setFrameDropListener(FrameSender.DropListener listener) {
+        client.setFrameDropListener(listener);
+    }
+
+    /** See {@link YFPClient#setRecorder}. */
+    public void setRecorder(SessionRecorder recorder) {
+        client.setRecorder(recorder);
+    }
+
+    public SessionRecorder getRecorder() {
+        return client.getRecorder();
+    }
+
+    /** See {@link YFPClient#setDeliveryWaker}; the waker runs on the listener thread. */
+    public void setDeliveryWaker(Runnable waker) {
+        client.setDeliveryWaker(waker);
+    }
+
+    /** See {@link YFPClient#deliverResults}; main thread only. */
+    public boolean deliverResults() {
+        return client.deliverResults();
+    }
+
+    public void setTransportType(FrameTransport.Type transportType) {
+        client.setTransportType(transportType);
+    }
+
+    public FrameTransport.Type getTransportType() {
+        return client.getTransportType();
+    }
+
+    public void setMaxFramesInFlight(int maxFramesInFlight) {
+        client.setMaxFramesInFlight(maxFramesInFlight);
+    }
+
+    public void setMaxFrameSize(int width, int height) {
+        client.setMaxFrameSize(width, height);
+    }
+
+    public void setFrameFormats(String... formats) {
+        client.setFrameFormats(formats);
+    }
+
+    public void setBalancePolicy(ServerPool.Policy balancePolicy) {
+        client.setBalancePolicy(balancePolicy);
+    }
+
+    public ServerPool.Policy getBalancePolicy() {
+        return client.getBalancePolicy();
+    }
+
+    public int getFrameFormat() {
+        return client.getFrameFormat();
+    }
+
+    public int getAcceptedFrameFormats() {
+        return client.getAcceptedFrameFormats();
+    }
+
+    public ServerPool getServers() {
+        return client.getServers();
+    }
+
+    public long getUplinkBytesPerSecond() {
+        return client.getUplinkBytesPerSecond();
+    }
+
+    public long getFramesSent() {
+        return client.getFramesSent();
+    }
+
+    public long getFramesDropped() {
+        return client.getFramesDropped();
+    }
+
+    public long getFramesAcked() {
+        return client.getFramesAcked();
+    }
+
+    public int getFramesInFlight() {
+        return client.getFramesInFlight();
+    }
+
+    public ClassTable getClassTable() {
+        return client.getClassTable();
+    }
+
+    public FrameMetadataRing getFrameMetadata() {
+        return client.getFrameMetadata();
+    }
+
+    public PipelineTimings getPipelineTimings() {
+        return client.getPipelineTimings();
+    }
+
+    public ClockOffsetEstimator getClockOffset() {
+        return client.getClockOffset();
+    }
+
+    public boolean isConnected() {
+        return client.isConnected();
     }
 
     public void disconnect() {
-        Log.d(TAG, "BASIC_DEBUG: Starting disconnection cleanup");
-        isConnected = false;
+        client.disconnect();
+    }
+
+    public void shutdown() {
+        client.shutdown();
+    }
 
-        if (udpSocket != null && !udpSocket.isClosed()) {
-            Log.d(TAG, "BASIC_DEBUG: Closing UDP socket");
-            udpSocket.close();
+    /** Maps the client's log categories onto {@link AppLog}'s. */
+    private static final class AndroidLogger implements YFPClient.Logger {
+        @Override
+        public boolean isDebug(Category category) {
+            return AppLog.isDebug(appCategory(category));
         }
 
-        if (tcpSocket != null && !tcpSocket.isClosed()) {
-            try {
-                Log.d(TAG, "BASIC_DEBUG: Closing TCP socket");
-                tcpSocket.close();
-            } catch (IOException e) {
-                Log.e(TAG, "Error closing TCP socket", e);
-            }
+        @Override
+        public boolean isTraced(Category category, long frameId) {
+            return AppLog.isTraced(appCategory(category), frameId);
         }
 
-        Log.d(TAG, "BASIC_DEBUG: Disconnection cleanup completed");
-        mainHandler.post(() -> callback.onDisconnected());
-    }
+        private static AppLog.Category appCategory(Category category) {
+            return category == Category.DETECTION ? AppLog.Category.DETECTION : AppLog.Category.BASIC;
+        }
 
-    public void shutdown() {
-        disconnect();
-        if (executor != null && !executor.isShutdown()) {
-            executor.shutdown();
+        @Override
+        public void d(String message) {
+            Log.d(TAG, message);
+        }
+
+        @Override
+        public void v(String message) {
+            Log.v(TAG, message);
+        }
+
+        @Override
+        public void w(String message) {
+            Log.w(TAG, message);
+        }
+
+        @Override
+        public void e(String message, Throwable error) {
+            Log.e(TAG, message, error);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,251 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Packs YUV_420_888 planes into a contiguous NV21 array (full Y plane followed by
+ * interleaved V/U), honouring row and pixel strides. Camera planes are often
+ * padded (row stride > width) and the chroma planes are usually interleaved
+ * (pixel stride 2), so copying the raw buffers back to back is not valid NV21.
+ *
+ * Scratch rows are reused between calls; an instance must only be used from one
+ * thread at a time.
+ */
+public class Nv21Packer {
+    private byte[] uRow = new byte[0];
+    private byte[] vRow = new byte[0];
+    private int[] columns = new int[0];
+
+    public static int nv21Size(int width, int height) {
+        int chromaWidth = (width + 1) / 2;
+        int chromaHeight = (height + 1) / 2;
+        return width * height + 2 * chromaWidth * chromaHeight;
+    }
+
+    /**
+     * Output dimension after downscaling by {@code divisor}, rounded down to an
+     * even number as NV21 requires.
+     */
+    public static int scaledDimension(int size, int divisor) {
+        return divisor <= 1 ? size : Math.max(2, (size / divisor) & ~1);
+    }
+
+    /**
+     * Writes NV21 data for a {@code width x height} image into {@code out}, which
+     * must hold at least {@link #nv21Size(int, int)} bytes. Buffer positions are
+     * restored before returning.
+     */
+    public void pack(ByteBuffer yBuffer, int yRowStride, int yPixelStride,
+                     ByteBuffer uBuffer, ByteBuffer vBuffer, int uvRowStride, int uvPixelStride,
+                     int width, int height, byte[] out) {
+        if (out.length < nv21Size(width, height)) {
+            throw new IllegalArgumentException("Output buffer too small for " + width + "x" + height);
+        }
+
+        int offset = packPlane(yBuffer, yRowStride, yPixelStride, width, height, out);
+
+        int chromaWidth = (width + 1) / 2;
+        int chromaHeight = (height + 1) / 2;
+        int rowLength = (chromaWidth - 1) * uvPixelStride + 1;
+        if (uRow.length < rowLength) {
+            uRow = new byte[rowLength];
+            vRow = new byte[rowLength];
+        }
+
+        for (int row = 0; row < chromaHeight; row++) {
+            int rowStart = row * uvRowStride;
+            absoluteGet(uBuffer, rowStart, uRow, rowLength);
+            absoluteGet(vBuffer, rowStart, vRow, rowLength);
+            for (int col = 0, src = 0; col < chromaWidth; col++, src += uvPixelStride) {
+                out[offset++] = vRow[src];
+                out[offset++] = uRow[src];
+            }
+        }
+    }
+
+    /**
+     * Like {@link #pack} but keeps every {@code divisor}-th pixel in each direction,
+     * producing a {@link #scaledDimension} sized image. Nearest-neighbour
+     * subsampling is cheap and good enough for detector input.
+     */
+    public void packScaled(ByteBuffer yBuffer, int yRowStride, int yPixelStride,
+                           ByteBuffer uBuffer, ByteBuffer vBuffer, int uvRowStride, int uvPixelStride,
+                           int width, int height, int divisor, byte[] out) {
+        if (divisor <= 1) {
+            pack(yBuffer, yRowStride, yPixelStride, uBuffer, vBuffer, uvRowStride, uvPixelStride,
+                width, height, out);
+            return;
+        }
+
+        int outWidth = scaledDimension(width, divisor);
+        int outHeight = scaledDimension(height, divisor);
+        if (out.length < nv21Size(outWidth, outHeight)) {
+            throw new IllegalArgumentException("Output buffer too small for " + outWidth + "x" + outHeight);
+        }
+
+        int offset = 0;
+        int yBase = yBuffer.position();
+        for (int row = 0; row < outHeight; row++) {
+            int src = yBase + row * divisor * yRowStride;
+            for (int col = 0; col < outWidth; col++, src += divisor * yPixelStride) {
+                out[offset++] = yBuffer.get(src);
+            }
+        }
+
+        int uBase = uBuffer.position();
+        int vBase = vBuffer.position();
+        for (int row = 0; row < outHeight / 2; row++) {
+            int src = row * divisor * uvRowStride;
+            for (int col = 0; col < outWidth / 2; col++, src += divisor * uvPixelStride) {
+                out[offset++] = vBuffer.get(vBase + src);
+                out[offset++] = uBuffer.get(uBase + src);
+            }
+        }
+    }
+
+    /**
+     * Packs the {@code regionWidth x regionHeight} region at ({@code left},
+     * {@code top}) into an {@code outWidth x outHeight} NV21 image. Like
+     * {@link #packScaled} this keeps the nearest pixel, but for any scale
+     * factor, and only the pixels kept are read. The origin and every size must
+     * be even so that chroma samples line up with their luma block.
+     */
+    public void packRegion(ByteBuffer yBuffer, int yRowStride, int yPixelStride,
+                           ByteBuffer uBuffer, ByteBuffer vBuffer, int uvRowStride, int uvPixelStride,
+                           int left, int top, int regionWidth, int regionHeight,
+                           int outWidth, int outHeight, byte[] out) {
+        if (((left | top | regionWidth | regionHeight | outWidth | outHeight) & 1) != 0) {
+            throw new IllegalArgumentException("Region " + regionWidth + "x" + regionHeight + " at "
+                + left + "," + top + " to " + outWidth + "x" + outHeight + " is not even");
+        }
+        if (out.length < nv21Size(outWidth, outHeight)) {
+            throw new IllegalArgumentException("Output buffer too small for " + outWidth + "x" + outHeight);
+        }
+        if (columns.length < outWidth) {
+            columns = new int[outWidth];
+        }
+
+        // Source offset within a row of each output column, shared by every row
+        for (int col = 0; col < outWidth; col++) {
+            columns[col] = (left + (int) ((long) col * regionWidth / outWidth)) * yPixelStride;
+        }
+        boolean copyRows = outWidth == regionWidth && yPixelStride == 1;
+        int offset = 0;
+        int yBase = yBuffer.position();
+        for (int row = 0; row < outHeight; row++) {
+            int rowStart = (top + (int) ((long) row * regionHeight / outHeight)) * yRowStride;
+            if (copyRows) {
+                absoluteGet(yBuffer, rowStart + left, out, offset, outWidth);
+                offset += outWidth;
+                continue;
+            }
+            for (int col = 0; col < outWidth; col++) {
+                out[offset++] = yBuffer.get(yBase + rowStart + columns[col]);
+            }
+        }
+
+        // One chroma sample per 2x2 output block, from the block's top-left pixel
+        int chromaWidth = outWidth / 2;
+        for (int col = 0; col < chromaWidth; col++) {
+            columns[col] = (left + (int) ((long) 2 * col * regionWidth / outWidth)) / 2 * uvPixelStride;
+        }
+        int uBase = uBuffer.position();
+        int vBase = vBuffer.position();
+        for (int row = 0; row < outHeight / 2; row++) {
+            int rowStart = (top + (int) ((long) 2 * row * regionHeight / outHeight)) / 2 * uvRowStride;
+            for (int col = 0; col < chromaWidth; col++) {
+                int src = rowStart + columns[col];
+                out[offset++] = vBuffer.get(vBase + src);
+                out[offset++] = uBuffer.get(uBase + src);
+            }
+        }
+    }
+
+    /**
+     * The reverse of {@link #pack}: writes a {@code width x height} NV21 image
+     * into YUV_420_888 planes with the given strides, such as a video encoder's
+     * input image. Width and height must be even. Buffer positions are left
+     * unchanged.
+     */
+    public void unpack(byte[] nv21, int width, int height,
+                       ByteBuffer yBuffer, int yRowStride, int yPixelStride,
+                       ByteBuffer uBuffer, ByteBuffer vBuffer, int uvRowStride, int uvPixelStride) {
+        if (((width | height) & 1) != 0) {
+            throw new IllegalArgumentException("Size " + width + "x" + height + " is not even");
+        }
+        if (nv21.length < nv21Size(width, height)) {
+            throw new IllegalArgumentException("NV21 buffer too small for " + width + "x" + height);
+        }
+
+        int offset = 0;
+        int yBase = yBuffer.position();
+        for (int row = 0; row < height; row++) {
+            if (yPixelStride == 1) {
+                absolutePut(yBuffer, row * yRowStride, nv21, offset, width);
+                offset += width;
+                continue;
+            }
+            int dst = yBase + row * yRowStride;
+            for (int col = 0; col < width; col++, dst += yPixelStride) {
+                yBuffer.put(dst, nv21[offset++]);
+            }
+        }
+
+        int uBase = uBuffer.position();
+        int vBase = vBuffer.position();
+        for (int row = 0; row < height / 2; row++) {
+            int dst = row * uvRowStride;
+            for (int col = 0; col < width / 2; col++, dst += uvPixelStride) {
+                vBuffer.put(vBase + dst, nv21[offset++]);
+                uBuffer.put(uBase + dst, nv21[offset++]);
+            }
+        }
+    }
+
+    private int packPlane(ByteBuffer buffer, int rowStride, int pixelStride,
+                          int width, int height, byte[] out) {
+        if (pixelStride == 1 && rowStride == width) {
+            absoluteGet(buffer, 0, out, 0, width * height);
+            return width * height;
+        }
+
+        int offset = 0;
+        if (pixelStride == 1) {
+            for (int row = 0; row < height; row++) {
+                absoluteGet(buffer, row * rowStride, out, offset, width);
+                offset += width;
+            }
+            return offset;
+        }
+
+        int base = buffer.position();
+        for (int row = 0; row < height; row++) {
+            int src = base + row * rowStride;
+            for (int col = 0; col < width; col++, src += pixelStride) {
+                out[offset++] = buffer.get(src);
+            }
+        }
+        return offset;
+    }
+
+    private static void absoluteGet(ByteBuffer buffer, int index, byte[] dst, int length) {
+        absoluteGet(buffer, index, dst, 0, length);
+    }
+
+    // The last row of a camera plane is often shorter than rowStride, so only the
+    // bytes actually needed are read. Moves the position and restores it instead of
+    // using duplicate(), which would allocate a view per row.
+    private static void absoluteGet(ByteBuffer buffer, int index, byte[] dst, int offset, int length) {
+        int position = buffer.position();
+        buffer.position(position + index);
+        buffer.get(dst, offset, length);
+        buffer.position(position);
+    }
+
+    private static void absolutePut(ByteBuffer buffer, int index, byte[] src, int offset, int length) {
+        int position = buffer.position();
+        buffer.position(position + index);
+        buffer.put(src, offset, length);
+        buffer.position(position);
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+/**
+ * Collects one frame of {@link OverlayRenderer} output so it can be drawn in
+ * a few batched calls instead of one call per box: box outlines become line
+ * segments grouped by palette colour, ready for a single
+ * {@code Canvas.drawLines} per colour, and labels are kept in draw order.
+ *
+ * Storage only grows, so a batch reused across frames allocates nothing once
+ * it has held the largest frame. Not thread-safe.
+ */
+public class OverlayBatch implements OverlayRenderer.Target {
+    /** Floats per box: four segments of (x0, y0, x1, y1). */
+    static final int FLOATS_PER_BOX = 16;
+
+    private final float[][] lines = new float[OverlayRenderer.PALETTE.length][];
+    private final int[] lineFloats = new int[OverlayRenderer.PALETTE.length];
+
+    private String[] labels = new String[0];
+    private float[] labelX = new float[0];
+    private float[] labelY = new float[0];
+    private int[] labelColors = new int[0];
+    private int labelCount;
+
+    public OverlayBatch() {
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = new float[FLOATS_PER_BOX * 4];
+        }
+    }
+
+    /** Empties the batch for the next frame, keeping its storage. */
+    public void clear() {
+        for (int i = 0; i < lineFloats.length; i++) {
+            lineFloats[i] = 0;
+        }
+        // Drop label references so replaced class names can be collected
+        for (int i = 0; i < labelCount; i++) {
+            labels[i] = null;
+        }
+        labelCount = 0;
+    }
+
+    @Override
+    public void drawBox(float left, float top, float right, float bottom, int colorIndex) {
+        int n = lineFloats[colorIndex];
+        float[] pts = lines[colorIndex];
+        if (n + FLOATS_PER_BOX > pts.length) {
+            float[] grown = new float[Math.max(n + FLOATS_PER_BOX, pts.length * 2)];
+            System.arraycopy(pts, 0, grown, 0, n);
+            pts = grown;
+            lines[colorIndex] = grown;
+        }
+        n = segment(pts, n, left, top, right, top);
+        n = segment(pts, n, right, top, right, bottom);
+        n = segment(pts, n, right, bottom, left, bottom);
+        n = segment(pts, n, left, bottom, left, top);
+        lineFloats[colorIndex] = n;
+    }
+
+    private static int segment(float[] pts, int n, float x0, float y0, float x1, float y1) {
+        pts[n] = x0;
+        pts[n + 1] = y0;
+        pts[n + 2] = x1;
+        pts[n + 3] = y1;
+        return n + 4;
+    }
+
+    @Override
+    public void drawLabel(String label, float x, float y, int colorIndex) {
+        if (labelCount == labels.length) {
+            int capacity = Math.max(8, labelCount * 2);
+            String[] grownLabels = new String[capacity];
+            float[] grownX = new float[capacity];
+            float[] grownY = new float[capacity];
+            int[] grownColors = new int[capacity];
+            System.arraycopy(labels, 0, grownLabels, 0, labelCount);
+            System.arraycopy(labelX, 0, grownX, 0, labelCount);
+            System.arraycopy(labelY, 0, grownY, 0, labelCount);
+            System.arraycopy(labelColors, 0, grownColors, 0, labelCount);
+            labels = grownLabels;
+            labelX = grownX;
+            labelY = grownY;
+            labelColors = grownColors;
+        }
+        labels[labelCount] = label;
+        labelX[labelCount] = x;
+        labelY[labelCount] = y;
+        labelColors[labelCount] = colorIndex;
+        labelCount++;
+    }
+
+    /** Segment endpoints for {@code colorIndex}; only the first {@link #lineFloatCount} are valid. */
+    public float[] lines(int colorIndex) {
+        return lines[colorIndex];
+    }
+
+    public int lineFloatCount(int colorIndex) {
+        return lineFloats[colorIndex];
+    }
+
+    public int labelCount() {
+        return labelCount;
+    }
+
+    public String label(int i) {
+        return labels[i];
+    }
+
+    public float labelX(int i) {
+        return labelX[i];
+    }
+
+    public float labelY(int i) {
+        return labelY[i];
+    }
+
+    public int labelColor(int i) {
+        return labelColors[i];
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+/**
+ * Turns a {@link DetectionBuffer} into box and label draw calls for an overlay
+ * of a given size. Platform drawing is behind {@link Target}, so the same
+ * renderer serves every overlay backend and runs in plain JVM tests.
+ *
+ * Nothing is allocated per frame once every (class, confidence) label shown has
+ * been seen: box coordinates go straight to the target as floats and labels
+ * come from a cache keyed by class id and confidence in hundredths. The cache
+ * covers the ids in the {@link ClassTable}; ids beyond it share one fallback
+ * label, so a bad id from the server cannot grow it.
+ */
+public class OverlayRenderer {
+    /** Box colours, indexed by class id modulo the palette size. ARGB. */
+    public static final int[] PALETTE = {
+        0xFFFF0000, // red
+        0xFF00C853, // green
+        0xFF2979FF, // blue
+        0xFFFFD600, // yellow
+        0xFFD500F9, // magenta
+        0xFF00E5FF, // cyan
+        0xFFFF6D00, // orange
+        0xFFFFFFFF, // white
+    };
+
+    public static final float LABEL_OFFSET = 10f;
+
+    /** Receives the draw calls for one frame. Coordinates are in pixels. */
+    public interface Target {
+        void drawBox(float left, float top, float right, float bottom, int colorIndex);
+
+        void drawLabel(String label, float x, float y, int colorIndex);
+    }
+
+    private static final int CONFIDENCE_STEPS = 101;
+    static final String UNKNOWN_CLASS = "#?";
+
+    private String[] cachedNames = new String[0];
+    private String[] fallbackNames = new String[0];
+    private String[][] labels = new String[0][];
+    private final String[] unknownLabels = new String[CONFIDENCE_STEPS];
+
+    public static int colorIndex(int classId) {
+        return Math.floorMod(classId, PALETTE.length);
+    }
+
+    /** Draws every box in {@code detections} onto a {@code width} x {@code height} target. */
+    public void render(DetectionBuffer detections, ClassTable classTable,
+                       float width, float height, Target target) {
+        for (int i = 0; i < detections.count; i++) {
+            float left = detections.x[i] * width;
+            float top = detections.y[i] * height;
+            float right = (detections.x[i] + detections.width[i]) * width;
+            float bottom = (detections.y[i] + detections.height[i]) * height;
+            int classId = detections.classId[i];
+            int color = colorIndex(classId);
+
+            target.drawBox(left, top, right, bottom, color);
+            String label = label(classId, detections.confidence[i], classTable);
+            if (label != null) {
+                target.drawLabel(label, left, top - LABEL_OFFSET, color);
+            }
+        }
+    }
+
+    /**
+     * Returns "name 0.85" for the class and confidence, using "#id" for ids the
+     * table has no name for and {@link #UNKNOWN_CLASS} for ids beyond its end.
+     * Cached per class and confidence hundredth; a class's entries are dropped
+     * when its name in the table changes.
+     */
+    String label(int classId, float confidence, ClassTable classTable) {
+        if (classId < 0) {
+            return null;
+        }
+        int hundredths = Math.max(0, Math.min(CONFIDENCE_STEPS - 1, Math.round(confidence * 100)));
+        int classCount = classTable.size();
+        if (classId >= classCount) {
+            String label = unknownLabels[hundredths];
+            if (label == null) {
+                label = formatLabel(UNKNOWN_CLASS, hundredths);
+                unknownLabels[hundredths] = label;
+            }
+            return label;
+        }
+        if (classId >= labels.length) {
+            growTo(classCount);
+        }
+        String name = classTable.name(classId);
+        if (name == null) {
+            name = fallbackNames[classId];
+            if (name == null) {
+                name = "#" + classId;
+                fallbackNames[classId] = name;
+            }
+        }
+        // Names are compared by identity: a new table brings new strings
+        if (cachedNames[classId] != name) {
+            cachedNames[classId] = name;
+            labels[classId] = null;
+        }
+        String[] byConfidence = labels[classId];
+        if (byConfidence == null) {
+            byConfidence = new String[CONFIDENCE_STEPS];
+            labels[classId] = byConfidence;
+        }
+        String label = byConfidence[hundredths];
+        if (label == null) {
+            label = formatLabel(name, hundredths);
+            byConfidence[hundredths] = label;
+        }
+        return label;
+    }
+
+    private void growTo(int capacity) {
+        String[] names = new String[capacity];
+        String[] fallbacks = new String[capacity];
+        String[][] grown = new String[capacity][];
+        System.arraycopy(cachedNames, 0, names, 0, cachedNames.length);
+        System.arraycopy(fallbackNames, 0, fallbacks, 0, fallbackNames.length);
+        System.arraycopy(labels, 0, grown, 0, labels.length);
+        cachedNames = names;
+        fallbackNames = fallbacks;
+        labels = grown;
+    }
+
+    /** Classes with a label cache; at most the largest class table seen. */
+    int getCachedClassCount() {
+        return labels.length;
+    }
+
+    /** Same text as {@code String.format("%s %.2f")} for confidences in 0..1. */
+    static String formatLabel(String name, int hundredths) {
+        StringBuilder label = new StringBuilder(name.length() + 5).append(name).append(' ');
+        label.append(hundredths / 100).append('.');
+        int fraction = hundredths % 100;
+        if (fraction < 10) {
+            label.append('0');
+        }
+        return label.append(fraction).toString();
+    }
+}
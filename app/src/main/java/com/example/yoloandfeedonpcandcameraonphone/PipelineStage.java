@@ -0,0 +1,181 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One stage of the capture pipeline: a dedicated worker thread fed by a bounded
+ * queue. When the queue is full the oldest waiting item is dropped in favour of
+ * the new one (latest wins), so a slow stage never builds up stale frames.
+ *
+ * Every item offered is handed exactly once to either the processor or the drop
+ * handler. A processor that returns normally owns the item; one that throws
+ * must not have released it, since the item then goes to the drop handler so
+ * pooled buffers are never leaked.
+ */
+public class PipelineStage<T> {
+    public interface Processor<T> {
+        void process(T item) throws Exception;
+    }
+
+    public interface DropHandler<T> {
+        void onDrop(T item);
+    }
+
+    public interface ErrorHandler {
+        void onError(String stage, Exception e);
+    }
+
+    private final String name;
+    private final int capacity;
+    private final Processor<T> processor;
+    private final DropHandler<T> dropHandler;
+    private final ErrorHandler errorHandler;
+    private final ArrayDeque<T> queue;
+    private final AtomicLong offeredCount = new AtomicLong();
+    private final AtomicLong processedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private Thread worker;
+    private boolean running;
+
+    public PipelineStage(String name, int capacity, Processor<T> processor,
+                         DropHandler<T> dropHandler, ErrorHandler errorHandler) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.name = name;
+        this.capacity = capacity;
+        this.processor = processor;
+        this.dropHandler = dropHandler;
+        this.errorHandler = errorHandler;
+        this.queue = new ArrayDeque<>(capacity);
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        worker = new Thread(this::runLoop, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Queues an item for processing. If the stage is stopped the item is dropped
+     * immediately.
+     */
+    public void offer(T item) {
+        offeredCount.incrementAndGet();
+        T dropped = null;
+        synchronized (this) {
+            if (running) {
+                if (queue.size() == capacity) {
+                    dropped = queue.pollFirst();
+                }
+                queue.addLast(item);
+                notifyAll();
+            } else {
+                dropped = item;
+            }
+        }
+        if (dropped != null) {
+            drop(dropped);
+        }
+    }
+
+    /** Stops the worker and drops anything still queued. Safe to call more than once. */
+    public void stop() {
+        Thread thread;
+        synchronized (this) {
+            running = false;
+            thread = worker;
+            worker = null;
+            notifyAll();
+        }
+        if (thread != null && thread != Thread.currentThread()) {
+            thread.interrupt();
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        drainQueue();
+    }
+
+    private void runLoop() {
+        while (true) {
+            T item;
+            synchronized (this) {
+                while (running && queue.isEmpty()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        // Re-check running
+                    }
+                }
+                if (!running) {
+                    break;
+                }
+                item = queue.pollFirst();
+            }
+
+            try {
+                processor.process(item);
+                processedCount.incrementAndGet();
+            } catch (Exception e) {
+                failedCount.incrementAndGet();
+                if (errorHandler != null) {
+                    errorHandler.onError(name, e);
+                }
+                dropHandler.onDrop(item);
+            }
+        }
+        drainQueue();
+    }
+
+    private void drainQueue() {
+        while (true) {
+            T item;
+            synchronized (this) {
+                item = queue.pollFirst();
+            }
+            if (item == null) {
+                return;
+            }
+            drop(item);
+        }
+    }
+
+    private void drop(T item) {
+        droppedCount.incrementAndGet();
+        dropHandler.onDrop(item);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized int getQueueSize() {
+        return queue.size();
+    }
+
+    public long getOfferedCount() {
+        return offeredCount.get();
+    }
+
+    public long getProcessedCount() {
+        return processedCount.get();
+    }
+
+    /** Items discarded because the queue was full or the stage was stopped. */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-stage latency of every sent frame, from capture to the overlay drawing
+ * its detections.
+ *
+ * Each stage calls {@link #mark} with the frame id when the frame passes it.
+ * The time since the frame's previous stage goes into that stage's
+ * {@link LatencyHistogram}, and reaching {@link Stage#DRAWN} also records the
+ * total since capture. A stage is only recorded the first time it is marked
+ * for a frame, so redrawing the same result adds nothing, and a stage whose
+ * predecessor was skipped (for example a frame dropped before the writer) is
+ * not recorded at all.
+ *
+ * When the server reports when it read a frame and sent its result,
+ * {@link #recordServerTimes} also splits {@link Stage#RECEIVED} into uplink,
+ * server and downlink time.
+ *
+ * Stage times live in a fixed ring of atomic slots indexed by frame id, so
+ * marking is lock-free, allocation-free and safe from any thread.
+ */
+public class PipelineTimings {
+    /** Pipeline stages in order; each histogram covers the time since the previous one. */
+    public enum Stage {
+        /** Camera exposure, on the local clock. Starts a frame; has no histogram. */
+        CAPTURED("capture"),
+        /** Copied out of the camera image into NV21. */
+        CONVERTED("convert"),
+        /** Compressed to JPEG. */
+        ENCODED("encode"),
+        /** Handed to the frame sender. */
+        ENQUEUED("enqueue"),
+        /** Written to the socket, including any wait for a send credit. */
+        WRITTEN("write"),
+        /** DETECTIONS for the frame arrived: network both ways plus inference. */
+        RECEIVED("detections"),
+        /** First overlay frame showing the frame's detections. */
+        DRAWN("draw");
+
+        public final String label;
+
+        Stage(String label) {
+            this.label = label;
+        }
+    }
+
+    public static final int DEFAULT_CAPACITY = 128;
+    private static final Stage[] STAGES = Stage.values();
+    private static final int STAGE_COUNT = STAGES.length;
+    private static final long NOT_REACHED = Long.MIN_VALUE;
+
+    private final int mask;
+    private final AtomicLongArray frameIds;
+    // Stage times per slot at slot * STAGE_COUNT + stage
+    private final AtomicLongArray marks;
+    private final LatencyHistogram[] histograms = new LatencyHistogram[STAGE_COUNT];
+    private final LatencyHistogram total = new LatencyHistogram();
+    private final LatencyHistogram uplink = new LatencyHistogram();
+    private final LatencyHistogram server = new LatencyHistogram();
+    private final LatencyHistogram downlink = new LatencyHistogram();
+
+    public PipelineTimings() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /** @param capacity frames tracked at once, rounded up to a power of two */
+    public PipelineTimings(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        mask = size - 1;
+        frameIds = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            frameIds.set(i, Long.MIN_VALUE);
+        }
+        marks = new AtomicLongArray(size * STAGE_COUNT);
+        for (int i = 1; i < STAGE_COUNT; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Records that {@code frameId} reached {@code stage} at {@code timeNs}
+     * ({@link System#nanoTime()} clock). {@link Stage#CAPTURED} starts tracking
+     * the frame; other stages are ignored for frames that are not tracked.
+     */
+    public void mark(Stage stage, long frameId, long timeNs) {
+        int slot = (int) (frameId & mask);
+        int base = slot * STAGE_COUNT;
+        if (stage == Stage.CAPTURED) {
+            for (int i = 1; i < STAGE_COUNT; i++) {
+                marks.set(base + i, NOT_REACHED);
+            }
+            marks.set(base, timeNs);
+            frameIds.set(slot, frameId);
+            return;
+        }
+        if (frameIds.get(slot) != frameId || !marks.compareAndSet(base + stage.ordinal(), NOT_REACHED, timeNs)) {
+            return;
+        }
+        long previous = marks.get(base + stage.ordinal() - 1);
+        if (previous != NOT_REACHED) {
+            histograms[stage.ordinal()].recordNanos(timeNs - previous);
+        }
+        if (stage == Stage.DRAWN) {
+            long captured = marks.get(base);
+            if (captured != NOT_REACHED) {
+                total.recordNanos(timeNs - captured);
+            }
+        }
+    }
+
+    /**
+     * Splits the {@link Stage#RECEIVED} time of {@code frameId} using the
+     * server's receive and send times, already converted to the local clock
+     * (see {@link ClockOffsetEstimator#toLocalNs}). Uplink runs from the end of
+     * the socket write, downlink ends at {@code receivedNs}. Ignored if the
+     * frame is not tracked or was not written. An error in the clock offset
+     * moves time between uplink and downlink; a leg that comes out negative is
+     * recorded as 0.
+     */
+    public void recordServerTimes(long frameId, long serverReceiveNs, long serverSendNs, long receivedNs) {
+        int slot = (int) (frameId & mask);
+        if (frameIds.get(slot) != frameId) {
+            return;
+        }
+        long written = marks.get(slot * STAGE_COUNT + Stage.WRITTEN.ordinal());
+        if (written == NOT_REACHED) {
+            return;
+        }
+        uplink.recordNanos(serverReceiveNs - written);
+        server.recordNanos(serverSendNs - serverReceiveNs);
+        downlink.recordNanos(receivedNs - serverSendNs);
+    }
+
+    /** Written to read by the server, from {@link #recordServerTimes}. */
+    public LatencyHistogram getUplink() {
+        return uplink;
+    }
+
+    /** Read by the server to result sent, from {@link #recordServerTimes}. */
+    public LatencyHistogram getServer() {
+        return server;
+    }
+
+    /** Result sent by the server to received, from {@link #recordServerTimes}. */
+    public LatencyHistogram getDownlink() {
+        return downlink;
+    }
+
+    /** Time spent reaching {@code stage} from the stage before it. Null for {@link Stage#CAPTURED}. */
+    public LatencyHistogram getHistogram(Stage stage) {
+        return histograms[stage.ordinal()];
+    }
+
+    /** Capture to drawn. */
+    public LatencyHistogram getTotal() {
+        return total;
+    }
+
+    public void reset() {
+        for (int i = 1; i < STAGE_COUNT; i++) {
+            histograms[i].reset();
+        }
+        total.reset();
+        uplink.reset();
+        server.reset();
+        downlink.reset();
+    }
+
+    /**
+     * Appends a fixed-width table of count and p50/p95/p99/max in milliseconds,
+     * one stage per line, then the uplink, server and downlink split.
+     */
+    public void appendSummary(StringBuilder out) {
+        out.append(String.format(Locale.ROOT, "%-10s %6s %7s %7s %7s %7s%n",
+            "stage", "n", "p50", "p95", "p99", "max"));
+        for (int i = 1; i < STAGE_COUNT; i++) {
+            appendSummaryRow(out, STAGES[i].label, histograms[i]);
+        }
+        appendSummaryRow(out, "uplink", uplink);
+        appendSummaryRow(out, "server", server);
+        appendSummaryRow(out, "downlink", downlink);
+        appendSummaryRow(out, "total", total);
+    }
+
+    private static void appendSummaryRow(StringBuilder out, String label, LatencyHistogram histogram) {
+        out.append(String.format(Locale.ROOT, "%-10s %6d %7.1f %7.1f %7.1f %7.1f%n",
+            label, histogram.getCount(),
+            histogram.getPercentileMicros(50) / 1000.0,
+            histogram.getPercentileMicros(95) / 1000.0,
+            histogram.getPercentileMicros(99) / 1000.0,
+            histogram.getMaxMicros() / 1000.0));
+    }
+
+    /** Writes every stage and the network split as CSV with a header row; times are in milliseconds. */
+    public void writeCsv(Writer out) throws IOException {
+        out.write("stage,count,p50_ms,p95_ms,p99_ms,max_ms\n");
+        for (int i = 1; i < STAGE_COUNT; i++) {
+            writeCsvRow(out, STAGES[i].label, histograms[i]);
+        }
+        writeCsvRow(out, "uplink", uplink);
+        writeCsvRow(out, "server", server);
+        writeCsvRow(out, "downlink", downlink);
+        writeCsvRow(out, "total", total);
+        out.flush();
+    }
+
+    private static void writeCsvRow(Writer out, String label, LatencyHistogram histogram) throws IOException {
+        out.write(String.format(Locale.ROOT, "%s,%d,%.3f,%.3f,%.3f,%.3f\n",
+            label, histogram.getCount(),
+            histogram.getPercentileMicros(50) / 1000.0,
+            histogram.getPercentileMicros(95) / 1000.0,
+            histogram.getPercentileMicros(99) / 1000.0,
+            histogram.getMaxMicros() / 1000.0));
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Sends frames as raw image planes instead of JPEG, optionally LZ4-compressed.
+ *
+ * On a fast link (USB via {@code adb reverse}, wired Ethernet) JPEG encoding
+ * takes longer than sending the pixels, and the server then spends more time
+ * decoding them. Raw planes cost only a copy on each side; LZ4 halves the
+ * bytes at a fraction of JPEG's cost. The payload is a big-endian prefix
+ * followed by the planes:
+ *
+ * <pre>
+ *  offset size field
+ *       0    4 row stride in bytes, of the Y plane and the interleaved VU plane
+ *       4    4 uncompressed length of the planes
+ *       8    - Y rows, then VU rows for NV21; LZ4 block for the *_LZ4 formats
+ * </pre>
+ *
+ * Each {@link #encode} call must come from the same thread.
+ */
+public class RawFrameEncoder {
+    public static final int PREFIX_SIZE = 8;
+    private static final int POOL_SIZE = 4;
+
+    private final FrameBufferPool pool;
+    private final Lz4BlockCompressor compressor = new Lz4BlockCompressor();
+    // Compression target when the output is a direct buffer
+    private byte[] scratch = new byte[0];
+
+    /**
+     * @param directOutput write payloads into direct buffers, for NIO transports
+     */
+    public RawFrameEncoder(boolean directOutput) {
+        this.pool = new FrameBufferPool("raw", POOL_SIZE, directOutput);
+    }
+
+    public static boolean isRawFormat(int format) {
+        return format == FrameCodec.FORMAT_NV21 || format == FrameCodec.FORMAT_NV21_LZ4
+            || format == FrameCodec.FORMAT_GRAY || format == FrameCodec.FORMAT_GRAY_LZ4;
+    }
+
+    public static boolean isCompressed(int format) {
+        return format == FrameCodec.FORMAT_NV21_LZ4 || format == FrameCodec.FORMAT_GRAY_LZ4;
+    }
+
+    /** Bytes of plane data in a raw frame, before compression. */
+    public static int rawLength(int format, int width, int height) {
+        return format == FrameCodec.FORMAT_GRAY || format == FrameCodec.FORMAT_GRAY_LZ4
+            ? width * height : Nv21Packer.nv21Size(width, height);
+    }
+
+    /**
+     * Writes a tightly packed NV21 frame in one of the raw formats. Returns null
+     * if every output buffer is still waiting to be sent. The NV21 buffer is not
+     * released.
+     */
+    public FrameBuffer encode(FrameBuffer nv21, int width, int height, int format) {
+        if (!isRawFormat(format)) {
+            throw new IllegalArgumentException("Not a raw format: " + FrameCodec.formatName(format));
+        }
+        int rawLength = rawLength(format, width, height);
+        boolean compress = isCompressed(format);
+        int maxLength = PREFIX_SIZE + (compress ? Lz4BlockCompressor.maxCompressedLength(rawLength) : rawLength);
+        FrameBuffer out = pool.acquire(maxLength);
+        if (out == null) {
+            return null;
+        }
+
+        byte[] planes = nv21.data();
+        ByteBuffer dst = out.byteBuffer();
+        dst.limit(dst.capacity());
+        dst.order(ByteOrder.BIG_ENDIAN);
+        dst.putInt(width);
+        dst.putInt(rawLength);
+        if (!compress) {
+            dst.put(planes, 0, rawLength);
+        } else if (out.isDirect()) {
+            if (scratch.length < maxLength) {
+                scratch = new byte[maxLength];
+            }
+            int length = compressor.compress(planes, 0, rawLength, scratch, 0);
+            dst.put(scratch, 0, length);
+        } else {
+            int length = compressor.compress(planes, 0, rawLength, out.data(), PREFIX_SIZE);
+            dst.position(PREFIX_SIZE + length);
+        }
+        out.setLength(dst.position());
+        return out;
+    }
+
+    public FrameBufferPool getPool() {
+        return pool;
+    }
+}
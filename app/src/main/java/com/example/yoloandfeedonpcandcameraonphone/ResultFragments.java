@@ -0,0 +1,216 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Fragmentation of result datagrams too large for one packet. A client that
+ * names a {@code max_datagram_size} in CONNECT gets any longer result (a
+ * binary or JSON DETECTIONS message) split into fragments of at most that
+ * size, each carrying part of the message:
+ *
+ * <pre>
+ *  offset size field
+ *       0    4 magic ("YFPC")
+ *       4    1 version
+ *       5    1 fragment index
+ *       6    1 fragment count
+ *       7    1 reserved
+ *       8    4 message sequence number, per client
+ *      12    4 message length
+ *      16    4 offset of this fragment's bytes in the message
+ *      20      fragment bytes
+ * </pre>
+ *
+ * Results that fit in one datagram are sent whole, as before, so the common
+ * case costs nothing extra. Fragments may arrive in any order; a message with
+ * a missing fragment is dropped like a lost datagram once newer messages
+ * push it out. Keeping fragments under the path MTU also avoids IP
+ * fragmentation, where losing any piece loses the whole datagram silently.
+ * All fields are big-endian.
+ */
+public final class ResultFragments {
+    public static final int MAGIC = 0x59465043; // "YFPC"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 20;
+    /** Fits an Ethernet or WiFi MTU of 1500 with IP and UDP headers to spare. */
+    public static final int DEFAULT_DATAGRAM_SIZE = 1400;
+    public static final int MAX_FRAGMENTS = 64;
+    /** Largest datagram a receive buffer must hold, unfragmented results included. */
+    public static final int MAX_DATAGRAM_SIZE = 65507;
+
+    private ResultFragments() {
+    }
+
+    /** True if the datagram is a fragment rather than a whole message. */
+    public static boolean isFragment(byte[] data, int offset, int length) {
+        return length >= 4
+            && data[offset] == 'Y' && data[offset + 1] == 'F'
+            && data[offset + 2] == 'P' && data[offset + 3] == 'C';
+    }
+
+    /** Receives fragments of one sender's messages. */
+    public interface FragmentSink {
+        void send(byte[] datagram, int length);
+    }
+
+    /**
+     * Splits a message into fragments of at most {@code datagramSize} bytes
+     * and passes each to {@code sink}; a message that fits is passed whole.
+     * Used by tests and local stand-in servers; the phone only reassembles.
+     *
+     * @throws IllegalArgumentException if it takes more than {@link #MAX_FRAGMENTS}
+     */
+    public static void split(byte[] message, int length, int sequence, int datagramSize, FragmentSink sink) {
+        if (length <= datagramSize) {
+            sink.send(message, length);
+            return;
+        }
+        int chunk = datagramSize - HEADER_SIZE;
+        int count = (length + chunk - 1) / chunk;
+        if (chunk <= 0 || count > MAX_FRAGMENTS) {
+            throw new IllegalArgumentException(length + " bytes do not fit in " + MAX_FRAGMENTS
+                + " fragments of " + datagramSize);
+        }
+        ByteBuffer out = ByteBuffer.allocate(datagramSize).order(ByteOrder.BIG_ENDIAN);
+        for (int index = 0; index < count; index++) {
+            int offset = index * chunk;
+            int n = Math.min(chunk, length - offset);
+            out.clear();
+            out.putInt(MAGIC);
+            out.put((byte) VERSION);
+            out.put((byte) index);
+            out.put((byte) count);
+            out.put((byte) 0);
+            out.putInt(sequence);
+            out.putInt(length);
+            out.putInt(offset);
+            out.put(message, offset, n);
+            sink.send(out.array(), out.position());
+        }
+    }
+
+    /**
+     * Puts one sender's messages back together. Holds a few messages at a
+     * time; fragment buffers are reused, so steady reassembly does not
+     * allocate. Not thread-safe: owned by the listener thread.
+     */
+    public static final class Reassembler {
+        private static final int SLOTS = 4;
+
+        private final int[] sequences = new int[SLOTS];
+        private final int[] lengths = new int[SLOTS];
+        private final int[] counts = new int[SLOTS];
+        private final long[] received = new long[SLOTS];
+        private final byte[][] buffers = new byte[SLOTS][];
+        private final boolean[] inUse = new boolean[SLOTS];
+        private byte[] message;
+        private long completedCount;
+        private long incompleteCount;
+
+        /**
+         * Adds a fragment.
+         *
+         * @return the message length once its last fragment has arrived, with
+         *         the bytes in {@link #message()}; -1 while fragments are missing
+         * @throws ProtocolException if the fragment is malformed
+         */
+        public int offer(byte[] data, int offset, int length) throws ProtocolException {
+            if (length < HEADER_SIZE || !isFragment(data, offset, length)) {
+                throw new ProtocolException("Not a result fragment");
+            }
+            int version = data[offset + 4] & 0xFF;
+            if (version != VERSION) {
+                throw new ProtocolException("Unsupported fragment version: " + version);
+            }
+            int index = data[offset + 5] & 0xFF;
+            int count = data[offset + 6] & 0xFF;
+            int sequence = readInt(data, offset + 8);
+            int messageLength = readInt(data, offset + 12);
+            int position = readInt(data, offset + 16);
+            int n = length - HEADER_SIZE;
+            if (count == 0 || count > MAX_FRAGMENTS || index >= count
+                    || messageLength <= 0 || messageLength > count * (MAX_DATAGRAM_SIZE - HEADER_SIZE)
+                    || position < 0 || position > messageLength - n) {
+                throw new ProtocolException("Bad fragment " + index + "/" + count + " at " + position
+                    + " of " + messageLength);
+            }
+
+            int slot = slotFor(sequence, messageLength, count);
+            long bit = 1L << index;
+            if ((received[slot] & bit) != 0) {
+                // Duplicate
+                return -1;
+            }
+            received[slot] |= bit;
+            System.arraycopy(data, offset + HEADER_SIZE, buffers[slot], position, n);
+            if (received[slot] != (count == Long.SIZE ? -1L : (1L << count) - 1)) {
+                return -1;
+            }
+            inUse[slot] = false;
+            completedCount++;
+            message = buffers[slot];
+            return messageLength;
+        }
+
+        /** The last completed message; valid until the next {@link #offer}. */
+        public byte[] message() {
+            return message;
+        }
+
+        private int slotFor(int sequence, int messageLength, int count) {
+            int free = -1;
+            int oldest = -1;
+            for (int i = 0; i < SLOTS; i++) {
+                if (!inUse[i]) {
+                    if (free < 0) {
+                        free = i;
+                    }
+                } else if (sequences[i] == sequence) {
+                    if (lengths[i] == messageLength && counts[i] == count) {
+                        return i;
+                    }
+                    // A sequence number reused by a restarted server
+                    incompleteCount++;
+                    return start(i, sequence, messageLength, count);
+                } else if (oldest < 0 || sequences[i] - sequences[oldest] < 0) {
+                    oldest = i;
+                }
+            }
+            int slot = free;
+            if (slot < 0) {
+                // Still missing fragments; a newer message pushes it out
+                slot = oldest;
+                incompleteCount++;
+            }
+            return start(slot, sequence, messageLength, count);
+        }
+
+        private int start(int slot, int sequence, int messageLength, int count) {
+            if (buffers[slot] == null || buffers[slot].length < messageLength) {
+                buffers[slot] = new byte[Math.max(messageLength, DEFAULT_DATAGRAM_SIZE * 4)];
+            }
+            inUse[slot] = true;
+            sequences[slot] = sequence;
+            lengths[slot] = messageLength;
+            counts[slot] = count;
+            received[slot] = 0;
+            return slot;
+        }
+
+        public long getCompletedCount() {
+            return completedCount;
+        }
+
+        /** Messages given up on because fragments never arrived. */
+        public long getIncompleteCount() {
+            return incompleteCount;
+        }
+    }
+
+    private static int readInt(byte[] data, int p) {
+        return (data[p] & 0xFF) << 24 | (data[p + 1] & 0xFF) << 16
+            | (data[p + 2] & 0xFF) << 8 | (data[p + 3] & 0xFF);
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+/**
+ * Puts results from several servers back into frame id order.
+ *
+ * Frames are registered as they are written ({@link #onDispatched}), with the
+ * server they went to. A result is released ({@link #poll}) once every older
+ * frame has either been released or given up on, so results are never
+ * delivered out of order. A frame is given up on when:
+ * <ul>
+ *   <li>its server answers a newer frame, since each server answers in order;</li>
+ *   <li>its server goes down ({@link #onServerDown});</li>
+ *   <li>a newer result has been held for {@code maxHoldNs} waiting for it.</li>
+ * </ul>
+ * A result for a frame older than one already released is dropped as late.
+ *
+ * Results are copied into buffers preallocated per slot, so nothing is
+ * allocated per frame. All methods are thread-safe: frames are dispatched on
+ * the writer threads and results arrive on the listener thread.
+ */
+public class ResultReorderBuffer {
+    private static final int OUTSTANDING = 0;
+    private static final int READY = 1;
+    private static final int LOST = 2;
+
+    private final long maxHoldNs;
+    private final long[] frameIds;
+    private final int[] serverIds;
+    private final int[] states;
+    private final long[] readySinceNs;
+    private final DetectionBuffer[] results;
+    private int head;
+    private int count;
+    private long lastReleasedId = Long.MIN_VALUE;
+
+    private long releasedCount;
+    private long lateCount;
+    private long skippedCount;
+
+    public ResultReorderBuffer(int capacity, long maxHoldMs) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.maxHoldNs = maxHoldMs * 1_000_000L;
+        frameIds = new long[capacity];
+        serverIds = new int[capacity];
+        states = new int[capacity];
+        readySinceNs = new long[capacity];
+        results = new DetectionBuffer[capacity];
+        for (int i = 0; i < capacity; i++) {
+            results[i] = new DetectionBuffer();
+        }
+    }
+
+    private int slot(int index) {
+        return (head + index) % frameIds.length;
+    }
+
+    /**
+     * Registers a frame written to {@code serverId}. Frames may be registered
+     * slightly out of order by different writer threads; they are kept sorted.
+     * When full, the oldest frame is given up on.
+     */
+    public synchronized void onDispatched(long frameId, int serverId) {
+        if (frameId <= lastReleasedId) {
+            return;
+        }
+        if (count == frameIds.length) {
+            removeHead();
+            skippedCount++;
+        }
+        int index = count;
+        while (index > 0 && frameIds[slot(index - 1)] > frameId) {
+            int from = slot(index - 1);
+            int to = slot(index);
+            frameIds[to] = frameIds[from];
+            serverIds[to] = serverIds[from];
+            states[to] = states[from];
+            readySinceNs[to] = readySinceNs[from];
+            // Swap so every slot keeps its own preallocated buffer
+            DetectionBuffer buffer = results[to];
+            results[to] = results[from];
+            results[from] = buffer;
+            index--;
+        }
+        int s = slot(index);
+        frameIds[s] = frameId;
+        serverIds[s] = serverId;
+        states[s] = OUTSTANDING;
+        count++;
+    }
+
+    /**
+     * Copies in the result for a dispatched frame.
+     *
+     * @return false if the result was dropped, because its frame was released
+     *         past, given up on or never dispatched
+     */
+    public synchronized boolean offer(DetectionBuffer result, int serverId, long nowNs) {
+        for (int i = 0; i < count; i++) {
+            int s = slot(i);
+            if (frameIds[s] == result.frameId) {
+                if (states[s] != OUTSTANDING) {
+                    lateCount++;
+                    return false;
+                }
+                results[s].copyFrom(result);
+                states[s] = READY;
+                readySinceNs[s] = nowNs;
+                // Older frames on the same server will not be answered
+                for (int j = 0; j < i; j++) {
+                    int older = slot(j);
+                    if (serverIds[older] == serverId && states[older] == OUTSTANDING) {
+                        states[older] = LOST;
+                    }
+                }
+                return true;
+            }
+        }
+        lateCount++;
+        return false;
+    }
+
+    /** Gives up on every frame still waiting for {@code serverId}. */
+    public synchronized void onServerDown(int serverId) {
+        for (int i = 0; i < count; i++) {
+            int s = slot(i);
+            if (serverIds[s] == serverId && states[s] == OUTSTANDING) {
+                states[s] = LOST;
+            }
+        }
+    }
+
+    /**
+     * Copies the next result in frame order into {@code out}.
+     *
+     * @return false if no result can be released yet
+     */
+    public synchronized boolean poll(long nowNs, DetectionBuffer out) {
+        while (count > 0) {
+            int s = slot(0);
+            if (states[s] == LOST) {
+                removeHead();
+                skippedCount++;
+            } else if (states[s] == READY) {
+                out.copyFrom(results[s]);
+                lastReleasedId = frameIds[s];
+                removeHead();
+                releasedCount++;
+                return true;
+            } else if (nowNs >= nextReleaseNs()) {
+                // A newer result has waited long enough for this one
+                states[s] = LOST;
+            } else {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * When a held result must be released even if nothing else arrives, or
+     * {@link Long#MAX_VALUE} if no result is held.
+     */
+    public synchronized long nextReleaseNs() {
+        long oldest = oldestReadySinceNs();
+        return oldest == Long.MAX_VALUE ? Long.MAX_VALUE : oldest + maxHoldNs;
+    }
+
+    private long oldestReadySinceNs() {
+        long oldest = Long.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            int s = slot(i);
+            if (states[s] == READY && readySinceNs[s] < oldest) {
+                oldest = readySinceNs[s];
+            }
+        }
+        return oldest;
+    }
+
+    private void removeHead() {
+        head = (head + 1) % frameIds.length;
+        count--;
+    }
+
+    public synchronized void clear() {
+        head = 0;
+        count = 0;
+        lastReleasedId = Long.MIN_VALUE;
+    }
+
+    public synchronized long getReleasedCount() {
+        return releasedCount;
+    }
+
+    /** Results dropped because their frame had already been released past or given up on. */
+    public synchronized long getLateCount() {
+        return lateCount;
+    }
+
+    /** Frames released past without a result. */
+    public synchronized long getSkippedCount() {
+        return skippedCount;
+    }
+}
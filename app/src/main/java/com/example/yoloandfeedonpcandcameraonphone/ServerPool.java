@@ -0,0 +1,362 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ * The servers a client streams to, and the choice of which one gets each frame.
+ *
+ * {@link #discover} collects every server that answers DISCOVER within a
+ * window, with the frame rate it says it can sustain and the fraction of that
+ * already used by other clients. Each connected server has its own
+ * {@link FrameSender}, and {@link #select} picks the server for the next frame:
+ * <ul>
+ *   <li>{@link Policy#LEAST_IN_FLIGHT}: fewest frames queued or unanswered,
+ *       relative to the server's spare capacity.</li>
+ *   <li>{@link Policy#LEAST_LATENCY}: lowest expected time to an answer, the
+ *       server's smoothed round trip times the frames ahead of this one. Until
+ *       its first answer, a server's round trip is one frame at its spare
+ *       capacity.</li>
+ * </ul>
+ *
+ * A server is marked down when a write to it fails ({@link #markDown}), or
+ * when a frame sent to it has gone unanswered for {@code failoverMs} while
+ * other servers are up ({@link #checkHealth}). One frame is enough: both
+ * policies steer new frames away from a server that holds one, so a hung
+ * server may never get a second. The last server that is up is never failed
+ * this way; its frame credits time out instead, and it keeps streaming once
+ * it answers again. A down server is never selected again until it is
+ * connected again. All methods are thread-safe.
+ */
+public class ServerPool {
+    public enum Policy {
+        LEAST_IN_FLIGHT,
+        LEAST_LATENCY
+    }
+
+    // Servers that do not advertise a capacity
+    private static final float DEFAULT_CAPACITY_FPS = 10f;
+    // A server reported as fully loaded still gets a share
+    private static final float MIN_SPARE_FPS = 0.5f;
+
+    /**
+     * One server. Discovery fills in the address and advertised capacity; the
+     * connection fields are set by the owner of the connection.
+     */
+    public static final class Server {
+        public final int id;
+        public final InetSocketAddress address;
+        volatile String name;
+        volatile float capacityFps;
+        volatile float load;
+
+        // Connection, owned by the client
+        volatile FrameTransport transport;
+        volatile FrameSender sender;
+        final ClockOffsetEstimator clockOffset = new ClockOffsetEstimator();
+        /** Results split over several datagrams; listener thread only. */
+        final ResultFragments.Reassembler resultFragments = new ResultFragments.Reassembler();
+        /** {@link FrameCodec} format picked in this server's CONNECT_ACK. */
+        volatile int frameFormat = FrameCodec.FORMAT_JPEG;
+        volatile int acceptedFrameFormats = 1 << FrameCodec.FORMAT_JPEG;
+
+        // Guarded by the pool
+        private boolean up;
+        private long rttNs;
+        private long unansweredSinceNs;
+        private long answeredCount;
+
+        Server(int id, InetSocketAddress address) {
+            this.id = id;
+            this.address = address;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /** Frames per second the server advertised, or 0 if it did not. */
+        public float getCapacityFps() {
+            return capacityFps;
+        }
+
+        /** Fraction of its capacity the server was using when it answered discovery. */
+        public float getLoad() {
+            return load;
+        }
+
+        float spareFps() {
+            float capacity = capacityFps > 0 ? capacityFps : DEFAULT_CAPACITY_FPS;
+            return Math.max(MIN_SPARE_FPS, capacity * (1 - Math.min(1, Math.max(0, load))));
+        }
+
+        int queuedFrames() {
+            FrameSender s = sender;
+            return s != null ? s.getInFlight() + s.getPendingCount() : 0;
+        }
+
+        @Override
+        public String toString() {
+            String host = address.getAddress().getHostAddress() + ":" + address.getPort();
+            return name != null ? name + " (" + host + ")" : host;
+        }
+    }
+
+    private final List<Server> servers = new ArrayList<>();
+    private final long failoverNs;
+    private int nextId;
+
+    public ServerPool(long failoverMs) {
+        if (failoverMs <= 0) {
+            throw new IllegalArgumentException("failoverMs must be positive");
+        }
+        this.failoverNs = failoverMs * 1_000_000L;
+    }
+
+    /**
+     * Sends {@code request} to each target (a broadcast address, or single
+     * servers) and adds every server that answers within {@code windowMs}.
+     * A server listens on the port in its reply, or {@code defaultPort}.
+     *
+     * @return number of servers that answered
+     */
+    public int discover(DatagramSocket socket, byte[] request, long windowMs, int defaultPort,
+                        SocketAddress... targets) throws IOException {
+        for (SocketAddress target : targets) {
+            socket.send(new DatagramPacket(request, request.length, target));
+        }
+        byte[] buffer = new byte[1024];
+        DatagramPacket response = new DatagramPacket(buffer, buffer.length);
+        long deadline = System.nanoTime() + windowMs * 1_000_000L;
+        int answered = 0;
+        while (true) {
+            long remainingMs = (deadline - System.nanoTime()) / 1_000_000L;
+            if (remainingMs <= 0) {
+                return answered;
+            }
+            socket.setSoTimeout((int) remainingMs);
+            response.setLength(buffer.length);
+            try {
+                socket.receive(response);
+            } catch (SocketTimeoutException e) {
+                return answered;
+            }
+            YFPMessage message;
+            try {
+                message = YFPMessage.fromJson(new String(buffer, 0, response.getLength()));
+            } catch (RuntimeException e) {
+                continue;
+            }
+            if (message.type != YFPMessage.MessageType.DISCOVER
+                    || !(message.data instanceof YFPMessage.DiscoverData)) {
+                continue;
+            }
+            YFPMessage.DiscoverData reply = (YFPMessage.DiscoverData) message.data;
+            int port = reply.port > 0 ? reply.port : defaultPort;
+            Server server = add(new InetSocketAddress(response.getAddress(), port));
+            server.name = reply.serverName;
+            server.capacityFps = reply.capacityFps;
+            server.load = reply.load;
+            answered++;
+        }
+    }
+
+    /** Adds a server, or returns the one already known at {@code address}. It starts down. */
+    public synchronized Server add(InetSocketAddress address) {
+        for (Server server : servers) {
+            if (server.address.equals(address)) {
+                return server;
+            }
+        }
+        Server server = new Server(nextId++, address);
+        servers.add(server);
+        return server;
+    }
+
+    /** Forgets every server. Their connections must already be closed. */
+    public synchronized void clear() {
+        servers.clear();
+    }
+
+    /** Snapshot of the known servers, most spare capacity first. */
+    public synchronized List<Server> getServers() {
+        List<Server> list = new ArrayList<>(servers);
+        list.sort((a, b) -> Float.compare(b.spareFps(), a.spareFps()));
+        return list;
+    }
+
+    /** The server a datagram came from, or null. Does not allocate. */
+    public synchronized Server find(InetAddress address, int port) {
+        for (int i = 0; i < servers.size(); i++) {
+            Server server = servers.get(i);
+            if (server.address.getPort() == port && server.address.getAddress().equals(address)) {
+                return server;
+            }
+        }
+        return null;
+    }
+
+    /** Makes a connected server selectable; its health is tracked from now on. */
+    public synchronized void markUp(Server server) {
+        server.up = true;
+        server.rttNs = 0;
+        server.unansweredSinceNs = 0;
+    }
+
+    /** @return false if the server was already down */
+    public synchronized boolean markDown(Server server) {
+        boolean wasUp = server.up;
+        server.up = false;
+        return wasUp;
+    }
+
+    public synchronized boolean isUp(Server server) {
+        return server.up;
+    }
+
+    public synchronized int getUpCount() {
+        int count = 0;
+        for (int i = 0; i < servers.size(); i++) {
+            if (servers.get(i).up) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /** First server that is up, in the order they were added, or null. */
+    public synchronized Server getPrimary() {
+        for (int i = 0; i < servers.size(); i++) {
+            if (servers.get(i).up) {
+                return servers.get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The format every server that is up picked in its CONNECT_ACK, or JPEG if
+     * they picked different ones or none is up.
+     */
+    public synchronized int getCommonFrameFormat() {
+        int format = -1;
+        for (int i = 0; i < servers.size(); i++) {
+            Server server = servers.get(i);
+            if (server.up) {
+                if (format != -1 && format != server.frameFormat) {
+                    return FrameCodec.FORMAT_JPEG;
+                }
+                format = server.frameFormat;
+            }
+        }
+        return format != -1 ? format : FrameCodec.FORMAT_JPEG;
+    }
+
+    /** Formats every server that is up accepts, one bit per format; JPEG is always included. */
+    public synchronized int getCommonAcceptedFormats() {
+        int mask = ~0;
+        for (int i = 0; i < servers.size(); i++) {
+            Server server = servers.get(i);
+            if (server.up) {
+                mask &= server.acceptedFrameFormats;
+            }
+        }
+        return mask == ~0 ? 1 << FrameCodec.FORMAT_JPEG : mask | 1 << FrameCodec.FORMAT_JPEG;
+    }
+
+    /** Sum of a counter over the senders of every server, up or down. */
+    public synchronized long sumSenders(ToLongFunction<FrameSender> counter) {
+        long sum = 0;
+        for (int i = 0; i < servers.size(); i++) {
+            FrameSender sender = servers.get(i).sender;
+            if (sender != null) {
+                sum += counter.applyAsLong(sender);
+            }
+        }
+        return sum;
+    }
+
+    /** The server that should get the next frame, or null if none is up. */
+    public synchronized Server select(Policy policy) {
+        Server best = null;
+        double bestScore = Double.MAX_VALUE;
+        for (int i = 0; i < servers.size(); i++) {
+            Server server = servers.get(i);
+            if (!server.up || server.sender == null) {
+                continue;
+            }
+            int ahead = server.queuedFrames() + 1;
+            double score;
+            if (policy == Policy.LEAST_LATENCY) {
+                double rttNs = server.rttNs > 0 ? server.rttNs : 1e9 / server.spareFps();
+                score = rttNs * ahead;
+            } else {
+                score = ahead / server.spareFps();
+            }
+            if (score < bestScore) {
+                best = server;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /** Writer thread: a frame went out to {@code server}. */
+    public synchronized void onSent(Server server, long nowNs) {
+        if (server.unansweredSinceNs == 0) {
+            server.unansweredSinceNs = nowNs;
+        }
+    }
+
+    /**
+     * A result came back from {@code server}.
+     *
+     * @param rttNs time from sending the frame to its result, or 0 if unknown
+     */
+    public synchronized void onAnswered(Server server, long rttNs, long nowNs) {
+        if (rttNs > 0) {
+            server.rttNs = server.rttNs == 0 ? rttNs : server.rttNs + (rttNs - server.rttNs) / 4;
+        }
+        server.answeredCount++;
+        // Frames sent since are unanswered from now, not from when they went out
+        FrameSender sender = server.sender;
+        server.unansweredSinceNs = sender != null && sender.getInFlight() > 0 ? nowNs : 0;
+    }
+
+    /**
+     * Marks down the first server that has stopped answering and returns it,
+     * or returns null. Never marks down the last server that is up. Call
+     * until it returns null.
+     */
+    public synchronized Server checkHealth(long nowNs) {
+        if (getUpCount() < 2) {
+            return null;
+        }
+        for (int i = 0; i < servers.size(); i++) {
+            Server server = servers.get(i);
+            if (server.up && server.unansweredSinceNs != 0
+                    && nowNs - server.unansweredSinceNs > failoverNs) {
+                server.up = false;
+                return server;
+            }
+        }
+        return null;
+    }
+
+    /** Smoothed round trip from sending a frame to its result; 0 before the first one. */
+    public synchronized long getRttNs(Server server) {
+        return server.rttNs;
+    }
+
+    public synchronized long getAnsweredCount(Server server) {
+        return server.answeredCount;
+    }
+}
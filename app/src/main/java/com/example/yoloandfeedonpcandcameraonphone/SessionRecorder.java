@@ -0,0 +1,379 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Records every frame sent and every result received to a directory, for
+ * {@link SessionReplayer} to send again later.
+ *
+ * Callers copy a record into an off-heap ring under a short lock and return;
+ * nothing on their thread touches the disk. If the ring is full the record is
+ * dropped and counted, rather than stalling the capture pipeline. A flusher
+ * thread appends records from the ring to a memory-mapped data file and adds
+ * one index entry per record to a memory-mapped index file. Pages written to a
+ * shared mapping outlive the process, so a recording survives a crash up to
+ * the last record flushed.
+ *
+ * Data file, {@link #DATA_FILE}:
+ * <pre>
+ *  offset size field
+ *       0    4 magic ("YFPR")
+ *       4    4 version
+ *       8    8 wall clock at start (ms since the epoch)
+ *  then one record after another:
+ *       0    4 body length
+ *       4    1 type, {@link #TYPE_FRAME} or {@link #TYPE_DETECTIONS}
+ *       5    3 reserved
+ *       8    8 frame id
+ *      16    8 record time (ns, {@link System#nanoTime()})
+ *      24      body: a {@link FrameCodec} header and payload, or a
+ *              {@link DetectionsCodec} datagram
+ * </pre>
+ *
+ * Index file, {@link #INDEX_FILE}, one entry per record in the order written:
+ * <pre>
+ *       0    8 frame id
+ *       8    8 record time (ns)
+ *      16    8 record offset in the data file
+ *      24    4 type
+ *      28    4 body length
+ * </pre>
+ *
+ * Record times never decrease. All fields are big-endian. A type of 0 marks
+ * the end of both files if the recording was not closed.
+ */
+public class SessionRecorder {
+    public static final String DATA_FILE = "records.dat";
+    public static final String INDEX_FILE = "records.idx";
+    public static final int MAGIC = 0x59465052; // "YFPR"
+    public static final int VERSION = 1;
+    public static final int FILE_HEADER_SIZE = 16;
+    public static final int RECORD_HEADER_SIZE = 24;
+    public static final int INDEX_ENTRY_SIZE = 32;
+    public static final int TYPE_FRAME = 1;
+    public static final int TYPE_DETECTIONS = 2;
+    public static final int DEFAULT_RING_BYTES = 16 * 1024 * 1024;
+
+    // Files are mapped this much at a time, and grow by as much
+    private static final int DATA_WINDOW_BYTES = 16 * 1024 * 1024;
+    private static final int INDEX_WINDOW_BYTES = 256 * 1024;
+    // Records start on this alignment in the ring, so a wrap always leaves room for the marker
+    private static final int RING_ALIGNMENT = 8;
+    private static final int WRAP_MARKER = -1;
+    private static final long FLUSH_INTERVAL_MS = 100;
+
+    private final File directory;
+    private final ByteBuffer ring;
+    private final int ringCapacity;
+    private final MappedFile data;
+    private final MappedFile index;
+    private final Thread flusher;
+    private final FrameCodec.FrameHeader frameHeader = new FrameCodec.FrameHeader();
+
+    // Guarded by this; the flusher copies [tail, head) out without the lock
+    private final ByteBuffer ringWriter;
+    private long head;
+    private long tail;
+    private long lastRecordNs;
+    private boolean closed;
+    private boolean filesClosed;
+    private long recordsDropped;
+
+    // Flusher thread
+    private final ByteBuffer ringReader;
+    private final ByteBuffer indexEntry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+    private volatile long recordsWritten;
+    private volatile IOException flushError;
+
+    public SessionRecorder(File directory) throws IOException {
+        this(directory, DEFAULT_RING_BYTES);
+    }
+
+    /**
+     * Starts a recording in {@code directory}, which is created if needed.
+     * Records larger than half of {@code ringBytes} are always dropped.
+     */
+    public SessionRecorder(File directory, int ringBytes) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        this.directory = directory;
+        ringCapacity = ringBytes / RING_ALIGNMENT * RING_ALIGNMENT;
+        if (ringCapacity < RING_ALIGNMENT * 2) {
+            throw new IllegalArgumentException("Ring too small: " + ringBytes);
+        }
+        ring = ByteBuffer.allocateDirect(ringCapacity).order(ByteOrder.BIG_ENDIAN);
+        ringWriter = ring.duplicate().order(ByteOrder.BIG_ENDIAN);
+        ringReader = ring.duplicate().order(ByteOrder.BIG_ENDIAN);
+        data = new MappedFile(new File(directory, DATA_FILE), DATA_WINDOW_BYTES);
+        try {
+            index = new MappedFile(new File(directory, INDEX_FILE), INDEX_WINDOW_BYTES);
+        } catch (IOException e) {
+            data.close();
+            throw e;
+        }
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putLong(System.currentTimeMillis()).flip();
+        data.append(header);
+
+        flusher = new Thread(this::flushLoop, "session-recorder");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Copies a frame that is about to be written, or has just been, into the
+     * ring. The payload buffer is read from 0 to its length and not released.
+     *
+     * @return false if the recorder is closed or the ring has no room
+     */
+    public boolean recordFrame(FrameBuffer payload, long frameId, long captureTimestampNs,
+                               int width, int height, int format, int quality) {
+        int length = payload.length();
+        int bodyLength = FrameCodec.HEADER_SIZE + length;
+        synchronized (this) {
+            ByteBuffer out = reserve(TYPE_FRAME, frameId, bodyLength);
+            if (out == null) {
+                return false;
+            }
+            frameHeader.set(frameId, captureTimestampNs, width, height, format, quality, length);
+            FrameCodec.encodeHeader(frameHeader, out);
+            out.put(payload.byteBuffer());
+            commit(bodyLength);
+            return true;
+        }
+    }
+
+    /**
+     * Copies a result into the ring, in the binary DETECTIONS format with
+     * coordinates rounded as on the wire.
+     *
+     * @return false if the recorder is closed or the ring has no room
+     */
+    public boolean recordDetections(DetectionBuffer detections) {
+        if (detections.count > 0xFFFF) {
+            return false;
+        }
+        int bodyLength = DetectionsCodec.HEADER_SIZE + detections.count * DetectionsCodec.RECORD_SIZE
+            + (detections.serverReceiveNs != 0 || detections.serverSendNs != 0 ? DetectionsCodec.SERVER_TIMES_SIZE : 0);
+        synchronized (this) {
+            ByteBuffer out = reserve(TYPE_DETECTIONS, detections.frameId, bodyLength);
+            if (out == null) {
+                return false;
+            }
+            DetectionsCodec.encode(detections, out);
+            commit(bodyLength);
+            return true;
+        }
+    }
+
+    /**
+     * Writes a record header into the ring and returns the writer positioned at
+     * the body, or null if the record does not fit. Caller holds the lock.
+     */
+    private ByteBuffer reserve(int type, long frameId, int bodyLength) {
+        if (closed) {
+            return null;
+        }
+        int size = alignedSize(bodyLength);
+        int offset = (int) (head % ringCapacity);
+        int wrap = offset + size > ringCapacity ? ringCapacity - offset : 0;
+        if (size > ringCapacity / 2 || head + wrap + size - tail > ringCapacity) {
+            recordsDropped++;
+            return null;
+        }
+        if (wrap > 0) {
+            ringWriter.putInt(offset, WRAP_MARKER);
+            head += wrap;
+            offset = 0;
+        }
+        // Taken under the lock, so record times follow ring order
+        long nowNs = Math.max(lastRecordNs, System.nanoTime());
+        lastRecordNs = nowNs;
+        ringWriter.clear();
+        ringWriter.position(offset);
+        ringWriter.putInt(bodyLength);
+        ringWriter.putInt(type << 24);
+        ringWriter.putLong(frameId);
+        ringWriter.putLong(nowNs);
+        return ringWriter;
+    }
+
+    /** Publishes the record just written and wakes the flusher. Caller holds the lock. */
+    private void commit(int bodyLength) {
+        boolean wasEmpty = head == tail;
+        head += alignedSize(bodyLength);
+        if (wasEmpty) {
+            notifyAll();
+        }
+    }
+
+    private static int alignedSize(int bodyLength) {
+        int size = RECORD_HEADER_SIZE + bodyLength;
+        return (size + RING_ALIGNMENT - 1) / RING_ALIGNMENT * RING_ALIGNMENT;
+    }
+
+    private void flushLoop() {
+        try {
+            while (true) {
+                long from;
+                long to;
+                synchronized (this) {
+                    while (head == tail && !closed) {
+                        wait(FLUSH_INTERVAL_MS);
+                    }
+                    if (head == tail) {
+                        return;
+                    }
+                    from = tail;
+                    to = head;
+                }
+                flush(from, to);
+                synchronized (this) {
+                    tail = to;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            flushError = e;
+            synchronized (this) {
+                // Nothing more can be written; stop taking records
+                closed = true;
+            }
+        }
+    }
+
+    /** Flusher thread: appends the records in ring positions [from, to) to the files. */
+    private void flush(long from, long to) throws IOException {
+        long position = from;
+        while (position < to) {
+            int offset = (int) (position % ringCapacity);
+            ringReader.clear();
+            int bodyLength = ringReader.getInt(offset);
+            if (bodyLength == WRAP_MARKER) {
+                position += ringCapacity - offset;
+                continue;
+            }
+            int type = ringReader.get(offset + 4) & 0xFF;
+            long frameId = ringReader.getLong(offset + 8);
+            long recordNs = ringReader.getLong(offset + 16);
+            long dataOffset = data.position();
+
+            ringReader.position(offset);
+            ringReader.limit(offset + RECORD_HEADER_SIZE + bodyLength);
+            data.append(ringReader);
+
+            indexEntry.clear();
+            indexEntry.putLong(frameId).putLong(recordNs).putLong(dataOffset).putInt(type).putInt(bodyLength);
+            indexEntry.flip();
+            // After the record, so an entry never points past the data
+            index.append(indexEntry);
+            recordsWritten++;
+            position += alignedSize(bodyLength);
+        }
+    }
+
+    /** Records written to the files so far. */
+    public long getRecordsWritten() {
+        return recordsWritten;
+    }
+
+    /** Records dropped because the ring had no room for them. */
+    public synchronized long getRecordsDropped() {
+        return recordsDropped;
+    }
+
+    /**
+     * Writes out everything recorded so far, trims the files to their contents
+     * and closes them. Records offered afterwards are dropped.
+     *
+     * @throws IOException if the flusher failed to write; records up to the
+     *                     failure are kept
+     */
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (filesClosed) {
+                return;
+            }
+            filesClosed = true;
+        }
+        try {
+            index.close();
+        } finally {
+            data.close();
+        }
+        if (flushError != null) {
+            throw flushError;
+        }
+    }
+
+    /**
+     * An append-only file written through a mapped window that moves forward
+     * as it fills. Only used by one thread at a time.
+     */
+    private static final class MappedFile {
+        private final RandomAccessFile file;
+        private final FileChannel channel;
+        private final int windowBytes;
+        private MappedByteBuffer window;
+        private long windowStart;
+        private long position;
+
+        MappedFile(File path, int windowBytes) throws IOException {
+            file = new RandomAccessFile(path, "rw");
+            file.setLength(0);
+            channel = file.getChannel();
+            this.windowBytes = windowBytes;
+        }
+
+        long position() {
+            return position;
+        }
+
+        void append(ByteBuffer src) throws IOException {
+            int length = src.remaining();
+            if (window == null || position + length > windowStart + window.capacity()) {
+                if (window != null) {
+                    window.force();
+                }
+                window = channel.map(FileChannel.MapMode.READ_WRITE, position, Math.max(windowBytes, length));
+                windowStart = position;
+            }
+            window.position((int) (position - windowStart));
+            window.put(src);
+            position += length;
+        }
+
+        /** Flushes the mapping and cuts the file down to what was appended. */
+        void close() throws IOException {
+            try {
+                if (window != null) {
+                    window.force();
+                }
+                channel.truncate(position);
+            } finally {
+                file.close();
+            }
+        }
+    }
+}
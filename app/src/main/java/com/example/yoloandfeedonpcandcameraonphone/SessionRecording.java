@@ -0,0 +1,249 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Reads a recording made by {@link SessionRecorder}. The index is loaded
+ * when the recording is opened; frames and results are read from the data
+ * file on demand. Frames are numbered in the order they were recorded, and so
+ * are results. Reads reuse internal buffers, so use one thread at a time.
+ *
+ * A recording that was not closed, because the app died, reads up to the
+ * last record that was flushed.
+ */
+public class SessionRecording implements Closeable {
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long startWallClockMs;
+
+    private final long[] frameIds;
+    private final long[] frameTimes;
+    private final long[] frameOffsets;
+    private final int[] frameLengths;
+    private final int frameCount;
+    // Ids only ever grow within one camera session, which allows a binary search
+    private final boolean frameIdsOrdered;
+    private final long[] detectionFrameIds;
+    private final long[] detectionOffsets;
+    private final int[] detectionLengths;
+    private final int detectionCount;
+
+    private final ByteBuffer headerBuffer = ByteBuffer.allocate(FrameCodec.HEADER_SIZE);
+    private byte[] detectionBytes = new byte[1024];
+
+    private SessionRecording(RandomAccessFile file, ByteBuffer index) throws IOException {
+        this.file = file;
+        channel = file.getChannel();
+        ByteBuffer header = ByteBuffer.allocate(SessionRecorder.FILE_HEADER_SIZE);
+        readFully(header, 0);
+        header.flip();
+        if (header.getInt() != SessionRecorder.MAGIC) {
+            throw new ProtocolException("Not a recording");
+        }
+        int version = header.getInt();
+        if (version != SessionRecorder.VERSION) {
+            throw new ProtocolException("Unsupported recording version: " + version);
+        }
+        startWallClockMs = header.getLong();
+
+        int entries = index.remaining() / SessionRecorder.INDEX_ENTRY_SIZE;
+        long[] ids = new long[entries];
+        long[] times = new long[entries];
+        long[] offsets = new long[entries];
+        int[] lengths = new int[entries];
+        long[] resultIds = new long[entries];
+        long[] resultOffsets = new long[entries];
+        int[] resultLengths = new int[entries];
+        int frames = 0;
+        int results = 0;
+        long dataSize = channel.size();
+        for (int i = 0; i < entries; i++) {
+            long frameId = index.getLong();
+            long recordNs = index.getLong();
+            long offset = index.getLong();
+            int type = index.getInt();
+            int bodyLength = index.getInt();
+            if (type == 0 || offset + SessionRecorder.RECORD_HEADER_SIZE + bodyLength > dataSize) {
+                // End of a recording that was not closed
+                break;
+            }
+            if (type == SessionRecorder.TYPE_FRAME) {
+                ids[frames] = frameId;
+                times[frames] = recordNs;
+                offsets[frames] = offset + SessionRecorder.RECORD_HEADER_SIZE;
+                lengths[frames] = bodyLength;
+                frames++;
+            } else if (type == SessionRecorder.TYPE_DETECTIONS) {
+                resultIds[results] = frameId;
+                resultOffsets[results] = offset + SessionRecorder.RECORD_HEADER_SIZE;
+                resultLengths[results] = bodyLength;
+                results++;
+            }
+        }
+        frameIds = ids;
+        frameTimes = times;
+        frameOffsets = offsets;
+        frameLengths = lengths;
+        frameCount = frames;
+        boolean ordered = true;
+        for (int i = 1; i < frames && ordered; i++) {
+            ordered = ids[i] > ids[i - 1];
+        }
+        frameIdsOrdered = ordered;
+        detectionFrameIds = resultIds;
+        detectionOffsets = resultOffsets;
+        detectionLengths = resultLengths;
+        detectionCount = results;
+    }
+
+    /** Opens the recording in {@code directory}. */
+    public static SessionRecording open(File directory) throws IOException {
+        ByteBuffer index;
+        try (RandomAccessFile indexFile = new RandomAccessFile(new File(directory, SessionRecorder.INDEX_FILE), "r")) {
+            long size = indexFile.length();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Index too large: " + size + " bytes");
+            }
+            index = ByteBuffer.allocate((int) size);
+            FileChannel channel = indexFile.getChannel();
+            while (index.hasRemaining() && channel.read(index) >= 0) {
+                // Keep reading
+            }
+            index.flip();
+        }
+        RandomAccessFile file = new RandomAccessFile(new File(directory, SessionRecorder.DATA_FILE), "r");
+        try {
+            return new SessionRecording(file, index);
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /** Wall clock when recording started, in ms since the epoch. */
+    public long getStartWallClockMs() {
+        return startWallClockMs;
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    public long getFrameId(int frame) {
+        return frameIds[checkFrame(frame)];
+    }
+
+    /** When the frame was recorded, on the recording device's {@link System#nanoTime()} clock. */
+    public long getFrameTimeNs(int frame) {
+        return frameTimes[checkFrame(frame)];
+    }
+
+    /** Recording time of the last frame minus that of the first. */
+    public long getDurationNs() {
+        return frameCount > 1 ? frameTimes[frameCount - 1] - frameTimes[0] : 0;
+    }
+
+    /** Number of the last frame recorded with {@code frameId}, or -1 if there is none. */
+    public int findFrame(long frameId) {
+        if (frameIdsOrdered) {
+            return Math.max(-1, Arrays.binarySearch(frameIds, 0, frameCount, frameId));
+        }
+        for (int i = frameCount - 1; i >= 0; i--) {
+            if (frameIds[i] == frameId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Number of the first frame recorded at or after {@code timeNs}, or
+     * {@link #getFrameCount()} if there is none.
+     */
+    public int findFrameAt(long timeNs) {
+        int index = Arrays.binarySearch(frameTimes, 0, frameCount, timeNs);
+        if (index < 0) {
+            return -index - 1;
+        }
+        // Several frames may share a time
+        while (index > 0 && frameTimes[index - 1] == timeNs) {
+            index--;
+        }
+        return index;
+    }
+
+    /**
+     * Reads a frame's header into {@code header} and its payload into
+     * {@code payload}, which grows if needed and has its length set.
+     */
+    public void readFrame(int frame, FrameCodec.FrameHeader header, FrameBuffer payload) throws IOException {
+        checkFrame(frame);
+        headerBuffer.clear();
+        readFully(headerBuffer, frameOffsets[frame]);
+        headerBuffer.flip();
+        FrameCodec.decodeHeader(headerBuffer, header);
+        if (FrameCodec.HEADER_SIZE + header.payloadLength != frameLengths[frame]) {
+            throw new ProtocolException("Frame " + header.frameId + " payload does not match its record");
+        }
+        payload.ensureCapacity(header.payloadLength);
+        payload.setLength(header.payloadLength);
+        readFully(payload.byteBuffer(), frameOffsets[frame] + FrameCodec.HEADER_SIZE);
+    }
+
+    public int getDetectionsCount() {
+        return detectionCount;
+    }
+
+    /** Number of the last result recorded for {@code frameId}, or -1 if there is none. */
+    public int findDetections(long frameId) {
+        for (int i = detectionCount - 1; i >= 0; i--) {
+            if (detectionFrameIds[i] == frameId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Reads a recorded result into {@code into}; class ids are those the server sent. */
+    public void readDetections(int result, DetectionBuffer into) throws IOException {
+        if (result < 0 || result >= detectionCount) {
+            throw new IndexOutOfBoundsException("Result " + result + " of " + detectionCount);
+        }
+        int length = detectionLengths[result];
+        if (detectionBytes.length < length) {
+            detectionBytes = new byte[length];
+        }
+        readFully(ByteBuffer.wrap(detectionBytes, 0, length), detectionOffsets[result]);
+        DetectionsCodec.decode(detectionBytes, 0, length, into);
+    }
+
+    private int checkFrame(int frame) {
+        if (frame < 0 || frame >= frameCount) {
+            throw new IndexOutOfBoundsException("Frame " + frame + " of " + frameCount);
+        }
+        return frame;
+    }
+
+    private void readFully(ByteBuffer into, long position) throws IOException {
+        while (into.hasRemaining()) {
+            int n = channel.read(into, position);
+            if (n < 0) {
+                throw new EOFException("Recording ends inside a record at " + position);
+            }
+            position += n;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends the frames of a {@link SessionRecording} again, in recording order,
+ * spaced as they were recorded or faster. Frames keep their ids, capture
+ * timestamps, sizes and formats, so a replay through
+ * {@link NetworkClient#sendFrame} or {@link YFPClient#sendFrame} reaches the
+ * server as the original session did.
+ *
+ * Video recordings replay cleanly only from the first frame, since later
+ * frames depend on the ones before them.
+ */
+public class SessionReplayer {
+    private static final long BUFFER_WAIT_NS = 200_000;
+
+    /** Same shape as {@link YFPClient#sendFrame}; takes ownership of the payload. */
+    public interface FrameSink {
+        boolean sendFrame(FrameBuffer payload, long frameId, long captureTimestampNs,
+                          int width, int height, int format, int quality);
+    }
+
+    private final SessionRecording recording;
+    private final FrameBufferPool buffers;
+    private final FrameSink sink;
+    private final FrameCodec.FrameHeader header = new FrameCodec.FrameHeader();
+    private volatile boolean stopped;
+    private volatile int framesReplayed;
+    private volatile int framesSkipped;
+
+    public SessionReplayer(SessionRecording recording, FrameBufferPool buffers, FrameSink sink) {
+        this.recording = recording;
+        this.buffers = buffers;
+        this.sink = sink;
+    }
+
+    /**
+     * Replays every frame on the calling thread and returns once the last has
+     * been handed to the sink or {@link #stop()} is called.
+     *
+     * @param speed 1 for the recorded pace, 2 for twice as fast and so on; 0
+     *              sends frames as fast as the sink takes them. When paced, a
+     *              frame that finds every pool buffer in use is skipped;
+     *              unpaced, it waits for one.
+     * @return frames sent
+     */
+    public int replay(double speed) throws IOException {
+        return replay(0, recording.getFrameCount(), speed);
+    }
+
+    /** Replays frames {@code from} (inclusive) to {@code to} (exclusive), see {@link #replay(double)}. */
+    public int replay(int from, int to, double speed) throws IOException {
+        if (speed < 0) {
+            throw new IllegalArgumentException("Negative speed: " + speed);
+        }
+        framesReplayed = 0;
+        framesSkipped = 0;
+        long startNs = System.nanoTime();
+        long firstFrameNs = from < to ? recording.getFrameTimeNs(from) : 0;
+        for (int frame = from; frame < to && !stopped; frame++) {
+            if (speed > 0) {
+                long dueNs = startNs + (long) ((recording.getFrameTimeNs(frame) - firstFrameNs) / speed);
+                long waitNs;
+                while ((waitNs = dueNs - System.nanoTime()) > 0 && !stopped) {
+                    LockSupport.parkNanos(waitNs);
+                }
+                if (stopped) {
+                    break;
+                }
+            }
+            FrameBuffer payload = buffers.acquire(0);
+            if (payload == null && speed > 0) {
+                // Every buffer is still queued, as when the camera outpaces the link
+                framesSkipped++;
+                continue;
+            }
+            while (payload == null && !stopped) {
+                LockSupport.parkNanos(BUFFER_WAIT_NS);
+                payload = buffers.acquire(0);
+            }
+            if (payload == null) {
+                break;
+            }
+            try {
+                recording.readFrame(frame, header, payload);
+            } catch (IOException | RuntimeException e) {
+                payload.release();
+                throw e;
+            }
+            sink.sendFrame(payload, header.frameId, header.captureTimestampNs,
+                header.width, header.height, header.format, header.quality);
+            framesReplayed++;
+        }
+        return framesReplayed;
+    }
+
+    /**
+     * Ends a replay in progress on another thread before its next frame. A
+     * stopped replayer sends nothing more.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    public int getFramesReplayed() {
+        return framesReplayed;
+    }
+
+    /** Frames of the last replay skipped for want of a buffer. */
+    public int getFramesSkipped() {
+        return framesSkipped;
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+/**
+ * Frame transport over a blocking socket stream: one write for the header and
+ * one for the payload.
+ */
+public class StreamFrameTransport implements FrameTransport {
+    private static final int COPY_CHUNK_SIZE = 16 * 1024;
+
+    private final FrameCodec.Encoder encoder = new FrameCodec.Encoder();
+    private Socket socket;
+    private OutputStream out;
+    private byte[] copyBuffer;
+    private long writeCallCount;
+
+    @Override
+    public void connect(InetSocketAddress address, int timeoutMs) throws IOException {
+        socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.connect(address, timeoutMs);
+            out = socket.getOutputStream();
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void writeFrame(FrameBuffer payload, long frameId, long captureTimestampNs,
+                           int width, int height, int format, int quality) throws IOException {
+        if (!payload.isDirect()) {
+            encoder.writeFrame(out, frameId, captureTimestampNs, width, height,
+                format, quality, payload.data(), 0, payload.length());
+            writeCallCount += 2;
+        } else {
+            // Streams need an array, so copy direct payloads through a scratch buffer
+            encoder.writeHeader(out, frameId, captureTimestampNs, width, height,
+                format, quality, payload.length());
+            writeCallCount++;
+            ByteBuffer source = payload.byteBuffer();
+            if (copyBuffer == null) {
+                copyBuffer = new byte[COPY_CHUNK_SIZE];
+            }
+            while (source.hasRemaining()) {
+                int n = Math.min(copyBuffer.length, source.remaining());
+                source.get(copyBuffer, 0, n);
+                out.write(copyBuffer, 0, n);
+                writeCallCount++;
+            }
+        }
+        out.flush();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return socket != null && socket.isConnected() && !socket.isClosed();
+    }
+
+    @Override
+    public int getLocalPort() {
+        return socket != null ? Math.max(0, socket.getLocalPort()) : 0;
+    }
+
+    @Override
+    public boolean prefersDirectBuffers() {
+        return false;
+    }
+
+    @Override
+    public long getWriteCallCount() {
+        return writeCallCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (socket != null) {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.PorterDuff;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Detection overlay that draws on its own render thread into a transparent
+ * {@link SurfaceView}, so box drawing never waits on layout, text updates or
+ * input on the main thread.
+ *
+ * {@link #setDetections} copies the boxes into a {@link TripleBuffer} and asks
+ * the render thread's {@link Choreographer} for a frame; at most one frame is
+ * pending however often detections arrive, and each frame draws the latest
+ * boxes only. A frame is drawn into a hardware canvas as one
+ * {@code drawLines} call per palette colour plus the labels, see
+ * {@link OverlayBatch}.
+ */
+public class SurfaceDetectionOverlay extends SurfaceView implements DetectionOverlay, SurfaceHolder.Callback {
+    private static final String TAG = "SurfaceDetectionOverlay";
+
+    private final OverlayRenderer renderer = new OverlayRenderer();
+    private final OverlayBatch batch = new OverlayBatch();
+    private final TripleBuffer<DetectionBuffer> exchange = new TripleBuffer<>(
+        new DetectionBuffer(), new DetectionBuffer(), new DetectionBuffer());
+    private final AtomicBoolean frameRequested = new AtomicBoolean();
+    // Held while drawing so surfaceDestroyed waits for the frame in progress
+    private final Object surfaceLock = new Object();
+    private final Runnable scheduleFrame = this::scheduleFrame;
+    private final Choreographer.FrameCallback frameCallback = this::doFrame;
+
+    private Paint[] linePaints;
+    private Paint[] labelPaints;
+    private volatile ClassTable classTable = new ClassTable();
+    private volatile PipelineTimings timings;
+    private volatile int detectionCount;
+
+    // Main thread
+    private HandlerThread renderThread;
+    private Handler renderHandler;
+
+    // Render thread
+    private Choreographer choreographer;
+    private DetectionBuffer shown = new DetectionBuffer(1);
+    private long drawCount;
+
+    // Guarded by surfaceLock
+    private boolean surfaceReady;
+    private int surfaceWidth;
+    private int surfaceHeight;
+
+    public SurfaceDetectionOverlay(Context context) {
+        super(context);
+        init();
+    }
+
+    public SurfaceDetectionOverlay(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        init();
+    }
+
+    private void init() {
+        linePaints = DetectionOverlayView.createBoxPaints();
+        for (Paint paint : linePaints) {
+            // Square caps close the corners where two box edges meet
+            paint.setStrokeCap(Paint.Cap.SQUARE);
+        }
+        labelPaints = DetectionOverlayView.createLabelPaints();
+
+        // Above the camera preview's surface, below the rest of the window
+        setZOrderMediaOverlay(true);
+        SurfaceHolder holder = getHolder();
+        holder.setFormat(PixelFormat.TRANSLUCENT);
+        holder.addCallback(this);
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        renderThread = new HandlerThread("overlay-render");
+        renderThread.start();
+        renderHandler = new Handler(renderThread.getLooper());
+        renderHandler.post(() -> choreographer = Choreographer.getInstance());
+        requestRender();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        if (renderThread != null) {
+            renderThread.quitSafely();
+            renderThread = null;
+            renderHandler = null;
+        }
+        frameRequested.set(false);
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    public void setClassTable(ClassTable classTable) {
+        this.classTable = classTable;
+        requestRender();
+    }
+
+    @Override
+    public void setPipelineTimings(PipelineTimings timings) {
+        this.timings = timings;
+    }
+
+    @Override
+    public void setDetections(DetectionBuffer detections) {
+        DetectionBuffer next = exchange.writeBuffer();
+        if (detections != null) {
+            next.copyFrom(detections);
+        } else {
+            next.reset(0, 0, 0);
+        }
+        detectionCount = next.count;
+        boolean dropped = exchange.publish();
+
+        if (AppLog.isTraced(AppLog.Category.OVERLAY, next.frameId)) {
+            Log.v(TAG, "OVERLAY_DEBUG: setDetections with " + next.count + " boxes for frame "
+                + next.frameId + (dropped ? ", replacing an undrawn update" : ""));
+        }
+        requestRender();
+    }
+
+    @Override
+    public int getDetectionCount() {
+        return detectionCount;
+    }
+
+    /** Asks for one frame on the render thread unless one is already pending. Main thread. */
+    private void requestRender() {
+        Handler handler = renderHandler;
+        if (handler != null && frameRequested.compareAndSet(false, true)) {
+            handler.post(scheduleFrame);
+        }
+    }
+
+    private void scheduleFrame() {
+        choreographer.postFrameCallback(frameCallback);
+    }
+
+    private void doFrame(long frameTimeNanos) {
+        // Cleared first so updates published while drawing get a frame of their own
+        frameRequested.set(false);
+        DetectionBuffer latest = exchange.consumeLatest();
+        if (latest != null) {
+            shown = latest;
+        }
+        draw(shown);
+    }
+
+    private void draw(DetectionBuffer detections) {
+        synchronized (surfaceLock) {
+            if (!surfaceReady) {
+                return;
+            }
+            SurfaceHolder holder = getHolder();
+            Canvas canvas = holder.lockHardwareCanvas();
+            if (canvas == null) {
+                return;
+            }
+            try {
+                canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+                batch.clear();
+                renderer.render(detections, classTable, surfaceWidth, surfaceHeight, batch);
+                for (int color = 0; color < linePaints.length; color++) {
+                    int floats = batch.lineFloatCount(color);
+                    if (floats > 0) {
+                        canvas.drawLines(batch.lines(color), 0, floats, linePaints[color]);
+                    }
+                }
+                for (int i = 0; i < batch.labelCount(); i++) {
+                    canvas.drawText(batch.label(i), batch.labelX(i), batch.labelY(i),
+                        labelPaints[batch.labelColor(i)]);
+                }
+            } finally {
+                holder.unlockCanvasAndPost(canvas);
+            }
+        }
+        PipelineTimings timings = this.timings;
+        if (timings != null) {
+            timings.mark(PipelineTimings.Stage.DRAWN, detections.frameId, System.nanoTime());
+        }
+
+        if (AppLog.isTraced(AppLog.Category.OVERLAY, drawCount++)) {
+            Log.v(TAG, "OVERLAY_DEBUG: Drew " + detections.count + " boxes for frame "
+                + detections.frameId + " on " + surfaceWidth + "x" + surfaceHeight);
+        }
+    }
+
+    @Override
+    public void surfaceCreated(SurfaceHolder holder) {
+    }
+
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+        synchronized (surfaceLock) {
+            surfaceReady = true;
+            surfaceWidth = width;
+            surfaceHeight = height;
+        }
+        requestRender();
+    }
+
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        synchronized (surfaceLock) {
+            surfaceReady = false;
+        }
+    }
+}
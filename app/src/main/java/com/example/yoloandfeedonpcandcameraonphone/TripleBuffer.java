@@ -0,0 +1,54 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free latest-value handoff between one producer and one consumer thread,
+ * over three preallocated buffers. The producer fills {@link #writeBuffer()} and
+ * publishes it; the consumer takes the most recently published buffer. Values
+ * the consumer never saw are overwritten, and nothing is allocated.
+ */
+public class TripleBuffer<T> {
+    private static final int INDEX_MASK = 0x3;
+    private static final int FRESH = 0x4;
+
+    private final Object[] buffers;
+    private final AtomicInteger middle = new AtomicInteger(2);
+    private int writeIndex = 0;
+    private int readIndex = 1;
+
+    public TripleBuffer(T first, T second, T third) {
+        buffers = new Object[]{first, second, third};
+    }
+
+    /** Buffer the producer may fill. Only call from the producer thread. */
+    @SuppressWarnings("unchecked")
+    public T writeBuffer() {
+        return (T) buffers[writeIndex];
+    }
+
+    /**
+     * Publishes the write buffer and swaps in a new one. Returns true if the
+     * previously published value had not been consumed and is now lost.
+     */
+    public boolean publish() {
+        int previous = middle.getAndSet(writeIndex | FRESH);
+        writeIndex = previous & INDEX_MASK;
+        return (previous & FRESH) != 0;
+    }
+
+    /**
+     * Returns the latest published buffer, or null if nothing new was published
+     * since the last call. The buffer stays valid until the next call. Only call
+     * from the consumer thread.
+     */
+    @SuppressWarnings("unchecked")
+    public T consumeLatest() {
+        if ((middle.get() & FRESH) == 0) {
+            return null;
+        }
+        int previous = middle.getAndSet(readIndex);
+        readIndex = previous & INDEX_MASK;
+        return (T) buffers[readIndex];
+    }
+}
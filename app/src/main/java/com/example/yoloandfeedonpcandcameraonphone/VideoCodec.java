@@ -0,0 +1,93 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Video codecs the frame channel can carry, with the little of each bitstream
+ * the client needs to understand: where NAL units start in an Annex-B stream,
+ * and which NAL types are keyframes and which carry codec configuration.
+ */
+public enum VideoCodec {
+    H264("video/avc", FrameCodec.FORMAT_H264) {
+        @Override
+        public int nalType(int headerByte) {
+            return headerByte & 0x1F;
+        }
+
+        @Override
+        public boolean isKeyframe(int nalType) {
+            return nalType == 5; // IDR slice
+        }
+
+        @Override
+        public boolean isConfig(int nalType) {
+            return nalType == 7 || nalType == 8; // SPS, PPS
+        }
+    },
+    HEVC("video/hevc", FrameCodec.FORMAT_HEVC) {
+        @Override
+        public int nalType(int headerByte) {
+            return (headerByte >> 1) & 0x3F;
+        }
+
+        @Override
+        public boolean isKeyframe(int nalType) {
+            return nalType >= 16 && nalType <= 21; // IRAP: BLA, IDR, CRA
+        }
+
+        @Override
+        public boolean isConfig(int nalType) {
+            return nalType >= 32 && nalType <= 34; // VPS, SPS, PPS
+        }
+    };
+
+    /** MediaCodec MIME type. */
+    public final String mimeType;
+    /** {@link FrameCodec} format code. */
+    public final int frameFormat;
+
+    VideoCodec(String mimeType, int frameFormat) {
+        this.mimeType = mimeType;
+        this.frameFormat = frameFormat;
+    }
+
+    /** NAL unit type from the first byte of its header. */
+    public abstract int nalType(int headerByte);
+
+    public abstract boolean isKeyframe(int nalType);
+
+    /** Parameter sets a decoder needs before the first keyframe. */
+    public abstract boolean isConfig(int nalType);
+
+    /** Codec for a {@link FrameCodec} format, or null for non-video formats. */
+    public static VideoCodec forFrameFormat(int frameFormat) {
+        for (VideoCodec codec : values()) {
+            if (codec.frameFormat == frameFormat) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Index of the first byte after the next Annex-B start code
+     * ({@code 00 00 01}, possibly with a leading zero) in {@code [from, limit)},
+     * or -1 if there is none. Reads with absolute gets, so the buffer's
+     * position is untouched.
+     */
+    public static int nextNalStart(ByteBuffer data, int from, int limit) {
+        int zeros = 0;
+        for (int i = from; i < limit; i++) {
+            byte b = data.get(i);
+            if (b == 0) {
+                zeros++;
+            } else {
+                if (b == 1 && zeros >= 2) {
+                    return i + 1;
+                }
+                zeros = 0;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import java.net.ProtocolException;
+
+/**
+ * Receiving side of {@link VideoPacketizer}: checks each payload's prefix and
+ * decides whether its access unit can be decoded.
+ *
+ * A decoder can only start at a keyframe with codec config, and any lost
+ * access unit breaks the reference chain until the next keyframe. So the
+ * first payloads of a stream, and every payload after a gap in the sequence
+ * numbers, are dropped until a keyframe carrying config arrives. The access
+ * unit to decode is {@code payload[PREFIX_SIZE, length)}.
+ *
+ * Not thread-safe; use one instance per stream.
+ */
+public final class VideoDepacketizer {
+    private boolean synced;
+    private int expectedSequence;
+    private int lastFlags;
+    private long accepted;
+    private long dropped;
+    private long gaps;
+
+    /**
+     * Returns true if the access unit in {@code payload} should be decoded,
+     * false if it must be dropped while waiting for a keyframe.
+     *
+     * @throws ProtocolException if the payload is too short for the prefix
+     */
+    public boolean accept(byte[] payload, int length) throws ProtocolException {
+        if (length < VideoPacketizer.PREFIX_SIZE) {
+            throw new ProtocolException("Video payload too short: " + length);
+        }
+        int sequence = ((payload[0] & 0xFF) << 24) | ((payload[1] & 0xFF) << 16)
+            | ((payload[2] & 0xFF) << 8) | (payload[3] & 0xFF);
+        int flags = payload[4] & 0xFF;
+        lastFlags = flags;
+
+        if (synced && sequence != expectedSequence) {
+            synced = false;
+            gaps++;
+        }
+        expectedSequence = sequence + 1;
+        if (!synced) {
+            int required = VideoPacketizer.FLAG_KEYFRAME | VideoPacketizer.FLAG_CONFIG;
+            if ((flags & required) != required) {
+                dropped++;
+                return false;
+            }
+            synced = true;
+        }
+        accepted++;
+        return true;
+    }
+
+    /** True once a keyframe has been accepted and no access unit has been lost since. */
+    public boolean isSynced() {
+        return synced;
+    }
+
+    /** Flags of the last payload passed to {@link #accept}. */
+    public int getLastFlags() {
+        return lastFlags;
+    }
+
+    public long getAcceptedCount() {
+        return accepted;
+    }
+
+    public long getDroppedCount() {
+        return dropped;
+    }
+
+    /** Number of times the stream lost sync because of a sequence gap. */
+    public long getGapCount() {
+        return gaps;
+    }
+
+    /** Waits for a new keyframe, for a new stream on the same connection. */
+    public void reset() {
+        synced = false;
+    }
+}
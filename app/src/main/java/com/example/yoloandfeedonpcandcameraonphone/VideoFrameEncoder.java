@@ -0,0 +1,357 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import android.media.Image;
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.media.MediaFormat;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Streams NV21 frames through the platform's hardware H.264 or HEVC encoder.
+ *
+ * Consecutive frames are mostly identical, so inter-frame coding sends a
+ * fraction of the bytes of a JPEG per frame, with less encode time on the
+ * device. MediaCodec runs asynchronously: {@link #encode} fills a free input
+ * image and returns, and each encoded access unit is packetized
+ * ({@link VideoPacketizer}) and handed to the {@link CapturePipeline.FrameSink}
+ * from the codec's callback thread, under the frame id and capture timestamp
+ * of the frame it came from.
+ *
+ * Frames are fed as YUV input images rather than through an input surface so
+ * they keep going through the pipeline's frame selection, cropping and
+ * latency marks. A change of output size reconfigures the encoder, which
+ * starts again with a keyframe. Whenever an encoded frame is dropped before it
+ * reaches the server, a keyframe is requested so the server can resume
+ * decoding as soon as possible.
+ *
+ * {@link #encode} must only be called from one thread at a time.
+ */
+public class VideoFrameEncoder {
+    private static final String TAG = "VideoFrameEncoder";
+    private static final int OUTPUT_POOL_SIZE = 4;
+    // Frames inside the encoder at once; more than any hardware encoder buffers,
+    // so the oldest of more is one the encoder dropped
+    private static final int MAX_FRAMES_IN_CODEC = 16;
+
+    public static class Config {
+        /** Nominal rate for rate control; frames may arrive slower. */
+        public int frameRate = 30;
+        public int keyframeIntervalS = 1;
+        /** Bits per pixel per frame at quality 100; quality scales linearly below that. */
+        public float maxBitsPerPixel = 0.25f;
+        public int minBitrate = 250_000;
+    }
+
+    private final VideoCodec codec;
+    private final Config config;
+    private final CapturePipeline.FrameSink sink;
+    private final PipelineTimings timings;
+    private final FrameBufferPool outputPool;
+    private final Nv21Packer packer = new Nv21Packer();
+    private final HandlerThread callbackThread;
+    private final Handler callbackHandler;
+    private final Bundle syncFrameRequest = new Bundle();
+    private final Bundle bitrateUpdate = new Bundle();
+    private volatile Session session;
+    private volatile boolean failed;
+
+    /** One configured codec instance; replaced when the frame size changes. */
+    private final class Session extends MediaCodec.Callback {
+        final MediaCodec mediaCodec;
+        final int width;
+        final int height;
+        final VideoPacketizer packetizer = new VideoPacketizer(codec);
+        final ArrayBlockingQueue<Integer> freeInputs = new ArrayBlockingQueue<>(MAX_FRAMES_IN_CODEC);
+        // Frames queued to the codec, by presentation time
+        final long[] ptsUs = new long[MAX_FRAMES_IN_CODEC];
+        final long[] frameIds = new long[MAX_FRAMES_IN_CODEC];
+        final long[] captureTimestamps = new long[MAX_FRAMES_IN_CODEC];
+        final int[] qualities = new int[MAX_FRAMES_IN_CODEC];
+        int queued;
+        int bitrate;
+        volatile boolean released;
+        // Callback thread
+        private final long[] taken = new long[3];
+
+        Session(int width, int height, int quality) throws IOException {
+            this.width = width;
+            this.height = height;
+            this.bitrate = bitrateFor(width, height, quality);
+            MediaFormat format = MediaFormat.createVideoFormat(codec.mimeType, width, height);
+            format.setInteger(MediaFormat.KEY_COLOR_FORMAT,
+                MediaCodecInfo.CodecCapabilities.COLOR_FormatYUV420Flexible);
+            format.setInteger(MediaFormat.KEY_BIT_RATE, bitrate);
+            format.setInteger(MediaFormat.KEY_FRAME_RATE, config.frameRate);
+            format.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, config.keyframeIntervalS);
+            format.setInteger(MediaFormat.KEY_BITRATE_MODE,
+                MediaCodecInfo.EncoderCapabilities.BITRATE_MODE_VBR);
+            // 0 is realtime: the codec keeps up with the frame rate rather than saving power
+            format.setInteger(MediaFormat.KEY_PRIORITY, 0);
+            // B-frames would hold every frame back until a later one is encoded
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                format.setInteger(MediaFormat.KEY_MAX_B_FRAMES, 0);
+            }
+            mediaCodec = MediaCodec.createEncoderByType(codec.mimeType);
+            try {
+                setProfile(format, mediaCodec.getCodecInfo());
+                mediaCodec.setCallback(this, callbackHandler);
+                mediaCodec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+                mediaCodec.start();
+            } catch (RuntimeException e) {
+                mediaCodec.release();
+                throw e;
+            }
+        }
+
+        synchronized void remember(long pts, long frameId, long captureTimestampNs, int quality) {
+            if (queued == MAX_FRAMES_IN_CODEC) {
+                remove(0);
+            }
+            ptsUs[queued] = pts;
+            frameIds[queued] = frameId;
+            captureTimestamps[queued] = captureTimestampNs;
+            qualities[queued] = quality;
+            queued++;
+        }
+
+        /** Index of the queued frame with this presentation time, or -1. Only that frame is forgotten. */
+        synchronized int take(long pts, long[] out) {
+            for (int i = 0; i < queued; i++) {
+                if (ptsUs[i] == pts) {
+                    out[0] = frameIds[i];
+                    out[1] = captureTimestamps[i];
+                    out[2] = qualities[i];
+                    remove(i);
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void remove(int i) {
+            int after = queued - i - 1;
+            System.arraycopy(ptsUs, i + 1, ptsUs, i, after);
+            System.arraycopy(frameIds, i + 1, frameIds, i, after);
+            System.arraycopy(captureTimestamps, i + 1, captureTimestamps, i, after);
+            System.arraycopy(qualities, i + 1, qualities, i, after);
+            queued--;
+        }
+
+        /** Callback thread, so no callback can run against a released codec. */
+        void release() {
+            released = true;
+            try {
+                mediaCodec.stop();
+            } catch (IllegalStateException e) {
+                // Already in an error state
+            }
+            mediaCodec.release();
+        }
+
+        @Override
+        public void onInputBufferAvailable(MediaCodec mc, int index) {
+            if (!released) {
+                freeInputs.offer(index);
+            }
+        }
+
+        @Override
+        public void onOutputBufferAvailable(MediaCodec mc, int index, MediaCodec.BufferInfo info) {
+            if (released) {
+                return;
+            }
+            try {
+                ByteBuffer output = mc.getOutputBuffer(index);
+                if (output == null || info.size == 0) {
+                    return;
+                }
+                output.limit(info.offset + info.size);
+                output.position(info.offset);
+                if ((info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0) {
+                    packetizer.setCodecConfig(output);
+                    return;
+                }
+                if (take(info.presentationTimeUs, taken) < 0) {
+                    Log.w(TAG, "Encoded frame with unknown timestamp " + info.presentationTimeUs);
+                    packetizer.skip();
+                    return;
+                }
+                long frameId = taken[0];
+                FrameBuffer payload = outputPool.acquire(packetizer.maxPayloadSize(info.size));
+                if (payload == null) {
+                    packetizer.skip();
+                    requestKeyframe();
+                    return;
+                }
+                packetizer.packetize(output, payload);
+                timings.mark(PipelineTimings.Stage.ENCODED, frameId, System.nanoTime());
+                if (!sink.onEncodedFrame(payload, frameId, taken[1], width, height,
+                    codec.frameFormat, (int) taken[2])) {
+                    requestKeyframe();
+                }
+            } finally {
+                mc.releaseOutputBuffer(index, false);
+            }
+        }
+
+        @Override
+        public void onError(MediaCodec mc, MediaCodec.CodecException e) {
+            Log.e(TAG, "Encoder failed", e);
+            if (!e.isRecoverable() && !e.isTransient()) {
+                failed = true;
+            }
+        }
+
+        @Override
+        public void onOutputFormatChanged(MediaCodec mc, MediaFormat format) {
+            // Codec config arrives as a BUFFER_FLAG_CODEC_CONFIG buffer as well
+        }
+    }
+
+    /**
+     * @param directOutput write packetized frames into direct buffers, for NIO transports
+     * @param timings receives the encode stage of each frame
+     */
+    public VideoFrameEncoder(VideoCodec codec, Config config, CapturePipeline.FrameSink sink,
+                             boolean directOutput, PipelineTimings timings) {
+        this.codec = codec;
+        this.config = config;
+        this.sink = sink;
+        this.timings = timings;
+        this.outputPool = new FrameBufferPool(codec.name().toLowerCase(Locale.ROOT),
+            OUTPUT_POOL_SIZE, directOutput);
+        syncFrameRequest.putInt(MediaCodec.PARAMETER_KEY_REQUEST_SYNC_FRAME, 0);
+        callbackThread = new HandlerThread("video-encoder");
+        callbackThread.start();
+        callbackHandler = new Handler(callbackThread.getLooper());
+    }
+
+    /** True if the device has a hardware or software encoder for {@code codec}. */
+    public static boolean isSupported(VideoCodec codec) {
+        MediaFormat format = MediaFormat.createVideoFormat(codec.mimeType, 1280, 720);
+        return new MediaCodecList(MediaCodecList.REGULAR_CODECS).findEncoderForFormat(format) != null;
+    }
+
+    public VideoCodec getCodec() {
+        return codec;
+    }
+
+    /** True once the encoder has failed for good; the caller should fall back to JPEG. */
+    public boolean isFailed() {
+        return failed;
+    }
+
+    /**
+     * Queues an NV21 frame for encoding. The NV21 buffer is copied and not
+     * released. Returns false, dropping the frame, if the codec has no free
+     * input buffer or cannot be configured.
+     */
+    public boolean encode(FrameBuffer nv21, int width, int height, long frameId,
+                          long captureTimestampNs, int quality) {
+        if (failed) {
+            return false;
+        }
+        Session current = session;
+        if (current == null || current.width != width || current.height != height) {
+            if (current != null) {
+                session = null;
+                callbackHandler.post(current::release);
+            }
+            try {
+                current = new Session(width, height, quality);
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Failed to configure " + codec + " encoder for " + width + "x" + height, e);
+                failed = true;
+                return false;
+            }
+            session = current;
+        }
+
+        Integer index = current.freeInputs.poll();
+        if (index == null) {
+            return false;
+        }
+        int bitrate = bitrateFor(width, height, quality);
+        if (bitrate != current.bitrate) {
+            current.bitrate = bitrate;
+            bitrateUpdate.putInt(MediaCodec.PARAMETER_KEY_VIDEO_BITRATE, bitrate);
+            current.mediaCodec.setParameters(bitrateUpdate);
+        }
+
+        // Capture timestamps only ever increase, as the encoder requires
+        long pts = captureTimestampNs / 1000;
+        Image image = current.mediaCodec.getInputImage(index);
+        if (image == null) {
+            // Hand the buffer back empty so the codec does not run out of inputs
+            current.mediaCodec.queueInputBuffer(index, 0, 0, pts, 0);
+            return false;
+        }
+        current.remember(pts, frameId, captureTimestampNs, quality);
+        Image.Plane[] planes = image.getPlanes();
+        packer.unpack(nv21.data(), width, height,
+            planes[0].getBuffer(), planes[0].getRowStride(), planes[0].getPixelStride(),
+            planes[1].getBuffer(), planes[2].getBuffer(), planes[1].getRowStride(), planes[1].getPixelStride());
+        current.mediaCodec.queueInputBuffer(index, 0, Nv21Packer.nv21Size(width, height), pts, 0);
+        return true;
+    }
+
+    /** Asks the encoder to make the next frame a keyframe. Any thread. */
+    public void requestKeyframe() {
+        Session current = session;
+        if (current != null && !current.released) {
+            try {
+                current.mediaCodec.setParameters(syncFrameRequest);
+            } catch (IllegalStateException e) {
+                // Being released
+            }
+        }
+    }
+
+    /** Stops the codec; frames still inside it are discarded. Call from the encoding thread. */
+    public void release() {
+        Session current = session;
+        session = null;
+        if (current != null) {
+            callbackHandler.post(current::release);
+        }
+        callbackThread.quitSafely();
+    }
+
+    public FrameBufferPool getOutputPool() {
+        return outputPool;
+    }
+
+    /**
+     * Asks for the profile without B-frames: Baseline for H.264, Main for HEVC,
+     * which has no baseline and relies on KEY_MAX_B_FRAMES instead. Left to the
+     * codec if it does not list the profile, since configure rejects unknown ones.
+     */
+    private void setProfile(MediaFormat format, MediaCodecInfo info) {
+        int profile = codec == VideoCodec.H264
+            ? MediaCodecInfo.CodecProfileLevel.AVCProfileBaseline
+            : MediaCodecInfo.CodecProfileLevel.HEVCProfileMain;
+        for (MediaCodecInfo.CodecProfileLevel supported
+                : info.getCapabilitiesForType(codec.mimeType).profileLevels) {
+            if (supported.profile == profile) {
+                format.setInteger(MediaFormat.KEY_PROFILE, profile);
+                format.setInteger(MediaFormat.KEY_LEVEL, supported.level);
+                return;
+            }
+        }
+    }
+
+    private int bitrateFor(int width, int height, int quality) {
+        long bits = (long) (width * height * config.frameRate * config.maxBitsPerPixel) * quality / 100;
+        return (int) Math.max(config.minBitrate, Math.min(Integer.MAX_VALUE, bits));
+    }
+}
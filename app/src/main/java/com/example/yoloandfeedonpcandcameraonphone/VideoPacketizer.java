@@ -0,0 +1,122 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Wraps encoded video access units into frame payloads for the image channel.
+ *
+ * Each access unit travels as one {@link FrameCodec} frame, so it keeps the
+ * frame id, capture timestamp and credit flow of a JPEG frame. The payload
+ * starts with a small big-endian prefix, followed by the access unit in
+ * Annex-B form:
+ *
+ * <pre>
+ *  offset size field
+ *       0    4 stream sequence number, +1 per access unit
+ *       4    1 flags: 0x01 keyframe, 0x02 starts with codec config
+ *       5    3 reserved (0)
+ *       8    - Annex-B access unit
+ * </pre>
+ *
+ * The sequence number lets the receiver notice frames lost between encoder
+ * and decoder (dropped by the sender's latest-wins queue, for example) and
+ * wait for the next keyframe instead of decoding garbage. The codec config
+ * (SPS/PPS, plus VPS for HEVC) that MediaCodec emits once at start is cached
+ * and prepended to every keyframe, so a receiver can join the stream, or
+ * recover from a loss, at any keyframe.
+ *
+ * Works on {@link ByteBuffer}s so MediaCodec output can be read without an
+ * extra copy. Not thread-safe.
+ */
+public final class VideoPacketizer {
+    public static final int PREFIX_SIZE = 8;
+    public static final int FLAG_KEYFRAME = 0x01;
+    public static final int FLAG_CONFIG = 0x02;
+
+    private final VideoCodec codec;
+    private byte[] config = new byte[0];
+    private int configLength;
+    private int sequence;
+
+    public VideoPacketizer(VideoCodec codec) {
+        this.codec = codec;
+    }
+
+    public VideoCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Caches codec config from {@code data} (position to limit), replacing
+     * any previous config. The buffer's position is untouched.
+     */
+    public void setCodecConfig(ByteBuffer data) {
+        int length = data.remaining();
+        if (config.length < length) {
+            config = new byte[length];
+        }
+        data.duplicate().get(config, 0, length);
+        configLength = length;
+    }
+
+    public boolean hasCodecConfig() {
+        return configLength > 0;
+    }
+
+    /** Forgets the codec config and restarts the sequence, for a reconfigured encoder. */
+    public void reset() {
+        configLength = 0;
+        sequence = 0;
+    }
+
+    /**
+     * Uses up a sequence number for an access unit that will not be sent, so
+     * the receiver sees the gap and waits for the next keyframe.
+     */
+    public void skip() {
+        sequence++;
+    }
+
+    /** Payload capacity needed for an access unit of {@code length} bytes. */
+    public int maxPayloadSize(int length) {
+        return PREFIX_SIZE + configLength + length;
+    }
+
+    /**
+     * Writes the prefix and access unit ({@code accessUnit}'s position to limit)
+     * to {@code out}, replacing its contents. {@code out} must have at least
+     * {@link #maxPayloadSize} bytes of capacity. The access unit's position is
+     * untouched.
+     *
+     * @return the flags written
+     */
+    public int packetize(ByteBuffer accessUnit, FrameBuffer out) {
+        int start = accessUnit.position();
+        int end = accessUnit.limit();
+        boolean keyframe = false;
+        boolean hasConfig = false;
+        for (int nal = VideoCodec.nextNalStart(accessUnit, start, end); nal >= 0 && nal < end;
+             nal = VideoCodec.nextNalStart(accessUnit, nal, end)) {
+            int type = codec.nalType(accessUnit.get(nal));
+            keyframe |= codec.isKeyframe(type);
+            hasConfig |= codec.isConfig(type);
+        }
+        boolean prependConfig = keyframe && !hasConfig && configLength > 0;
+        int flags = (keyframe ? FLAG_KEYFRAME : 0) | (hasConfig || prependConfig ? FLAG_CONFIG : 0);
+
+        ByteBuffer dst = out.byteBuffer();
+        dst.limit(dst.capacity());
+        dst.order(ByteOrder.BIG_ENDIAN);
+        dst.putInt(sequence++);
+        dst.put((byte) flags);
+        dst.put((byte) 0).put((byte) 0).put((byte) 0);
+        if (prependConfig) {
+            dst.put(config, 0, configLength);
+        }
+        dst.put(accessUnit);
+        accessUnit.position(start);
+        out.setLength(dst.position());
+        return flags;
+    }
+}
@@ -0,0 +1,992 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The YFP client without any Android dependency: discovery, connecting to one
+ * or more servers, sending frames and receiving detections. It runs on a
+ * plain JVM, so the load generator can simulate many phones from one machine.
+ *
+ * Callbacks go through the {@link Executor} given at construction: the
+ * Android client posts them to the main thread, a headless client can run
+ * them directly on the network threads. Log output goes to a {@link Logger}.
+ */
+public class YFPClient {
+    // Every server that answers within this window is used
+    private static final long DISCOVERY_WINDOW_MS = 1500;
+    private static final int DEFAULT_MAX_FRAMES_IN_FLIGHT = 2;
+    private static final int MAX_PENDING_FRAMES = 1;
+    // A frame credit comes back after this long without a result
+    static final long FRAME_ACK_TIMEOUT_MS = 2000;
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+    // A quick burst of pings gives a clock offset within a second of connecting
+    private static final int WARMUP_PINGS = 5;
+    private static final long WARMUP_PING_INTERVAL_MS = 100;
+    private static final long PING_INTERVAL_MS = 1000;
+    // A server that leaves a frame unanswered this long is failed over while
+    // others are up; before the frame's credit times out, so the hung server
+    // is not sent more frames first. The last server is left to the ack timeout
+    static final long FAILOVER_MS = FRAME_ACK_TIMEOUT_MS * 3 / 4;
+    // How long a result from one server may wait for an older frame at another
+    private static final long MAX_REORDER_HOLD_MS = 100;
+    private static final int REORDER_CAPACITY = 32;
+    private static final int LISTEN_TIMEOUT_MS = 10000;
+
+    private DatagramSocket udpSocket;
+    private volatile FrameTransport.Type transportType = FrameTransport.Type.CHANNEL;
+    private volatile ServerPool.Policy balancePolicy = ServerPool.Policy.LEAST_LATENCY;
+    private final ServerPool servers = new ServerPool(FAILOVER_MS);
+    private final ResultReorderBuffer reorderBuffer = new ResultReorderBuffer(REORDER_CAPACITY, MAX_REORDER_HOLD_MS);
+    // Stands in for a server's clock estimate while none is connected
+    private final ClockOffsetEstimator noClockOffset = new ClockOffsetEstimator();
+    private final ExecutorService executor;
+    private final Executor callbackExecutor;
+    private final Callback callback;
+    private final Logger logger;
+    private volatile boolean isConnected = false;
+    private volatile String deviceModel = "unknown";
+    private volatile String deviceId = "unknown";
+    private volatile int maxFramesInFlight = DEFAULT_MAX_FRAMES_IN_FLIGHT;
+    private volatile int maxFrameWidth = 640;
+    private volatile int maxFrameHeight = 640;
+    private volatile String[] frameFormats = {FrameCodec.formatName(FrameCodec.FORMAT_JPEG)};
+    // Server the last frame went to, to restart video after a switch
+    private volatile int lastServerId = -1;
+    // Written by the listener thread
+    private volatile long uplinkBytesPerSecond;
+    private volatile ScheduledExecutorService pingScheduler;
+    private volatile SessionRecorder recorder;
+    private int pingSeq;
+
+    // Detections are decoded on the listener thread and handed to the callback
+    // executor through preallocated buffers, so the receive path does not allocate.
+    // Only the latest result and metrics wait for a delivery; older ones are dropped
+    private final ClassTable classTable = new ClassTable();
+    private final TripleBuffer<DetectionBuffer> detectionsExchange = new TripleBuffer<>(
+        new DetectionBuffer(), new DetectionBuffer(), new DetectionBuffer());
+    private final AtomicReference<YFPMessage.MetricsData> latestMetrics = new AtomicReference<>();
+    private final AtomicBoolean deliveryRequested = new AtomicBoolean();
+    private final Runnable deliverResults = this::deliverResults;
+    private volatile Runnable deliveryWaker;
+    private volatile FrameSender.DropListener frameDropListener;
+    private volatile ResultAckListener resultAckListener;
+    private final FrameMetadataRing frameMetadata = new FrameMetadataRing();
+    private final PipelineTimings pipelineTimings = new PipelineTimings();
+    // Listener thread
+    private final FrameMetadataRing.Entry receivedFrame = new FrameMetadataRing.Entry();
+    private final DetectionBuffer receivedDetections = new DetectionBuffer();
+    private int listenTimeoutMs;
+
+    public interface Callback {
+        /** Every server that answered discovery, most spare capacity first. */
+        void onServersDiscovered(List<ServerPool.Server> servers);
+        void onConnected();
+        void onDisconnected();
+        /**
+         * Called with the latest result; results that arrive faster than they
+         * are delivered are skipped. The buffer is reused and is only valid
+         * until the callback returns. Class ids resolve through
+         * {@link #getClassTable()}.
+         */
+        void onDetectionsReceived(DetectionBuffer detections);
+        /** Called with the latest metrics, like {@link #onDetectionsReceived}. */
+        void onMetricsReceived(YFPMessage.MetricsData metrics);
+        void onError(String error);
+    }
+
+    public interface ResultAckListener {
+        /**
+         * Called on the listener thread for every result a server sends,
+         * including results the callback never sees because a newer one
+         * replaced them or they arrived too late to keep frame order.
+         */
+        void onResultAcked(long frameId, long processingTimeMs);
+    }
+
+    /**
+     * Log output, shaped like android.util.Log. Messages are only built when
+     * the matching guard is true.
+     */
+    public interface Logger {
+        enum Category {
+            /** Connection lifecycle and frame sending. */
+            BASIC,
+            /** Detection results. */
+            DETECTION
+        }
+
+        /** Warnings and errors to stderr, nothing else. */
+        Logger STDERR = new Logger() {
+            @Override
+            public boolean isDebug(Category category) {
+                return false;
+            }
+
+            @Override
+            public boolean isTraced(Category category, long frameId) {
+                return false;
+            }
+
+            @Override
+            public void d(String message) {
+            }
+
+            @Override
+            public void v(String message) {
+            }
+
+            @Override
+            public void w(String message) {
+                System.err.println("W/YFPClient: " + message);
+            }
+
+            @Override
+            public void e(String message, Throwable error) {
+                System.err.println("E/YFPClient: " + message + (error != null ? ": " + error : ""));
+            }
+        };
+
+        /** True if one-off debug messages for {@code category} should be logged. */
+        boolean isDebug(Category category);
+
+        /** True if per-frame messages about {@code frameId} should be logged. */
+        boolean isTraced(Category category, long frameId);
+
+        void d(String message);
+
+        void v(String message);
+
+        void w(String message);
+
+        /** @param error cause, or null */
+        void e(String message, Throwable error);
+    }
+
+    public YFPClient(Callback callback, Executor callbackExecutor, Logger logger) {
+        this.callback = callback;
+        this.callbackExecutor = callbackExecutor;
+        this.logger = logger;
+        this.executor = Executors.newFixedThreadPool(3);
+    }
+
+    /** Names sent in DISCOVER and CONNECT, such as Build.MODEL and Build.DEVICE. */
+    public void setDeviceNames(String model, String deviceId) {
+        this.deviceModel = model;
+        this.deviceId = deviceId;
+    }
+
+    /**
+     * Sends DISCOVER to each target (a broadcast address, or single servers)
+     * and collects every server that answers within {@link #DISCOVERY_WINDOW_MS}.
+     * Servers that do not say which port they listen on are assumed on
+     * {@code defaultPort}. Call {@link #connect()} to stream to all of them.
+     */
+    public void discover(int defaultPort, SocketAddress... targets) {
+        executor.execute(() -> {
+            try (DatagramSocket discoverySocket = new DatagramSocket()) {
+                discoverySocket.setBroadcast(true);
+
+                YFPMessage discoverMsg = new YFPMessage(YFPMessage.MessageType.DISCOVER,
+                    new YFPMessage.DiscoverData(deviceModel, "1.0"));
+
+                byte[] data = discoverMsg.toJson().getBytes();
+                servers.clear();
+                int answered = servers.discover(discoverySocket, data, DISCOVERY_WINDOW_MS, defaultPort, targets);
+                if (answered == 0) {
+                    callbackExecutor.execute(() -> callback.onError("Server discovery failed: no server answered"));
+                    return;
+                }
+                List<ServerPool.Server> found = servers.getServers();
+                if (logger.isDebug(Logger.Category.BASIC)) {
+                    logger.d("BASIC_DEBUG: Discovered " + found.size() + " servers: " + found);
+                }
+                callbackExecutor.execute(() -> callback.onServersDiscovered(found));
+
+            } catch (Exception e) {
+                logger.e("Discovery failed", e);
+                callbackExecutor.execute(() -> callback.onError("Server discovery failed: " + e.getMessage()));
+            }
+        });
+    }
+
+    /** Connects to a single server, instead of those found by discovery. */
+    public void connect(InetSocketAddress address) {
+        servers.clear();
+        servers.add(address);
+        connect();
+    }
+
+    /**
+     * Connects to every known server. Frames are spread over those that
+     * accept the connection; servers that fail are left out.
+     */
+    public void connect() {
+        List<ServerPool.Server> targets = servers.getServers();
+        if (logger.isDebug(Logger.Category.BASIC)) {
+            logger.d("BASIC_DEBUG: Connecting to servers: " + targets);
+        }
+        executor.execute(() -> {
+            try {
+                udpSocket = new DatagramSocket();
+                if (logger.isDebug(Logger.Category.BASIC)) {
+                    logger.d("BASIC_DEBUG: UDP socket created on " + udpSocket.getLocalAddress()
+                        + ":" + udpSocket.getLocalPort());
+                }
+            } catch (Exception e) {
+                logger.e("Connection failed", e);
+                callbackExecutor.execute(() -> callback.onError("Connection failed: " + e.getMessage()));
+                return;
+            }
+
+            uplinkBytesPerSecond = 0;
+            lastServerId = -1;
+            reorderBuffer.clear();
+            Exception lastError = null;
+            for (ServerPool.Server server : targets) {
+                try {
+                    connectServer(server);
+                } catch (Exception e) {
+                    logger.e("Connection to " + server + " failed", e);
+                    closeServer(server);
+                    lastError = e;
+                }
+            }
+            if (servers.getUpCount() == 0) {
+                String reason = lastError != null ? lastError.getMessage() : "no server";
+                udpSocket.close();
+                callbackExecutor.execute(() -> callback.onError("Connection failed: " + reason));
+                return;
+            }
+
+            isConnected = true;
+            callbackExecutor.execute(() -> callback.onConnected());
+
+            startListening();
+            startPinging();
+        });
+    }
+
+    /** Opens the frame connection to one server and makes it selectable. */
+    private void connectServer(ServerPool.Server server) throws IOException {
+        // JPEG until the server picks a format in CONNECT_ACK
+        server.frameFormat = FrameCodec.FORMAT_JPEG;
+        server.acceptedFrameFormats = 1 << FrameCodec.FORMAT_JPEG;
+        server.clockOffset.reset();
+
+        FrameTransport transport = FrameTransport.create(transportType);
+        server.transport = transport;
+        transport.connect(server.address, CONNECT_TIMEOUT_MS);
+        if (logger.isDebug(Logger.Category.BASIC)) {
+            logger.d("BASIC_DEBUG: TCP connection to " + server + " established, transport=" + transportType);
+        }
+
+        // Sent after the frame connection is up, so the server can match the two
+        // by port even when several clients share an address
+        YFPMessage.ConnectData connectData = new YFPMessage.ConnectData(deviceId, maxFrameWidth, maxFrameHeight);
+        connectData.frameFormats = frameFormats;
+        connectData.framePort = transport.getLocalPort();
+        connectData.maxDatagramSize = ResultFragments.DEFAULT_DATAGRAM_SIZE;
+        YFPMessage connectMsg = new YFPMessage(YFPMessage.MessageType.CONNECT, connectData);
+        sendUdpMessage(connectMsg, server);
+        debug("BASIC_DEBUG: Sent CONNECT message to server");
+
+        // Send times are taken on the writer thread, just before the bytes go out
+        FrameSender.FrameWriter writer = (payload, frameId, captureTimestampNs, width, height,
+                                          format, quality) -> {
+            long sendNs = System.nanoTime();
+            frameMetadata.recordSend(frameId, sendNs, payload.length());
+            servers.onSent(server, sendNs);
+            reorderBuffer.onDispatched(frameId, server.id);
+            transport.writeFrame(payload, frameId, captureTimestampNs, width, height, format, quality);
+            pipelineTimings.mark(PipelineTimings.Stage.WRITTEN, frameId, System.nanoTime());
+            SessionRecorder sessionRecorder = recorder;
+            if (sessionRecorder != null) {
+                sessionRecorder.recordFrame(payload, frameId, captureTimestampNs, width, height, format, quality);
+            }
+        };
+        FrameSender sender = new FrameSender(writer, e -> {
+            logger.e("Failed to send frame to " + server, e);
+            failServer(server);
+        }, maxFramesInFlight, MAX_PENDING_FRAMES, FRAME_ACK_TIMEOUT_MS);
+        sender.setDropListener(this::onFrameDropped);
+        server.sender = sender;
+        sender.start();
+        servers.markUp(server);
+    }
+
+    /**
+     * Takes a server that failed out of the rotation. Frames still waiting for
+     * it are given up on; with no server left, the client disconnects.
+     */
+    private void failServer(ServerPool.Server server) {
+        if (servers.markDown(server)) {
+            onServerDown(server);
+        }
+    }
+
+    private void onFrameDropped(long frameId) {
+        FrameSender.DropListener listener = frameDropListener;
+        if (listener != null) {
+            listener.onFrameDropped(frameId);
+        }
+    }
+
+    private void onServerDown(ServerPool.Server server) {
+        reorderBuffer.onServerDown(server.id);
+        logger.w("Server " + server + " stopped answering, " + servers.getUpCount() + " left");
+        executor.execute(() -> closeServer(server));
+        if (isConnected && servers.getUpCount() == 0) {
+            callbackExecutor.execute(() -> callback.onError("Lost connection to every server"));
+            disconnect();
+        }
+    }
+
+    private void closeServer(ServerPool.Server server) {
+        servers.markDown(server);
+        FrameSender sender = server.sender;
+        if (sender != null) {
+            sender.stop();
+        }
+        FrameTransport transport = server.transport;
+        if (transport != null && transport.isOpen()) {
+            try {
+                transport.close();
+            } catch (IOException e) {
+                logger.e("Error closing TCP socket", e);
+            }
+        }
+    }
+
+    /**
+     * Queues a pooled frame in one of the {@link FrameCodec} formats for the
+     * connection's writer thread. The buffer is released once it has been
+     * written or dropped.
+     *
+     * @return false if this frame, or an older unsent one, was dropped; video
+     *         encoders must then start again from a keyframe
+     */
+    public boolean sendFrame(FrameBuffer imageData, long frameId, long captureTimestampNs,
+                             int width, int height, int format, int quality) {
+        if (!isConnected) {
+            debug("BASIC_DEBUG: Tried to send frame but not connected");
+            imageData.release();
+            onFrameDropped(frameId);
+            return false;
+        }
+        ServerPool.Server failed;
+        while ((failed = servers.checkHealth(System.nanoTime())) != null) {
+            onServerDown(failed);
+        }
+        ServerPool.Server server = servers.select(balancePolicy);
+        FrameSender sender = server != null ? server.sender : null;
+        if (sender == null) {
+            imageData.release();
+            onFrameDropped(frameId);
+            return false;
+        }
+
+        if (logger.isTraced(Logger.Category.BASIC, frameId)) {
+            logger.v("BASIC_DEBUG: Queueing frame " + frameId + " for " + server + ", size="
+                + imageData.length() + ", in flight=" + sender.getInFlight());
+        }
+        // A server that did not see the stream so far needs a keyframe
+        boolean switched = lastServerId != server.id;
+        lastServerId = server.id;
+        pipelineTimings.mark(PipelineTimings.Stage.ENQUEUED, frameId, System.nanoTime());
+        boolean queued = sender.submit(imageData, frameId, captureTimestampNs, width, height, format, quality);
+        return queued && !(switched && isVideoFormat(format));
+    }
+
+    /**
+     * Records every frame written and every result received from now on, or
+     * stops recording if {@code recorder} is null. The recorder is not closed
+     * here.
+     */
+    public void setRecorder(SessionRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    public SessionRecorder getRecorder() {
+        return recorder;
+    }
+
+    /**
+     * Lets the caller pace result delivery, such as once per display frame.
+     * Without a waker each delivery is posted to the callback executor. With
+     * one, {@code waker} runs on the listener thread when a result or metrics
+     * arrive, at most once until {@link #deliverResults()} next runs, and must
+     * arrange for that call on the callback executor's thread.
+     */
+    public void setDeliveryWaker(Runnable waker) {
+        this.deliveryWaker = waker;
+    }
+
+    /**
+     * Told about every frame passed to {@link #sendFrame} that will get no
+     * result for reasons other than the network: refused, dropped unsent to
+     * make room for a newer frame, or skipped by the server. Runs on whichever
+     * client thread gives the frame up.
+     */
+    public void setFrameDropListener(FrameSender.DropListener listener) {
+        this.frameDropListener = listener;
+    }
+
+    /** Told about every answered frame as it arrives, unlike the coalesced callback. */
+    public void setResultAckListener(ResultAckListener listener) {
+        this.resultAckListener = listener;
+    }
+
+    /**
+     * Hands the latest result and the latest metrics, if any arrived since
+     * the last delivery, to the callback on the calling thread: each callback
+     * runs at most once per call. Call from the callback executor's thread.
+     *
+     * @return true if anything was delivered
+     */
+    public boolean deliverResults() {
+        deliveryRequested.set(false);
+        boolean delivered = false;
+        DetectionBuffer detections = detectionsExchange.consumeLatest();
+        if (detections != null && callback != null) {
+            callback.onDetectionsReceived(detections);
+            delivered = true;
+        }
+        YFPMessage.MetricsData metrics = latestMetrics.getAndSet(null);
+        if (metrics != null && callback != null) {
+            callback.onMetricsReceived(metrics);
+            delivered = true;
+        }
+        return delivered;
+    }
+
+    /**
+     * Selects how frames are written to the server. Applies from the next
+     * connection. Pair {@link FrameTransport.Type#CHANNEL} with direct frame
+     * buffers to avoid a copy per frame.
+     */
+    public void setTransportType(FrameTransport.Type transportType) {
+        this.transportType = transportType;
+    }
+
+    public FrameTransport.Type getTransportType() {
+        return transportType;
+    }
+
+    /** Caps the number of frames written but not yet answered. Applies from the next connection. */
+    public void setMaxFramesInFlight(int maxFramesInFlight) {
+        this.maxFramesInFlight = maxFramesInFlight;
+    }
+
+    /** Largest frame that will be sent, reported to the server at connect time. */
+    public void setMaxFrameSize(int width, int height) {
+        this.maxFrameWidth = width;
+        this.maxFrameHeight = height;
+    }
+
+    /**
+     * Frame formats to offer at connect time ({@link FrameCodec#formatName}
+     * names), most preferred first. Should include JPEG, which every server
+     * accepts. Applies from the next connection.
+     */
+    public void setFrameFormats(String... formats) {
+        this.frameFormats = formats.clone();
+    }
+
+    /** Spreads frames over the connected servers with this policy. Applies from the next frame. */
+    public void setBalancePolicy(ServerPool.Policy balancePolicy) {
+        this.balancePolicy = balancePolicy;
+    }
+
+    public ServerPool.Policy getBalancePolicy() {
+        return balancePolicy;
+    }
+
+    /**
+     * {@link FrameCodec} format the servers picked from the offered formats;
+     * JPEG until CONNECT_ACK arrives, if the server predates negotiation, or
+     * if the connected servers picked different formats. Never a video format
+     * while frames are spread over more than one server, since each server
+     * would only see part of the stream.
+     */
+    public int getFrameFormat() {
+        int format = servers.getCommonFrameFormat();
+        return isVideoFormat(format) && servers.getUpCount() > 1 ? FrameCodec.FORMAT_JPEG : format;
+    }
+
+    /**
+     * Every format all connected servers accept from the offered ones, one bit
+     * per {@link FrameCodec} format ({@code 1 << format}). JPEG is always
+     * included; video formats only with a single server.
+     */
+    public int getAcceptedFrameFormats() {
+        int mask = servers.getCommonAcceptedFormats();
+        if (servers.getUpCount() > 1) {
+            mask &= ~(1 << FrameCodec.FORMAT_H264 | 1 << FrameCodec.FORMAT_HEVC);
+        }
+        return mask;
+    }
+
+    /** Servers found by the last discovery, or the one passed to {@link #connect(InetSocketAddress)}. */
+    public ServerPool getServers() {
+        return servers;
+    }
+
+    /**
+     * Smoothed uplink throughput in bytes per second, from frame sizes and the
+     * time from writing each frame to the server receiving all of it. 0 until
+     * the server reports receive times and the clock offset is known.
+     */
+    public long getUplinkBytesPerSecond() {
+        return uplinkBytesPerSecond;
+    }
+
+    public long getFramesSent() {
+        return servers.sumSenders(FrameSender::getSentCount);
+    }
+
+    public long getBytesSent() {
+        return servers.sumSenders(FrameSender::getSentBytes);
+    }
+
+    public long getFramesDropped() {
+        return servers.sumSenders(FrameSender::getDroppedCount);
+    }
+
+    public long getFramesAcked() {
+        return servers.sumSenders(FrameSender::getAckedCount);
+    }
+
+    public int getFramesInFlight() {
+        return (int) servers.sumSenders(FrameSender::getInFlight);
+    }
+
+    /** Class names for the ids in {@link DetectionBuffer#classId}, as sent by the server at connect time. */
+    public ClassTable getClassTable() {
+        return classTable;
+    }
+
+    /**
+     * Metadata of recently sent frames by frame id. Captures are recorded by the
+     * caller before {@link #sendFrame}; send times are recorded here as frames go out.
+     */
+    public FrameMetadataRing getFrameMetadata() {
+        return frameMetadata;
+    }
+
+    /**
+     * Stage latencies of sent frames. This client marks the enqueue, write and
+     * receive stages; the caller marks the rest.
+     */
+    public PipelineTimings getPipelineTimings() {
+        return pipelineTimings;
+    }
+
+    /**
+     * Estimate of the first connected server's clock from periodic PING/PONG
+     * exchanges, reset on every connection. Each server has its own, used to
+     * split that server's reported times into uplink, server and downlink
+     * latency in {@link #getPipelineTimings()}.
+     */
+    public ClockOffsetEstimator getClockOffset() {
+        ServerPool.Server primary = servers.getPrimary();
+        return primary != null ? primary.clockOffset : noClockOffset;
+    }
+
+    private static boolean isVideoFormat(int format) {
+        return format == FrameCodec.FORMAT_H264 || format == FrameCodec.FORMAT_HEVC;
+    }
+
+    /** The server's pick, if it is one we offered; JPEG otherwise. */
+    private int negotiatedFormat(String name) {
+        if (name != null) {
+            for (String offered : frameFormats) {
+                if (name.equals(offered)) {
+                    return FrameCodec.formatCode(name);
+                }
+            }
+            logger.w("Server picked a frame format that was not offered: " + name);
+        }
+        return FrameCodec.FORMAT_JPEG;
+    }
+
+    /** Mask of the offered formats the server lists as accepted, plus JPEG. */
+    private int acceptedFormats(String[] names) {
+        int mask = 1 << FrameCodec.FORMAT_JPEG;
+        if (names != null) {
+            for (String name : names) {
+                for (String offered : frameFormats) {
+                    if (offered.equals(name)) {
+                        mask |= 1 << FrameCodec.formatCode(name);
+                    }
+                }
+            }
+        }
+        return mask;
+    }
+
+    private void startPinging() {
+        pingSeq = 0;
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            r -> new Thread(r, "clock-ping"));
+        pingScheduler = scheduler;
+        scheduler.execute(this::sendPing);
+    }
+
+    /** Ping thread: sends one PING to every connected server and schedules the next. */
+    private void sendPing() {
+        ScheduledExecutorService scheduler = pingScheduler;
+        if (!isConnected || scheduler == null) {
+            return;
+        }
+        int seq = pingSeq++;
+        for (ServerPool.Server server : servers.getServers()) {
+            if (!servers.isUp(server)) {
+                continue;
+            }
+            try {
+                YFPMessage.PingData ping = new YFPMessage.PingData(seq, 0);
+                YFPMessage message = new YFPMessage(YFPMessage.MessageType.PING, ping);
+                ping.clientSendNs = System.nanoTime();
+                sendUdpMessage(message, server);
+            } catch (IOException e) {
+                logger.w("Failed to send ping to " + server + ": " + e.getMessage());
+            }
+        }
+        long delayMs = seq < WARMUP_PINGS ? WARMUP_PING_INTERVAL_MS : PING_INTERVAL_MS;
+        if (!scheduler.isShutdown()) {
+            scheduler.schedule(this::sendPing, delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** Listener thread: feeds a PONG for one of our pings to that server's clock estimate. */
+    private void onPong(ServerPool.Server server, YFPMessage.PingData pong, long receivedNs) {
+        if (pong.serverReceiveNs == 0 && pong.serverSendNs == 0) {
+            // Server without clock sync support
+            return;
+        }
+        ClockOffsetEstimator clockOffset = server.clockOffset;
+        boolean accepted = clockOffset.addSample(pong.clientSendNs, pong.serverReceiveNs,
+            pong.serverSendNs, receivedNs);
+        if (logger.isTraced(Logger.Category.BASIC, pong.seq)) {
+            logger.v("BASIC_DEBUG: Pong " + pong.seq + " from " + server + (accepted ? "" : " rejected")
+                + ", clock offset " + clockOffset.getOffsetNs() / 1000 + "us, rtt "
+                + clockOffset.getRttNs() / 1000 + "us");
+        }
+    }
+
+    /** Listener thread: answers a server PING with our own receive and send times. */
+    private void replyToPing(ServerPool.Server server, YFPMessage.PingData ping, long receivedNs) {
+        YFPMessage.PingData pong = new YFPMessage.PingData(ping != null ? ping.seq : 0,
+            ping != null ? ping.clientSendNs : 0);
+        pong.serverReceiveNs = receivedNs;
+        YFPMessage message = new YFPMessage(YFPMessage.MessageType.PONG, pong);
+        try {
+            pong.serverSendNs = System.nanoTime();
+            sendUdpMessage(message, server);
+        } catch (IOException e) {
+            logger.e("Failed to send pong", e);
+        }
+    }
+
+    private void sendUdpMessage(YFPMessage message, ServerPool.Server server) throws IOException {
+        byte[] data = message.toJson().getBytes();
+        DatagramPacket packet = new DatagramPacket(data, data.length, server.address);
+        udpSocket.send(packet);
+    }
+
+    private void startListening() {
+        executor.execute(() -> {
+            // Whole datagrams of any size, from servers that do not fragment results
+            byte[] buffer = new byte[ResultFragments.MAX_DATAGRAM_SIZE];
+            debug("BASIC_DEBUG: UDP listener thread started");
+
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            listenTimeoutMs = 0;
+            while (isConnected) {
+                try {
+                    if (udpSocket == null || udpSocket.isClosed()) {
+                        logger.e("UDP socket is null or closed, exiting listener", null);
+                        break;
+                    }
+
+                    // Wake up in time to release a result held for reordering
+                    updateListenTimeout(System.nanoTime());
+                    packet.setLength(buffer.length);
+                    udpSocket.receive(packet);
+                    long receivedNs = System.nanoTime();
+                    if (!isConnected) {
+                        // Closing the socket can end a receive without data
+                        break;
+                    }
+
+                    ServerPool.Server server = servers.find(packet.getAddress(), packet.getPort());
+                    if (server == null) {
+                        debug("BASIC_DEBUG: Ignoring datagram from unknown server");
+                        continue;
+                    }
+
+                    byte[] data = buffer;
+                    int length = packet.getLength();
+                    if (ResultFragments.isFragment(buffer, 0, length)) {
+                        try {
+                            length = server.resultFragments.offer(buffer, 0, length);
+                        } catch (ProtocolException e) {
+                            logger.w("Dropping malformed result fragment: " + e.getMessage());
+                            continue;
+                        }
+                        if (length < 0) {
+                            continue;
+                        }
+                        // The rest of the message arrived; handle it like a single datagram
+                        data = server.resultFragments.message();
+                    }
+
+                    if (DetectionsCodec.isBinary(data, 0, length)) {
+                        try {
+                            DetectionsCodec.decode(data, 0, length, receivedDetections);
+                            onDetections(server, receivedNs);
+                        } catch (ProtocolException e) {
+                            logger.w("Dropping malformed detections datagram: " + e.getMessage());
+                        }
+                        continue;
+                    }
+
+                    String json = new String(data, 0, length);
+                    try {
+                        YFPMessage message = YFPMessage.fromJson(json);
+                        if (message.type == YFPMessage.MessageType.DETECTIONS) {
+                            // Servers without binary detections; same path as the binary format
+                            if (message.data instanceof YFPMessage.DetectionsData) {
+                                receivedDetections.setFrom((YFPMessage.DetectionsData) message.data, classTable);
+                                onDetections(server, receivedNs);
+                            }
+                        } else if (message.type == YFPMessage.MessageType.PONG) {
+                            if (message.data instanceof YFPMessage.PingData) {
+                                onPong(server, (YFPMessage.PingData) message.data, receivedNs);
+                            }
+                        } else if (message.type == YFPMessage.MessageType.PING) {
+                            replyToPing(server, (YFPMessage.PingData) message.data, receivedNs);
+                        } else if (message.type == YFPMessage.MessageType.CONNECT_ACK) {
+                            YFPMessage.ConnectAckData ack = (YFPMessage.ConnectAckData) message.data;
+                            if (ack != null) {
+                                // Servers are expected to run the same model
+                                classTable.setNames(ack.classNames);
+                                server.frameFormat = negotiatedFormat(ack.frameFormat);
+                                server.acceptedFrameFormats = acceptedFormats(ack.frameFormats);
+                                if (logger.isDebug(Logger.Category.BASIC)) {
+                                    logger.d("BASIC_DEBUG: Received class table with " + classTable.size()
+                                        + " classes from " + server + ", detections protocol "
+                                        + ack.detectionsProtocolVersion
+                                        + ", frame format " + FrameCodec.formatName(server.frameFormat));
+                                }
+                            }
+                        } else if (message.type == YFPMessage.MessageType.METRICS) {
+                            if (message.data instanceof YFPMessage.MetricsData) {
+                                latestMetrics.set((YFPMessage.MetricsData) message.data);
+                                requestDelivery();
+                            }
+                        }
+                    } catch (Exception e) {
+                        logger.e("Error parsing JSON message: " + json, e);
+                    }
+                    
+                } catch (java.net.SocketTimeoutException e) {
+                    if (isConnected) {
+                        // Normal if no packets are received for a while, or a held result is due
+                        releaseResults(System.nanoTime());
+                        continue;
+                    } else {
+                        break;
+                    }
+                } catch (SocketException e) {
+                    if (isConnected) {
+                        logger.e("Socket exception while listening", e);
+                    } else {
+                        debug("BASIC_DEBUG: Socket closed, stopping UDP listener");
+                    }
+                    break;
+                } catch (IOException e) {
+                    logger.e("IOException in UDP listener", e);
+                    break;
+                } catch (Exception e) {
+                    logger.e("Unexpected exception in UDP listener", e);
+                    break;
+                }
+            }
+        });
+    }
+
+    /** Listener thread: only touches the socket when the timeout changes. */
+    private void updateListenTimeout(long nowNs) throws SocketException {
+        long releaseNs = reorderBuffer.nextReleaseNs();
+        int timeoutMs = releaseNs == Long.MAX_VALUE ? LISTEN_TIMEOUT_MS
+            : (int) Math.max(1, Math.min(LISTEN_TIMEOUT_MS, (releaseNs - nowNs) / 1_000_000L + 1));
+        if (timeoutMs != listenTimeoutMs) {
+            udpSocket.setSoTimeout(timeoutMs);
+            listenTimeoutMs = timeoutMs;
+        }
+    }
+
+    /**
+     * Listener thread: accounts for the result just decoded into
+     * {@link #receivedDetections} and passes it on in frame order. Credits
+     * return here rather than after the hop to the callback executor.
+     */
+    private void onDetections(ServerPool.Server server, long receivedNs) {
+        DetectionBuffer detections = receivedDetections;
+        boolean frameKnown = frameMetadata.get(detections.frameId, receivedFrame);
+        if (frameKnown) {
+            mapToFullFrame(detections, receivedFrame);
+        }
+        pipelineTimings.mark(PipelineTimings.Stage.RECEIVED, detections.frameId, receivedNs);
+        ClockOffsetEstimator clockOffset = server.clockOffset;
+        if (detections.serverReceiveNs != 0 && clockOffset.hasEstimate()) {
+            long serverReceiveLocalNs = clockOffset.toLocalNs(detections.serverReceiveNs);
+            pipelineTimings.recordServerTimes(detections.frameId, serverReceiveLocalNs,
+                clockOffset.toLocalNs(detections.serverSendNs), receivedNs);
+            if (frameKnown) {
+                updateUplinkThroughput(receivedFrame, serverReceiveLocalNs);
+            }
+        }
+        if (logger.isTraced(Logger.Category.DETECTION, detections.frameId)) {
+            logger.v("DETECTION_DEBUG: Received " + detections.count + " detections for frame "
+                + detections.frameId + " from " + server + ", server time " + detections.processingTimeMs + "ms");
+        }
+        FrameSender sender = server.sender;
+        if (sender != null) {
+            sender.onAck(detections.frameId);
+        }
+        ResultAckListener ackListener = resultAckListener;
+        if (detections.skipped) {
+            onFrameDropped(detections.frameId);
+        } else if (ackListener != null) {
+            ackListener.onResultAcked(detections.frameId, detections.processingTimeMs);
+        }
+        long rttNs = frameKnown && receivedFrame.sendTimeNs != 0 ? receivedNs - receivedFrame.sendTimeNs : 0;
+        servers.onAnswered(server, rttNs, receivedNs);
+        SessionRecorder sessionRecorder = recorder;
+        if (sessionRecorder != null) {
+            sessionRecorder.recordDetections(detections);
+        }
+        if (reorderBuffer.offer(detections, server.id, receivedNs)) {
+            releaseResults(receivedNs);
+        } else if (logger.isTraced(Logger.Category.DETECTION, detections.frameId)) {
+            logger.v("DETECTION_DEBUG: Dropping late result for frame " + detections.frameId);
+        }
+    }
+
+    /**
+     * Listener thread: publishes every result that is due, oldest first, and
+     * requests one delivery. Only the newest is delivered if the callback
+     * thread falls behind.
+     */
+    private void releaseResults(long nowNs) {
+        boolean published = false;
+        while (reorderBuffer.poll(nowNs, detectionsExchange.writeBuffer())) {
+            if (detectionsExchange.writeBuffer().skipped) {
+                // Only held its place in frame order; the boxes on screen still stand
+                continue;
+            }
+            detectionsExchange.publish();
+            published = true;
+        }
+        if (published) {
+            requestDelivery();
+        }
+    }
+
+    /** Listener thread: wakes the callback thread unless a delivery is already pending. */
+    private void requestDelivery() {
+        if (deliveryRequested.compareAndSet(false, true)) {
+            Runnable waker = deliveryWaker;
+            if (waker != null) {
+                waker.run();
+            } else {
+                callbackExecutor.execute(deliverResults);
+            }
+        }
+    }
+
+    /**
+     * Results for a cropped frame are relative to the region that was sent;
+     * moves them into full-frame coordinates using the recorded crop.
+     */
+    private void mapToFullFrame(DetectionBuffer detections, FrameMetadataRing.Entry frame) {
+        if (frame.frameWidth <= 0 || frame.frameHeight <= 0) {
+            return;
+        }
+        int regionWidth = frame.cropRight - frame.cropLeft;
+        int regionHeight = frame.cropBottom - frame.cropTop;
+        if (regionWidth <= 0 || regionHeight <= 0
+                || (regionWidth == frame.frameWidth && regionHeight == frame.frameHeight)) {
+            return;
+        }
+        detections.mapFromRegion(frame.cropLeft / (float) frame.frameWidth, frame.cropTop / (float) frame.frameHeight,
+            regionWidth / (float) frame.frameWidth, regionHeight / (float) frame.frameHeight);
+    }
+
+    /** Listener thread. */
+    private void updateUplinkThroughput(FrameMetadataRing.Entry frame, long serverReceiveLocalNs) {
+        long transferNs = serverReceiveLocalNs - frame.sendTimeNs;
+        if (frame.sendTimeNs == 0 || frame.payloadLength <= 0 || transferNs <= 0) {
+            return;
+        }
+        long sample = frame.payloadLength * 1_000_000_000L / transferNs;
+        long current = uplinkBytesPerSecond;
+        uplinkBytesPerSecond = current == 0 ? sample : current + (sample - current) / 5;
+    }
+
+    private void debug(String message) {
+        if (logger.isDebug(Logger.Category.BASIC)) {
+            logger.d(message);
+        }
+    }
+
+    public boolean isConnected() {
+        return isConnected;
+    }
+
+    public void disconnect() {
+        debug("BASIC_DEBUG: Starting disconnection cleanup");
+        isConnected = false;
+
+        ScheduledExecutorService scheduler = pingScheduler;
+        pingScheduler = null;
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+
+        if (udpSocket != null && !udpSocket.isClosed()) {
+            udpSocket.close();
+        }
+
+        for (ServerPool.Server server : servers.getServers()) {
+            closeServer(server);
+        }
+        reorderBuffer.clear();
+
+        debug("BASIC_DEBUG: Disconnection cleanup completed");
+        callbackExecutor.execute(() -> callback.onDisconnected());
+    }
+
+    public void shutdown() {
+        disconnect();
+        if (executor != null && !executor.isShutdown()) {
+            executor.shutdown();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,602 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shared JSON codec for {@link YFPMessage}. One {@link Gson} instance is built
+ * once with hand-written streaming adapters for every payload type, so encoding
+ * and decoding need no reflection and no intermediate JSON tree. Gson and the
+ * adapters are stateless, so the codec can be used from any thread.
+ *
+ * The wire format is unchanged: field names follow the payload classes'
+ * {@code @SerializedName}s, and null fields and null data are omitted.
+ */
+public final class YFPJsonCodec {
+    private static final TypeAdapter<YFPMessage.DiscoverData> DISCOVER = new DiscoverAdapter();
+    private static final TypeAdapter<YFPMessage.ConnectData> CONNECT = new ConnectAdapter();
+    private static final TypeAdapter<YFPMessage.ConnectAckData> CONNECT_ACK = new ConnectAckAdapter();
+    private static final TypeAdapter<YFPMessage.FrameData> FRAME = new FrameAdapter();
+    private static final TypeAdapter<YFPMessage.DetectionsData> DETECTIONS = new DetectionsAdapter();
+    private static final TypeAdapter<YFPMessage.MetricsData> METRICS = new MetricsAdapter();
+    private static final TypeAdapter<YFPMessage.PingData> PING = new PingAdapter();
+    private static final TypeAdapter<YFPMessage> MESSAGE = new MessageAdapter();
+
+    public static final Gson GSON = new GsonBuilder()
+        .registerTypeAdapter(YFPMessage.class, MESSAGE)
+        .registerTypeAdapter(YFPMessage.DiscoverData.class, DISCOVER)
+        .registerTypeAdapter(YFPMessage.ConnectData.class, CONNECT)
+        .registerTypeAdapter(YFPMessage.ConnectAckData.class, CONNECT_ACK)
+        .registerTypeAdapter(YFPMessage.FrameData.class, FRAME)
+        .registerTypeAdapter(YFPMessage.DetectionsData.class, DETECTIONS)
+        .registerTypeAdapter(YFPMessage.MetricsData.class, METRICS)
+        .registerTypeAdapter(YFPMessage.PingData.class, PING)
+        .create();
+
+    private YFPJsonCodec() {
+    }
+
+    public static String toJson(YFPMessage message) {
+        return MESSAGE.toJson(message);
+    }
+
+    /**
+     * Parses one message in a single streaming pass.
+     *
+     * @throws JsonParseException if the input is not a valid message
+     */
+    public static YFPMessage fromJson(String json) {
+        try {
+            return MESSAGE.fromJson(json);
+        } catch (IOException e) {
+            throw new JsonParseException(e);
+        } catch (IllegalStateException | NumberFormatException e) {
+            // JsonReader reports unexpected tokens this way
+            throw new JsonParseException(e);
+        }
+    }
+
+    /** Payload adapter for a message type, or null if the type carries no data. */
+    private static TypeAdapter<?> payloadAdapter(YFPMessage.MessageType type) {
+        switch (type) {
+            case DISCOVER:
+                return DISCOVER;
+            case CONNECT:
+                return CONNECT;
+            case CONNECT_ACK:
+                return CONNECT_ACK;
+            case FRAME:
+                return FRAME;
+            case DETECTIONS:
+                return DETECTIONS;
+            case METRICS:
+                return METRICS;
+            case PING:
+            case PONG:
+                return PING;
+            default:
+                return null;
+        }
+    }
+
+    private static YFPMessage.MessageType parseType(String name) {
+        try {
+            return YFPMessage.MessageType.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            throw new JsonParseException("Unknown message type: " + name);
+        }
+    }
+
+    private static void writeString(JsonWriter out, String name, String value) throws IOException {
+        if (value != null) {
+            out.name(name).value(value);
+        }
+    }
+
+    private static String readString(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+
+    private static void writeStringArray(JsonWriter out, String name, String[] values) throws IOException {
+        if (values != null) {
+            out.name(name).beginArray();
+            for (String value : values) {
+                out.value(value);
+            }
+            out.endArray();
+        }
+    }
+
+    private static String[] readStringArray(JsonReader in) throws IOException {
+        if (skipNull(in)) {
+            return null;
+        }
+        List<String> values = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+            values.add(readString(in));
+        }
+        in.endArray();
+        return values.toArray(new String[0]);
+    }
+
+    private static boolean skipNull(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return true;
+        }
+        return false;
+    }
+
+    private static final class MessageAdapter extends TypeAdapter<YFPMessage> {
+        @Override
+        @SuppressWarnings("unchecked")
+        public void write(JsonWriter out, YFPMessage message) throws IOException {
+            if (message == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            if (message.type != null) {
+                out.name("type").value(message.type.name());
+            }
+            out.name("timestamp").value(message.timestamp);
+            TypeAdapter<Object> adapter = message.type != null
+                ? (TypeAdapter<Object>) payloadAdapter(message.type) : null;
+            if (message.data != null) {
+                out.name("data");
+                if (adapter != null) {
+                    adapter.write(out, message.data);
+                } else {
+                    GSON.toJson(message.data, message.data.getClass(), out);
+                }
+            }
+            out.endObject();
+        }
+
+        @Override
+        public YFPMessage read(JsonReader in) throws IOException {
+            if (skipNull(in)) {
+                return null;
+            }
+            YFPMessage.MessageType type = null;
+            long timestamp = 0;
+            Object data = null;
+            // Only needed if a sender puts "data" before "type"
+            JsonElement deferredData = null;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "type":
+                        type = parseType(in.nextString());
+                        break;
+                    case "timestamp":
+                        timestamp = in.nextLong();
+                        break;
+                    case "data":
+                        if (skipNull(in)) {
+                            break;
+                        }
+                        if (type == null) {
+                            deferredData = JsonParser.parseReader(in);
+                        } else {
+                            TypeAdapter<?> adapter = payloadAdapter(type);
+                            if (adapter != null) {
+                                data = adapter.read(in);
+                            } else {
+                                in.skipValue();
+                            }
+                        }
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+
+            if (type == null) {
+                throw new JsonParseException("Message has no type");
+            }
+            if (deferredData != null && deferredData.isJsonObject()) {
+                TypeAdapter<?> adapter = payloadAdapter(type);
+                if (adapter != null) {
+                    data = adapter.fromJsonTree(deferredData);
+                }
+            }
+            YFPMessage message = new YFPMessage(type, data);
+            message.timestamp = timestamp;
+            return message;
+        }
+    }
+
+    private static final class DiscoverAdapter extends TypeAdapter<YFPMessage.DiscoverData> {
+        @Override
+        public void write(JsonWriter out, YFPMessage.DiscoverData value) throws IOException {
+            out.beginObject();
+            writeString(out, "device_name", value.deviceName);
+            writeString(out, "app_version", value.appVersion);
+            writeString(out, "server_name", value.serverName);
+            out.name("port").value(value.port);
+            out.name("capacity_fps").value(value.capacityFps);
+            out.name("load").value(value.load);
+            out.endObject();
+        }
+
+        @Override
+        public YFPMessage.DiscoverData read(JsonReader in) throws IOException {
+            YFPMessage.DiscoverData value = new YFPMessage.DiscoverData(null, null);
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "device_name":
+                        value.deviceName = readString(in);
+                        break;
+                    case "app_version":
+                        value.appVersion = readString(in);
+                        break;
+                    case "server_name":
+                        value.serverName = readString(in);
+                        break;
+                    case "port":
+                        value.port = in.nextInt();
+                        break;
+                    case "capacity_fps":
+                        value.capacityFps = (float) in.nextDouble();
+                        break;
+                    case "load":
+                        value.load = (float) in.nextDouble();
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return value;
+        }
+    }
+
+    private static final class ConnectAdapter extends TypeAdapter<YFPMessage.ConnectData> {
+        @Override
+        public void write(JsonWriter out, YFPMessage.ConnectData value) throws IOException {
+            out.beginObject();
+            writeString(out, "device_id", value.deviceId);
+            out.name("resolution_width").value(value.resolutionWidth);
+            out.name("resolution_height").value(value.resolutionHeight);
+            out.name("frame_protocol_version").value(value.frameProtocolVersion);
+            out.name("detections_protocol_version").value(value.detectionsProtocolVersion);
+            writeStringArray(out, "frame_formats", value.frameFormats);
+            out.name("frame_port").value(value.framePort);
+            out.name("max_datagram_size").value(value.maxDatagramSize);
+            out.endObject();
+        }
+
+        @Override
+        public YFPMessage.ConnectData read(JsonReader in) throws IOException {
+            YFPMessage.ConnectData value = new YFPMessage.ConnectData(null, 0, 0);
+            // Fields the peer leaves out read as 0, as with reflective binding
+            value.frameProtocolVersion = 0;
+            value.detectionsProtocolVersion = 0;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "device_id":
+                        value.deviceId = readString(in);
+                        break;
+                    case "resolution_width":
+                        value.resolutionWidth = in.nextInt();
+                        break;
+                    case "resolution_height":
+                        value.resolutionHeight = in.nextInt();
+                        break;
+                    case "frame_protocol_version":
+                        value.frameProtocolVersion = in.nextInt();
+                        break;
+                    case "detections_protocol_version":
+                        value.detectionsProtocolVersion = in.nextInt();
+                        break;
+                    case "frame_formats":
+                        value.frameFormats = readStringArray(in);
+                        break;
+                    case "frame_port":
+                        value.framePort = in.nextInt();
+                        break;
+                    case "max_datagram_size":
+                        value.maxDatagramSize = in.nextInt();
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return value;
+        }
+    }
+
+    private static final class ConnectAckAdapter extends TypeAdapter<YFPMessage.ConnectAckData> {
+        @Override
+        public void write(JsonWriter out, YFPMessage.ConnectAckData value) throws IOException {
+            out.beginObject();
+            out.name("detections_protocol_version").value(value.detectionsProtocolVersion);
+            writeStringArray(out, "class_names", value.classNames);
+            writeString(out, "frame_format", value.frameFormat);
+            writeStringArray(out, "frame_formats", value.frameFormats);
+            out.endObject();
+        }
+
+        @Override
+        public YFPMessage.ConnectAckData read(JsonReader in) throws IOException {
+            YFPMessage.ConnectAckData value = new YFPMessage.ConnectAckData(0, null);
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "detections_protocol_version":
+                        value.detectionsProtocolVersion = in.nextInt();
+                        break;
+                    case "class_names":
+                        value.classNames = readStringArray(in);
+                        break;
+                    case "frame_format":
+                        value.frameFormat = readString(in);
+                        break;
+                    case "frame_formats":
+                        value.frameFormats = readStringArray(in);
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return value;
+        }
+    }
+
+    private static final class FrameAdapter extends TypeAdapter<YFPMessage.FrameData> {
+        @Override
+        public void write(JsonWriter out, YFPMessage.FrameData value) throws IOException {
+            out.beginObject();
+            out.name("frame_id").value(value.frameId);
+            out.name("width").value(value.width);
+            out.name("height").value(value.height);
+            writeString(out, "format", value.format);
+            out.name("quality").value(value.quality);
+            out.endObject();
+        }
+
+        @Override
+        public YFPMessage.FrameData read(JsonReader in) throws IOException {
+            YFPMessage.FrameData value = new YFPMessage.FrameData(0, 0, 0, null, 0);
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "frame_id":
+                        value.frameId = in.nextLong();
+                        break;
+                    case "width":
+                        value.width = in.nextInt();
+                        break;
+                    case "height":
+                        value.height = in.nextInt();
+                        break;
+                    case "format":
+                        value.format = readString(in);
+                        break;
+                    case "quality":
+                        value.quality = in.nextInt();
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return value;
+        }
+    }
+
+    private static final class DetectionsAdapter extends TypeAdapter<YFPMessage.DetectionsData> {
+        @Override
+        public void write(JsonWriter out, YFPMessage.DetectionsData value) throws IOException {
+            out.beginObject();
+            out.name("frame_id").value(value.frameId);
+            if (value.detections != null) {
+                out.name("detections").beginArray();
+                for (YFPMessage.Detection detection : value.detections) {
+                    writeDetection(out, detection);
+                }
+                out.endArray();
+            }
+            out.name("processing_time_ms").value(value.processingTimeMs);
+            out.name("server_receive_ns").value(value.serverReceiveNs);
+            out.name("server_send_ns").value(value.serverSendNs);
+            out.name("skipped").value(value.skipped);
+            out.endObject();
+        }
+
+        private static void writeDetection(JsonWriter out, YFPMessage.Detection detection) throws IOException {
+            if (detection == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("x").value(detection.x);
+            out.name("y").value(detection.y);
+            out.name("width").value(detection.width);
+            out.name("height").value(detection.height);
+            writeString(out, "class_name", detection.className);
+            out.name("confidence").value(detection.confidence);
+            out.endObject();
+        }
+
+        @Override
+        public YFPMessage.DetectionsData read(JsonReader in) throws IOException {
+            YFPMessage.DetectionsData value = new YFPMessage.DetectionsData(0, null, 0);
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "frame_id":
+                        value.frameId = in.nextLong();
+                        break;
+                    case "processing_time_ms":
+                        value.processingTimeMs = in.nextLong();
+                        break;
+                    case "server_receive_ns":
+                        value.serverReceiveNs = in.nextLong();
+                        break;
+                    case "server_send_ns":
+                        value.serverSendNs = in.nextLong();
+                        break;
+                    case "skipped":
+                        value.skipped = in.nextBoolean();
+                        break;
+                    case "detections":
+                        if (skipNull(in)) {
+                            break;
+                        }
+                        List<YFPMessage.Detection> detections = new ArrayList<>();
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            detections.add(skipNull(in) ? null : readDetection(in));
+                        }
+                        in.endArray();
+                        value.detections = detections.toArray(new YFPMessage.Detection[0]);
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return value;
+        }
+
+        private static YFPMessage.Detection readDetection(JsonReader in) throws IOException {
+            YFPMessage.Detection detection = new YFPMessage.Detection(0, 0, 0, 0, null, 0);
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "x":
+                        detection.x = (float) in.nextDouble();
+                        break;
+                    case "y":
+                        detection.y = (float) in.nextDouble();
+                        break;
+                    case "width":
+                        detection.width = (float) in.nextDouble();
+                        break;
+                    case "height":
+                        detection.height = (float) in.nextDouble();
+                        break;
+                    case "class_name":
+                        detection.className = readString(in);
+                        break;
+                    case "confidence":
+                        detection.confidence = (float) in.nextDouble();
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return detection;
+        }
+    }
+
+    private static final class MetricsAdapter extends TypeAdapter<YFPMessage.MetricsData> {
+        @Override
+        public void write(JsonWriter out, YFPMessage.MetricsData value) throws IOException {
+            out.beginObject();
+            out.name("fps").value(value.fps);
+            out.name("network_latency_ms").value(value.networkLatencyMs);
+            out.name("detection_time_ms").value(value.detectionTimeMs);
+            out.name("total_frames_sent").value(value.totalFramesSent);
+            out.endObject();
+        }
+
+        @Override
+        public YFPMessage.MetricsData read(JsonReader in) throws IOException {
+            YFPMessage.MetricsData value = new YFPMessage.MetricsData(0, 0, 0, 0);
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "fps":
+                        value.fps = (float) in.nextDouble();
+                        break;
+                    case "network_latency_ms":
+                        value.networkLatencyMs = in.nextLong();
+                        break;
+                    case "detection_time_ms":
+                        value.detectionTimeMs = in.nextLong();
+                        break;
+                    case "total_frames_sent":
+                        value.totalFramesSent = in.nextLong();
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return value;
+        }
+    }
+
+    private static final class PingAdapter extends TypeAdapter<YFPMessage.PingData> {
+        @Override
+        public void write(JsonWriter out, YFPMessage.PingData value) throws IOException {
+            out.beginObject();
+            out.name("seq").value(value.seq);
+            out.name("client_send_ns").value(value.clientSendNs);
+            out.name("server_receive_ns").value(value.serverReceiveNs);
+            out.name("server_send_ns").value(value.serverSendNs);
+            out.endObject();
+        }
+
+        @Override
+        public YFPMessage.PingData read(JsonReader in) throws IOException {
+            YFPMessage.PingData value = new YFPMessage.PingData(0, 0);
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "seq":
+                        value.seq = in.nextInt();
+                        break;
+                    case "client_send_ns":
+                        value.clientSendNs = in.nextLong();
+                        break;
+                    case "server_receive_ns":
+                        value.serverReceiveNs = in.nextLong();
+                        break;
+                    case "server_send_ns":
+                        value.serverSendNs = in.nextLong();
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return value;
+        }
+    }
+}
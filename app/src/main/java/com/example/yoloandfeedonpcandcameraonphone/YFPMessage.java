@@ -1,13 +1,10 @@
 package com.example.yoloandfeedonpcandcameraonphone;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import com.google.gson.annotations.SerializedName;
 
 public class YFPMessage {
     public enum MessageType {
-        DISCOVER, CONNECT, FRAME, DETECTIONS, METRICS, PING, PONG, ERROR
+        DISCOVER, CONNECT, CONNECT_ACK, FRAME, DETECTIONS, METRICS, PING, PONG, ERROR
     }
 
     @SerializedName("type")
@@ -26,44 +23,20 @@ public class YFPMessage {
     }
 
     public String toJson() {
-        return new Gson().toJson(this);
+        return YFPJsonCodec.toJson(this);
     }
 
+    /** Parses a message; see {@link YFPJsonCodec#fromJson(String)}. */
     public static YFPMessage fromJson(String json) {
-        Gson gson = new Gson();
-        JsonObject jsonObject = JsonParser.parseString(json).getAsJsonObject();
-
-        MessageType type = MessageType.valueOf(jsonObject.get("type").getAsString());
-        long timestamp = jsonObject.get("timestamp").getAsLong();
-
-        Object data = null;
-        if (jsonObject.has("data") && !jsonObject.get("data").isJsonNull()) {
-            JsonObject dataObject = jsonObject.get("data").getAsJsonObject();
-
-            switch (type) {
-                case DISCOVER:
-                    data = gson.fromJson(dataObject, DiscoverData.class);
-                    break;
-                case CONNECT:
-                    data = gson.fromJson(dataObject, ConnectData.class);
-                    break;
-                case FRAME:
-                    data = gson.fromJson(dataObject, FrameData.class);
-                    break;
-                case DETECTIONS:
-                    data = gson.fromJson(dataObject, DetectionsData.class);
-                    break;
-                case METRICS:
-                    data = gson.fromJson(dataObject, MetricsData.class);
-                    break;
-            }
-        }
-
-        YFPMessage message = new YFPMessage(type, data);
-        message.timestamp = timestamp;
-        return message;
+        return YFPJsonCodec.fromJson(json);
     }
 
+    /**
+     * Payload of DISCOVER. The client sends its device name and version; each
+     * server answers with its name, the port it listens on (absent means the
+     * default), the frame rate it can sustain and the fraction of that already
+     * in use, see {@link ServerPool}.
+     */
     public static class DiscoverData {
         @SerializedName("device_name")
         public String deviceName;
@@ -71,6 +44,18 @@ public class YFPMessage {
         @SerializedName("app_version")
         public String appVersion;
 
+        @SerializedName("server_name")
+        public String serverName;
+
+        @SerializedName("port")
+        public int port;
+
+        @SerializedName("capacity_fps")
+        public float capacityFps;
+
+        @SerializedName("load")
+        public float load;
+
         public DiscoverData(String deviceName, String appVersion) {
             this.deviceName = deviceName;
             this.appVersion = appVersion;
@@ -87,10 +72,67 @@ public class YFPMessage {
         @SerializedName("resolution_height")
         public int resolutionHeight;
 
+        @SerializedName("frame_protocol_version")
+        public int frameProtocolVersion;
+
+        @SerializedName("detections_protocol_version")
+        public int detectionsProtocolVersion;
+
+        /**
+         * Frame formats the client can send ({@link FrameCodec#formatName} names),
+         * most preferred first. Absent means JPEG only.
+         */
+        @SerializedName("frame_formats")
+        public String[] frameFormats;
+
+        /**
+         * Local port of the client's frame connection, so a server can tell
+         * apart clients that share an address. 0 if unknown.
+         */
+        @SerializedName("frame_port")
+        public int framePort;
+
+        /**
+         * Largest result datagram the client wants; longer results arrive as
+         * {@link ResultFragments}. 0 means every result in one datagram of at
+         * most 4096 bytes, with boxes left out if need be.
+         */
+        @SerializedName("max_datagram_size")
+        public int maxDatagramSize;
+
         public ConnectData(String deviceId, int width, int height) {
             this.deviceId = deviceId;
             this.resolutionWidth = width;
             this.resolutionHeight = height;
+            this.frameProtocolVersion = FrameCodec.VERSION;
+            this.detectionsProtocolVersion = DetectionsCodec.VERSION;
+        }
+    }
+
+    /**
+     * Server reply to CONNECT. {@code classNames} is indexed by the class ids used
+     * in binary DETECTIONS; a version of 0 means the server sends JSON detections.
+     * {@code frameFormat} is the server's pick from the client's
+     * {@code frame_formats}; absent means JPEG. {@code frameFormats} lists
+     * every offered format the server can decode, so the client may switch
+     * between them per frame.
+     */
+    public static class ConnectAckData {
+        @SerializedName("detections_protocol_version")
+        public int detectionsProtocolVersion;
+
+        @SerializedName("class_names")
+        public String[] classNames;
+
+        @SerializedName("frame_format")
+        public String frameFormat;
+
+        @SerializedName("frame_formats")
+        public String[] frameFormats;
+
+        public ConnectAckData(int detectionsProtocolVersion, String[] classNames) {
+            this.detectionsProtocolVersion = detectionsProtocolVersion;
+            this.classNames = classNames;
         }
     }
 
@@ -129,6 +171,18 @@ public class YFPMessage {
         @SerializedName("processing_time_ms")
         public long processingTimeMs;
 
+        /** Server monotonic clock when the frame was fully read; 0 if the server does not report it. */
+        @SerializedName("server_receive_ns")
+        public long serverReceiveNs;
+
+        /** Server monotonic clock just before this result was sent; 0 if not reported. */
+        @SerializedName("server_send_ns")
+        public long serverSendNs;
+
+        /** True if the server read the frame but did not run it through the model; absent otherwise. */
+        @SerializedName("skipped")
+        public boolean skipped;
+
         public DetectionsData(long frameId, Detection[] detections, long processingTimeMs) {
             this.frameId = frameId;
             this.detections = detections;
@@ -165,6 +219,31 @@ public class YFPMessage {
         }
     }
 
+    /**
+     * Payload of PING and PONG. The sender of a PING fills in {@code seq} and
+     * its send time; the PONG echoes both and adds when the responder received
+     * the PING and sent the PONG. Each side uses its own monotonic nanosecond
+     * clock, see {@link ClockOffsetEstimator}.
+     */
+    public static class PingData {
+        @SerializedName("seq")
+        public int seq;
+
+        @SerializedName("client_send_ns")
+        public long clientSendNs;
+
+        @SerializedName("server_receive_ns")
+        public long serverReceiveNs;
+
+        @SerializedName("server_send_ns")
+        public long serverSendNs;
+
+        public PingData(int seq, long clientSendNs) {
+            this.seq = seq;
+            this.clientSendNs = clientSendNs;
+        }
+    }
+
     public static class MetricsData {
         @SerializedName("fps")
         public float fps;
@@ -0,0 +1,170 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+
+public class AdaptiveFrameControllerTest {
+
+    /**
+     * Simulated phone-to-server path: a FIFO uplink with fixed bandwidth feeding a
+     * single server with fixed processing time. Frame size scales with JPEG
+     * quality and resolution.
+     */
+    private static class SimulatedLink {
+        final double bytesPerMs;
+        final long processingMs;
+        final long downlinkMs = 5;
+        final ArrayDeque<long[]> pendingResults = new ArrayDeque<>();
+        double linkFreeAt;
+        double serverFreeAt;
+        boolean dropResults;
+
+        long resultCount;
+        long latencySum;
+
+        SimulatedLink(double bytesPerMs, long processingMs) {
+            this.bytesPerMs = bytesPerMs;
+            this.processingMs = processingMs;
+        }
+
+        void send(long frameId, long now, int quality, int divisor) {
+            double bytes = 120_000.0 * quality / 85.0 / (divisor * divisor);
+            double linkStart = Math.max(now, linkFreeAt);
+            linkFreeAt = linkStart + bytes / bytesPerMs;
+            double serverStart = Math.max(linkFreeAt, serverFreeAt);
+            serverFreeAt = serverStart + processingMs;
+            if (!dropResults) {
+                pendingResults.add(new long[]{frameId, (long) serverFreeAt + downlinkMs, now});
+            }
+        }
+
+        void deliver(AdaptiveFrameController controller, long now, boolean measure) {
+            while (!pendingResults.isEmpty() && pendingResults.peek()[1] <= now) {
+                long[] result = pendingResults.poll();
+                controller.onDetectionsReceived(result[0], processingMs, now);
+                if (measure) {
+                    resultCount++;
+                    latencySum += now - result[2];
+                }
+            }
+        }
+    }
+
+    private static void run(AdaptiveFrameController controller, SimulatedLink link,
+                            long durationMs, long measureFromMs) {
+        long frameId = 0;
+        for (long now = 0; now < durationMs; now++) {
+            link.deliver(controller, now, now >= measureFromMs);
+            if (now % 33 == 0) {
+                frameId++;
+                if (controller.shouldSend(now)) {
+                    controller.onFrameSent(frameId, now);
+                    link.send(frameId, now, controller.getJpegQuality(), controller.getScaleDivisor());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void fastPathRampsUpToFullRateAndQuality() {
+        AdaptiveFrameController.Config config = new AdaptiveFrameController.Config();
+        AdaptiveFrameController controller = new AdaptiveFrameController(config);
+        SimulatedLink link = new SimulatedLink(10_000, 10);
+
+        run(controller, link, 20_000, 10_000);
+
+        assertEquals(config.maxQuality, controller.getJpegQuality());
+        assertEquals(config.minSendIntervalMs, controller.getSendIntervalMs());
+        assertEquals(1, controller.getScaleDivisor());
+        assertTrue(link.resultCount > 250);
+    }
+
+    @Test
+    public void slowLinkKeepsLatencyUnderTarget() {
+        AdaptiveFrameController.Config config = new AdaptiveFrameController.Config();
+        AdaptiveFrameController controller = new AdaptiveFrameController(config);
+        // 120 KB frames at full quality would take 240 ms on this link
+        SimulatedLink link = new SimulatedLink(500, 15);
+
+        run(controller, link, 30_000, 15_000);
+
+        double averageLatency = (double) link.latencySum / link.resultCount;
+        assertTrue("average latency " + averageLatency, averageLatency <= config.targetLatencyMs);
+        assertTrue(controller.getJpegQuality() < config.maxQuality || controller.getScaleDivisor() > 1);
+        assertTrue(link.resultCount > 0);
+    }
+
+    @Test
+    public void slowServerReducesRateButKeepsQuality() {
+        AdaptiveFrameController.Config config = new AdaptiveFrameController.Config();
+        AdaptiveFrameController controller = new AdaptiveFrameController(config);
+        SimulatedLink link = new SimulatedLink(10_000, 90);
+
+        run(controller, link, 30_000, 15_000);
+
+        double averageLatency = (double) link.latencySum / link.resultCount;
+        assertTrue("average latency " + averageLatency, averageLatency <= config.targetLatencyMs);
+        assertTrue(controller.getSendIntervalMs() >= 90);
+        assertEquals(1, controller.getScaleDivisor());
+        assertTrue(controller.getJpegQuality() >= config.maxQuality - config.qualityStepDown);
+    }
+
+    @Test
+    public void unansweredFramesCountAsLossAndBackOff() {
+        AdaptiveFrameController.Config config = new AdaptiveFrameController.Config();
+        AdaptiveFrameController controller = new AdaptiveFrameController(config);
+        SimulatedLink link = new SimulatedLink(10_000, 10);
+        link.dropResults = true;
+        long initialInterval = controller.getSendIntervalMs();
+
+        run(controller, link, 20_000, 0);
+
+        assertTrue(controller.getFramesLost() > 0);
+        assertTrue(controller.getSendIntervalMs() > initialInterval);
+        assertTrue(controller.getInFlight() <= config.maxInFlight);
+    }
+
+    @Test
+    public void inFlightCapBlocksSending() {
+        AdaptiveFrameController.Config config = new AdaptiveFrameController.Config();
+        config.maxInFlight = 2;
+        AdaptiveFrameController controller = new AdaptiveFrameController(config);
+
+        long now = 0;
+        for (int i = 0; i < 2; i++) {
+            now += 1000;
+            assertTrue(controller.shouldSend(now));
+            controller.onFrameSent(i, now);
+        }
+        assertEquals(false, controller.shouldSend(now + 1000));
+
+        controller.onDetectionsReceived(0, 10, now + 1000);
+        assertEquals(1, controller.getInFlight());
+        assertTrue(controller.shouldSend(now + 1000));
+    }
+
+    @Test
+    public void droppedFramesFreeTheirSlotWithoutCountingAsLoss() {
+        AdaptiveFrameController.Config config = new AdaptiveFrameController.Config();
+        config.maxInFlight = 2;
+        AdaptiveFrameController controller = new AdaptiveFrameController(config);
+        int quality = controller.getJpegQuality();
+
+        controller.onFrameSent(1, 1000);
+        controller.onFrameSent(2, 1000);
+        assertEquals(false, controller.shouldSend(2000));
+        controller.onFrameDropped(1);
+        controller.onFrameDropped(2);
+        controller.onFrameDropped(3);
+        assertEquals(0, controller.getInFlight());
+
+        // Long past the loss timeout
+        assertTrue(controller.shouldSend(1000 + config.lossTimeoutMs * 2));
+        assertEquals(0, controller.getFramesLost());
+        assertEquals(quality, controller.getJpegQuality());
+    }
+}
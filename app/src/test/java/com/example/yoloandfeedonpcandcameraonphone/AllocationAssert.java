@@ -0,0 +1,29 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+/** Checks that warmed-up code runs without allocating on the calling thread. */
+final class AllocationAssert {
+    // Allows for the measurement itself, far below one byte per iteration of any caller
+    private static final long SLACK_BYTES = 1024;
+
+    interface Work {
+        void run() throws Exception;
+    }
+
+    private AllocationAssert() {
+    }
+
+    /** Runs {@code work} once and fails if it allocated more than the measurement costs. */
+    static void assertNoAllocation(String what, Work work) throws Exception {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        work.run();
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        assertTrue(what + " allocated " + allocated + " bytes", allocated < SLACK_BYTES);
+    }
+}
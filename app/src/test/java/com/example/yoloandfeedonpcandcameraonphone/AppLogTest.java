@@ -0,0 +1,52 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class AppLogTest {
+
+    @After
+    public void restoreDefaults() {
+        AppLog.refreshLevels();
+        AppLog.setTraceSampleInterval(30);
+    }
+
+    @Test
+    public void defaultsToInfoWithNothingTraced() {
+        for (AppLog.Category category : AppLog.Category.values()) {
+            assertEquals(Log.INFO, AppLog.getLevel(category));
+            assertFalse(AppLog.isDebug(category));
+            assertFalse(AppLog.isTraced(category, 0));
+        }
+    }
+
+    @Test
+    public void traceSamplesFramesAtVerbose() {
+        AppLog.setLevel(AppLog.Category.DETECTION, Log.VERBOSE);
+        AppLog.setTraceSampleInterval(10);
+
+        int traced = 0;
+        for (long frame = 0; frame < 100; frame++) {
+            if (AppLog.isTraced(AppLog.Category.DETECTION, frame)) {
+                traced++;
+            }
+        }
+        assertEquals(10, traced);
+        assertTrue(AppLog.isDebug(AppLog.Category.DETECTION));
+        assertFalse(AppLog.isTraced(AppLog.Category.OVERLAY, 0));
+    }
+
+    @Test
+    public void debugLevelDoesNotTrace() {
+        AppLog.setLevel(AppLog.Category.BASIC, Log.DEBUG);
+        AppLog.setTraceSampleInterval(1);
+        assertTrue(AppLog.isDebug(AppLog.Category.BASIC));
+        assertFalse(AppLog.isTraced(AppLog.Category.BASIC, 0));
+    }
+}
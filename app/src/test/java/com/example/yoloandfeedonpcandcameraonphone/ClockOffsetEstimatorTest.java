@@ -0,0 +1,76 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class ClockOffsetEstimatorTest {
+    private static final long MS = 1_000_000L;
+    // Server clock reads this much more than the client clock
+    private static final long OFFSET = 123_456 * MS;
+
+    /** One exchange with the given one-way delays and server turnaround, starting at client time {@code t1}. */
+    private static void exchange(ClockOffsetEstimator estimator, long t1, long upNs, long turnaroundNs, long downNs) {
+        long t2 = t1 + upNs + OFFSET;
+        long t3 = t2 + turnaroundNs;
+        long t4 = t3 - OFFSET + downNs;
+        estimator.addSample(t1, t2, t3, t4);
+    }
+
+    @Test
+    public void symmetricPathGivesExactOffset() {
+        ClockOffsetEstimator estimator = new ClockOffsetEstimator();
+        assertFalse(estimator.hasEstimate());
+        exchange(estimator, 10 * MS, 3 * MS, MS / 2, 3 * MS);
+
+        assertTrue(estimator.hasEstimate());
+        assertEquals(OFFSET, estimator.getOffsetNs());
+        assertEquals(6 * MS, estimator.getRttNs());
+        assertEquals(10 * MS, estimator.toLocalNs(10 * MS + OFFSET));
+    }
+
+    @Test
+    public void keepsTheMinimumRoundTripSample() {
+        Random random = new Random(5);
+        ClockOffsetEstimator estimator = new ClockOffsetEstimator(16);
+        long t = 0;
+        for (int i = 0; i < 16; i++) {
+            // Base 2ms each way plus up to 40ms of queueing on one side
+            long up = 2 * MS + (i == 9 ? 0 : random.nextInt(40) * MS);
+            long down = 2 * MS + (i == 9 ? 0 : random.nextInt(40) * MS);
+            exchange(estimator, t, up, MS, down);
+            t += 1000 * MS;
+        }
+        assertEquals(OFFSET, estimator.getOffsetNs());
+        assertEquals(4 * MS, estimator.getRttNs());
+
+        // The quiet sample ages out of the window; the best remaining one is still bounded by rtt / 2
+        for (int i = 0; i < 16; i++) {
+            exchange(estimator, t, 2 * MS, MS, 10 * MS);
+            t += 1000 * MS;
+        }
+        assertEquals(12 * MS, estimator.getRttNs());
+        assertEquals(OFFSET - 4 * MS, estimator.getOffsetNs());
+        assertTrue(Math.abs(estimator.getOffsetNs() - OFFSET) <= estimator.getRttNs() / 2);
+    }
+
+    @Test
+    public void rejectsInconsistentSamplesAndResets() {
+        ClockOffsetEstimator estimator = new ClockOffsetEstimator(4);
+        // Server claims it sent before it received
+        assertFalse(estimator.addSample(0, 10 * MS, 5 * MS, 20 * MS));
+        // Server turnaround longer than the whole round trip
+        assertFalse(estimator.addSample(0, 0, 50 * MS, 20 * MS));
+        assertFalse(estimator.hasEstimate());
+
+        exchange(estimator, 0, MS, MS, MS);
+        assertTrue(estimator.hasEstimate());
+        estimator.reset();
+        assertFalse(estimator.hasEstimate());
+        assertEquals(0, estimator.getOffsetNs());
+    }
+}
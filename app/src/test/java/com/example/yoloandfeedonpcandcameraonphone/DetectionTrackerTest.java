@@ -0,0 +1,138 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class DetectionTrackerTest {
+    private static final long MS = 1_000_000L;
+
+    private static DetectionBuffer boxes(long frameId, float... xyClass) {
+        DetectionBuffer buffer = new DetectionBuffer();
+        int n = xyClass.length / 3;
+        buffer.reset(frameId, 5, n);
+        for (int i = 0; i < n; i++) {
+            buffer.set(i, xyClass[i * 3], xyClass[i * 3 + 1], 0.1f, 0.2f, (int) xyClass[i * 3 + 2], 0.9f);
+        }
+        return buffer;
+    }
+
+    @Test
+    public void extrapolatesAConstantVelocityTrack() {
+        DetectionTracker tracker = new DetectionTracker();
+        // Moves right at 0.5 frame widths per second, one result every 100 ms
+        for (int i = 0; i < 10; i++) {
+            tracker.update(boxes(i, 0.1f + 0.05f * i, 0.3f, 0), i * 100 * MS);
+        }
+        assertEquals(1, tracker.getTrackCount());
+
+        DetectionBuffer out = new DetectionBuffer();
+        // Halfway to the next result
+        assertEquals(1, tracker.predict(950 * MS, out));
+        assertEquals(0.1f + 0.05f * 9.5f, out.x[0], 0.005f);
+        assertEquals(0.3f, out.y[0], 0.005f);
+        assertEquals(0.1f, out.width[0], 0.005f);
+        assertEquals(9, out.frameId);
+    }
+
+    @Test
+    public void keepsIdentitiesOfNearbyObjects() {
+        DetectionTracker tracker = new DetectionTracker();
+        tracker.update(boxes(1, 0.10f, 0.1f, 0, 0.16f, 0.1f, 0), 0);
+        long left = tracker.getTrackId(0);
+        long right = tracker.getTrackId(1);
+
+        // Listed in the other order and both shifted right by 0.02
+        tracker.update(boxes(2, 0.18f, 0.1f, 0, 0.12f, 0.1f, 0), 100 * MS);
+        assertEquals(2, tracker.getTrackCount());
+        assertEquals(left, tracker.getTrackId(0));
+        assertEquals(right, tracker.getTrackId(1));
+
+        DetectionBuffer out = new DetectionBuffer();
+        tracker.predict(100 * MS, out);
+        assertTrue(out.x[0] < out.x[1]);
+    }
+
+    @Test
+    public void classesNeverMatchEachOther() {
+        DetectionTracker tracker = new DetectionTracker();
+        tracker.update(boxes(1, 0.2f, 0.2f, 0), 0);
+        tracker.update(boxes(2, 0.2f, 0.2f, 1), 100 * MS);
+        assertEquals(2, tracker.getTrackCount());
+    }
+
+    @Test
+    public void dropsTracksAfterCoasting() {
+        DetectionTracker.Config config = new DetectionTracker.Config();
+        config.maxCoastMs = 300;
+        DetectionTracker tracker = new DetectionTracker(config);
+        tracker.update(boxes(1, 0.2f, 0.2f, 0), 0);
+
+        DetectionBuffer out = new DetectionBuffer();
+        tracker.update(boxes(2), 200 * MS);
+        assertEquals(1, tracker.predict(250 * MS, out));
+        // Hidden once it has coasted too long, removed on the next update
+        assertEquals(0, tracker.predict(400 * MS, out));
+        tracker.update(boxes(3), 400 * MS);
+        assertEquals(0, tracker.getTrackCount());
+    }
+
+    @Test
+    public void heldTracksStayStillAndVisible() {
+        DetectionTracker.Config config = new DetectionTracker.Config();
+        config.maxCoastMs = 300;
+        DetectionTracker tracker = new DetectionTracker(config);
+        tracker.update(boxes(1, 0.2f, 0.2f, 0), 0);
+        tracker.update(boxes(2, 0.22f, 0.2f, 0), 100 * MS);
+
+        // Unchanged frames were skipped for a second
+        for (long t = 200; t <= 1_000; t += 100) {
+            tracker.hold(t * MS);
+        }
+        DetectionBuffer out = new DetectionBuffer();
+        assertEquals(1, tracker.predict(1_100 * MS, out));
+        assertEquals(0.22f, out.x[0], 0.01f);
+        tracker.update(boxes(3, 0.22f, 0.2f, 0), 1_200 * MS);
+        assertEquals(1, tracker.getTrackCount());
+    }
+
+    @Test
+    public void steadyStateTrackingDoesNotAllocate() throws Exception {
+        DetectionTracker tracker = new DetectionTracker();
+        DetectionBuffer detections = new DetectionBuffer();
+        DetectionBuffer out = new DetectionBuffer();
+        int objects = 120;
+
+        long frame = 0;
+        for (; frame < 2_000; frame++) {
+            step(tracker, detections, out, objects, frame);
+        }
+
+        long start = frame;
+        AllocationAssert.assertNoAllocation("Tracking", () -> {
+            for (long f = start; f < start + 500; f++) {
+                step(tracker, detections, out, objects, f);
+            }
+        });
+        assertEquals(objects, tracker.getTrackCount());
+    }
+
+    /**
+     * One result with {@code objects} boxes drifting right, then three display
+     * frames. Every 100 frames the boxes jump back, which replaces every track.
+     */
+    private static void step(DetectionTracker tracker, DetectionBuffer detections, DetectionBuffer out,
+                             int objects, long frame) {
+        detections.reset(frame, 5, objects);
+        float shift = (frame % 100) * 0.001f;
+        for (int i = 0; i < objects; i++) {
+            detections.set(i, (i % 12) * 0.08f + shift, (i / 12) * 0.09f, 0.05f, 0.05f, i % 3, 0.8f);
+        }
+        long now = frame * 100 * MS;
+        tracker.update(detections, now);
+        for (int f = 1; f <= 3; f++) {
+            tracker.predict(now + f * 16 * MS, out);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class DetectionsCodecTest {
+
+    private static final float UNIT_ERROR = 1f / 65535;
+
+    private static DetectionBuffer sample(int count) {
+        DetectionBuffer buffer = new DetectionBuffer(4);
+        buffer.reset(123456789012L, 42, count);
+        for (int i = 0; i < count; i++) {
+            buffer.set(i, i / (float) count, 0.25f, 0.1f, 0.5f, i % 80, 0.9f);
+        }
+        return buffer;
+    }
+
+    private static byte[] encode(DetectionBuffer detections) {
+        boolean serverTimes = detections.serverReceiveNs != 0 || detections.serverSendNs != 0;
+        ByteBuffer out = ByteBuffer.allocate(DetectionsCodec.HEADER_SIZE + detections.count * DetectionsCodec.RECORD_SIZE
+            + (serverTimes ? DetectionsCodec.SERVER_TIMES_SIZE : 0));
+        DetectionsCodec.encode(detections, out);
+        return out.array();
+    }
+
+    @Test
+    public void roundTripWithinQuantisationError() throws Exception {
+        DetectionBuffer original = sample(20);
+        byte[] datagram = encode(original);
+        assertTrue(DetectionsCodec.isBinary(datagram, 0, datagram.length));
+
+        DetectionBuffer decoded = DetectionsCodec.decode(datagram, 0, datagram.length, new DetectionBuffer(1));
+        assertEquals(original.frameId, decoded.frameId);
+        assertEquals(original.processingTimeMs, decoded.processingTimeMs);
+        assertEquals(20, decoded.count);
+        for (int i = 0; i < 20; i++) {
+            assertEquals(original.x[i], decoded.x[i], UNIT_ERROR);
+            assertEquals(original.y[i], decoded.y[i], UNIT_ERROR);
+            assertEquals(original.width[i], decoded.width[i], UNIT_ERROR);
+            assertEquals(original.height[i], decoded.height[i], UNIT_ERROR);
+            assertEquals(original.confidence[i], decoded.confidence[i], UNIT_ERROR);
+            assertEquals(original.classId[i], decoded.classId[i]);
+        }
+    }
+
+    @Test
+    public void serverTimesFollowTheDetections() throws Exception {
+        DetectionBuffer original = sample(3);
+        original.serverReceiveNs = 5_000_000_123L;
+        original.serverSendNs = 5_040_000_456L;
+        byte[] datagram = encode(original);
+        assertEquals(DetectionsCodec.FLAG_SERVER_TIMES, datagram[5]);
+
+        DetectionBuffer decoded = DetectionsCodec.decode(datagram, 0, datagram.length, new DetectionBuffer());
+        assertEquals(original.serverReceiveNs, decoded.serverReceiveNs);
+        assertEquals(original.serverSendNs, decoded.serverSendNs);
+        assertEquals(3, decoded.count);
+        assertEquals(original.x[2], decoded.x[2], UNIT_ERROR);
+
+        // A later result without times does not keep the earlier ones
+        byte[] plain = encode(sample(3));
+        DetectionsCodec.decode(plain, 0, plain.length, decoded);
+        assertEquals(0, decoded.serverReceiveNs);
+        assertEquals(0, decoded.serverSendNs);
+
+        try {
+            DetectionsCodec.decode(datagram, 0, datagram.length - 1, new DetectionBuffer());
+            fail("Truncated server times accepted");
+        } catch (ProtocolException expected) {
+        }
+    }
+
+    @Test
+    public void skippedFlagRoundTrips() throws Exception {
+        DetectionBuffer skipped = sample(0);
+        skipped.skipped = true;
+        byte[] datagram = encode(skipped);
+        assertEquals(DetectionsCodec.FLAG_SKIPPED, datagram[5] & DetectionsCodec.FLAG_SKIPPED);
+
+        DetectionBuffer decoded = DetectionsCodec.decode(datagram, 0, datagram.length, new DetectionBuffer());
+        assertTrue(decoded.skipped);
+        assertEquals(0, decoded.count);
+        byte[] plain = encode(sample(3));
+        assertFalse(DetectionsCodec.decode(plain, 0, plain.length, decoded).skipped);
+    }
+
+    @Test
+    public void jsonIsNotMistakenForBinary() {
+        byte[] json = "{\"type\":\"DETECTIONS\"}".getBytes(StandardCharsets.UTF_8);
+        assertFalse(DetectionsCodec.isBinary(json, 0, json.length));
+    }
+
+    @Test
+    public void rejectsTruncatedAndForeignDatagrams() {
+        byte[] datagram = encode(sample(3));
+        try {
+            DetectionsCodec.decode(datagram, 0, datagram.length - 1, new DetectionBuffer());
+            fail("Truncated datagram accepted");
+        } catch (ProtocolException expected) {
+        }
+        datagram[4] = 9;
+        try {
+            DetectionsCodec.decode(datagram, 0, datagram.length, new DetectionBuffer());
+            fail("Unknown version accepted");
+        } catch (ProtocolException expected) {
+        }
+    }
+
+    @Test
+    public void fullDatagramFitsClientReceiveBuffer() throws Exception {
+        int max = DetectionsCodec.maxDetections(4096);
+        DetectionBuffer detections = sample(max);
+        detections.serverReceiveNs = 1;
+        detections.serverSendNs = 2;
+        byte[] datagram = encode(detections);
+        assertTrue(datagram.length <= 4096);
+        assertEquals(max, DetectionsCodec.decode(datagram, 0, datagram.length, new DetectionBuffer()).count);
+    }
+
+    @Test
+    public void steadyStateDecodeDoesNotAllocate() throws Exception {
+        byte[] datagram = encode(sample(50));
+        DetectionBuffer into = new DetectionBuffer();
+        for (int i = 0; i < 20_000; i++) {
+            DetectionsCodec.decode(datagram, 0, datagram.length, into);
+        }
+
+        AllocationAssert.assertNoAllocation("Decoding", () -> {
+            for (int i = 0; i < 10_000; i++) {
+                DetectionsCodec.decode(datagram, 0, datagram.length, into);
+            }
+        });
+    }
+
+    @Test
+    public void classTableAssignsIdsToUnknownNames() {
+        ClassTable table = new ClassTable();
+        table.setNames(new String[]{"person", "car"});
+        assertEquals("car", table.name(1));
+        assertEquals(null, table.name(7));
+        assertEquals(1, table.idFor("car"));
+        assertEquals(2, table.idFor("dog"));
+        assertEquals("dog", table.name(2));
+    }
+}
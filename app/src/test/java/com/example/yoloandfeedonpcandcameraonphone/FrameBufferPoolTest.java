@@ -0,0 +1,75 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import java.io.OutputStream;
+
+public class FrameBufferPoolTest {
+
+    @Test
+    public void steadyStateDoesNotAllocate() throws Exception {
+        FrameBufferPool pool = new FrameBufferPool("test", 2);
+        byte[] chunk = new byte[1000];
+
+        for (int warmup = 0; warmup < 3; warmup++) {
+            FrameBuffer buffer = pool.acquire(4096);
+            buffer.resetOutputStream().write(chunk);
+            buffer.release();
+        }
+        long allocations = pool.getAllocationCount();
+
+        for (int frame = 0; frame < 1000; frame++) {
+            FrameBuffer buffer = pool.acquire(4096);
+            OutputStream out = buffer.resetOutputStream();
+            out.write(chunk);
+            out.write(chunk, 0, 500);
+            assertEquals(1500, buffer.length());
+            buffer.release();
+        }
+
+        assertEquals(allocations, pool.getAllocationCount());
+        assertEquals(1, allocations);
+    }
+
+    @Test
+    public void growthIsCountedAsAllocation() throws Exception {
+        FrameBufferPool pool = new FrameBufferPool("test", 1);
+        FrameBuffer buffer = pool.acquire(16);
+        buffer.resetOutputStream().write(new byte[100]);
+
+        assertEquals(2, pool.getAllocationCount());
+        assertEquals(100, buffer.length());
+        buffer.release();
+
+        FrameBuffer again = pool.acquire(16);
+        assertSame(buffer, again);
+        assertEquals(0, again.length());
+    }
+
+    @Test
+    public void poolIsBounded() {
+        FrameBufferPool pool = new FrameBufferPool("test", 2);
+        FrameBuffer a = pool.acquire(10);
+        FrameBuffer b = pool.acquire(10);
+        assertNotNull(a);
+        assertNotNull(b);
+        assertNull(pool.acquire(10));
+        assertEquals(1, pool.getExhaustedCount());
+
+        a.release();
+        assertSame(a, pool.acquire(10));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void doubleReleaseFails() {
+        FrameBufferPool pool = new FrameBufferPool("test", 2);
+        FrameBuffer buffer = pool.acquire(10);
+        buffer.release();
+        buffer.release();
+    }
+}
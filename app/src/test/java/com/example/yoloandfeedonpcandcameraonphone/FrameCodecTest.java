@@ -0,0 +1,145 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class FrameCodecTest {
+
+    private static class Received {
+        final long frameId;
+        final long timestamp;
+        final int width;
+        final int height;
+        final byte[] payload;
+
+        Received(FrameCodec.FrameHeader header, byte[] payload, int length) {
+            this.frameId = header.frameId;
+            this.timestamp = header.captureTimestampNs;
+            this.width = header.width;
+            this.height = header.height;
+            this.payload = Arrays.copyOf(payload, length);
+        }
+    }
+
+    private static byte[] payload(int length, int seed) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i * 31 + seed);
+        }
+        return data;
+    }
+
+    private static byte[] encode(long frameId, byte[] payload) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new FrameCodec.Encoder().writeFrame(out, frameId, frameId * 1000L, 640, 480,
+            FrameCodec.FORMAT_JPEG, 80, payload, 0, payload.length);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void headerRoundTrip() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(FrameCodec.HEADER_SIZE);
+        FrameCodec.FrameHeader header = new FrameCodec.FrameHeader()
+            .set(42L, 123456789012L, 1920, 1080, FrameCodec.FORMAT_JPEG, 80, 5000);
+        FrameCodec.encodeHeader(header, buffer);
+        assertEquals(FrameCodec.HEADER_SIZE, buffer.position());
+
+        buffer.flip();
+        FrameCodec.FrameHeader decoded = FrameCodec.decodeHeader(buffer, new FrameCodec.FrameHeader());
+        assertEquals(42L, decoded.frameId);
+        assertEquals(123456789012L, decoded.captureTimestampNs);
+        assertEquals(1920, decoded.width);
+        assertEquals(1080, decoded.height);
+        assertEquals(FrameCodec.FORMAT_JPEG, decoded.format);
+        assertEquals(80, decoded.quality);
+        assertEquals(5000, decoded.payloadLength);
+    }
+
+    @Test
+    public void decodesFramesSplitAcrossArbitraryChunks() throws Exception {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        byte[][] payloads = {payload(1000, 1), payload(0, 2), payload(70000, 3), payload(17, 4)};
+        for (int i = 0; i < payloads.length; i++) {
+            stream.write(encode(i, payloads[i]));
+        }
+        byte[] wire = stream.toByteArray();
+
+        for (int chunk : new int[]{1, 7, 36, 4096, wire.length}) {
+            List<Received> frames = new ArrayList<>();
+            FrameCodec.Decoder decoder = new FrameCodec.Decoder(
+                (header, data, length) -> frames.add(new Received(header, data, length)));
+            for (int offset = 0; offset < wire.length; offset += chunk) {
+                decoder.feed(wire, offset, Math.min(chunk, wire.length - offset));
+            }
+
+            assertEquals(payloads.length, frames.size());
+            assertTrue(decoder.isAtFrameBoundary());
+            for (int i = 0; i < payloads.length; i++) {
+                assertEquals(i, frames.get(i).frameId);
+                assertEquals(i * 1000L, frames.get(i).timestamp);
+                assertEquals(640, frames.get(i).width);
+                assertEquals(480, frames.get(i).height);
+                assertArrayEquals(payloads[i], frames.get(i).payload);
+            }
+        }
+    }
+
+    @Test
+    public void truncatedFrameIsNotDelivered() throws Exception {
+        byte[] wire = encode(1, payload(100, 0));
+        List<Received> frames = new ArrayList<>();
+        FrameCodec.Decoder decoder = new FrameCodec.Decoder(
+            (header, data, length) -> frames.add(new Received(header, data, length)));
+
+        decoder.feed(wire, 0, wire.length - 1);
+        assertTrue(frames.isEmpty());
+        assertFalse(decoder.isAtFrameBoundary());
+    }
+
+    @Test
+    public void extraByteIsDetectedAsDesync() throws Exception {
+        byte[] first = encode(1, payload(100, 0));
+        byte[] second = encode(2, payload(100, 0));
+        byte[] wire = new byte[first.length + 1 + second.length];
+        System.arraycopy(first, 0, wire, 0, first.length);
+        System.arraycopy(second, 0, wire, first.length + 1, second.length);
+
+        List<Received> frames = new ArrayList<>();
+        FrameCodec.Decoder decoder = new FrameCodec.Decoder(
+            (header, data, length) -> frames.add(new Received(header, data, length)));
+        try {
+            decoder.feed(wire, 0, wire.length);
+            fail("Expected ProtocolException");
+        } catch (ProtocolException expected) {
+            // Stream is out of sync after the stray byte
+        }
+        assertEquals(1, frames.size());
+    }
+
+    @Test(expected = ProtocolException.class)
+    public void rejectsUnknownVersion() throws Exception {
+        byte[] wire = encode(1, payload(10, 0));
+        wire[4] = 99;
+        FrameCodec.decodeHeader(ByteBuffer.wrap(wire), new FrameCodec.FrameHeader());
+    }
+
+    @Test(expected = ProtocolException.class)
+    public void rejectsOversizedPayload() throws Exception {
+        byte[] wire = encode(1, payload(10, 0));
+        ByteBuffer.wrap(wire).putInt(32, FrameCodec.MAX_PAYLOAD_SIZE + 1);
+        FrameCodec.decodeHeader(ByteBuffer.wrap(wire), new FrameCodec.FrameHeader());
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class FrameFormatSelectorTest {
+    private static final int PIXELS = 640 * 640;
+    private static final int RAW_FORMATS = 1 << FrameCodec.FORMAT_NV21 | 1 << FrameCodec.FORMAT_NV21_LZ4;
+
+    /** Chooses and reports a frame with the costs of a phone whose JPEG encode takes 15 ms. */
+    private static int sendFrame(FrameFormatSelector selector) {
+        int format = selector.choose(PIXELS);
+        switch (format) {
+            case FrameCodec.FORMAT_JPEG:
+                selector.onEncoded(format, PIXELS, 15_000_000, 60_000);
+                break;
+            case FrameCodec.FORMAT_NV21_LZ4:
+                selector.onEncoded(format, PIXELS, 1_500_000, 350_000);
+                break;
+            default:
+                selector.onEncoded(format, PIXELS, 200_000, PIXELS * 3 / 2);
+                break;
+        }
+        return format;
+    }
+
+    @Test
+    public void usesRawFramesOnlyOnAFastLink() {
+        FrameFormatSelector selector = new FrameFormatSelector();
+        selector.setAcceptedFormats(RAW_FORMATS);
+
+        // Wi-Fi: 2.5 MB/s makes a raw frame far slower to send than a JPEG
+        selector.setLinkThroughput(2_500_000);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(FrameCodec.FORMAT_JPEG, sendFrame(selector));
+        }
+
+        // USB: 40 MB/s sends a compressed frame in 9 ms
+        selector.setLinkThroughput(40_000_000);
+        for (int i = 0; i < 10; i++) {
+            sendFrame(selector);
+        }
+        assertEquals(FrameCodec.FORMAT_NV21_LZ4, selector.getCurrentFormat());
+
+        // Back on a slow link
+        selector.setLinkThroughput(2_500_000);
+        sendFrame(selector);
+        assertEquals(FrameCodec.FORMAT_JPEG, selector.getCurrentFormat());
+    }
+
+    @Test
+    public void onlyChoosesAcceptedFormats() {
+        FrameFormatSelector selector = new FrameFormatSelector();
+        selector.setLinkThroughput(200_000_000);
+        for (int i = 0; i < 300; i++) {
+            assertEquals(FrameCodec.FORMAT_JPEG, sendFrame(selector));
+        }
+
+        selector.setAcceptedFormats(1 << FrameCodec.FORMAT_NV21);
+        sendFrame(selector);
+        assertEquals(FrameCodec.FORMAT_NV21, selector.getCurrentFormat());
+
+        // Server reconnects without raw support
+        selector.setAcceptedFormats(0);
+        assertEquals(FrameCodec.FORMAT_JPEG, sendFrame(selector));
+    }
+
+    @Test
+    public void probesTheBestAlternativeWhenItIsClose() {
+        FrameFormatSelector.Config config = new FrameFormatSelector.Config();
+        config.probeInterval = 10;
+        FrameFormatSelector selector = new FrameFormatSelector(config);
+        selector.setAcceptedFormats(RAW_FORMATS);
+        // Compressed frames cost about as much as JPEG here: no switch, but a try every 10 frames
+        selector.setLinkThroughput(20_000_000);
+
+        int probes = 0;
+        for (int i = 0; i < 100; i++) {
+            if (sendFrame(selector) != FrameCodec.FORMAT_JPEG) {
+                probes++;
+            }
+        }
+        assertEquals(FrameCodec.FORMAT_JPEG, selector.getCurrentFormat());
+        assertEquals(10, probes);
+    }
+}
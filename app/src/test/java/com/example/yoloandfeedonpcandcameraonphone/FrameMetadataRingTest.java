@@ -0,0 +1,68 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FrameMetadataRingTest {
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void storesMetadataByFrameId() {
+        FrameMetadataRing ring = new FrameMetadataRing(8);
+        ring.recordCapture(42, 5_000 * MS, 5_010 * MS, 90, 640, 480, 0, 8, 640, 472);
+        ring.recordSend(42, 5_030 * MS, 12_345);
+
+        FrameMetadataRing.Entry entry = new FrameMetadataRing.Entry();
+        assertTrue(ring.get(42, entry));
+        assertEquals(42, entry.frameId);
+        assertEquals(5_000 * MS, entry.captureTimestampNs);
+        assertEquals(90, entry.rotationDegrees);
+        assertEquals(640, entry.frameWidth);
+        assertEquals(480, entry.frameHeight);
+        assertEquals(8, entry.cropTop);
+        assertEquals(472, entry.cropBottom);
+        assertEquals(5_030 * MS, entry.sendTimeNs);
+        assertEquals(12_345, entry.payloadLength);
+        assertFalse(ring.get(43, entry));
+    }
+
+    @Test
+    public void newerFramesReplaceOlderOnesInTheSameSlot() {
+        FrameMetadataRing ring = new FrameMetadataRing(5);
+        assertEquals(8, ring.capacity());
+        ring.recordCapture(3, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+        ring.recordCapture(11, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+        // A late send for the replaced frame must not land on the new one
+        ring.recordSend(3, 99, 1);
+
+        FrameMetadataRing.Entry entry = new FrameMetadataRing.Entry();
+        assertFalse(ring.get(3, entry));
+        assertTrue(ring.get(11, entry));
+        assertEquals(0, entry.sendTimeNs);
+        assertEquals(0, entry.payloadLength);
+    }
+
+    @Test
+    public void mapsCaptureTimesOntoTheLocalClock() {
+        FrameMetadataRing ring = new FrameMetadataRing();
+        FrameMetadataRing.Entry entry = new FrameMetadataRing.Entry();
+        // Camera clock runs 1000 s behind ours; delivery takes 20, then 8, then 15 ms
+        long offset = 1_000_000 * MS;
+        ring.recordCapture(1, 100 * MS, 100 * MS + offset + 20 * MS, 0, 0, 0, 0, 0, 0, 0);
+        ring.recordCapture(2, 133 * MS, 133 * MS + offset + 8 * MS, 0, 0, 0, 0, 0, 0, 0);
+        ring.recordCapture(3, 166 * MS, 166 * MS + offset + 15 * MS, 0, 0, 0, 0, 0, 0, 0);
+
+        assertTrue(ring.get(3, entry));
+        // Off by the fastest delivery seen, not this frame's
+        assertEquals(166 * MS + offset + 8 * MS, entry.captureTimeNs);
+
+        // The camera clock jumps ahead of ours, e.g. it kept counting through sleep
+        ring.recordCapture(4, 60_000 * MS, 200 * MS + offset + 10 * MS, 0, 0, 0, 0, 0, 0, 0);
+        ring.recordCapture(5, 60_033 * MS, 233 * MS + offset + 12 * MS, 0, 0, 0, 0, 0, 0, 0);
+        assertTrue(ring.get(5, entry));
+        assertEquals(233 * MS + offset + 10 * MS, entry.captureTimeNs);
+    }
+}
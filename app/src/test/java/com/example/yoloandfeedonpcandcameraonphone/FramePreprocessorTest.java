@@ -0,0 +1,134 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FramePreprocessorTest {
+
+    private static DetectionBuffer detections(float... boxes) {
+        DetectionBuffer buffer = new DetectionBuffer();
+        buffer.reset(1, 0, boxes.length / 4);
+        for (int i = 0; i < buffer.count; i++) {
+            buffer.set(i, boxes[i * 4], boxes[i * 4 + 1], boxes[i * 4 + 2], boxes[i * 4 + 3], 0, 0.9f);
+        }
+        return buffer;
+    }
+
+    private static void assertEven(FramePreprocessor.Plan plan) {
+        assertEquals(0, (plan.left | plan.top | plan.width | plan.height | plan.outWidth | plan.outHeight) & 1);
+    }
+
+    @Test
+    public void downscalesFullFramesToTheTargetSize() {
+        FramePreprocessor preprocessor = new FramePreprocessor();
+        FramePreprocessor.Plan plan = new FramePreprocessor.Plan();
+        preprocessor.plan(1280, 720, 0, 0, 1280, 720, 0, plan);
+
+        assertTrue(plan.fullFrame);
+        assertEquals(1280, plan.width);
+        assertEquals(720, plan.height);
+        assertEquals(640, plan.outWidth);
+        assertEquals(360, plan.outHeight);
+
+        // Never upscaled
+        preprocessor.plan(320, 240, 0, 0, 320, 240, 0, plan);
+        assertEquals(320, plan.outWidth);
+        assertEquals(240, plan.outHeight);
+    }
+
+    @Test
+    public void cropsAroundRecentDetectionsWithAMargin() {
+        FramePreprocessor preprocessor = new FramePreprocessor();
+        FramePreprocessor.Plan plan = new FramePreprocessor.Plan();
+        // Two people in the middle of the frame, 0.3 wide in total
+        preprocessor.onDetections(detections(0.4f, 0.3f, 0.1f, 0.4f, 0.55f, 0.35f, 0.15f, 0.4f), 0);
+        preprocessor.plan(1280, 720, 0, 0, 1280, 720, 100, plan);
+
+        assertFalse(plan.fullFrame);
+        assertEven(plan);
+        // 0.4..0.7 plus 25% on each side, at least 40% of the frame
+        assertTrue(plan.left <= 0.325f * 1280 && plan.left + plan.width >= 0.775f * 1280);
+        assertTrue(plan.top <= 0.2f * 720 && plan.top + plan.height >= 0.85f * 720);
+        assertTrue(plan.width < 1280 / 2 + 20);
+        // Small enough to send at full resolution
+        assertEquals(plan.width, plan.outWidth);
+        assertEquals(plan.height, plan.outHeight);
+    }
+
+    @Test
+    public void suspendingCroppingKeepsTheConfiguredSetting() {
+        FramePreprocessor preprocessor = new FramePreprocessor();
+        FramePreprocessor.Plan plan = new FramePreprocessor.Plan();
+        preprocessor.onDetections(detections(0.4f, 0.3f, 0.1f, 0.4f), 0);
+
+        preprocessor.setRoiSuspended(true);
+        preprocessor.plan(1280, 720, 0, 0, 1280, 720, 33, plan);
+        assertTrue(plan.fullFrame);
+        assertTrue(preprocessor.getConfig().roiEnabled);
+
+        preprocessor.setRoiSuspended(false);
+        preprocessor.plan(1280, 720, 0, 0, 1280, 720, 66, plan);
+        assertFalse(plan.fullFrame);
+
+        // Switched off by the user, it stays off once video ends
+        preprocessor.getConfig().roiEnabled = false;
+        preprocessor.setRoiSuspended(true);
+        preprocessor.setRoiSuspended(false);
+        preprocessor.plan(1280, 720, 0, 0, 1280, 720, 99, plan);
+        assertTrue(plan.fullFrame);
+    }
+
+    @Test
+    public void keepsRegionsInsideTheCameraCrop() {
+        FramePreprocessor preprocessor = new FramePreprocessor();
+        FramePreprocessor.Plan plan = new FramePreprocessor.Plan();
+        // A tiny box in the bottom-right corner
+        preprocessor.onDetections(detections(0.97f, 0.95f, 0.02f, 0.04f), 0);
+        preprocessor.plan(1280, 720, 0, 0, 1280, 700, 0, plan);
+
+        assertEven(plan);
+        assertEquals(1280, plan.left + plan.width);
+        assertEquals(700, plan.top + plan.height);
+        // Grown to the minimum region
+        assertEquals(512, plan.width);
+        assertEquals(280, plan.height);
+    }
+
+    @Test
+    public void sendsFullFramesPeriodicallyAndWhenDetectionsAreOld() {
+        FramePreprocessor.Config config = new FramePreprocessor.Config();
+        config.maxConsecutiveRoiFrames = 3;
+        FramePreprocessor preprocessor = new FramePreprocessor(config);
+        FramePreprocessor.Plan plan = new FramePreprocessor.Plan();
+        preprocessor.onDetections(detections(0.1f, 0.1f, 0.1f, 0.1f), 0);
+
+        boolean[] expected = {false, false, false, true, false, false, false, true};
+        for (int i = 0; i < expected.length; i++) {
+            preprocessor.plan(1280, 720, 0, 0, 1280, 720, i * 33, plan);
+            assertEquals("frame " + i, expected[i], plan.fullFrame);
+        }
+
+        preprocessor.plan(1280, 720, 0, 0, 1280, 720, config.roiHoldMs + 1, plan);
+        assertTrue(plan.fullFrame);
+
+        // Nothing found: look at the whole frame again
+        preprocessor.onDetections(detections(), 2_000);
+        preprocessor.plan(1280, 720, 0, 0, 1280, 720, 2_010, plan);
+        assertTrue(plan.fullFrame);
+    }
+
+    @Test
+    public void regionResultsMapBackToTheFullFrame() {
+        // Region of a 1280x720 frame at (320, 180), 640x360
+        DetectionBuffer buffer = detections(0.5f, 0.5f, 0.25f, 0.5f);
+        buffer.mapFromRegion(0.25f, 0.25f, 0.5f, 0.5f);
+
+        assertEquals(0.5f, buffer.x[0], 1e-6f);
+        assertEquals(0.5f, buffer.y[0], 1e-6f);
+        assertEquals(0.125f, buffer.width[0], 1e-6f);
+        assertEquals(0.25f, buffer.height[0], 1e-6f);
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class FrameSenderTest {
+    private final FrameBufferPool pool = new FrameBufferPool("test", 16);
+    private final List<Long> written = Collections.synchronizedList(new ArrayList<>());
+    private FrameSender sender;
+
+    @After
+    public void tearDown() {
+        if (sender != null) {
+            sender.stop();
+        }
+    }
+
+    private boolean submit(long frameId) {
+        FrameBuffer buffer = pool.acquire(16);
+        buffer.setLength(16);
+        return sender.submit(buffer, frameId, 0, 640, 480, FrameCodec.FORMAT_JPEG, 80);
+    }
+
+    private FrameSender newSender(int maxInFlight, int maxPending, long ackTimeoutMs) {
+        return new FrameSender((payload, frameId, ts, width, height, format, quality) -> written.add(frameId),
+            null, maxInFlight, maxPending, ackTimeoutMs);
+    }
+
+    @Test
+    public void windowLimitsFramesInFlightAndDropsOldestUnsent() throws Exception {
+        sender = newSender(2, 1, 60_000);
+        sender.start();
+
+        submit(1);
+        Poll.until(() -> written.size() == 1);
+        submit(2);
+        Poll.until(() -> written.size() == 2);
+
+        // Window is full: 3 waits, then 4 and 5 each replace the older unsent frame
+        assertTrue(submit(3));
+        assertFalse(submit(4));
+        assertFalse(submit(5));
+        Thread.sleep(50);
+        assertEquals(List.of(1L, 2L), written);
+        assertEquals(2, sender.getDroppedCount());
+        assertEquals(2, sender.getInFlight());
+
+        sender.onAck(1);
+        Poll.until(() -> written.size() == 3);
+        assertEquals(5L, (long) written.get(2));
+        assertEquals(1, sender.getAckedCount());
+        assertEquals(3, sender.getSentCount());
+        assertEquals(3 * 16, sender.getSentBytes());
+    }
+
+    @Test
+    public void reportsEveryFrameDroppedUnsent() throws Exception {
+        List<Long> dropped = Collections.synchronizedList(new ArrayList<>());
+        sender = newSender(1, 1, 60_000);
+        sender.setDropListener(dropped::add);
+        sender.start();
+
+        submit(1);
+        Poll.until(() -> written.size() == 1);
+        submit(2);
+        submit(3);
+        assertEquals(List.of(2L), dropped);
+
+        sender.stop();
+        assertFalse(submit(4));
+        assertEquals(List.of(2L, 3L, 4L), dropped);
+        assertEquals(List.of(1L), written);
+    }
+
+    @Test
+    public void ackReturnsCreditsOfOlderLostResults() throws Exception {
+        sender = newSender(3, 1, 60_000);
+        sender.start();
+        for (int i = 1; i <= 3; i++) {
+            submit(i);
+            int count = i;
+            Poll.until(() -> written.size() == count);
+        }
+
+        sender.onAck(3);
+        assertEquals(0, sender.getInFlight());
+        assertEquals(1, sender.getAckedCount());
+        assertEquals(2, sender.getTimedOutCount());
+
+        // Unknown or repeated acks are ignored
+        sender.onAck(3);
+        sender.onAck(42);
+        assertEquals(1, sender.getAckedCount());
+    }
+
+    @Test
+    public void creditsExpireWhenResultsNeverArrive() throws Exception {
+        sender = newSender(1, 1, 50);
+        sender.start();
+        submit(1);
+        Poll.until(() -> written.size() == 1);
+        submit(2);
+
+        Poll.until(() -> written.size() == 2);
+        assertTrue(sender.getTimedOutCount() >= 1);
+    }
+
+    @Test
+    public void everyBufferIsReleased() throws Exception {
+        sender = newSender(1, 2, 60_000);
+        sender.start();
+        for (int i = 0; i < 10; i++) {
+            submit(i);
+        }
+        sender.stop();
+        sender = null;
+
+        assertEquals(pool.getAllocationCount(), pool.getAvailableCount());
+    }
+
+    @Test
+    public void writeFailureStopsSenderAndReportsOnce() throws Exception {
+        List<IOException> errors = Collections.synchronizedList(new ArrayList<>());
+        sender = new FrameSender((payload, frameId, ts, width, height, format, quality) -> {
+            throw new IOException("broken pipe");
+        }, errors::add, 2, 1, 60_000);
+        sender.start();
+
+        submit(1);
+        Poll.until(() -> errors.size() == 1);
+        submit(2);
+        Thread.sleep(20);
+        assertEquals(1, errors.size());
+        assertEquals(0, sender.getSentCount());
+        assertEquals(pool.getAllocationCount(), pool.getAvailableCount());
+    }
+}
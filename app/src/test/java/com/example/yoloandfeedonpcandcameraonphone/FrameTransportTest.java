@@ -0,0 +1,93 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class FrameTransportTest {
+
+    private static final int FRAME_COUNT = 20;
+
+    @Test
+    public void streamTransportWithHeapBuffers() throws Exception {
+        roundTrip(FrameTransport.Type.STREAM, false);
+    }
+
+    @Test
+    public void streamTransportWithDirectBuffers() throws Exception {
+        roundTrip(FrameTransport.Type.STREAM, true);
+    }
+
+    @Test
+    public void channelTransportWithHeapBuffers() throws Exception {
+        roundTrip(FrameTransport.Type.CHANNEL, false);
+    }
+
+    @Test
+    public void channelTransportWithDirectBuffers() throws Exception {
+        roundTrip(FrameTransport.Type.CHANNEL, true);
+    }
+
+    private static byte[] payload(int frame) {
+        byte[] data = new byte[1000 + frame * 5000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i + frame);
+        }
+        return data;
+    }
+
+    private void roundTrip(FrameTransport.Type type, boolean direct) throws Exception {
+        List<byte[]> received = Collections.synchronizedList(new ArrayList<>());
+        List<Long> ids = Collections.synchronizedList(new ArrayList<>());
+
+        try (ServerSocket server = new ServerSocket(0)) {
+            Thread reader = new Thread(() -> {
+                try (Socket socket = server.accept(); InputStream in = socket.getInputStream()) {
+                    FrameCodec.Decoder decoder = new FrameCodec.Decoder((header, data, length) -> {
+                        ids.add(header.frameId);
+                        received.add(Arrays.copyOf(data, length));
+                    });
+                    byte[] buffer = new byte[8192];
+                    int n;
+                    while ((n = in.read(buffer)) > 0) {
+                        decoder.feed(buffer, 0, n);
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            reader.start();
+
+            FrameBufferPool pool = new FrameBufferPool("test", 1, direct);
+            FrameTransport transport = FrameTransport.create(type);
+            transport.connect(new InetSocketAddress("127.0.0.1", server.getLocalPort()), 2000);
+            assertTrue(transport.isOpen());
+            for (int i = 0; i < FRAME_COUNT; i++) {
+                FrameBuffer buffer = pool.acquire(1024);
+                buffer.resetOutputStream().write(payload(i));
+                transport.writeFrame(buffer, i, i * 10L, 640, 480, FrameCodec.FORMAT_JPEG, 80);
+                buffer.release();
+            }
+            assertTrue(transport.getWriteCallCount() >= FRAME_COUNT);
+            transport.close();
+            reader.join(5000);
+        }
+
+        assertEquals(FRAME_COUNT, received.size());
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            assertEquals(i, (long) ids.get(i));
+            assertArrayEquals(payload(i), received.get(i));
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class HungarianAssignerTest {
+
+    @Test
+    public void findsTheCheapestAssignment() {
+        // Greedy would take row 0 -> column 0 and force row 1 onto column 1 (total 10)
+        float[] cost = {
+            1, 2,
+            2, 9,
+        };
+        int[] rowToCol = new int[2];
+        assertEquals(2, new HungarianAssigner().solve(cost, 2, 2, rowToCol));
+        assertArrayEquals(new int[]{1, 0}, rowToCol);
+    }
+
+    @Test
+    public void handlesRectangularProblems() {
+        HungarianAssigner assigner = new HungarianAssigner();
+        float[] wide = {
+            5, 1, 9,
+            1, 5, 9,
+        };
+        int[] rows = new int[2];
+        assertEquals(2, assigner.solve(wide, 2, 3, rows));
+        assertArrayEquals(new int[]{1, 0}, rows);
+
+        float[] tall = {
+            5,
+            1,
+            3,
+        };
+        int[] single = new int[3];
+        assertEquals(1, assigner.solve(tall, 3, 1, single));
+        assertArrayEquals(new int[]{-1, 0, -1}, single);
+    }
+
+    @Test
+    public void matchesBruteForceOnRandomProblems() {
+        Random random = new Random(7);
+        HungarianAssigner assigner = new HungarianAssigner();
+        for (int trial = 0; trial < 200; trial++) {
+            int rows = 1 + random.nextInt(6);
+            int cols = 1 + random.nextInt(6);
+            float[] cost = new float[rows * cols];
+            for (int i = 0; i < cost.length; i++) {
+                cost[i] = random.nextInt(20) / 4f;
+            }
+            int[] rowToCol = new int[rows];
+            int assigned = assigner.solve(cost, rows, cols, rowToCol);
+
+            assertEquals(Math.min(rows, cols), assigned);
+            float total = 0;
+            boolean[] taken = new boolean[cols];
+            for (int r = 0; r < rows; r++) {
+                if (rowToCol[r] >= 0) {
+                    assertEquals(false, taken[rowToCol[r]]);
+                    taken[rowToCol[r]] = true;
+                    total += cost[r * cols + rowToCol[r]];
+                }
+            }
+            assertEquals(bruteForce(cost, rows, cols, 0, new boolean[cols]), total, 1e-4f);
+        }
+    }
+
+    /** Cheapest cost of assigning rows {@code row..} with min(rows, cols) pairs in total. */
+    private static float bruteForce(float[] cost, int rows, int cols, int row, boolean[] taken) {
+        if (row == rows) {
+            return 0;
+        }
+        float best = Float.POSITIVE_INFINITY;
+        // A row may stay unassigned only if there are more rows than columns left
+        int freeCols = 0;
+        for (boolean t : taken) {
+            if (!t) {
+                freeCols++;
+            }
+        }
+        if (rows - row > freeCols) {
+            best = bruteForce(cost, rows, cols, row + 1, taken);
+        }
+        for (int c = 0; c < cols; c++) {
+            if (!taken[c]) {
+                taken[c] = true;
+                best = Math.min(best, cost[row * cols + c] + bruteForce(cost, rows, cols, row + 1, taken));
+                taken[c] = false;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsCoverEveryValueOnce() {
+        for (long value = 0; value < 1_000_000; value++) {
+            int index = LatencyHistogram.bucketIndex(value);
+            assertTrue(value + " above its bucket", value <= LatencyHistogram.bucketUpperBound(index));
+            if (index > 0) {
+                assertTrue(value + " inside the previous bucket", value > LatencyHistogram.bucketUpperBound(index - 1));
+            }
+        }
+        LatencyHistogram.bucketIndex(LatencyHistogram.MAX_TRACKABLE_US);
+    }
+
+    @Test
+    public void percentilesStayWithinBucketPrecision() {
+        Random random = new Random(3);
+        LatencyHistogram histogram = new LatencyHistogram();
+        long[] values = new long[10_000];
+        for (int i = 0; i < values.length; i++) {
+            // Log-normal-ish spread from tens of microseconds to seconds
+            values[i] = (long) Math.exp(4 + random.nextDouble() * 10);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        assertEquals(values.length, histogram.getCount());
+        assertEquals(values[values.length - 1], histogram.getMaxMicros());
+        for (double p : new double[]{50, 95, 99}) {
+            long exact = values[(int) Math.ceil(p / 100 * values.length) - 1];
+            long estimate = histogram.getPercentileMicros(p);
+            assertTrue("p" + p + ": " + estimate + " vs " + exact,
+                estimate >= exact && estimate <= exact + exact / LatencyHistogram.SUB_BUCKETS + 1);
+        }
+    }
+
+    @Test
+    public void clampsAndResets() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentileMicros(99));
+        histogram.record(-5);
+        histogram.recordNanos(Long.MAX_VALUE);
+        assertEquals(0, histogram.getPercentileMicros(50));
+        assertEquals(LatencyHistogram.MAX_TRACKABLE_US, histogram.getMaxMicros());
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMaxMicros());
+    }
+
+    @Test
+    public void recordsFromManyThreads() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            int offset = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 50_000; i++) {
+                    histogram.record(i % 1000 + offset);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(200_000, histogram.getCount());
+        assertEquals(1002, histogram.getMaxMicros());
+    }
+
+    @Test
+    public void addCombinesCountsAndMaximum() {
+        LatencyHistogram first = new LatencyHistogram();
+        LatencyHistogram second = new LatencyHistogram();
+        for (int i = 1; i <= 50; i++) {
+            first.record(i);
+            second.record(50 + i);
+        }
+        second.record(5000);
+
+        first.add(second);
+        assertEquals(101, first.getCount());
+        assertEquals(5000, first.getMaxMicros());
+        assertEquals(51, first.getPercentileMicros(50));
+        assertEquals(51, second.getCount());
+    }
+}
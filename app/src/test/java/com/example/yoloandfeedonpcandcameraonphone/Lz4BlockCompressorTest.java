@@ -0,0 +1,69 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class Lz4BlockCompressorTest {
+    private final Lz4BlockCompressor compressor = new Lz4BlockCompressor();
+
+    private byte[] roundTrip(byte[] input) {
+        byte[] compressed = new byte[3 + Lz4BlockCompressor.maxCompressedLength(input.length)];
+        int length = compressor.compress(input, 0, input.length, compressed, 3);
+        byte[] output = new byte[input.length];
+        Lz4BlockCompressor.decompress(compressed, 3, length, output, 0, output.length);
+        assertArrayEquals(input, output);
+        return Arrays.copyOfRange(compressed, 3, 3 + length);
+    }
+
+    @Test
+    public void roundTripsRepetitiveRandomAndShortInputs() {
+        // A flat frame with a gradient band, like a wall behind the subject
+        byte[] flat = new byte[64 * 1024];
+        for (int i = 0; i < flat.length; i++) {
+            flat[i] = (byte) (i % 640 < 100 ? i % 640 : 128);
+        }
+        assertTrue(roundTrip(flat).length < flat.length / 10);
+
+        byte[] noise = new byte[10_000];
+        new Random(1).nextBytes(noise);
+        assertTrue(roundTrip(noise).length <= Lz4BlockCompressor.maxCompressedLength(noise.length));
+
+        // Long literal and match runs need extra length bytes
+        byte[] runs = new byte[2_000];
+        new Random(2).nextBytes(runs);
+        Arrays.fill(runs, 300, 1_500, (byte) 7);
+        roundTrip(runs);
+
+        for (int length = 0; length < 20; length++) {
+            roundTrip(Arrays.copyOf(flat, length));
+        }
+    }
+
+    @Test
+    public void rejectsMalformedBlocks() {
+        byte[] input = new byte[1_000];
+        Arrays.fill(input, (byte) 1);
+        byte[] block = roundTrip(input);
+        byte[] output = new byte[input.length];
+
+        expectRejected(Arrays.copyOf(block, block.length - 1), output);
+        expectRejected(block, new byte[input.length - 1]);
+        expectRejected(block, new byte[input.length + 1]);
+        // Match offset pointing before the start of the output
+        expectRejected(new byte[]{0x10, 1, 5, 0, 0x00}, new byte[5]);
+    }
+
+    private static void expectRejected(byte[] block, byte[] output) {
+        try {
+            Lz4BlockCompressor.decompress(block, 0, block.length, output, 0, output.length);
+            fail("Accepted a malformed block");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
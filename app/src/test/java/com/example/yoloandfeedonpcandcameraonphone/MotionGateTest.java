@@ -0,0 +1,141 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+public class MotionGateTest {
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+    // Row padding, as camera planes have
+    private static final int ROW_STRIDE = 704;
+
+    private final Random random = new Random(1);
+    private long frameId;
+
+    /** A gradient with sensor noise, and a bright square at {@code (objectX, objectY)}. */
+    private ByteBuffer frame(int objectX, int objectY, int brightness) {
+        ByteBuffer plane = ByteBuffer.allocateDirect(ROW_STRIDE * HEIGHT);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                boolean object = x >= objectX && x < objectX + 60 && y >= objectY && y < objectY + 60;
+                int luma = (object ? 230 : (x + y) / 8 + brightness) + random.nextInt(5) - 2;
+                plane.put(y * ROW_STRIDE + x, (byte) luma);
+            }
+        }
+        return plane;
+    }
+
+    /** Gates the next frame and, as the frame sink does, reports it sent if it passes. */
+    private boolean test(MotionGate gate, ByteBuffer frame, long nowMs) {
+        long id = ++frameId;
+        if (!gate.shouldSend(id, frame, ROW_STRIDE, 1, 0, 0, WIDTH, HEIGHT, nowMs)) {
+            return false;
+        }
+        gate.onFrameSent(id, 40_000);
+        return true;
+    }
+
+    @Test
+    public void skipsUnchangedFramesUntilTheMaximumInterval() {
+        MotionGate gate = new MotionGate();
+        assertTrue(test(gate, frame(100, 100, 0), 0));
+
+        // Noise alone changes nothing
+        for (long t = 33; t < 2_000; t += 33) {
+            assertFalse("at " + t, test(gate, frame(100, 100, 0), t));
+        }
+        assertEquals(60, gate.getFramesSkipped());
+        assertEquals(60 * 40_000L, gate.getBytesSaved());
+
+        // Forced after maxSkipMs, then skipping resumes
+        assertTrue(test(gate, frame(100, 100, 0), 2_000));
+        assertFalse(test(gate, frame(100, 100, 0), 2_033));
+
+        StringBuilder summary = new StringBuilder();
+        gate.appendSummary(summary);
+        assertTrue(summary.toString(), summary.toString().startsWith("motion gate: 61 of 63 frames skipped"));
+    }
+
+    @Test
+    public void sendsWhenASmallObjectMoves() {
+        MotionGate gate = new MotionGate();
+        assertTrue(test(gate, frame(100, 100, 0), 0));
+        // The object moves by half its size; under 2% of the frame changes
+        assertTrue(test(gate, frame(130, 100, 0), 33));
+        assertTrue(gate.getLastChangedCells() >= 2);
+        assertFalse(test(gate, frame(130, 100, 0), 66));
+    }
+
+    @Test
+    public void comparesAgainstTheLastFrameSent() {
+        MotionGate gate = new MotionGate();
+        assertTrue(test(gate, frame(100, 100, 0), 0));
+        // Lighting creeps up by 3 per frame: each step is below the threshold,
+        // but the third is well above it relative to the reference
+        assertFalse(test(gate, frame(100, 100, 3), 33));
+        assertFalse(test(gate, frame(100, 100, 6), 66));
+        assertTrue(test(gate, frame(100, 100, 10), 99));
+    }
+
+    @Test
+    public void framesDroppedOnTheWayDoNotBecomeTheReference() {
+        MotionGate gate = new MotionGate();
+        ByteBuffer before = frame(100, 100, 0);
+        ByteBuffer after = frame(300, 200, 0);
+        assertTrue(test(gate, before, 0));
+
+        // Let through, then dropped before it was sent: still compared with the first
+        assertTrue(gate.shouldSend(100, after, ROW_STRIDE, 1, 0, 0, WIDTH, HEIGHT, 33));
+        gate.onFrameDropped(100);
+        // Let through, but never reported: the sink has not seen it yet
+        assertTrue(gate.shouldSend(101, after, ROW_STRIDE, 1, 0, 0, WIDTH, HEIGHT, 66));
+        assertTrue(gate.shouldSend(102, after, ROW_STRIDE, 1, 0, 0, WIDTH, HEIGHT, 99));
+
+        // Sent: later frames compare with it, and the forced send counts from it
+        gate.onFrameSent(102, 40_000);
+        // A dropped frame reported late changes nothing
+        gate.onFrameSent(100, 40_000);
+        assertFalse(test(gate, after, 132));
+        assertFalse(test(gate, after, 2_098));
+        assertTrue(test(gate, after, 2_099));
+    }
+
+    @Test
+    public void resetAndSizeChangesSendTheNextFrame() {
+        MotionGate gate = new MotionGate();
+        ByteBuffer still = frame(100, 100, 0);
+        assertTrue(test(gate, still, 0));
+        assertFalse(test(gate, still, 33));
+        gate.reset();
+        assertTrue(test(gate, still, 66));
+        assertTrue(gate.shouldSend(++frameId, still, ROW_STRIDE, 1, 0, 0, WIDTH / 2, HEIGHT / 2, 99));
+
+        gate.getConfig().enabled = false;
+        assertTrue(test(gate, still, 132));
+        assertTrue(test(gate, still, 165));
+    }
+
+    @Test
+    public void gatingDoesNotAllocate() throws Exception {
+        MotionGate gate = new MotionGate();
+        ByteBuffer[] frames = {frame(100, 100, 0), frame(100, 100, 0), frame(300, 200, 0)};
+        long t = 0;
+        for (int i = 0; i < 2_000; i++, t += 33) {
+            test(gate, frames[i % frames.length], t);
+        }
+
+        long start = t;
+        AllocationAssert.assertNoAllocation("Gating", () -> {
+            for (int i = 0; i < 500; i++) {
+                test(gate, frames[i % frames.length], start + i * 33L);
+                gate.onFrameDropped(frameId - 1);
+            }
+        });
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Streams frames to several {@link StandInServer}s on loopback, wired the way
+ * NetworkClient wires its servers: one {@link FrameSender} and transport per
+ * server, one UDP socket for every result, a {@link ServerPool} choosing the
+ * server and a {@link ResultReorderBuffer} restoring frame order.
+ */
+public class MultiServerHarnessTest {
+    private static final long FRAME_INTERVAL_MS = 5;
+
+    // YFPClient's own timings
+    private final ServerPool pool = new ServerPool(YFPClient.FAILOVER_MS);
+    private final ResultReorderBuffer reorder = new ResultReorderBuffer(32, 100);
+    private final FrameBufferPool buffers = new FrameBufferPool("test", 16);
+    private final List<StandInServer> standIns = new ArrayList<>();
+    private final List<Long> released = Collections.synchronizedList(new ArrayList<>());
+    private DatagramSocket udpSocket;
+    private Thread listener;
+    private volatile boolean running = true;
+
+    @After
+    public void tearDown() throws Exception {
+        running = false;
+        for (ServerPool.Server server : pool.getServers()) {
+            if (server.sender != null) {
+                server.sender.stop();
+            }
+            if (server.transport != null) {
+                server.transport.close();
+            }
+        }
+        if (udpSocket != null) {
+            udpSocket.close();
+        }
+        if (listener != null) {
+            listener.join(1000);
+        }
+        for (StandInServer standIn : standIns) {
+            standIn.close();
+        }
+    }
+
+    private ServerPool.Server start(String name, long delayMs) throws IOException {
+        StandInServer standIn = new StandInServer(name, delayMs, 30, 0);
+        standIns.add(standIn);
+        return pool.add(standIn.getAddress());
+    }
+
+    private void connectAll() throws IOException {
+        udpSocket = new DatagramSocket();
+        for (ServerPool.Server server : pool.getServers()) {
+            byte[] connect = new YFPMessage(YFPMessage.MessageType.CONNECT,
+                new YFPMessage.ConnectData("harness", 640, 640)).toJson().getBytes();
+            udpSocket.send(new DatagramPacket(connect, connect.length, server.address));
+
+            FrameTransport transport = FrameTransport.create(FrameTransport.Type.CHANNEL);
+            transport.connect(server.address, 2000);
+            server.transport = transport;
+            server.sender = new FrameSender((payload, frameId, ts, width, height, format, quality) -> {
+                pool.onSent(server, System.nanoTime());
+                reorder.onDispatched(frameId, server.id);
+                transport.writeFrame(payload, frameId, ts, width, height, format, quality);
+            }, null, 2, 1, YFPClient.FRAME_ACK_TIMEOUT_MS);
+            server.sender.start();
+            pool.markUp(server);
+        }
+        listener = new Thread(this::listen, "harness-listener");
+        listener.start();
+    }
+
+    private void listen() {
+        byte[] buffer = new byte[4096];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        DetectionBuffer received = new DetectionBuffer();
+        DetectionBuffer out = new DetectionBuffer();
+        try {
+            udpSocket.setSoTimeout(10);
+        } catch (IOException e) {
+            return;
+        }
+        while (running) {
+            try {
+                packet.setLength(buffer.length);
+                udpSocket.receive(packet);
+                long now = System.nanoTime();
+                ServerPool.Server server = pool.find(packet.getAddress(), packet.getPort());
+                if (server == null || !DetectionsCodec.isBinary(buffer, 0, packet.getLength())) {
+                    continue;
+                }
+                DetectionsCodec.decode(buffer, 0, packet.getLength(), received);
+                server.sender.onAck(received.frameId);
+                pool.onAnswered(server, now - received.serverReceiveNs, now);
+                reorder.offer(received, server.id, now);
+            } catch (SocketTimeoutException e) {
+                // Release held results
+            } catch (IOException e) {
+                return;
+            }
+            while (reorder.poll(System.nanoTime(), out)) {
+                released.add(out.frameId);
+            }
+        }
+    }
+
+    /** Sends {@code count} frames from {@code firstId}, failing over as NetworkClient.sendFrame does. */
+    private void stream(long firstId, int count, ServerPool.Policy policy) throws InterruptedException {
+        for (long id = firstId; id < firstId + count; id++) {
+            ServerPool.Server failed;
+            while ((failed = pool.checkHealth(System.nanoTime())) != null) {
+                reorder.onServerDown(failed.id);
+            }
+            ServerPool.Server server = pool.select(policy);
+            FrameBuffer payload = buffers.acquire(1024);
+            payload.setLength(1024);
+            server.sender.submit(payload, id, 0, 640, 480, FrameCodec.FORMAT_JPEG, 80);
+            Thread.sleep(FRAME_INTERVAL_MS);
+        }
+    }
+
+    private void waitForResults() throws InterruptedException {
+        int last = -1;
+        while (released.size() != last) {
+            last = released.size();
+            Thread.sleep(300);
+        }
+    }
+
+    private void assertReleasedInOrder() {
+        synchronized (released) {
+            for (int i = 1; i < released.size(); i++) {
+                assertTrue("results out of order: " + released, released.get(i) > released.get(i - 1));
+            }
+        }
+    }
+
+    @Test
+    public void spreadsFramesOverServersAndReleasesResultsInOrder() throws Exception {
+        start("fast", 10);
+        start("slow", 40);
+        connectAll();
+
+        stream(1, 100, ServerPool.Policy.LEAST_LATENCY);
+        waitForResults();
+
+        StandInServer fast = standIns.get(0);
+        StandInServer slow = standIns.get(1);
+        assertTrue(slow.getFramesReceived() > 0);
+        assertTrue("fast " + fast.getFramesReceived() + ", slow " + slow.getFramesReceived(),
+            fast.getFramesReceived() > slow.getFramesReceived());
+        assertEquals(fast.getFramesAnswered() + slow.getFramesAnswered(),
+            reorder.getReleasedCount() + reorder.getLateCount());
+        assertTrue(released.size() > 80);
+        assertReleasedInOrder();
+    }
+
+    @Test
+    public void failsOverWhenAServerStopsAnswering() throws Exception {
+        ServerPool.Server first = start("first", 10);
+        ServerPool.Server second = start("second", 10);
+        connectAll();
+
+        stream(1, 40, ServerPool.Policy.LEAST_IN_FLIGHT);
+        StandInServer hung = standIns.get(1);
+        assertTrue(hung.getFramesReceived() > 0);
+        hung.stopAnswering();
+        long stoppedNs = System.nanoTime();
+
+        // Frames keep flowing to the survivor once the hung server is failed over
+        long id = 41;
+        while (pool.isUp(second) && System.nanoTime() - stoppedNs < 2 * YFPClient.FAILOVER_MS * 1_000_000L) {
+            stream(id++, 1, ServerPool.Policy.LEAST_IN_FLIGHT);
+        }
+        long failoverMs = (System.nanoTime() - stoppedNs) / 1_000_000L;
+        assertFalse(pool.isUp(second));
+        assertTrue(pool.isUp(first));
+        // Within the failover time of its last frame, well before the ack timeout
+        assertTrue("failed over after " + failoverMs + " ms",
+            failoverMs < YFPClient.FAILOVER_MS + 200 && failoverMs < YFPClient.FRAME_ACK_TIMEOUT_MS);
+        int hungReceived = hung.getFramesReceived();
+        stream(id, 40, ServerPool.Policy.LEAST_IN_FLIGHT);
+        assertEquals(hungReceived, hung.getFramesReceived());
+        waitForResults();
+
+        synchronized (released) {
+            assertTrue(released.contains(id + 39));
+        }
+        assertReleasedInOrder();
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class Nv21PackerTest {
+
+    private static byte luma(int x, int y) {
+        return (byte) (y * 16 + x);
+    }
+
+    private static byte u(int x, int y) {
+        return (byte) (100 + y * 8 + x);
+    }
+
+    private static byte v(int x, int y) {
+        return (byte) (200 + y * 8 + x);
+    }
+
+    private static byte[] expectedNv21(int width, int height) {
+        byte[] expected = new byte[Nv21Packer.nv21Size(width, height)];
+        int i = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                expected[i++] = luma(x, y);
+            }
+        }
+        for (int y = 0; y < height / 2; y++) {
+            for (int x = 0; x < width / 2; x++) {
+                expected[i++] = v(x, y);
+                expected[i++] = u(x, y);
+            }
+        }
+        return expected;
+    }
+
+    private static ByteBuffer yPlane(int width, int height, int rowStride) {
+        // Last row is not padded, as with real camera buffers
+        ByteBuffer buffer = ByteBuffer.allocateDirect(rowStride * (height - 1) + width);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                buffer.put(y * rowStride + x, luma(x, y));
+            }
+        }
+        return buffer;
+    }
+
+    @Test
+    public void packsTightPlanarI420() {
+        int width = 8, height = 4;
+        ByteBuffer y = yPlane(width, height, width);
+        ByteBuffer u = ByteBuffer.allocateDirect(width / 2 * height / 2);
+        ByteBuffer v = ByteBuffer.allocateDirect(width / 2 * height / 2);
+        for (int row = 0; row < height / 2; row++) {
+            for (int col = 0; col < width / 2; col++) {
+                u.put(row * width / 2 + col, u(col, row));
+                v.put(row * width / 2 + col, v(col, row));
+            }
+        }
+
+        byte[] out = new byte[Nv21Packer.nv21Size(width, height)];
+        new Nv21Packer().pack(y, width, 1, u, v, width / 2, 1, width, height, out);
+        assertArrayEquals(expectedNv21(width, height), out);
+    }
+
+    @Test
+    public void packsPaddedSemiPlanarRows() {
+        int width = 8, height = 4, rowStride = 12;
+        ByteBuffer y = yPlane(width, height, rowStride);
+
+        // Interleaved chroma: U and V planes share memory offset by one byte
+        ByteBuffer vu = ByteBuffer.allocateDirect(rowStride * (height / 2 - 1) + width);
+        for (int row = 0; row < height / 2; row++) {
+            for (int col = 0; col < width / 2; col++) {
+                vu.put(row * rowStride + col * 2, v(col, row));
+                vu.put(row * rowStride + col * 2 + 1, u(col, row));
+            }
+        }
+        ByteBuffer v = vu.duplicate();
+        vu.position(1);
+        ByteBuffer u = vu.slice();
+
+        byte[] out = new byte[Nv21Packer.nv21Size(width, height)];
+        new Nv21Packer().pack(y, rowStride, 1, u, v, rowStride, 2, width, height, out);
+        assertArrayEquals(expectedNv21(width, height), out);
+        assertEquals(0, y.position());
+        assertEquals(0, v.position());
+    }
+
+    @Test
+    public void downscalesBySubsampling() {
+        int width = 8, height = 4, divisor = 2;
+        ByteBuffer y = yPlane(width, height, width);
+        ByteBuffer u = ByteBuffer.allocateDirect(width / 2 * height / 2);
+        ByteBuffer v = ByteBuffer.allocateDirect(width / 2 * height / 2);
+        for (int row = 0; row < height / 2; row++) {
+            for (int col = 0; col < width / 2; col++) {
+                u.put(row * width / 2 + col, u(col, row));
+                v.put(row * width / 2 + col, v(col, row));
+            }
+        }
+
+        assertEquals(4, Nv21Packer.scaledDimension(width, divisor));
+        assertEquals(2, Nv21Packer.scaledDimension(height, divisor));
+        byte[] out = new byte[Nv21Packer.nv21Size(4, 2)];
+        new Nv21Packer().packScaled(y, width, 1, u, v, width / 2, 1, width, height, divisor, out);
+
+        byte[] expected = {
+            luma(0, 0), luma(2, 0), luma(4, 0), luma(6, 0),
+            luma(0, 2), luma(2, 2), luma(4, 2), luma(6, 2),
+            v(0, 0), u(0, 0), v(2, 0), u(2, 0)
+        };
+        assertArrayEquals(expected, out);
+    }
+
+    @Test
+    public void cropsAndScalesARegion() {
+        int width = 16, height = 8, rowStride = 20;
+        ByteBuffer y = yPlane(width, height, rowStride);
+        ByteBuffer vu = ByteBuffer.allocateDirect(rowStride * (height / 2 - 1) + width);
+        for (int row = 0; row < height / 2; row++) {
+            for (int col = 0; col < width / 2; col++) {
+                vu.put(row * rowStride + col * 2, v(col, row));
+                vu.put(row * rowStride + col * 2 + 1, u(col, row));
+            }
+        }
+        ByteBuffer v = vu.duplicate();
+        vu.position(1);
+        ByteBuffer u = vu.slice();
+        Nv21Packer packer = new Nv21Packer();
+
+        // 4x4 at (6, 2), unscaled
+        byte[] out = new byte[Nv21Packer.nv21Size(4, 4)];
+        packer.packRegion(y, rowStride, 1, u, v, rowStride, 2, 6, 2, 4, 4, 4, 4, out);
+        byte[] expected = new byte[out.length];
+        int i = 0;
+        for (int row = 0; row < 4; row++) {
+            for (int col = 0; col < 4; col++) {
+                expected[i++] = luma(6 + col, 2 + row);
+            }
+        }
+        for (int row = 0; row < 2; row++) {
+            for (int col = 0; col < 2; col++) {
+                expected[i++] = v(3 + col, 1 + row);
+                expected[i++] = u(3 + col, 1 + row);
+            }
+        }
+        assertArrayEquals(expected, out);
+
+        // 12x6 at (4, 2) down to 4x2: every third column, every third row
+        out = new byte[Nv21Packer.nv21Size(4, 2)];
+        packer.packRegion(y, rowStride, 1, u, v, rowStride, 2, 4, 2, 12, 6, 4, 2, out);
+        expected = new byte[]{
+            luma(4, 2), luma(7, 2), luma(10, 2), luma(13, 2),
+            luma(4, 5), luma(7, 5), luma(10, 5), luma(13, 5),
+            v(2, 1), u(2, 1), v(5, 1), u(5, 1)
+        };
+        assertArrayEquals(expected, out);
+        assertEquals(0, y.position());
+    }
+
+    @Test
+    public void unpacksIntoPaddedSemiPlanarPlanes() {
+        int width = 8, height = 4, rowStride = 12;
+        byte[] nv21 = expectedNv21(width, height);
+        ByteBuffer y = ByteBuffer.allocateDirect(rowStride * height);
+        ByteBuffer uv = ByteBuffer.allocateDirect(rowStride * height / 2);
+        ByteBuffer u = uv.duplicate();
+        uv.position(1);
+        ByteBuffer v = uv.slice();
+
+        Nv21Packer packer = new Nv21Packer();
+        packer.unpack(nv21, width, height, y, rowStride, 1, u, v, rowStride, 2);
+        assertEquals(luma(5, 3), y.get(3 * rowStride + 5));
+        assertEquals(u(1, 1), uv.get(rowStride + 2));
+        assertEquals(v(1, 1), uv.get(rowStride + 3));
+
+        // Reading the planes back gives the same image
+        byte[] out = new byte[nv21.length];
+        packer.pack(y, rowStride, 1, u, v, rowStride, 2, width, height, out);
+        assertArrayEquals(nv21, out);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsShortOutput() {
+        ByteBuffer plane = ByteBuffer.allocate(64);
+        new Nv21Packer().pack(plane, 8, 1, plane, plane, 4, 1, 8, 4, new byte[10]);
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class OverlayBatchTest {
+
+    @Test
+    public void groupsBoxEdgesByColour() {
+        OverlayBatch batch = new OverlayBatch();
+        batch.drawBox(10, 20, 30, 40, 2);
+        batch.drawLabel("car 0.90", 10, 10, 2);
+        batch.drawBox(0, 0, 5, 5, 0);
+
+        assertEquals(OverlayBatch.FLOATS_PER_BOX, batch.lineFloatCount(2));
+        assertEquals(OverlayBatch.FLOATS_PER_BOX, batch.lineFloatCount(0));
+        assertEquals(0, batch.lineFloatCount(1));
+        float[] expected = {
+            10, 20, 30, 20,
+            30, 20, 30, 40,
+            30, 40, 10, 40,
+            10, 40, 10, 20,
+        };
+        float[] actual = new float[OverlayBatch.FLOATS_PER_BOX];
+        System.arraycopy(batch.lines(2), 0, actual, 0, actual.length);
+        assertArrayEquals(expected, actual, 0f);
+
+        assertEquals(1, batch.labelCount());
+        assertEquals("car 0.90", batch.label(0));
+        assertEquals(10f, batch.labelY(0), 0f);
+        assertEquals(2, batch.labelColor(0));
+
+        batch.clear();
+        assertEquals(0, batch.lineFloatCount(2));
+        assertEquals(0, batch.labelCount());
+    }
+
+    @Test
+    public void growsPastInitialCapacity() {
+        OverlayBatch batch = new OverlayBatch();
+        for (int i = 0; i < 100; i++) {
+            batch.drawBox(i, i, i + 1, i + 1, 3);
+            batch.drawLabel("x", i, i, 3);
+        }
+        assertEquals(100 * OverlayBatch.FLOATS_PER_BOX, batch.lineFloatCount(3));
+        assertEquals(99f, batch.lines(3)[99 * OverlayBatch.FLOATS_PER_BOX], 0f);
+        assertEquals(100, batch.labelCount());
+        assertEquals(99f, batch.labelX(99), 0f);
+    }
+
+    @Test
+    public void steadyStateBatchingDoesNotAllocate() throws Exception {
+        ClassTable table = new ClassTable();
+        table.setNames(new String[]{"person", "car", "dog"});
+        OverlayRenderer renderer = new OverlayRenderer();
+        OverlayBatch batch = new OverlayBatch();
+        DetectionBuffer detections = new DetectionBuffer();
+        detections.reset(1, 10, 100);
+        for (int i = 0; i < 100; i++) {
+            detections.set(i, 0.005f * i, 0.25f, 0.1f, 0.1f, i % 12, 0.5f + 0.004f * i);
+        }
+
+        for (int i = 0; i < 20_000; i++) {
+            batch.clear();
+            renderer.render(detections, table, 1080, 1920, batch);
+        }
+
+        AllocationAssert.assertNoAllocation("Batching", () -> {
+            for (int i = 0; i < 10_000; i++) {
+                batch.clear();
+                renderer.render(detections, table, 1080, 1920, batch);
+            }
+        });
+        assertEquals(100, batch.labelCount());
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class OverlayRendererTest {
+
+    /** Records draw calls into preallocated arrays so recording itself does not allocate. */
+    private static final class RecordingTarget implements OverlayRenderer.Target {
+        final float[] rects = new float[4 * 256];
+        final String[] labels = new String[256];
+        final int[] colors = new int[256];
+        int boxes;
+        int labelCount;
+
+        void clear() {
+            boxes = 0;
+            labelCount = 0;
+        }
+
+        @Override
+        public void drawBox(float left, float top, float right, float bottom, int colorIndex) {
+            rects[boxes * 4] = left;
+            rects[boxes * 4 + 1] = top;
+            rects[boxes * 4 + 2] = right;
+            rects[boxes * 4 + 3] = bottom;
+            colors[boxes++] = colorIndex;
+        }
+
+        @Override
+        public void drawLabel(String label, float x, float y, int colorIndex) {
+            labels[labelCount++] = label;
+        }
+    }
+
+    private static DetectionBuffer detections(int count) {
+        DetectionBuffer buffer = new DetectionBuffer();
+        buffer.reset(1, 10, count);
+        for (int i = 0; i < count; i++) {
+            buffer.set(i, 0.01f * i, 0.25f, 0.5f, 0.5f, i % 3, 0.5f + 0.004f * i);
+        }
+        return buffer;
+    }
+
+    @Test
+    public void mapsBoxesToPixelsWithLabels() {
+        ClassTable table = new ClassTable();
+        table.setNames(new String[]{"person", "car"});
+        RecordingTarget target = new RecordingTarget();
+        new OverlayRenderer().render(detections(3), table, 200, 400, target);
+
+        assertEquals(3, target.boxes);
+        assertEquals(0f, target.rects[0], 1e-4f);
+        assertEquals(100f, target.rects[1], 1e-4f);
+        assertEquals(100f, target.rects[2], 1e-4f);
+        assertEquals(300f, target.rects[3], 1e-4f);
+        assertEquals("person 0.50", target.labels[0]);
+        assertEquals("car 0.50", target.labels[1]);
+        assertEquals("#? 0.51", target.labels[2]);
+        assertEquals(OverlayRenderer.colorIndex(1), target.colors[1]);
+    }
+
+    @Test
+    public void labelsMatchStringFormat() {
+        List<String> mismatches = new ArrayList<>();
+        for (int hundredths = 0; hundredths <= 100; hundredths++) {
+            String expected = String.format(java.util.Locale.ROOT, "%s %.2f", "dog", hundredths / 100f);
+            String actual = OverlayRenderer.formatLabel("dog", hundredths);
+            if (!expected.equals(actual)) {
+                mismatches.add(actual + " != " + expected);
+            }
+        }
+        assertTrue(mismatches.toString(), mismatches.isEmpty());
+    }
+
+    @Test
+    public void labelsAreCachedUntilTheClassTableChanges() {
+        ClassTable table = new ClassTable();
+        table.setNames(new String[]{"person"});
+        OverlayRenderer renderer = new OverlayRenderer();
+        String first = renderer.label(0, 0.8f, table);
+        assertSame(first, renderer.label(0, 0.801f, table));
+
+        table.setNames(new String[]{"human"});
+        String renamed = renderer.label(0, 0.8f, table);
+        assertNotSame(first, renamed);
+        assertEquals("human 0.80", renamed);
+    }
+
+    @Test
+    public void idsBeyondTheTableShareTheFallbackLabel() {
+        ClassTable table = new ClassTable();
+        table.setNames(new String[]{"person", null});
+        OverlayRenderer renderer = new OverlayRenderer();
+
+        assertEquals("#1 0.70", renderer.label(1, 0.7f, table));
+        String unknown = renderer.label(2, 0.7f, table);
+        assertEquals("#? 0.70", unknown);
+        assertSame(unknown, renderer.label(Integer.MAX_VALUE, 0.7f, table));
+        assertEquals(2, renderer.getCachedClassCount());
+    }
+
+    @Test
+    public void steadyStateRenderDoesNotAllocate() throws Exception {
+        ClassTable table = new ClassTable();
+        table.setNames(new String[]{"person", "car", "dog"});
+        OverlayRenderer renderer = new OverlayRenderer();
+        RecordingTarget target = new RecordingTarget();
+        DetectionBuffer front = new DetectionBuffer();
+        DetectionBuffer incoming = detections(50);
+
+        for (int i = 0; i < 20_000; i++) {
+            front.copyFrom(incoming);
+            target.clear();
+            renderer.render(front, table, 1080, 1920, target);
+        }
+
+        AllocationAssert.assertNoAllocation("Rendering", () -> {
+            for (int i = 0; i < 10_000; i++) {
+                front.copyFrom(incoming);
+                target.clear();
+                renderer.render(front, table, 1080, 1920, target);
+            }
+        });
+        assertEquals(50, target.boxes);
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class PipelineStageTest {
+
+    @Test
+    public void fullQueueDropsOldestItem() throws Exception {
+        CountDownLatch blockWorker = new CountDownLatch(1);
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        List<Integer> processed = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> dropped = Collections.synchronizedList(new ArrayList<>());
+
+        PipelineStage<Integer> stage = new PipelineStage<>("test", 2, item -> {
+            if (item == 0) {
+                firstStarted.countDown();
+                blockWorker.await();
+            }
+            processed.add(item);
+        }, dropped::add, null);
+        stage.start();
+
+        stage.offer(0);
+        assertTrue(firstStarted.await(1, TimeUnit.SECONDS));
+        for (int i = 1; i <= 5; i++) {
+            stage.offer(i);
+        }
+        blockWorker.countDown();
+
+        Poll.until(() -> processed.size() == 3);
+        assertEquals(List.of(0, 4, 5), processed);
+        assertEquals(List.of(1, 2, 3), dropped);
+        assertEquals(3, stage.getDroppedCount());
+        stage.stop();
+    }
+
+    @Test
+    public void failedItemGoesToDropHandler() throws Exception {
+        List<Integer> dropped = Collections.synchronizedList(new ArrayList<>());
+        List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        PipelineStage<Integer> stage = new PipelineStage<>("test", 1, item -> {
+            throw new IllegalStateException("boom");
+        }, dropped::add, (name, e) -> errors.add(name));
+        stage.start();
+
+        stage.offer(7);
+        Poll.until(() -> dropped.size() == 1);
+        assertEquals(List.of(7), dropped);
+        assertEquals(List.of("test"), errors);
+        assertEquals(1, stage.getFailedCount());
+        stage.stop();
+    }
+
+    @Test
+    public void offerAfterStopDropsImmediately() {
+        List<Integer> dropped = new ArrayList<>();
+        PipelineStage<Integer> stage = new PipelineStage<>("test", 1, item -> { }, dropped::add, null);
+        stage.start();
+        stage.stop();
+
+        stage.offer(1);
+        assertEquals(List.of(1), dropped);
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+public class PipelineTimingsTest {
+    private static final long MS = 1_000_000L;
+
+    private static void markAll(PipelineTimings timings, long frameId, long start, long... stageMs) {
+        timings.mark(PipelineTimings.Stage.CAPTURED, frameId, start);
+        PipelineTimings.Stage[] stages = PipelineTimings.Stage.values();
+        long time = start;
+        for (int i = 0; i < stageMs.length; i++) {
+            time += stageMs[i] * MS;
+            timings.mark(stages[i + 1], frameId, time);
+        }
+    }
+
+    @Test
+    public void recordsTheTimeSinceThePreviousStage() {
+        PipelineTimings timings = new PipelineTimings(16);
+        markAll(timings, 7, 1_000 * MS, 12, 9, 1, 30, 80, 16);
+
+        assertEquals(12_000, timings.getHistogram(PipelineTimings.Stage.CONVERTED).getMaxMicros());
+        assertEquals(9_000, timings.getHistogram(PipelineTimings.Stage.ENCODED).getMaxMicros());
+        assertEquals(80_000, timings.getHistogram(PipelineTimings.Stage.RECEIVED).getMaxMicros());
+        assertEquals(16_000, timings.getHistogram(PipelineTimings.Stage.DRAWN).getMaxMicros());
+        assertEquals(148_000, timings.getTotal().getMaxMicros());
+    }
+
+    @Test
+    public void eachStageCountsOncePerFrame() {
+        PipelineTimings timings = new PipelineTimings(16);
+        markAll(timings, 3, 0, 1, 1, 1, 1, 1, 1);
+        // The overlay redraws the same result on later frames
+        timings.mark(PipelineTimings.Stage.DRAWN, 3, 500 * MS);
+        timings.mark(PipelineTimings.Stage.DRAWN, 3, 516 * MS);
+
+        assertEquals(1, timings.getHistogram(PipelineTimings.Stage.DRAWN).getCount());
+        assertEquals(1, timings.getTotal().getCount());
+    }
+
+    @Test
+    public void ignoresUntrackedAndReplacedFrames() {
+        PipelineTimings timings = new PipelineTimings(4);
+        timings.mark(PipelineTimings.Stage.RECEIVED, 99, 10 * MS);
+        timings.mark(PipelineTimings.Stage.CAPTURED, 1, 0);
+        // Frame 5 takes frame 1's slot before frame 1 is converted
+        timings.mark(PipelineTimings.Stage.CAPTURED, 5, 2 * MS);
+        timings.mark(PipelineTimings.Stage.CONVERTED, 1, 10 * MS);
+        timings.mark(PipelineTimings.Stage.CONVERTED, 5, 12 * MS);
+        // Frame 5 skips the writer, so the receive stage has nothing to measure from
+        timings.mark(PipelineTimings.Stage.RECEIVED, 5, 50 * MS);
+
+        assertEquals(1, timings.getHistogram(PipelineTimings.Stage.CONVERTED).getCount());
+        assertEquals(10_000, timings.getHistogram(PipelineTimings.Stage.CONVERTED).getMaxMicros());
+        assertEquals(0, timings.getHistogram(PipelineTimings.Stage.RECEIVED).getCount());
+    }
+
+    @Test
+    public void splitsTheReceiveStageWithServerTimes() {
+        PipelineTimings timings = new PipelineTimings(16);
+        // Written at 23ms, detections back 80ms later
+        markAll(timings, 4, 0, 12, 9, 1, 1, 80);
+        timings.recordServerTimes(4, 30 * MS, 95 * MS, 103 * MS);
+
+        assertEquals(7_000, timings.getUplink().getMaxMicros());
+        assertEquals(65_000, timings.getServer().getMaxMicros());
+        assertEquals(8_000, timings.getDownlink().getMaxMicros());
+
+        // An offset error can put the server receive before the write; the leg clamps to 0
+        markAll(timings, 5, 0, 1, 1, 1, 1, 10);
+        timings.recordServerTimes(5, 3 * MS, 8 * MS, 14 * MS);
+        assertEquals(2, timings.getUplink().getCount());
+        assertEquals(0, timings.getUplink().getPercentileMicros(1));
+
+        // Frames never written or no longer tracked are skipped
+        timings.mark(PipelineTimings.Stage.CAPTURED, 6, 0);
+        timings.recordServerTimes(6, MS, 2 * MS, 3 * MS);
+        timings.recordServerTimes(99, MS, 2 * MS, 3 * MS);
+        assertEquals(2, timings.getServer().getCount());
+    }
+
+    @Test
+    public void exportsCsvAndSummary() throws IOException {
+        PipelineTimings timings = new PipelineTimings();
+        markAll(timings, 1, 0, 10, 5, 1, 20, 60, 16);
+
+        StringWriter csv = new StringWriter();
+        timings.writeCsv(csv);
+        String[] lines = csv.toString().split("\n");
+        assertEquals("stage,count,p50_ms,p95_ms,p99_ms,max_ms", lines[0]);
+        assertEquals("convert,1,10.000,10.000,10.000,10.000", lines[1]);
+        assertEquals("total,1,112.000,112.000,112.000,112.000", lines[lines.length - 1]);
+        // Every stage but capture, the network split and the total
+        assertEquals(PipelineTimings.Stage.values().length + 4, lines.length);
+
+        StringBuilder summary = new StringBuilder();
+        timings.appendSummary(summary);
+        assertTrue(summary.toString(), summary.toString().contains("detections      1    60.0"));
+    }
+}
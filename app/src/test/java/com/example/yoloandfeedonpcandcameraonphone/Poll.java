@@ -0,0 +1,24 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+/** Waits in tests for a condition that another thread makes true. */
+final class Poll {
+    static final long TIMEOUT_MS = 3000;
+
+    interface Condition {
+        boolean met();
+    }
+
+    private Poll() {
+    }
+
+    /** Returns once {@code condition} is met; fails after {@link #TIMEOUT_MS}. */
+    static void until(Condition condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!condition.met()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Timed out waiting for condition");
+            }
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class RawFrameEncoderTest {
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+
+    private static FrameBuffer nv21Frame() {
+        FrameBuffer nv21 = new FrameBufferPool("nv21", 1).acquire(Nv21Packer.nv21Size(WIDTH, HEIGHT));
+        byte[] data = nv21.data();
+        for (int i = 0; i < Nv21Packer.nv21Size(WIDTH, HEIGHT); i++) {
+            data[i] = (byte) (i < WIDTH * HEIGHT ? i / WIDTH : 128 + (i & 1));
+        }
+        nv21.setLength(Nv21Packer.nv21Size(WIDTH, HEIGHT));
+        return nv21;
+    }
+
+    private static byte[] planes(FrameBuffer payload, int format) {
+        ByteBuffer in = payload.byteBuffer();
+        assertEquals(WIDTH, in.getInt());
+        int rawLength = in.getInt();
+        assertEquals(RawFrameEncoder.rawLength(format, WIDTH, HEIGHT), rawLength);
+        byte[] body = new byte[in.remaining()];
+        in.get(body);
+        if (!RawFrameEncoder.isCompressed(format)) {
+            return body;
+        }
+        byte[] planes = new byte[rawLength];
+        Lz4BlockCompressor.decompress(body, 0, body.length, planes, 0, rawLength);
+        return planes;
+    }
+
+    @Test
+    public void writesPlanesInEveryRawFormat() {
+        FrameBuffer nv21 = nv21Frame();
+        byte[] expected = Arrays.copyOf(nv21.data(), nv21.length());
+        for (boolean direct : new boolean[]{false, true}) {
+            RawFrameEncoder encoder = new RawFrameEncoder(direct);
+            for (int format : new int[]{FrameCodec.FORMAT_NV21, FrameCodec.FORMAT_NV21_LZ4,
+                FrameCodec.FORMAT_GRAY, FrameCodec.FORMAT_GRAY_LZ4}) {
+                FrameBuffer payload = encoder.encode(nv21, WIDTH, HEIGHT, format);
+                assertEquals(direct, payload.isDirect());
+                assertArrayEquals(FrameCodec.formatName(format),
+                    Arrays.copyOf(expected, RawFrameEncoder.rawLength(format, WIDTH, HEIGHT)),
+                    planes(payload, format));
+                payload.release();
+            }
+        }
+        nv21.release();
+    }
+
+    @Test
+    public void compressionShrinksFlatFramesAndPoolLimitsOutput() {
+        FrameBuffer nv21 = nv21Frame();
+        RawFrameEncoder encoder = new RawFrameEncoder(false);
+        FrameBuffer[] held = new FrameBuffer[encoder.getPool().getMaxBuffers()];
+        for (int i = 0; i < held.length; i++) {
+            held[i] = encoder.encode(nv21, WIDTH, HEIGHT, FrameCodec.FORMAT_NV21_LZ4);
+        }
+        assertTrue(held[0].length() < Nv21Packer.nv21Size(WIDTH, HEIGHT) / 4);
+        assertNull(encoder.encode(nv21, WIDTH, HEIGHT, FrameCodec.FORMAT_NV21));
+        for (FrameBuffer buffer : held) {
+            buffer.release();
+        }
+        nv21.release();
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.net.ProtocolException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class ResultFragmentsTest {
+    private static byte[] message(int length, int seed) {
+        byte[] message = new byte[length];
+        for (int i = 0; i < length; i++) {
+            message[i] = (byte) (seed + i * 31);
+        }
+        return message;
+    }
+
+    private static List<byte[]> split(byte[] message, int sequence, int datagramSize) {
+        List<byte[]> datagrams = new ArrayList<>();
+        ResultFragments.split(message, message.length, sequence, datagramSize,
+            (datagram, length) -> datagrams.add(Arrays.copyOf(datagram, length)));
+        return datagrams;
+    }
+
+    private static int offer(ResultFragments.Reassembler reassembler, byte[] datagram) throws ProtocolException {
+        return reassembler.offer(datagram, 0, datagram.length);
+    }
+
+    @Test
+    public void sendsAMessageThatFitsWhole() {
+        byte[] message = message(1400, 1);
+        List<byte[]> datagrams = split(message, 0, 1400);
+        assertEquals(1, datagrams.size());
+        assertArrayEquals(message, datagrams.get(0));
+        assertFalse(ResultFragments.isFragment(message, 0, message.length));
+    }
+
+    @Test
+    public void reassemblesFragmentsInAnyOrder() throws Exception {
+        // 250 boxes, as a crowded scene sends
+        byte[] message = message(DetectionsCodec.HEADER_SIZE + 250 * DetectionsCodec.RECORD_SIZE
+            + DetectionsCodec.SERVER_TIMES_SIZE, 7);
+        List<byte[]> datagrams = split(message, 42, 1400);
+        assertEquals(3, datagrams.size());
+        for (byte[] datagram : datagrams) {
+            assertTrue(datagram.length <= 1400);
+            assertTrue(ResultFragments.isFragment(datagram, 0, datagram.length));
+        }
+
+        ResultFragments.Reassembler reassembler = new ResultFragments.Reassembler();
+        Collections.reverse(datagrams);
+        assertEquals(-1, offer(reassembler, datagrams.get(0)));
+        assertEquals(-1, offer(reassembler, datagrams.get(1)));
+        assertEquals(message.length, offer(reassembler, datagrams.get(2)));
+        assertArrayEquals(message, Arrays.copyOf(reassembler.message(), message.length));
+        assertEquals(1, reassembler.getCompletedCount());
+    }
+
+    @Test
+    public void ignoresDuplicatesAndInterleavesMessages() throws Exception {
+        // Three and five fragments
+        byte[] first = message(3000, 1);
+        byte[] second = message(5000, 2);
+        List<byte[]> a = split(first, 1, 1020);
+        List<byte[]> b = split(second, 2, 1020);
+        ResultFragments.Reassembler reassembler = new ResultFragments.Reassembler();
+
+        assertEquals(-1, offer(reassembler, a.get(0)));
+        assertEquals(-1, offer(reassembler, b.get(0)));
+        assertEquals(-1, offer(reassembler, a.get(0)));
+        for (int i = 1; i < b.size(); i++) {
+            assertEquals(i == b.size() - 1 ? second.length : -1, offer(reassembler, b.get(i)));
+        }
+        assertArrayEquals(second, Arrays.copyOf(reassembler.message(), second.length));
+        assertEquals(-1, offer(reassembler, a.get(1)));
+        assertEquals(-1, offer(reassembler, a.get(1)));
+        assertEquals(first.length, offer(reassembler, a.get(2)));
+        assertArrayEquals(first, Arrays.copyOf(reassembler.message(), first.length));
+        assertEquals(2, reassembler.getCompletedCount());
+        assertEquals(0, reassembler.getIncompleteCount());
+    }
+
+    @Test
+    public void newerMessagesPushOutOnesMissingFragments() throws Exception {
+        ResultFragments.Reassembler reassembler = new ResultFragments.Reassembler();
+        // The last fragment of each is lost
+        for (int sequence = 0; sequence < 6; sequence++) {
+            List<byte[]> datagrams = split(message(2000, sequence), sequence, 1000);
+            assertEquals(-1, offer(reassembler, datagrams.get(0)));
+            assertEquals(-1, offer(reassembler, datagrams.get(1)));
+        }
+        assertEquals(2, reassembler.getIncompleteCount());
+
+        byte[] message = message(2000, 9);
+        int length = -1;
+        for (byte[] datagram : split(message, 6, 1000)) {
+            length = offer(reassembler, datagram);
+        }
+        assertEquals(message.length, length);
+        assertArrayEquals(message, Arrays.copyOf(reassembler.message(), length));
+        assertEquals(3, reassembler.getIncompleteCount());
+    }
+
+    @Test
+    public void restartsAMessageWhoseSequenceIsReusedWithAnotherSize() throws Exception {
+        ResultFragments.Reassembler reassembler = new ResultFragments.Reassembler();
+        assertEquals(-1, offer(reassembler, split(message(3000, 1), 0, 1000).get(0)));
+
+        // A restarted server counts from 0 again
+        byte[] message = message(2500, 2);
+        List<byte[]> datagrams = split(message, 0, 1000);
+        assertEquals(-1, offer(reassembler, datagrams.get(0)));
+        assertEquals(-1, offer(reassembler, datagrams.get(1)));
+        assertEquals(message.length, offer(reassembler, datagrams.get(2)));
+        assertArrayEquals(message, Arrays.copyOf(reassembler.message(), message.length));
+        assertEquals(1, reassembler.getIncompleteCount());
+    }
+
+    @Test
+    public void rejectsMalformedFragments() throws Exception {
+        ResultFragments.Reassembler reassembler = new ResultFragments.Reassembler();
+        byte[] fragment = split(message(3000, 1), 0, 1000).get(1);
+
+        byte[] truncated = Arrays.copyOf(fragment, ResultFragments.HEADER_SIZE - 1);
+        expectProtocolException(reassembler, truncated);
+        byte[] version = fragment.clone();
+        version[4] = 9;
+        expectProtocolException(reassembler, version);
+        byte[] index = fragment.clone();
+        index[5] = index[6];
+        expectProtocolException(reassembler, index);
+        byte[] pastTheEnd = fragment.clone();
+        pastTheEnd[18] = 0x10;
+        expectProtocolException(reassembler, pastTheEnd);
+
+        assertNull(reassembler.message());
+        assertEquals(-1, offer(reassembler, fragment));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void refusesMessagesNeedingTooManyFragments() {
+        split(new byte[ResultFragments.MAX_FRAGMENTS * 100 + 1], 0, ResultFragments.HEADER_SIZE + 100);
+    }
+
+    private static void expectProtocolException(ResultFragments.Reassembler reassembler, byte[] datagram) {
+        try {
+            offer(reassembler, datagram);
+            fail("Accepted a malformed fragment");
+        } catch (ProtocolException e) {
+            // Expected
+        }
+    }
+}
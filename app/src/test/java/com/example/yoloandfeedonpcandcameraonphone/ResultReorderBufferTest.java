@@ -0,0 +1,115 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ResultReorderBufferTest {
+    private static final long MS = 1_000_000L;
+
+    private final ResultReorderBuffer reorder = new ResultReorderBuffer(8, 50);
+    private final DetectionBuffer out = new DetectionBuffer();
+
+    private static DetectionBuffer result(long frameId) {
+        DetectionBuffer buffer = new DetectionBuffer(1);
+        buffer.reset(frameId, 10, 1);
+        buffer.set(0, 0.1f, 0.2f, 0.3f, 0.4f, 1, 0.9f);
+        return buffer;
+    }
+
+    @Test
+    public void holdsNewerResultUntilOlderFrameAnswers() {
+        reorder.onDispatched(1, 0);
+        reorder.onDispatched(2, 1);
+
+        assertTrue(reorder.offer(result(2), 1, 0));
+        assertFalse(reorder.poll(10 * MS, out));
+
+        assertTrue(reorder.offer(result(1), 0, 20 * MS));
+        assertTrue(reorder.poll(20 * MS, out));
+        assertEquals(1, out.frameId);
+        assertTrue(reorder.poll(20 * MS, out));
+        assertEquals(2, out.frameId);
+        assertEquals(0.3f, out.width[0], 0f);
+        assertFalse(reorder.poll(20 * MS, out));
+        assertEquals(2, reorder.getReleasedCount());
+    }
+
+    @Test
+    public void givesUpOnOlderFrameAfterMaxHoldAndDropsItsLateResult() {
+        reorder.onDispatched(1, 0);
+        reorder.onDispatched(2, 1);
+        reorder.offer(result(2), 1, 0);
+
+        assertEquals(50 * MS, reorder.nextReleaseNs());
+        assertFalse(reorder.poll(49 * MS, out));
+        assertTrue(reorder.poll(50 * MS, out));
+        assertEquals(2, out.frameId);
+        assertEquals(1, reorder.getSkippedCount());
+        assertEquals(Long.MAX_VALUE, reorder.nextReleaseNs());
+
+        assertFalse(reorder.offer(result(1), 0, 60 * MS));
+        assertEquals(1, reorder.getLateCount());
+    }
+
+    @Test
+    public void answerFromSameServerSkipsItsOlderFrames() {
+        reorder.onDispatched(1, 0);
+        reorder.onDispatched(2, 0);
+        reorder.onDispatched(3, 1);
+
+        // Server 0 answers in order, so frame 1's result is lost
+        reorder.offer(result(2), 0, 0);
+        assertTrue(reorder.poll(0, out));
+        assertEquals(2, out.frameId);
+        assertFalse(reorder.poll(0, out));
+        assertEquals(1, reorder.getSkippedCount());
+    }
+
+    @Test
+    public void serverDownReleasesFramesWaitingBehindIt() {
+        reorder.onDispatched(1, 0);
+        reorder.onDispatched(2, 1);
+        reorder.offer(result(2), 1, 0);
+        assertFalse(reorder.poll(MS, out));
+
+        reorder.onServerDown(0);
+        assertTrue(reorder.poll(MS, out));
+        assertEquals(2, out.frameId);
+    }
+
+    @Test
+    public void keepsFramesDispatchedOutOfOrderSorted() {
+        reorder.onDispatched(2, 1);
+        reorder.onDispatched(1, 0);
+        reorder.offer(result(1), 0, 0);
+        reorder.offer(result(2), 1, 0);
+
+        assertTrue(reorder.poll(0, out));
+        assertEquals(1, out.frameId);
+        assertTrue(reorder.poll(0, out));
+        assertEquals(2, out.frameId);
+    }
+
+    @Test
+    public void fullBufferGivesUpOnOldestFrame() {
+        for (long id = 1; id <= 9; id++) {
+            reorder.onDispatched(id, (int) (id % 2));
+        }
+        assertEquals(1, reorder.getSkippedCount());
+        assertFalse(reorder.offer(result(1), 1, 0));
+
+        reorder.offer(result(2), 0, 0);
+        assertTrue(reorder.poll(0, out));
+        assertEquals(2, out.frameId);
+    }
+
+    @Test
+    public void unknownResultIsDropped() {
+        assertFalse(reorder.offer(result(5), 0, 0));
+        assertFalse(reorder.poll(0, out));
+        assertEquals(1, reorder.getLateCount());
+    }
+}
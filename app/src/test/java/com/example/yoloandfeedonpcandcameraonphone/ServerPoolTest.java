@@ -0,0 +1,183 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ServerPoolTest {
+    private static final long MS = 1_000_000L;
+
+    private final ServerPool pool = new ServerPool(100);
+    private final FrameBufferPool buffers = new FrameBufferPool("test", 16);
+    private final List<FrameSender> senders = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        for (FrameSender sender : senders) {
+            sender.stop();
+        }
+    }
+
+    /** Adds a connected server whose sender writes frames nowhere. */
+    private ServerPool.Server connected(int port, float capacityFps, float load) {
+        ServerPool.Server server = pool.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        server.capacityFps = capacityFps;
+        server.load = load;
+        FrameSender sender = new FrameSender((payload, frameId, ts, width, height, format, quality) -> { },
+            null, 8, 1, 60_000);
+        sender.start();
+        senders.add(sender);
+        server.sender = sender;
+        pool.markUp(server);
+        return server;
+    }
+
+    private void sendTo(ServerPool.Server server, long frameId) throws InterruptedException {
+        int before = server.sender.getInFlight();
+        FrameBuffer buffer = buffers.acquire(16);
+        buffer.setLength(16);
+        server.sender.submit(buffer, frameId, 0, 640, 480, FrameCodec.FORMAT_JPEG, 80);
+        Poll.until(() -> server.sender.getInFlight() != before);
+    }
+
+    @Test
+    public void leastInFlightWeighsQueuedFramesBySpareCapacity() throws Exception {
+        ServerPool.Server big = connected(9001, 30, 0);
+        ServerPool.Server busy = connected(9002, 30, 0.8f);
+        assertSame(big, pool.select(ServerPool.Policy.LEAST_IN_FLIGHT));
+
+        // 3 frames ahead at 30 fps spare still beats 1 at 6 fps spare
+        sendTo(big, 1);
+        sendTo(big, 2);
+        assertSame(big, pool.select(ServerPool.Policy.LEAST_IN_FLIGHT));
+        sendTo(big, 3);
+        sendTo(big, 4);
+        sendTo(big, 5);
+        assertSame(busy, pool.select(ServerPool.Policy.LEAST_IN_FLIGHT));
+    }
+
+    @Test
+    public void leastLatencyUsesMeasuredRoundTrips() throws Exception {
+        ServerPool.Server fast = connected(9001, 10, 0);
+        ServerPool.Server slow = connected(9002, 10, 0);
+        pool.onAnswered(fast, 20 * MS, 0);
+        pool.onAnswered(slow, 100 * MS, 0);
+        assertSame(fast, pool.select(ServerPool.Policy.LEAST_LATENCY));
+
+        // Five frames ahead at 20 ms is worse than none at 100 ms
+        for (int i = 1; i <= 5; i++) {
+            sendTo(fast, i);
+        }
+        assertSame(slow, pool.select(ServerPool.Policy.LEAST_LATENCY));
+    }
+
+    @Test
+    public void downServersAreNeverSelected() {
+        ServerPool.Server first = connected(9001, 10, 0);
+        ServerPool.Server second = connected(9002, 10, 0);
+        assertTrue(pool.markDown(first));
+        assertFalse(pool.markDown(first));
+        assertSame(second, pool.select(ServerPool.Policy.LEAST_IN_FLIGHT));
+        assertSame(second, pool.getPrimary());
+        pool.markDown(second);
+        assertNull(pool.select(ServerPool.Policy.LEAST_LATENCY));
+        assertEquals(0, pool.getUpCount());
+    }
+
+    @Test
+    public void failsOverAServerHoldingASingleFrame() {
+        ServerPool.Server hung = connected(9001, 10, 0);
+        ServerPool.Server other = connected(9002, 10, 0);
+        pool.onSent(hung, MS);
+        pool.onSent(other, 2 * MS);
+        pool.onAnswered(other, 10 * MS, 12 * MS);
+        assertNull(pool.checkHealth(101 * MS));
+        assertSame(hung, pool.checkHealth(102 * MS));
+        assertFalse(pool.isUp(hung));
+        assertTrue(pool.isUp(other));
+        assertNull(pool.checkHealth(200 * MS));
+    }
+
+    @Test
+    public void neverFailsTheLastServerThatIsUp() {
+        ServerPool.Server first = connected(9001, 10, 0);
+        ServerPool.Server second = connected(9002, 10, 0);
+        pool.onSent(first, MS);
+        pool.onSent(second, MS);
+        assertSame(first, pool.checkHealth(500 * MS));
+        // Left to its frame credits' timeout instead
+        assertNull(pool.checkHealth(500 * MS));
+        assertTrue(pool.isUp(second));
+        assertEquals(1, pool.getUpCount());
+    }
+
+    @Test
+    public void answerRestartsTheFailoverTimer() {
+        ServerPool.Server server = connected(9001, 10, 0);
+        connected(9002, 10, 0);
+        for (int i = 0; i < 3; i++) {
+            pool.onSent(server, (i + 1) * MS);
+        }
+        pool.onAnswered(server, 50 * MS, 90 * MS);
+        for (int i = 0; i < 3; i++) {
+            pool.onSent(server, (95 + i) * MS);
+        }
+        assertNull(pool.checkHealth(150 * MS));
+        assertEquals(50 * MS, pool.getRttNs(server));
+    }
+
+    @Test
+    public void combinesNegotiatedFormatsOfServersThatAreUp() {
+        ServerPool.Server first = connected(9001, 10, 0);
+        ServerPool.Server second = connected(9002, 10, 0);
+        first.frameFormat = FrameCodec.FORMAT_NV21_LZ4;
+        first.acceptedFrameFormats = 1 << FrameCodec.FORMAT_JPEG | 1 << FrameCodec.FORMAT_NV21_LZ4
+            | 1 << FrameCodec.FORMAT_NV21;
+        second.frameFormat = FrameCodec.FORMAT_NV21;
+        second.acceptedFrameFormats = 1 << FrameCodec.FORMAT_JPEG | 1 << FrameCodec.FORMAT_NV21;
+
+        assertEquals(FrameCodec.FORMAT_JPEG, pool.getCommonFrameFormat());
+        assertEquals(1 << FrameCodec.FORMAT_JPEG | 1 << FrameCodec.FORMAT_NV21, pool.getCommonAcceptedFormats());
+
+        pool.markDown(second);
+        assertEquals(FrameCodec.FORMAT_NV21_LZ4, pool.getCommonFrameFormat());
+        pool.markDown(first);
+        assertEquals(1 << FrameCodec.FORMAT_JPEG, pool.getCommonAcceptedFormats());
+    }
+
+    @Test
+    public void discoveryCollectsEveryServerThatAnswersInTheWindow() throws Exception {
+        try (StandInServer idle = new StandInServer("idle", 0, 40, 0.1f);
+             StandInServer loaded = new StandInServer("loaded", 0, 40, 0.9f);
+             DatagramSocket socket = new DatagramSocket()) {
+            byte[] request = new YFPMessage(YFPMessage.MessageType.DISCOVER,
+                new YFPMessage.DiscoverData("test", "1.0")).toJson().getBytes(StandardCharsets.UTF_8);
+
+            int answered = pool.discover(socket, request, 300, 8888,
+                idle.getDiscoveryAddress(), loaded.getDiscoveryAddress());
+
+            assertEquals(2, answered);
+            List<ServerPool.Server> servers = pool.getServers();
+            assertEquals(2, servers.size());
+            assertEquals("idle", servers.get(0).getName());
+            assertEquals(idle.getAddress().getPort(), servers.get(0).address.getPort());
+            assertEquals(40f, servers.get(0).getCapacityFps(), 0f);
+            assertEquals(0.9f, servers.get(1).getLoad(), 1e-6f);
+            assertSame(servers.get(1), pool.find(InetAddress.getLoopbackAddress(), loaded.getAddress().getPort()));
+            // Discovered servers are not connected yet
+            assertEquals(0, pool.getUpCount());
+        }
+    }
+}
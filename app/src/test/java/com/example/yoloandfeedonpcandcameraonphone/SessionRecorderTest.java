@@ -0,0 +1,216 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class SessionRecorderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final FrameBufferPool buffers = new FrameBufferPool("test", 8);
+
+    private FrameBuffer frame(long frameId, int length) {
+        FrameBuffer payload = buffers.acquire(length);
+        payload.setLength(length);
+        for (int i = 0; i < length; i++) {
+            payload.data()[i] = (byte) (frameId + i);
+        }
+        return payload;
+    }
+
+    private static DetectionBuffer detections(long frameId, int count) {
+        DetectionBuffer detections = new DetectionBuffer();
+        detections.reset(frameId, 12, count);
+        for (int i = 0; i < count; i++) {
+            detections.set(i, 0.25f, 0.5f, 0.125f, 0.25f, i % 80, 0.75f);
+        }
+        detections.serverReceiveNs = 1000 + frameId;
+        detections.serverSendNs = 2000 + frameId;
+        return detections;
+    }
+
+    private static void awaitWritten(SessionRecorder recorder, long records) throws InterruptedException {
+        Poll.until(() -> recorder.getRecordsWritten() >= records);
+        assertEquals(records, recorder.getRecordsWritten());
+    }
+
+    private void record(SessionRecorder recorder, long frameId, int length) {
+        FrameBuffer payload = frame(frameId, length);
+        assertTrue(recorder.recordFrame(payload, frameId, frameId * 1000, 640, 480, FrameCodec.FORMAT_JPEG, 80));
+        payload.release();
+    }
+
+    @Test
+    public void readsBackFramesAndResultsByIdAndTime() throws Exception {
+        File directory = folder.newFolder();
+        SessionRecorder recorder = new SessionRecorder(directory);
+        long[] times = new long[20];
+        for (int id = 1; id <= 20; id++) {
+            record(recorder, id, 100 + id);
+            assertTrue(recorder.recordDetections(detections(id, id % 4)));
+        }
+        recorder.close();
+        assertEquals(40, recorder.getRecordsWritten());
+        assertEquals(0, recorder.getRecordsDropped());
+
+        try (SessionRecording recording = SessionRecording.open(directory)) {
+            assertEquals(20, recording.getFrameCount());
+            assertEquals(20, recording.getDetectionsCount());
+            FrameCodec.FrameHeader header = new FrameCodec.FrameHeader();
+            FrameBuffer payload = buffers.acquire(0);
+            int frame = recording.findFrame(7);
+            recording.readFrame(frame, header, payload);
+            assertEquals(7, header.frameId);
+            assertEquals(7000, header.captureTimestampNs);
+            assertEquals(640, header.width);
+            assertEquals(FrameCodec.FORMAT_JPEG, header.format);
+            FrameBuffer expected = frame(7, 107);
+            assertEquals(107, payload.length());
+            assertArrayEquals(Arrays.copyOf(expected.data(), 107),
+                Arrays.copyOf(payload.data(), 107));
+            assertEquals(-1, recording.findFrame(99));
+
+            for (int i = 0; i < recording.getFrameCount(); i++) {
+                times[i] = recording.getFrameTimeNs(i);
+                if (i > 0) {
+                    assertTrue(times[i] >= times[i - 1]);
+                }
+            }
+            assertEquals(0, recording.findFrameAt(times[0] - 1));
+            assertEquals(12, recording.findFrameAt(times[12]));
+            assertEquals(20, recording.findFrameAt(times[19] + 1));
+
+            DetectionBuffer result = new DetectionBuffer();
+            recording.readDetections(recording.findDetections(11), result);
+            assertEquals(11, result.frameId);
+            assertEquals(3, result.count);
+            assertEquals(0.5f, result.y[2], 1e-4f);
+            assertEquals(2, result.classId[2]);
+            assertEquals(1011, result.serverReceiveNs);
+            assertEquals(-1, recording.findDetections(99));
+        }
+    }
+
+    @Test
+    public void dropsRecordsInsteadOfWaitingWhenTheRingIsFull() throws Exception {
+        File directory = folder.newFolder();
+        SessionRecorder recorder = new SessionRecorder(directory, 64 * 1024);
+        int offered = 200;
+        int recorded = 0;
+        long startNs = System.nanoTime();
+        for (int id = 0; id < offered; id++) {
+            FrameBuffer payload = frame(id, 20 * 1024);
+            if (recorder.recordFrame(payload, id, 0, 640, 480, FrameCodec.FORMAT_JPEG, 80)) {
+                recorded++;
+            }
+            payload.release();
+        }
+        long elapsedMs = (System.nanoTime() - startNs) / 1_000_000L;
+        // Larger than half the ring, never taken
+        FrameBuffer huge = buffers.acquire(40 * 1024);
+        huge.setLength(40 * 1024);
+        assertFalse(recorder.recordFrame(huge, offered, 0, 640, 480, FrameCodec.FORMAT_JPEG, 80));
+        huge.release();
+        recorder.close();
+
+        assertTrue("took " + elapsedMs + " ms", elapsedMs < 1000);
+        assertEquals(recorded, recorder.getRecordsWritten());
+        assertEquals(offered + 1 - recorded, recorder.getRecordsDropped());
+        try (SessionRecording recording = SessionRecording.open(directory)) {
+            assertEquals(recorded, recording.getFrameCount());
+        }
+    }
+
+    @Test
+    public void spansSeveralMappedWindows() throws Exception {
+        File directory = folder.newFolder();
+        SessionRecorder recorder = new SessionRecorder(directory);
+        int frames = 60;
+        int length = 512 * 1024;
+        for (int id = 0; id < frames; id++) {
+            record(recorder, id, length);
+            awaitWritten(recorder, id + 1);
+        }
+        recorder.close();
+
+        try (SessionRecording recording = SessionRecording.open(directory)) {
+            assertEquals(frames, recording.getFrameCount());
+            FrameCodec.FrameHeader header = new FrameCodec.FrameHeader();
+            FrameBuffer payload = buffers.acquire(0);
+            recording.readFrame(frames - 1, header, payload);
+            assertEquals(frames - 1, header.frameId);
+            assertEquals(length, payload.length());
+            assertEquals((byte) (frames - 1 + length - 1), payload.data()[length - 1]);
+        }
+        assertEquals(SessionRecorder.FILE_HEADER_SIZE
+                + frames * (SessionRecorder.RECORD_HEADER_SIZE + FrameCodec.HEADER_SIZE + length),
+            new File(directory, SessionRecorder.DATA_FILE).length());
+    }
+
+    @Test
+    public void readsARecordingThatWasNotClosed() throws Exception {
+        File directory = folder.newFolder();
+        SessionRecorder recorder = new SessionRecorder(directory);
+        for (int id = 1; id <= 5; id++) {
+            record(recorder, id, 256);
+        }
+        awaitWritten(recorder, 5);
+
+        try (SessionRecording recording = SessionRecording.open(directory)) {
+            assertEquals(5, recording.getFrameCount());
+            assertEquals(4, recording.findFrame(5));
+        } finally {
+            recorder.close();
+        }
+    }
+
+    @Test
+    public void replaysAtTheRecordedPaceOrFaster() throws Exception {
+        File directory = folder.newFolder();
+        SessionRecorder recorder = new SessionRecorder(directory);
+        for (int id = 1; id <= 10; id++) {
+            record(recorder, id, 64);
+            Thread.sleep(20);
+        }
+        recorder.close();
+
+        try (SessionRecording recording = SessionRecording.open(directory)) {
+            long durationMs = recording.getDurationNs() / 1_000_000L;
+            List<Long> sent = new ArrayList<>();
+            SessionReplayer replayer = new SessionReplayer(recording, buffers,
+                (payload, frameId, ts, width, height, format, quality) -> {
+                    assertEquals(64, payload.length());
+                    assertEquals(frameId * 1000, ts);
+                    payload.release();
+                    return sent.add(frameId);
+                });
+
+            long startNs = System.nanoTime();
+            assertEquals(10, replayer.replay(1));
+            long originalMs = (System.nanoTime() - startNs) / 1_000_000L;
+            assertTrue(originalMs + " ms for " + durationMs, originalMs >= durationMs);
+
+            startNs = System.nanoTime();
+            assertEquals(10, replayer.replay(4));
+            long fastMs = (System.nanoTime() - startNs) / 1_000_000L;
+            assertTrue(fastMs + " ms for " + durationMs, fastMs < originalMs / 2);
+
+            assertEquals(20, sent.size());
+            for (int i = 0; i < 10; i++) {
+                assertEquals(i + 1, (long) sent.get(i));
+                assertEquals(i + 1, (long) sent.get(10 + i));
+            }
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.BindException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loopback stand-in for pc_server.py, so several servers can run on one
+ * machine. Like the real server it reads frames on a TCP port and control
+ * messages on the UDP port with the same number. It answers CONNECT with
+ * CONNECT_ACK, PING with PONG and every frame with a binary DETECTIONS
+ * message holding one box, or {@link #setBoxes} boxes, {@code delayMs} after
+ * the frame arrived. Results larger than the client's
+ * {@code max_datagram_size} are sent as {@link ResultFragments}.
+ * DISCOVER is answered on a separate port with the configured capacity and load.
+ * Any number of clients may connect; results go to the client whose CONNECT
+ * named the frame connection's port, or to the last one that connected.
+ *
+ * {@link #stopAnswering()} makes it keep reading frames but send nothing back,
+ * like a server whose model has hung.
+ */
+class StandInServer implements Closeable {
+    private final ServerSocket frameSocket;
+    private final DatagramSocket controlSocket;
+    private final DatagramSocket discoverySocket;
+    private final ScheduledExecutorService replies = Executors.newSingleThreadScheduledExecutor();
+    private final String name;
+    private final float capacityFps;
+    private final float load;
+    private volatile long delayMs;
+    private volatile int boxes = 1;
+    private volatile boolean answering = true;
+    private volatile SocketAddress client;
+    // Frame connection port to the client's UDP address
+    private final Map<Integer, SocketAddress> clients = new ConcurrentHashMap<>();
+    // Client UDP address to its max_datagram_size
+    private final Map<SocketAddress, Integer> datagramSizes = new ConcurrentHashMap<>();
+    // Replies thread only
+    private int resultSequence;
+    private volatile boolean closed;
+    private final AtomicInteger framesReceived = new AtomicInteger();
+    private final AtomicInteger framesAnswered = new AtomicInteger();
+
+    StandInServer(String name, long delayMs, float capacityFps, float load) throws IOException {
+        this.name = name;
+        this.delayMs = delayMs;
+        this.capacityFps = capacityFps;
+        this.load = load;
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        ServerSocket frames = null;
+        DatagramSocket control = null;
+        // The TCP and UDP ports must match; retry if the UDP port is taken
+        for (int attempt = 0; control == null; attempt++) {
+            frames = new ServerSocket(0, 5, loopback);
+            try {
+                control = new DatagramSocket(new InetSocketAddress(loopback, frames.getLocalPort()));
+            } catch (BindException e) {
+                frames.close();
+                if (attempt == 10) {
+                    throw e;
+                }
+            }
+        }
+        frameSocket = frames;
+        controlSocket = control;
+        discoverySocket = new DatagramSocket(new InetSocketAddress(loopback, 0));
+        start("accept", this::acceptFrames);
+        start("control", this::handleControl);
+        start("discovery", this::handleDiscovery);
+    }
+
+    private void start(String role, Runnable task) {
+        Thread thread = new Thread(task, "stand-in-" + name + "-" + role);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    InetSocketAddress getAddress() {
+        return new InetSocketAddress(frameSocket.getInetAddress(), frameSocket.getLocalPort());
+    }
+
+    SocketAddress getDiscoveryAddress() {
+        return discoverySocket.getLocalSocketAddress();
+    }
+
+    void setDelayMs(long delayMs) {
+        this.delayMs = delayMs;
+    }
+
+    void setBoxes(int boxes) {
+        this.boxes = boxes;
+    }
+
+    void stopAnswering() {
+        answering = false;
+    }
+
+    int getFramesReceived() {
+        return framesReceived.get();
+    }
+
+    int getFramesAnswered() {
+        return framesAnswered.get();
+    }
+
+    private void acceptFrames() {
+        while (!closed) {
+            try {
+                Socket socket = frameSocket.accept();
+                start("frames", () -> readFrames(socket));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void readFrames(Socket socket) {
+        int framePort = socket.getPort();
+        FrameCodec.Decoder decoder = new FrameCodec.Decoder((header, payload, length) -> {
+            framesReceived.incrementAndGet();
+            long frameId = header.frameId;
+            long receivedNs = System.nanoTime();
+            replies.schedule(() -> answer(framePort, frameId, receivedNs), delayMs, TimeUnit.MILLISECONDS);
+        });
+        try (Socket s = socket; InputStream in = s.getInputStream()) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                decoder.feed(buffer, 0, n);
+            }
+        } catch (IOException e) {
+            // Connection closed by the client
+        }
+    }
+
+    private void answer(int framePort, long frameId, long receivedNs) {
+        SocketAddress target = clients.getOrDefault(framePort, client);
+        if (!answering || target == null || closed) {
+            return;
+        }
+        int count = boxes;
+        DetectionBuffer detections = new DetectionBuffer(count);
+        detections.reset(frameId, delayMs, count);
+        for (int i = 0; i < count; i++) {
+            detections.set(i, 0.25f, 0.25f, 0.5f, 0.5f, i % 80, 0.9f);
+        }
+        detections.serverReceiveNs = receivedNs;
+        detections.serverSendNs = System.nanoTime();
+        ByteBuffer out = ByteBuffer.allocate(DetectionsCodec.HEADER_SIZE + count * DetectionsCodec.RECORD_SIZE
+            + DetectionsCodec.SERVER_TIMES_SIZE);
+        DetectionsCodec.encode(detections, out);
+        int datagramSize = datagramSizes.getOrDefault(target, 0);
+        if (datagramSize > 0) {
+            ResultFragments.split(out.array(), out.position(), resultSequence++, datagramSize,
+                (datagram, length) -> send(controlSocket, datagram, length, target));
+        } else {
+            send(controlSocket, out.array(), target);
+        }
+        framesAnswered.incrementAndGet();
+    }
+
+    private void handleControl() {
+        byte[] buffer = new byte[4096];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        while (!closed) {
+            try {
+                packet.setLength(buffer.length);
+                controlSocket.receive(packet);
+                long receivedNs = System.nanoTime();
+                YFPMessage message = YFPMessage.fromJson(new String(buffer, 0, packet.getLength()));
+                if (message.type == YFPMessage.MessageType.CONNECT) {
+                    client = packet.getSocketAddress();
+                    YFPMessage.ConnectData connect = (YFPMessage.ConnectData) message.data;
+                    if (connect.framePort != 0) {
+                        clients.put(connect.framePort, client);
+                    }
+                    datagramSizes.put(client, connect.maxDatagramSize);
+                    YFPMessage ack = new YFPMessage(YFPMessage.MessageType.CONNECT_ACK,
+                        new YFPMessage.ConnectAckData(DetectionsCodec.VERSION, new String[]{"person"}));
+                    send(controlSocket, ack.toJson().getBytes(), client);
+                } else if (message.type == YFPMessage.MessageType.PING && answering) {
+                    YFPMessage.PingData ping = (YFPMessage.PingData) message.data;
+                    YFPMessage.PingData pong = new YFPMessage.PingData(ping.seq, ping.clientSendNs);
+                    pong.serverReceiveNs = receivedNs;
+                    pong.serverSendNs = System.nanoTime();
+                    send(controlSocket, new YFPMessage(YFPMessage.MessageType.PONG, pong).toJson().getBytes(),
+                        packet.getSocketAddress());
+                }
+            } catch (IOException e) {
+                return;
+            } catch (RuntimeException e) {
+                // Not a message; ignore it like the real server
+            }
+        }
+    }
+
+    private void handleDiscovery() {
+        byte[] buffer = new byte[1024];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        while (!closed) {
+            try {
+                packet.setLength(buffer.length);
+                discoverySocket.receive(packet);
+                YFPMessage.DiscoverData reply = new YFPMessage.DiscoverData(null, null);
+                reply.serverName = name;
+                reply.port = frameSocket.getLocalPort();
+                reply.capacityFps = capacityFps;
+                reply.load = load;
+                send(discoverySocket, new YFPMessage(YFPMessage.MessageType.DISCOVER, reply).toJson().getBytes(),
+                    packet.getSocketAddress());
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private static void send(DatagramSocket socket, byte[] data, SocketAddress target) {
+        send(socket, data, data.length, target);
+    }
+
+    private static void send(DatagramSocket socket, byte[] data, int length, SocketAddress target) {
+        try {
+            socket.send(new DatagramPacket(data, length, target));
+        } catch (IOException e) {
+            // The socket was closed
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        replies.shutdownNow();
+        frameSocket.close();
+        controlSocket.close();
+        discoverySocket.close();
+    }
+}
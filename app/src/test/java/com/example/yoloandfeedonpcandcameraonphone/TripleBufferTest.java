@@ -0,0 +1,53 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TripleBufferTest {
+
+    @Test
+    public void consumerSeesOnlyTheLatestValue() {
+        TripleBuffer<long[]> exchange = new TripleBuffer<>(new long[1], new long[1], new long[1]);
+        assertNull(exchange.consumeLatest());
+
+        exchange.writeBuffer()[0] = 1;
+        assertFalse(exchange.publish());
+        exchange.writeBuffer()[0] = 2;
+        assertTrue(exchange.publish());
+
+        assertEquals(2, exchange.consumeLatest()[0]);
+        assertNull(exchange.consumeLatest());
+    }
+
+    @Test
+    public void valuesStayIntactAcrossThreads() throws Exception {
+        TripleBuffer<long[]> exchange = new TripleBuffer<>(new long[2], new long[2], new long[2]);
+        int count = 200_000;
+        Thread producer = new Thread(() -> {
+            for (long i = 1; i <= count; i++) {
+                long[] slot = exchange.writeBuffer();
+                slot[0] = i;
+                slot[1] = -i;
+                exchange.publish();
+            }
+        });
+        producer.start();
+
+        AtomicLong last = new AtomicLong();
+        while (last.get() < count) {
+            long[] slot = exchange.consumeLatest();
+            if (slot != null) {
+                assertEquals(slot[0], -slot[1]);
+                assertTrue(slot[0] > last.get());
+                last.set(slot[0]);
+            }
+        }
+        producer.join();
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class VideoPacketizerTest {
+    // Canned H.264 NAL units: SPS, PPS, IDR slice, non-IDR slice
+    private static final byte[] SPS = {0, 0, 0, 1, 0x67, 0x42, (byte) 0xC0, 0x1F, 0x11};
+    private static final byte[] PPS = {0, 0, 0, 1, 0x68, (byte) 0xCE, 0x3C, (byte) 0x80};
+    private static final byte[] IDR = {0, 0, 1, 0x65, (byte) 0x88, (byte) 0x84, 0x00, 0x21};
+    private static final byte[] SLICE = {0, 0, 0, 1, 0x41, (byte) 0x9A, 0x02, 0x00, 0x03};
+
+    private final FrameBufferPool pool = new FrameBufferPool("video", 2);
+
+    private static byte[] concat(byte[]... parts) {
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        byte[] out = new byte[length];
+        int offset = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, out, offset, part.length);
+            offset += part.length;
+        }
+        return out;
+    }
+
+    private FrameBuffer packetize(VideoPacketizer packetizer, byte[] accessUnit) {
+        FrameBuffer out = pool.acquire(packetizer.maxPayloadSize(accessUnit.length));
+        // Not at offset 0, as with MediaCodec output buffers
+        ByteBuffer in = ByteBuffer.allocateDirect(accessUnit.length + 3);
+        in.position(3);
+        in.put(accessUnit);
+        in.position(3);
+        packetizer.packetize(in, out);
+        assertEquals(3, in.position());
+        return out;
+    }
+
+    private static byte[] accessUnit(FrameBuffer payload) {
+        return Arrays.copyOfRange(payload.data(), VideoPacketizer.PREFIX_SIZE, payload.length());
+    }
+
+    @Test
+    public void findsStartCodesAndNalTypes() {
+        ByteBuffer stream = ByteBuffer.wrap(concat(SPS, PPS, IDR));
+        int first = VideoCodec.nextNalStart(stream, 0, stream.limit());
+        assertEquals(4, first);
+        assertEquals(7, VideoCodec.H264.nalType(stream.get(first)));
+        int second = VideoCodec.nextNalStart(stream, first, stream.limit());
+        assertEquals(SPS.length + 4, second);
+        int third = VideoCodec.nextNalStart(stream, second, stream.limit());
+        assertTrue(VideoCodec.H264.isKeyframe(VideoCodec.H264.nalType(stream.get(third))));
+        assertEquals(-1, VideoCodec.nextNalStart(stream, third, stream.limit()));
+
+        // HEVC: IDR_W_RADL (19) and VPS (32), with the type in bits 1..6
+        assertTrue(VideoCodec.HEVC.isKeyframe(VideoCodec.HEVC.nalType(0x26)));
+        assertTrue(VideoCodec.HEVC.isConfig(VideoCodec.HEVC.nalType(0x40)));
+        assertFalse(VideoCodec.HEVC.isKeyframe(VideoCodec.HEVC.nalType(0x02)));
+        assertEquals(VideoCodec.HEVC, VideoCodec.forFrameFormat(FrameCodec.FORMAT_HEVC));
+    }
+
+    @Test
+    public void prependsCachedConfigToKeyframes() {
+        VideoPacketizer packetizer = new VideoPacketizer(VideoCodec.H264);
+        packetizer.setCodecConfig(ByteBuffer.wrap(concat(SPS, PPS)));
+
+        FrameBuffer key = packetize(packetizer, IDR);
+        assertEquals(VideoPacketizer.FLAG_KEYFRAME | VideoPacketizer.FLAG_CONFIG, key.data()[4]);
+        assertArrayEquals(concat(SPS, PPS, IDR), accessUnit(key));
+        key.release();
+
+        FrameBuffer delta = packetize(packetizer, SLICE);
+        assertEquals(1, delta.data()[3]);
+        assertEquals(0, delta.data()[4]);
+        assertArrayEquals(SLICE, accessUnit(delta));
+        delta.release();
+
+        // An encoder that already repeats its config is left alone
+        FrameBuffer inline = packetize(packetizer, concat(SPS, PPS, IDR));
+        assertArrayEquals(concat(SPS, PPS, IDR), accessUnit(inline));
+        inline.release();
+    }
+
+    @Test
+    public void depacketizerWaitsForAKeyframeAfterAGap() throws Exception {
+        VideoPacketizer packetizer = new VideoPacketizer(VideoCodec.H264);
+        VideoDepacketizer depacketizer = new VideoDepacketizer();
+        byte[][] stream = {SLICE, IDR, SLICE, SLICE, SLICE, IDR, SLICE};
+        // The keyframe before the config arrives cannot start a stream; payload 3 is lost
+        boolean[] expected = {false, false, false, false, false, true, true};
+
+        for (int i = 0; i < stream.length; i++) {
+            if (i == 2) {
+                packetizer.setCodecConfig(ByteBuffer.wrap(concat(SPS, PPS)));
+            }
+            FrameBuffer payload = packetize(packetizer, stream[i]);
+            if (i != 3) {
+                assertEquals("payload " + i, expected[i], depacketizer.accept(payload.data(), payload.length()));
+            }
+            payload.release();
+        }
+        assertTrue(depacketizer.isSynced());
+        assertEquals(2, depacketizer.getAcceptedCount());
+        assertEquals(4, depacketizer.getDroppedCount());
+
+        // Lose one once synced: everything up to the next keyframe is dropped
+        packetizer.skip();
+        FrameBuffer next = packetize(packetizer, SLICE);
+        assertFalse(depacketizer.accept(next.data(), next.length()));
+        next.release();
+        assertEquals(1, depacketizer.getGapCount());
+        FrameBuffer key = packetize(packetizer, IDR);
+        assertTrue(depacketizer.accept(key.data(), key.length()));
+        key.release();
+    }
+
+    @Test
+    public void restartedEncoderResyncsOnItsFirstKeyframe() throws Exception {
+        VideoPacketizer packetizer = new VideoPacketizer(VideoCodec.HEVC);
+        VideoDepacketizer depacketizer = new VideoDepacketizer();
+        byte[] config = {0, 0, 0, 1, 0x40, 0x01, 0, 0, 0, 1, 0x42, 0x01, 0, 0, 0, 1, 0x44, 0x01};
+        byte[] idr = {0, 0, 0, 1, 0x26, 0x01, (byte) 0xAF};
+        byte[] trail = {0, 0, 0, 1, 0x02, 0x01, (byte) 0xD0};
+        packetizer.setCodecConfig(ByteBuffer.wrap(config));
+
+        for (byte[] au : new byte[][]{idr, trail, trail}) {
+            FrameBuffer payload = packetize(packetizer, au);
+            assertTrue(depacketizer.accept(payload.data(), payload.length()));
+            payload.release();
+        }
+
+        // New size: the encoder is reconfigured and the sequence restarts
+        packetizer.reset();
+        assertFalse(packetizer.hasCodecConfig());
+        packetizer.setCodecConfig(ByteBuffer.wrap(config));
+        FrameBuffer payload = packetize(packetizer, idr);
+        assertTrue(depacketizer.accept(payload.data(), payload.length()));
+        assertArrayEquals(concat(config, idr), accessUnit(payload));
+        payload.release();
+    }
+}
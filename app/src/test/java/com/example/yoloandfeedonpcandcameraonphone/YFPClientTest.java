@@ -0,0 +1,264 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class YFPClientTest {
+    private final FrameBufferPool buffers = new FrameBufferPool("test", 16);
+    private final List<YFPClient> clients = new ArrayList<>();
+    private final List<StandInServer> standIns = new ArrayList<>();
+
+    @After
+    public void tearDown() throws Exception {
+        for (YFPClient client : clients) {
+            client.shutdown();
+        }
+        for (StandInServer standIn : standIns) {
+            standIn.close();
+        }
+    }
+
+    /** Records what a client reports; callbacks run on the client's own threads. */
+    private static final class Recorder implements YFPClient.Callback {
+        final CountDownLatch connected = new CountDownLatch(1);
+        final CountDownLatch discovered = new CountDownLatch(1);
+        final List<Long> frameIds = Collections.synchronizedList(new ArrayList<>());
+        final List<Integer> boxCounts = Collections.synchronizedList(new ArrayList<>());
+        volatile int lastClassId = -1;
+        volatile List<ServerPool.Server> servers;
+        volatile String error;
+
+        @Override
+        public void onServersDiscovered(List<ServerPool.Server> servers) {
+            this.servers = servers;
+            discovered.countDown();
+        }
+
+        @Override
+        public void onConnected() {
+            connected.countDown();
+        }
+
+        @Override
+        public void onDisconnected() {
+        }
+
+        @Override
+        public void onDetectionsReceived(DetectionBuffer detections) {
+            if (detections.count > 0) {
+                lastClassId = detections.classId[detections.count - 1];
+            }
+            boxCounts.add(detections.count);
+            frameIds.add(detections.frameId);
+        }
+
+        @Override
+        public void onMetricsReceived(YFPMessage.MetricsData metrics) {
+        }
+
+        @Override
+        public void onError(String error) {
+            this.error = error;
+        }
+    }
+
+    private StandInServer standIn(String name) throws Exception {
+        StandInServer standIn = new StandInServer(name, 5, 30, 0);
+        standIns.add(standIn);
+        return standIn;
+    }
+
+    private YFPClient client(Recorder recorder) {
+        YFPClient client = new YFPClient(recorder, Runnable::run, YFPClient.Logger.STDERR);
+        clients.add(client);
+        return client;
+    }
+
+    private void send(YFPClient client, long frameId) {
+        client.getPipelineTimings().mark(PipelineTimings.Stage.CAPTURED, frameId, System.nanoTime());
+        FrameBuffer payload = buffers.acquire(512);
+        payload.setLength(512);
+        client.sendFrame(payload, frameId, 0, 640, 480, FrameCodec.FORMAT_JPEG, 80);
+    }
+
+    @Test
+    public void streamsFramesAndDeliversEveryResultThroughTheExecutor() throws Exception {
+        StandInServer server = standIn("server");
+        Recorder recorder = new Recorder();
+        YFPClient client = client(recorder);
+
+        client.connect(server.getAddress());
+        assertTrue(recorder.connected.await(3, TimeUnit.SECONDS));
+        for (long id = 1; id <= 20; id++) {
+            send(client, id);
+            Thread.sleep(20);
+        }
+        Poll.until(() -> recorder.frameIds.contains(20L));
+
+        // Run directly on the listener thread, the callback never falls behind
+        List<Long> expected = new ArrayList<>();
+        for (long id = 1; id <= 20; id++) {
+            expected.add(id);
+        }
+        assertEquals(expected, recorder.frameIds);
+        assertEquals(20, client.getFramesSent());
+        assertEquals(20 * 512, client.getBytesSent());
+        assertEquals(20, client.getPipelineTimings().getHistogram(PipelineTimings.Stage.RECEIVED).getCount());
+    }
+
+    @Test
+    public void keepsTheLastServerWhileItIsSilent() throws Exception {
+        StandInServer server = standIn("silent");
+        Recorder recorder = new Recorder();
+        YFPClient client = client(recorder);
+        client.connect(server.getAddress());
+        assertTrue(recorder.connected.await(3, TimeUnit.SECONDS));
+
+        // Two unanswered frames hold both credits past the failover time
+        server.stopAnswering();
+        long id = 1;
+        long endMs = System.currentTimeMillis() + YFPClient.FRAME_ACK_TIMEOUT_MS + 300;
+        while (System.currentTimeMillis() < endMs) {
+            send(client, id++);
+            Thread.sleep(20);
+        }
+        assertTrue(client.isConnected());
+        assertEquals(1, client.getServers().getUpCount());
+        assertNull(recorder.error);
+        // The credits timed out, so frames went out again
+        assertTrue(server.getFramesReceived() > 2);
+    }
+
+    @Test
+    public void pacedDeliveryHandsOverOnlyTheLatestResult() throws Exception {
+        StandInServer server = standIn("paced");
+        Recorder recorder = new Recorder();
+        YFPClient client = client(recorder);
+        AtomicInteger wakes = new AtomicInteger();
+        client.setDeliveryWaker(wakes::incrementAndGet);
+
+        client.connect(server.getAddress());
+        assertTrue(recorder.connected.await(3, TimeUnit.SECONDS));
+        for (long id = 1; id <= 10; id++) {
+            send(client, id);
+            Thread.sleep(20);
+        }
+        Poll.until(() -> client.getFramesAcked() >= 10);
+        Thread.sleep(50);
+
+        // Woken once, then nothing until the pending delivery runs
+        assertEquals(1, wakes.get());
+        assertTrue(recorder.frameIds.isEmpty());
+        assertTrue(client.deliverResults());
+        assertEquals(List.of(10L), recorder.frameIds);
+        assertFalse(client.deliverResults());
+
+        send(client, 11);
+        Poll.until(() -> wakes.get() >= 2);
+        assertEquals(2, wakes.get());
+        assertTrue(client.deliverResults());
+        assertEquals(List.of(10L, 11L), recorder.frameIds);
+    }
+
+    @Test
+    public void everyResultIsAckedEvenWhenDeliveryCoalesces() throws Exception {
+        StandInServer server = standIn("acked");
+        Recorder recorder = new Recorder();
+        YFPClient client = client(recorder);
+        List<Long> acked = Collections.synchronizedList(new ArrayList<>());
+        client.setDeliveryWaker(() -> { });
+        client.setResultAckListener((frameId, processingTimeMs) -> acked.add(frameId));
+
+        client.connect(server.getAddress());
+        assertTrue(recorder.connected.await(3, TimeUnit.SECONDS));
+        send(client, 1);
+        Poll.until(() -> acked.size() == 1);
+        send(client, 2);
+        Poll.until(() -> acked.size() == 2);
+
+        // The first result was replaced before anything was delivered
+        assertTrue(client.deliverResults());
+        assertEquals(List.of(2L), recorder.frameIds);
+        assertEquals(List.of(1L, 2L), acked);
+    }
+
+    @Test
+    public void crowdedResultsArriveWhole() throws Exception {
+        StandInServer server = standIn("crowded");
+        // 3016 bytes, three fragments of at most 1400
+        server.setBoxes(250);
+        Recorder recorder = new Recorder();
+        YFPClient client = client(recorder);
+
+        client.connect(server.getAddress());
+        assertTrue(recorder.connected.await(3, TimeUnit.SECONDS));
+        for (long id = 1; id <= 10; id++) {
+            send(client, id);
+            Thread.sleep(20);
+        }
+        Poll.until(() -> recorder.frameIds.contains(10L));
+
+        assertEquals(10, recorder.frameIds.size());
+        for (int count : recorder.boxCounts) {
+            assertEquals(250, count);
+        }
+        assertEquals(249 % 80, recorder.lastClassId);
+    }
+
+    @Test
+    public void clientsSharingAnAddressGetTheirOwnResults() throws Exception {
+        StandInServer server = standIn("shared");
+        Recorder[] recorders = new Recorder[3];
+        YFPClient[] sharing = new YFPClient[recorders.length];
+        for (int i = 0; i < recorders.length; i++) {
+            recorders[i] = new Recorder();
+            sharing[i] = client(recorders[i]);
+            sharing[i].connect(server.getAddress());
+            assertTrue(recorders[i].connected.await(3, TimeUnit.SECONDS));
+        }
+
+        for (int frame = 0; frame < 10; frame++) {
+            for (int i = 0; i < sharing.length; i++) {
+                send(sharing[i], i * 1000 + frame);
+            }
+            Thread.sleep(20);
+        }
+        for (int i = 0; i < recorders.length; i++) {
+            Recorder recorder = recorders[i];
+            long last = i * 1000 + 9;
+            Poll.until(() -> recorder.frameIds.contains(last));
+            assertEquals(10, recorders[i].frameIds.size());
+            for (long frameId : recorders[i].frameIds) {
+                assertEquals(i, frameId / 1000);
+            }
+        }
+    }
+
+    @Test
+    public void discoversServersAtTheGivenTargets() throws Exception {
+        StandInServer first = standIn("first");
+        StandInServer second = standIn("second");
+        Recorder recorder = new Recorder();
+        YFPClient client = client(recorder);
+
+        client.discover(8888, first.getDiscoveryAddress(), second.getDiscoveryAddress());
+        assertTrue(recorder.discovered.await(3, TimeUnit.SECONDS));
+        assertEquals(2, recorder.servers.size());
+
+        client.connect();
+        assertTrue(recorder.connected.await(3, TimeUnit.SECONDS));
+        assertEquals(2, client.getServers().getUpCount());
+    }
+}
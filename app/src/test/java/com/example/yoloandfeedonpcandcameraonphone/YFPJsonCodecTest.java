@@ -0,0 +1,176 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import org.junit.Test;
+
+public class YFPJsonCodecTest {
+
+    private static YFPMessage detectionsMessage() {
+        YFPMessage.Detection[] detections = {
+            new YFPMessage.Detection(0.1f, 0.2f, 0.3f, 0.4f, "person", 0.85f),
+            new YFPMessage.Detection(0.5f, 0.5f, 0.25f, 0.125f, "car", 0.5f),
+        };
+        YFPMessage message = new YFPMessage(YFPMessage.MessageType.DETECTIONS,
+            new YFPMessage.DetectionsData(123, detections, 25));
+        message.timestamp = 1700000000000L;
+        return message;
+    }
+
+    @Test
+    public void encodingMatchesReflectiveGson() {
+        Gson reflective = new Gson();
+        YFPMessage.ConnectData videoConnect = new YFPMessage.ConnectData("pixel", 640, 640);
+        videoConnect.frameFormats = new String[]{"H264", "JPEG"};
+        videoConnect.framePort = 51234;
+        videoConnect.maxDatagramSize = ResultFragments.DEFAULT_DATAGRAM_SIZE;
+        YFPMessage.ConnectAckData videoAck = new YFPMessage.ConnectAckData(1, new String[]{"person"});
+        videoAck.frameFormat = "H264";
+        videoAck.frameFormats = new String[]{"H264", "JPEG", "NV21_LZ4"};
+        YFPMessage.DiscoverData discoverReply = new YFPMessage.DiscoverData(null, null);
+        discoverReply.serverName = "YOLO Feed Server";
+        discoverReply.port = 8890;
+        discoverReply.capacityFps = 42.5f;
+        discoverReply.load = 0.25f;
+        YFPMessage[] messages = {
+            detectionsMessage(),
+            new YFPMessage(YFPMessage.MessageType.CONNECT, new YFPMessage.ConnectData("pixel", 1920, 1080)),
+            new YFPMessage(YFPMessage.MessageType.DISCOVER, new YFPMessage.DiscoverData("Pixel 7", "1.0")),
+            new YFPMessage(YFPMessage.MessageType.DISCOVER, discoverReply),
+            new YFPMessage(YFPMessage.MessageType.METRICS, new YFPMessage.MetricsData(29.5f, 40, 25, 1000)),
+            new YFPMessage(YFPMessage.MessageType.CONNECT_ACK,
+                new YFPMessage.ConnectAckData(1, new String[]{"person", "car"})),
+            new YFPMessage(YFPMessage.MessageType.CONNECT, videoConnect),
+            new YFPMessage(YFPMessage.MessageType.CONNECT_ACK, videoAck),
+            new YFPMessage(YFPMessage.MessageType.PONG, null),
+            new YFPMessage(YFPMessage.MessageType.PING, new YFPMessage.PingData(3, 987654321L)),
+        };
+        for (YFPMessage message : messages) {
+            assertEquals(reflective.toJson(message), message.toJson());
+        }
+    }
+
+    @Test
+    public void decodesServerJson() {
+        String json = "{\"type\": \"DETECTIONS\", \"timestamp\": 1700000000000, \"data\": "
+            + "{\"frame_id\": 7, \"detections\": [{\"x\": 0.1, \"y\": 0.2, \"width\": 0.3, \"height\": 0.4, "
+            + "\"class_name\": \"person\", \"class_id\": 0, \"confidence\": 0.85}], \"processing_time_ms\": 25}}";
+        YFPMessage message = YFPMessage.fromJson(json);
+        assertSame(YFPMessage.MessageType.DETECTIONS, message.type);
+        assertEquals(1700000000000L, message.timestamp);
+        YFPMessage.DetectionsData data = (YFPMessage.DetectionsData) message.data;
+        assertEquals(7, data.frameId);
+        assertEquals(25, data.processingTimeMs);
+        assertEquals(1, data.detections.length);
+        assertEquals("person", data.detections[0].className);
+        assertEquals(0.3f, data.detections[0].width, 0f);
+        assertEquals(0.85f, data.detections[0].confidence, 0f);
+    }
+
+    @Test
+    public void roundTripsEveryPayload() {
+        YFPMessage decoded = YFPMessage.fromJson(detectionsMessage().toJson());
+        assertEquals(detectionsMessage().toJson(), decoded.toJson());
+
+        YFPMessage ack = YFPMessage.fromJson(new YFPMessage(YFPMessage.MessageType.CONNECT_ACK,
+            new YFPMessage.ConnectAckData(1, new String[]{"a", "b"})).toJson());
+        assertArrayEquals(new String[]{"a", "b"}, ((YFPMessage.ConnectAckData) ack.data).classNames);
+
+        YFPMessage connect = YFPMessage.fromJson(new YFPMessage(YFPMessage.MessageType.CONNECT,
+            new YFPMessage.ConnectData("pixel", 640, 480)).toJson());
+        YFPMessage.ConnectData connectData = (YFPMessage.ConnectData) connect.data;
+        assertEquals("pixel", connectData.deviceId);
+        assertEquals(FrameCodec.VERSION, connectData.frameProtocolVersion);
+        assertEquals(DetectionsCodec.VERSION, connectData.detectionsProtocolVersion);
+        assertNull(connectData.frameFormats);
+        assertEquals(0, connectData.framePort);
+        assertEquals(0, connectData.maxDatagramSize);
+
+        YFPMessage videoAck = YFPMessage.fromJson("{\"type\": \"CONNECT_ACK\", \"timestamp\": 5, \"data\": "
+            + "{\"detections_protocol_version\": 1, \"class_names\": [\"a\"], \"frame_format\": \"HEVC\", "
+            + "\"frame_formats\": [\"HEVC\", \"NV21\"]}}");
+        YFPMessage.ConnectAckData videoAckData = (YFPMessage.ConnectAckData) videoAck.data;
+        assertEquals(FrameCodec.FORMAT_HEVC, FrameCodec.formatCode(videoAckData.frameFormat));
+        assertArrayEquals(new String[]{"HEVC", "NV21"}, videoAckData.frameFormats);
+
+        YFPMessage.PingData ping = new YFPMessage.PingData(7, 1_000L);
+        ping.serverReceiveNs = 5_000_000_000L;
+        ping.serverSendNs = 5_000_000_100L;
+        YFPMessage pong = YFPMessage.fromJson(new YFPMessage(YFPMessage.MessageType.PONG, ping).toJson());
+        YFPMessage.PingData pongData = (YFPMessage.PingData) pong.data;
+        assertEquals(7, pongData.seq);
+        assertEquals(1_000L, pongData.clientSendNs);
+        assertEquals(5_000_000_000L, pongData.serverReceiveNs);
+        assertEquals(5_000_000_100L, pongData.serverSendNs);
+    }
+
+    @Test
+    public void decodesServerPongAndDetectionTimes() {
+        YFPMessage pong = YFPMessage.fromJson("{\"type\": \"PONG\", \"timestamp\": 5, \"data\": {\"seq\": 2, "
+            + "\"client_send_ns\": 100, \"server_receive_ns\": 9000000000, \"server_send_ns\": 9000050000}}");
+        assertEquals(9_000_050_000L, ((YFPMessage.PingData) pong.data).serverSendNs);
+
+        // Servers that predate clock sync answer with no data
+        assertNull(YFPMessage.fromJson("{\"type\": \"PONG\", \"timestamp\": 5}").data);
+
+        YFPMessage detections = YFPMessage.fromJson("{\"type\": \"DETECTIONS\", \"timestamp\": 5, \"data\": "
+            + "{\"frame_id\": 1, \"detections\": [], \"processing_time_ms\": 20, "
+            + "\"server_receive_ns\": 7000000000, \"server_send_ns\": 7020000000}}");
+        YFPMessage.DetectionsData data = (YFPMessage.DetectionsData) detections.data;
+        assertEquals(7_000_000_000L, data.serverReceiveNs);
+        assertEquals(7_020_000_000L, data.serverSendNs);
+        DetectionBuffer buffer = new DetectionBuffer();
+        buffer.setFrom(data, new ClassTable());
+        assertEquals(7_020_000_000L, buffer.serverSendNs);
+        assertFalse(buffer.skipped);
+
+        // A frame the server could not run keeps the boxes already shown
+        YFPMessage skipped = YFPMessage.fromJson("{\"type\": \"DETECTIONS\", \"timestamp\": 5, \"data\": "
+            + "{\"frame_id\": 2, \"detections\": [], \"processing_time_ms\": 0, \"skipped\": true}}");
+        buffer.setFrom((YFPMessage.DetectionsData) skipped.data, new ClassTable());
+        assertTrue(buffer.skipped);
+        YFPMessage.DetectionsData roundTrip = (YFPMessage.DetectionsData) YFPMessage.fromJson(skipped.toJson()).data;
+        assertTrue(roundTrip.skipped);
+    }
+
+    @Test
+    public void toleratesFieldOrderAndPayloadlessTypes() {
+        YFPMessage message = YFPMessage.fromJson(
+            "{\"data\":{\"fps\":30.0,\"total_frames_sent\":9},\"timestamp\":5,\"type\":\"METRICS\"}");
+        assertEquals(30f, ((YFPMessage.MetricsData) message.data).fps, 0f);
+        assertEquals(9, ((YFPMessage.MetricsData) message.data).totalFramesSent);
+
+        YFPMessage error = YFPMessage.fromJson("{\"type\":\"ERROR\",\"timestamp\":5,\"data\":{\"x\":1}}");
+        assertSame(YFPMessage.MessageType.ERROR, error.type);
+        assertNull(error.data);
+
+        YFPMessage connect = YFPMessage.fromJson("{\"type\":\"CONNECT\",\"timestamp\":5,\"data\":{\"device_id\":\"old\"}}");
+        assertEquals(0, ((YFPMessage.ConnectData) connect.data).frameProtocolVersion);
+    }
+
+    @Test
+    public void rejectsMalformedMessages() {
+        String[] inputs = {
+            "{\"type\":\"NOPE\",\"timestamp\":1}",
+            "{\"timestamp\":1}",
+            "{\"type\":\"DETECTIONS\",\"timestamp\":1,\"data\":{\"frame_id\":\"x\"}}",
+            "[1,2]",
+        };
+        for (String input : inputs) {
+            try {
+                YFPMessage.fromJson(input);
+                fail("Accepted " + input);
+            } catch (JsonParseException expected) {
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+// JVM-only JMH benchmarks for the app's platform-independent hot paths.
+// Run with: ./gradlew :benchmarks:jmh
+plugins {
+    java
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+// The app module is an Android module, so compile the classes under test
+// straight from its sources. Only add files that do not touch android.*.
+sourceSets {
+    main {
+        java {
+            setSrcDirs(listOf("../app/src/main/java"))
+            include(
+                "**/ChannelFrameTransport.java",
+                "**/ClassTable.java",
+                "**/DetectionBuffer.java",
+                "**/DetectionTracker.java",
+                "**/DetectionsCodec.java",
+                "**/FrameBuffer.java",
+                "**/FrameBufferPool.java",
+                "**/FrameCodec.java",
+                "**/FrameSender.java",
+                "**/FrameTransport.java",
+                "**/HungarianAssigner.java",
+                "**/Lz4BlockCompressor.java",
+                "**/Nv21Packer.java",
+                "**/OverlayRenderer.java",
+                "**/StreamFrameTransport.java",
+                "**/YFPJsonCodec.java",
+                "**/YFPMessage.java",
+            )
+        }
+    }
+}
+
+dependencies {
+    implementation("com.google.code.gson:gson:2.10.1")
+}
+
+jmh {
+    jmhVersion.set("1.37")
+    // Report allocated bytes per operation next to throughput
+    profilers.set(listOf("gc"))
+    resultFormat.set("JSON")
+    // Select benchmarks with -PjmhIncludes=<regex>
+    project.findProperty("jmhIncludes")?.let { includes.set(listOf(it.toString())) }
+}
@@ -0,0 +1,123 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Getting one DETECTIONS result onto the overlay: the old path (parse JSON,
+ * build a list of box objects, format each label) against decoding a binary
+ * datagram into the overlay's reused buffer and rendering it through
+ * {@link OverlayRenderer}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DetectionConversionBenchmark {
+    private static final String[] NAMES = {"person", "bicycle", "car", "dog"};
+
+    @Param({"10", "100"})
+    public int detectionCount;
+
+    private String json;
+    private byte[] datagram;
+    private final DetectionBuffer received = new DetectionBuffer();
+    private final DetectionBuffer overlay = new DetectionBuffer();
+    private final ClassTable classTable = new ClassTable();
+    private final OverlayRenderer renderer = new OverlayRenderer();
+    private BlackholeTarget target;
+
+    /** The box object the overlay used to take, one per detection per frame. */
+    static final class LegacyBox {
+        final float x, y, width, height;
+        final String label;
+        final float confidence;
+
+        LegacyBox(float x, float y, float width, float height, String label, float confidence) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.label = label;
+            this.confidence = confidence;
+        }
+    }
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        target = new BlackholeTarget(blackhole);
+        classTable.setNames(NAMES);
+        YFPMessage.Detection[] detections = new YFPMessage.Detection[detectionCount];
+        for (int i = 0; i < detectionCount; i++) {
+            detections[i] = new YFPMessage.Detection(0.001f * i, 0.1f, 0.2f, 0.3f, NAMES[i % NAMES.length], 0.7f);
+        }
+        YFPMessage.DetectionsData data = new YFPMessage.DetectionsData(42, detections, 20);
+        json = new YFPMessage(YFPMessage.MessageType.DETECTIONS, data).toJson();
+
+        received.setFrom(data, classTable);
+        ByteBuffer out = ByteBuffer.allocate(DetectionsCodec.HEADER_SIZE + detectionCount * DetectionsCodec.RECORD_SIZE);
+        DetectionsCodec.encode(received, out);
+        datagram = out.array();
+    }
+
+    @Benchmark
+    public void legacyJsonToBoxes(Blackhole blackhole) {
+        YFPMessage.DetectionsData data = (YFPMessage.DetectionsData) YFPJsonCodec.fromJson(json).data;
+        List<LegacyBox> boxes = new ArrayList<>();
+        for (YFPMessage.Detection d : data.detections) {
+            boxes.add(new LegacyBox(d.x, d.y, d.width, d.height, d.className, d.confidence));
+        }
+        for (LegacyBox box : boxes) {
+            blackhole.consume(box.label + " " + String.format("%.2f", box.confidence));
+        }
+    }
+
+    @Benchmark
+    public void binaryToOverlay() throws ProtocolException {
+        DetectionsCodec.decode(datagram, 0, datagram.length, received);
+        overlay.copyFrom(received);
+        renderer.render(overlay, classTable, 1080, 1920, target);
+    }
+
+    /** Decode alone: the part that runs on the UDP listener thread. */
+    @Benchmark
+    public DetectionBuffer decodeBinary() throws ProtocolException {
+        return DetectionsCodec.decode(datagram, 0, datagram.length, received);
+    }
+
+    private static final class BlackholeTarget implements OverlayRenderer.Target {
+        private final Blackhole blackhole;
+
+        BlackholeTarget(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void drawBox(float left, float top, float right, float bottom, int colorIndex) {
+            blackhole.consume(left + top + right + bottom);
+        }
+
+        @Override
+        public void drawLabel(String label, float x, float y, int colorIndex) {
+            blackhole.consume(label);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client-side tracking cost with a crowded scene: folding one server result
+ * into the tracker (IoU matrix, Hungarian assignment, Kalman updates) and
+ * predicting the boxes for one display frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DetectionTrackerBenchmark {
+    private static final long RESULT_INTERVAL_NS = 100_000_000L;
+    private static final long DISPLAY_INTERVAL_NS = 16_666_667L;
+
+    @Param({"10", "100", "200"})
+    public int trackCount;
+
+    private final DetectionTracker tracker = new DetectionTracker();
+    private final DetectionBuffer[] results = {new DetectionBuffer(), new DetectionBuffer()};
+    private final DetectionBuffer predicted = new DetectionBuffer();
+    private long timeNs;
+    private int nextResult;
+
+    @Setup
+    public void setUp() {
+        int columns = (int) Math.ceil(Math.sqrt(trackCount));
+        float cell = 1f / columns;
+        for (int r = 0; r < results.length; r++) {
+            DetectionBuffer result = results[r];
+            result.reset(r, 20, trackCount);
+            // Alternate results jitter every box by a few percent of its size
+            float jitter = r * cell * 0.05f;
+            for (int i = 0; i < trackCount; i++) {
+                float x = (i % columns) * cell + jitter;
+                float y = (i / columns) * cell + jitter;
+                result.set(i, x, y, cell * 0.6f, cell * 0.6f, i % 5, 0.8f);
+            }
+        }
+        for (int i = 0; i < 20; i++) {
+            update();
+        }
+        if (tracker.getTrackCount() != trackCount) {
+            throw new IllegalStateException("Expected " + trackCount + " tracks, got " + tracker.getTrackCount());
+        }
+    }
+
+    @Benchmark
+    public DetectionTracker update() {
+        timeNs += RESULT_INTERVAL_NS;
+        tracker.update(results[nextResult], timeNs);
+        nextResult ^= 1;
+        return tracker;
+    }
+
+    @Benchmark
+    public DetectionBuffer predictDisplayFrame() {
+        tracker.predict(timeNs + DISPLAY_INTERVAL_NS, predicted);
+        return predicted;
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-frame header building for the TCP image channel: the JSON FRAME header
+ * with a length prefix that sendFrame used to build, against the fixed binary
+ * header from {@link FrameCodec}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameHeaderBenchmark {
+    private final ByteBuffer directHeader = ByteBuffer.allocateDirect(FrameCodec.HEADER_SIZE);
+    private final FrameCodec.FrameHeader header = new FrameCodec.FrameHeader();
+    private final FrameCodec.Encoder encoder = new FrameCodec.Encoder();
+    private final OutputStream sink = OutputStream.nullOutputStream();
+    private long frameId;
+
+    @Benchmark
+    public byte[] jsonHeaderLegacy() {
+        return jsonHeader(LegacyYFPJson.toJson(frameMessage(++frameId)));
+    }
+
+    @Benchmark
+    public byte[] jsonHeaderCodec() {
+        return jsonHeader(YFPJsonCodec.toJson(frameMessage(++frameId)));
+    }
+
+    @Benchmark
+    public ByteBuffer binaryHeader() {
+        header.set(++frameId, System.nanoTime(), 640, 480, FrameCodec.FORMAT_JPEG, 80, 40_000);
+        directHeader.clear();
+        FrameCodec.encodeHeader(header, directHeader);
+        directHeader.flip();
+        return directHeader;
+    }
+
+    @Benchmark
+    public void binaryHeaderToStream() throws IOException {
+        encoder.writeHeader(sink, ++frameId, System.nanoTime(), 640, 480, FrameCodec.FORMAT_JPEG, 80, 40_000);
+    }
+
+    private static YFPMessage frameMessage(long frameId) {
+        return new YFPMessage(YFPMessage.MessageType.FRAME,
+            new YFPMessage.FrameData(frameId, 640, 480, "JPEG", 80));
+    }
+
+    /** The old wire layout: a 4-byte length, then the JSON header. */
+    private static byte[] jsonHeader(String json) {
+        byte[] headerBytes = json.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(4 + headerBytes.length);
+        buffer.putInt(headerBytes.length);
+        buffer.put(headerBytes);
+        return buffer.array();
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * The JSON path YFPMessage used before {@link YFPJsonCodec}: a new reflective
+ * Gson per call and a full JsonParser tree before binding. Kept only as the
+ * baseline for {@link YFPMessageBenchmark}.
+ */
+final class LegacyYFPJson {
+    private LegacyYFPJson() {
+    }
+
+    static String toJson(YFPMessage message) {
+        return new Gson().toJson(message);
+    }
+
+    static YFPMessage fromJson(String json) {
+        Gson gson = new Gson();
+        JsonObject jsonObject = JsonParser.parseString(json).getAsJsonObject();
+
+        YFPMessage.MessageType type = YFPMessage.MessageType.valueOf(jsonObject.get("type").getAsString());
+        long timestamp = jsonObject.get("timestamp").getAsLong();
+
+        Object data = null;
+        if (jsonObject.has("data") && !jsonObject.get("data").isJsonNull()) {
+            JsonObject dataObject = jsonObject.get("data").getAsJsonObject();
+
+            switch (type) {
+                case DISCOVER:
+                    data = gson.fromJson(dataObject, YFPMessage.DiscoverData.class);
+                    break;
+                case CONNECT:
+                    data = gson.fromJson(dataObject, YFPMessage.ConnectData.class);
+                    break;
+                case CONNECT_ACK:
+                    data = gson.fromJson(dataObject, YFPMessage.ConnectAckData.class);
+                    break;
+                case FRAME:
+                    data = gson.fromJson(dataObject, YFPMessage.FrameData.class);
+                    break;
+                case DETECTIONS:
+                    data = gson.fromJson(dataObject, YFPMessage.DetectionsData.class);
+                    break;
+                case METRICS:
+                    data = gson.fromJson(dataObject, YFPMessage.MetricsData.class);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        YFPMessage message = new YFPMessage(type, data);
+        message.timestamp = timestamp;
+        return message;
+    }
+}
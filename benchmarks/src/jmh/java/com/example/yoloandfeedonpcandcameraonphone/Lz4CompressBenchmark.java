@@ -0,0 +1,67 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LZ4 compression of a 640x640 NV21 frame, as sent in the NV21_LZ4 format.
+ * SMOOTH is a gradient with mild sensor noise in the low bit, like an indoor
+ * scene; NOISY is dim-light noise in the low three bits, which LZ4 mostly has
+ * to store as literals.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Lz4CompressBenchmark {
+    private static final int SIZE = 640;
+
+    @Param({"SMOOTH", "NOISY"})
+    public String content;
+
+    private final Lz4BlockCompressor compressor = new Lz4BlockCompressor();
+    private byte[] frame;
+    private byte[] compressed;
+    private int compressedLength;
+    private byte[] decompressed;
+
+    @Setup
+    public void setUp() {
+        frame = new byte[Nv21Packer.nv21Size(SIZE, SIZE)];
+        Random random = new Random(1);
+        int noiseMask = "NOISY".equals(content) ? 7 : 1;
+        for (int i = 0; i < frame.length; i++) {
+            int x = i % SIZE;
+            int y = i / SIZE;
+            frame[i] = (byte) ((x + y) / 8 + (random.nextInt() & noiseMask));
+        }
+        compressed = new byte[Lz4BlockCompressor.maxCompressedLength(frame.length)];
+        compressedLength = compressor.compress(frame, 0, frame.length, compressed, 0);
+        decompressed = new byte[frame.length];
+    }
+
+    @Benchmark
+    public int compress() {
+        return compressor.compress(frame, 0, frame.length, compressed, 0);
+    }
+
+    @Benchmark
+    public byte[] decompress() {
+        Lz4BlockCompressor.decompress(compressed, 0, compressedLength, decompressed, 0, decompressed.length);
+        return decompressed;
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * YUV_420_888 to NV21 packing on synthetic camera planes. Planes are direct
+ * buffers laid out as CameraX delivers them: semi-planar devices expose one
+ * interleaved VU plane through two overlapping buffers with a pixel stride of
+ * 2, planar devices expose separate U and V planes with a pixel stride of 1.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Nv21PackBenchmark {
+
+    @Param({"640x480", "1280x720"})
+    public String resolution;
+
+    @Param({"SEMI_PLANAR", "PLANAR"})
+    public String layout;
+
+    private int width;
+    private int height;
+    private ByteBuffer yPlane;
+    private ByteBuffer uPlane;
+    private ByteBuffer vPlane;
+    private int uvRowStride;
+    private int uvPixelStride;
+    private final Nv21Packer packer = new Nv21Packer();
+    private byte[] out;
+
+    @Setup
+    public void setUp() {
+        String[] size = resolution.split("x");
+        width = Integer.parseInt(size[0]);
+        height = Integer.parseInt(size[1]);
+        int chromaHeight = height / 2;
+
+        yPlane = filled(width * height);
+        if ("SEMI_PLANAR".equals(layout)) {
+            uvPixelStride = 2;
+            uvRowStride = width;
+            ByteBuffer vu = filled(uvRowStride * chromaHeight);
+            vPlane = slice(vu, 0, vu.capacity() - 1);
+            uPlane = slice(vu, 1, vu.capacity() - 1);
+        } else {
+            uvPixelStride = 1;
+            uvRowStride = width / 2;
+            uPlane = filled(uvRowStride * chromaHeight);
+            vPlane = filled(uvRowStride * chromaHeight);
+        }
+        out = new byte[Nv21Packer.nv21Size(width, height)];
+    }
+
+    private static ByteBuffer filled(int size) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+        for (int i = 0; i < size; i++) {
+            buffer.put(i, (byte) (i * 31));
+        }
+        return buffer;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.limit(offset + length);
+        return view.slice();
+    }
+
+    /**
+     * What imageProxyToJpeg used to do: a new array per frame and a bulk copy of
+     * each plane, ignoring strides (only correct for some devices).
+     */
+    @Benchmark
+    public byte[] legacyPlaneCopy() {
+        int ySize = yPlane.remaining();
+        int uSize = uPlane.remaining();
+        int vSize = vPlane.remaining();
+        byte[] nv21 = new byte[ySize + uSize + vSize];
+        yPlane.get(nv21, 0, ySize);
+        vPlane.get(nv21, ySize, vSize);
+        uPlane.get(nv21, ySize + vSize, uSize);
+        // The packer reads relative to the position, as camera planes start at 0
+        yPlane.rewind();
+        uPlane.rewind();
+        vPlane.rewind();
+        return nv21;
+    }
+
+    @Benchmark
+    public byte[] pack() {
+        packer.pack(yPlane, width, 1, uPlane, vPlane, uvRowStride, uvPixelStride, width, height, out);
+        return out;
+    }
+
+    @Benchmark
+    public byte[] packHalfScale() {
+        packer.packScaled(yPlane, width, 1, uPlane, vPlane, uvRowStride, uvPixelStride, width, height, 2, out);
+        return out;
+    }
+
+    /** Whole frame resampled so its long side is 640, as sent to the detector. */
+    @Benchmark
+    public byte[] packToModelInput() {
+        int outWidth = 640;
+        int outHeight = (height * 640 / width) & ~1;
+        packer.packRegion(yPlane, width, 1, uPlane, vPlane, uvRowStride, uvPixelStride,
+            0, 0, width, height, outWidth, outHeight, out);
+        return out;
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loopback comparison of the frame transports, for each payload size and with
+ * heap or direct payload buffers. Sampling the time spent in
+ * {@code writeFrame} gives the median and p99 per frame, and the
+ * {@code writeCalls} counter the write system calls per frame. A background
+ * thread drains and decodes the stream, so the numbers include the receiver
+ * keeping up, as the real server must.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransportLoopbackBenchmark {
+    @Param({"STREAM", "CHANNEL"})
+    public FrameTransport.Type type;
+
+    @Param({"false", "true"})
+    public boolean direct;
+
+    @Param({"30", "120", "500"})
+    public int payloadKb;
+
+    /** Write system calls, reported per frame next to the timings. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class WriteCalls {
+        public long writeCalls;
+    }
+
+    private ServerSocket server;
+    private Thread drain;
+    private FrameBuffer payload;
+    private FrameTransport transport;
+    private long frameId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        server = new ServerSocket(0);
+        drain = new Thread(() -> drain(server), "loopback-drain");
+        drain.start();
+
+        int payloadSize = payloadKb * 1024;
+        payload = new FrameBufferPool("bench", 1, direct).acquire(payloadSize);
+        byte[] content = new byte[payloadSize];
+        Arrays.fill(content, (byte) 0x5A);
+        payload.resetOutputStream().write(content);
+
+        transport = FrameTransport.create(type);
+        transport.connect(new InetSocketAddress("127.0.0.1", server.getLocalPort()), 2000);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        transport.close();
+        drain.join(10_000);
+        server.close();
+        payload.release();
+    }
+
+    @Benchmark
+    public void writeFrame(WriteCalls counters) throws IOException {
+        long before = transport.getWriteCallCount();
+        transport.writeFrame(payload, ++frameId, System.nanoTime(), 640, 480, FrameCodec.FORMAT_JPEG, 80);
+        counters.writeCalls += transport.getWriteCallCount() - before;
+    }
+
+    private static void drain(ServerSocket server) {
+        try (Socket socket = server.accept(); InputStream in = socket.getInputStream()) {
+            FrameCodec.Decoder decoder = new FrameCodec.Decoder((header, data, length) -> { });
+            byte[] buffer = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                decoder.feed(buffer, 0, n);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
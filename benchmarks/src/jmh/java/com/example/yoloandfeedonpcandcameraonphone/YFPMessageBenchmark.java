@@ -0,0 +1,90 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * YFPMessage JSON encode and decode, legacy path against {@link YFPJsonCodec}.
+ * With the gc profiler, compare {@code gc.alloc.rate.norm} (bytes per message)
+ * as well as ops/s.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class YFPMessageBenchmark {
+
+    /** DETECTIONS is the per-frame downlink message; the others are small control messages. */
+    @Param({"DETECTIONS", "METRICS", "CONNECT"})
+    public String messageType;
+
+    @Param({"10"})
+    public int detectionCount;
+
+    private YFPMessage message;
+    private String json;
+
+    @Setup
+    public void setUp() {
+        message = sampleMessage(YFPMessage.MessageType.valueOf(messageType), detectionCount);
+        json = message.toJson();
+    }
+
+    static YFPMessage sampleMessage(YFPMessage.MessageType type, int detectionCount) {
+        Object data;
+        switch (type) {
+            case DETECTIONS:
+                YFPMessage.Detection[] detections = new YFPMessage.Detection[detectionCount];
+                for (int i = 0; i < detectionCount; i++) {
+                    detections[i] = new YFPMessage.Detection(0.05f * i, 0.1f, 0.2f, 0.3f,
+                        i % 2 == 0 ? "person" : "car", 0.5f + 0.04f * i);
+                }
+                data = new YFPMessage.DetectionsData(123456, detections, 23);
+                break;
+            case METRICS:
+                data = new YFPMessage.MetricsData(29.7f, 38, 23, 123456);
+                break;
+            case CONNECT:
+                data = new YFPMessage.ConnectData("benchmark-device", 1920, 1080);
+                break;
+            default:
+                throw new IllegalArgumentException("No sample for " + type);
+        }
+        YFPMessage message = new YFPMessage(type, data);
+        message.timestamp = 1700000000000L;
+        return message;
+    }
+
+    @Benchmark
+    public String encodeLegacy() {
+        return LegacyYFPJson.toJson(message);
+    }
+
+    @Benchmark
+    public String encodeCodec() {
+        return YFPJsonCodec.toJson(message);
+    }
+
+    @Benchmark
+    public YFPMessage decodeLegacy() {
+        return LegacyYFPJson.fromJson(json);
+    }
+
+    @Benchmark
+    public YFPMessage decodeCodec() {
+        return YFPJsonCodec.fromJson(json);
+    }
+}
@@ -0,0 +1,57 @@
+// Headless load generator: simulates many phones streaming to one server.
+// Run with: ./gradlew :loadgen:run --args="--clients 20 --fps 10 --frames /path/to/jpegs"
+plugins {
+    java
+    application
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+// Like the benchmarks, compile the client straight from the app's sources;
+// only files that do not touch android.* can be added. The stand-in server
+// comes from the app's unit tests.
+sourceSets {
+    main {
+        java {
+            setSrcDirs(listOf("src/main/java", "../app/src/main/java", "../app/src/test/java"))
+            include(
+                "**/LoadGenerator.java",
+                "**/StandInServer.java",
+                "**/ChannelFrameTransport.java",
+                "**/ClassTable.java",
+                "**/ClockOffsetEstimator.java",
+                "**/DetectionBuffer.java",
+                "**/DetectionsCodec.java",
+                "**/FrameBuffer.java",
+                "**/FrameBufferPool.java",
+                "**/FrameCodec.java",
+                "**/FrameMetadataRing.java",
+                "**/FrameSender.java",
+                "**/FrameTransport.java",
+                "**/LatencyHistogram.java",
+                "**/PipelineTimings.java",
+                "**/ResultFragments.java",
+                "**/ResultReorderBuffer.java",
+                "**/ServerPool.java",
+                "**/SessionRecorder.java",
+                "**/SessionRecording.java",
+                "**/StreamFrameTransport.java",
+                "**/TripleBuffer.java",
+                "**/YFPClient.java",
+                "**/YFPJsonCodec.java",
+                "**/YFPMessage.java",
+            )
+        }
+    }
+}
+
+dependencies {
+    implementation("com.google.code.gson:gson:2.10.1")
+}
+
+application {
+    mainClass.set("com.example.yoloandfeedonpcandcameraonphone.LoadGenerator")
+}
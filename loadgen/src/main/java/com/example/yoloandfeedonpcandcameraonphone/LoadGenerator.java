@@ -0,0 +1,428 @@
+package com.example.yoloandfeedonpcandcameraonphone;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Simulates several phones streaming to one server from this machine. Each
+ * phone is a {@link YFPClient} replaying the same JPEG files in a loop at its
+ * own frame rate; at the end it prints, per phone and in total, the frames
+ * sent and answered per second, uplink throughput, the share of frames that
+ * never got a result and percentiles of the detection round trip (frame
+ * written to result received, {@link PipelineTimings.Stage#RECEIVED}).
+ *
+ * With {@code --recording}, the phones loop over the frames of a
+ * {@link SessionRecorder} recording instead, keeping their formats; video
+ * frames only decode cleanly on the first pass.
+ *
+ * Without {@code --server} it runs against an in-process {@link StandInServer}
+ * that answers every frame after a fixed delay. Against pc_server.py, pass
+ * real JPEG files with {@code --frames}, since the server decodes them.
+ */
+public class LoadGenerator {
+    private static final String USAGE = String.join("\n",
+        "Usage: loadgen [options]",
+        "  --clients N           phones to simulate (default 4)",
+        "  --fps R[,R...]        frames per second per phone, cycled over the phones (default 10)",
+        "  --duration S          seconds to stream after connecting (default 10)",
+        "  --frames PATH...      JPEG files or directories of them to replay (default: synthetic 20 KB frames)",
+        "  --recording DIR       replay the frames of a phone recording instead, in any format",
+        "  --server HOST[:PORT]  server to load (default: an in-process stand-in server)",
+        "  --stand-in-delay MS   stand-in answer delay (default 30)",
+        "  --stand-in-boxes N    boxes in each stand-in result (default 1)",
+        "  --in-flight N         frames in flight per phone (default 2)",
+        "  --transport T         STREAM or CHANNEL (default CHANNEL)");
+    private static final int DEFAULT_PORT = 8888;
+    private static final int SYNTHETIC_FRAME_BYTES = 20 * 1024;
+    private static final long CONNECT_TIMEOUT_S = 10;
+
+    /** One frame to replay, with its size and {@link FrameCodec} format. */
+    static final class Frame {
+        final byte[] data;
+        final int width;
+        final int height;
+        final int format;
+
+        Frame(byte[] data, int width, int height, int format) {
+            this.data = data;
+            this.width = width;
+            this.height = height;
+            this.format = format;
+        }
+    }
+
+    /** One simulated phone. */
+    static final class Phone implements YFPClient.Callback {
+        final int index;
+        final float fps;
+        final YFPClient client;
+        final FrameBufferPool buffers;
+        final CountDownLatch connected = new CountDownLatch(1);
+        final AtomicLong frames = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        volatile String lastError;
+        private final List<Frame> replay;
+        private final long firstFrameId;
+        private ScheduledFuture<?> ticker;
+
+        Phone(int index, float fps, List<Frame> replay, FrameTransport.Type transport, int inFlight) {
+            this.index = index;
+            this.fps = fps;
+            this.replay = replay;
+            // Distinct ids per phone make a misrouted result easy to spot in server logs
+            this.firstFrameId = (long) index << 32;
+            client = new YFPClient(this, Runnable::run, YFPClient.Logger.STDERR);
+            client.setDeviceNames("loadgen", "loadgen-" + index);
+            client.setTransportType(transport);
+            client.setMaxFramesInFlight(inFlight);
+            buffers = new FrameBufferPool("phone-" + index, inFlight + 2,
+                transport == FrameTransport.Type.CHANNEL);
+        }
+
+        void start(ScheduledExecutorService scheduler, Random random) {
+            long periodNs = (long) (1e9 / fps);
+            // Spread the phones over the frame interval instead of sending in lockstep
+            long offsetNs = (long) (random.nextDouble() * periodNs);
+            ticker = scheduler.scheduleAtFixedRate(this::sendNext, offsetNs, periodNs, TimeUnit.NANOSECONDS);
+        }
+
+        void stop() {
+            if (ticker != null) {
+                ticker.cancel(false);
+            }
+        }
+
+        private void sendNext() {
+            long n = frames.getAndIncrement();
+            Frame frame = replay.get((int) (n % replay.size()));
+            long frameId = firstFrameId + n;
+            long nowNs = System.nanoTime();
+            client.getPipelineTimings().mark(PipelineTimings.Stage.CAPTURED, frameId, nowNs);
+            FrameBuffer payload = buffers.acquire(frame.data.length);
+            payload.setLength(frame.data.length);
+            payload.byteBuffer().put(frame.data);
+            client.sendFrame(payload, frameId, nowNs, frame.width, frame.height, frame.format, 80);
+        }
+
+        /** Results received, one per answered frame. */
+        long answered() {
+            return detectionRoundTrip().getCount();
+        }
+
+        LatencyHistogram detectionRoundTrip() {
+            return client.getPipelineTimings().getHistogram(PipelineTimings.Stage.RECEIVED);
+        }
+
+        @Override
+        public void onServersDiscovered(List<ServerPool.Server> servers) {
+        }
+
+        @Override
+        public void onConnected() {
+            connected.countDown();
+        }
+
+        @Override
+        public void onDisconnected() {
+        }
+
+        @Override
+        public void onDetectionsReceived(DetectionBuffer detections) {
+            // Counted through the client's pipeline timings
+        }
+
+        @Override
+        public void onMetricsReceived(YFPMessage.MetricsData metrics) {
+        }
+
+        @Override
+        public void onError(String error) {
+            errors.incrementAndGet();
+            lastError = error;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int clients = 4;
+        float[] rates = {10};
+        int durationS = 10;
+        List<String> framePaths = new ArrayList<>();
+        String recording = null;
+        String server = null;
+        long standInDelayMs = 30;
+        int standInBoxes = 1;
+        int inFlight = 2;
+        FrameTransport.Type transport = FrameTransport.Type.CHANNEL;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--clients":
+                        clients = Integer.parseInt(args[++i]);
+                        break;
+                    case "--fps":
+                        String[] parts = args[++i].split(",");
+                        rates = new float[parts.length];
+                        for (int r = 0; r < parts.length; r++) {
+                            rates[r] = Float.parseFloat(parts[r]);
+                        }
+                        break;
+                    case "--duration":
+                        durationS = Integer.parseInt(args[++i]);
+                        break;
+                    case "--frames":
+                        while (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                            framePaths.add(args[++i]);
+                        }
+                        break;
+                    case "--recording":
+                        recording = args[++i];
+                        break;
+                    case "--server":
+                        server = args[++i];
+                        break;
+                    case "--stand-in-delay":
+                        standInDelayMs = Long.parseLong(args[++i]);
+                        break;
+                    case "--stand-in-boxes":
+                        standInBoxes = Integer.parseInt(args[++i]);
+                        break;
+                    case "--in-flight":
+                        inFlight = Integer.parseInt(args[++i]);
+                        break;
+                    case "--transport":
+                        transport = FrameTransport.Type.valueOf(args[++i].toUpperCase(Locale.ROOT));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+            if (recording != null && !framePaths.isEmpty()) {
+                throw new IllegalArgumentException("--frames and --recording cannot be combined");
+            }
+            if (clients <= 0 || durationS <= 0 || inFlight <= 0) {
+                throw new IllegalArgumentException("--clients, --duration and --in-flight must be positive");
+            }
+            // As many as fit in the fragments of one result
+            int maxBoxes = (ResultFragments.MAX_FRAGMENTS * (ResultFragments.DEFAULT_DATAGRAM_SIZE
+                - ResultFragments.HEADER_SIZE) - DetectionsCodec.HEADER_SIZE - DetectionsCodec.SERVER_TIMES_SIZE)
+                / DetectionsCodec.RECORD_SIZE;
+            if (standInBoxes < 0 || standInBoxes > maxBoxes) {
+                throw new IllegalArgumentException("--stand-in-boxes must be between 0 and " + maxBoxes);
+            }
+            for (float rate : rates) {
+                if (rate <= 0) {
+                    throw new IllegalArgumentException("--fps rates must be positive");
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println(e.getMessage() != null ? e.getMessage() : e.toString());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        List<Frame> replay;
+        if (recording != null) {
+            replay = loadRecording(new File(recording));
+        } else {
+            replay = framePaths.isEmpty() ? List.of(syntheticFrame()) : loadFrames(framePaths);
+        }
+        StandInServer standIn = null;
+        InetSocketAddress address;
+        if (server == null) {
+            standIn = new StandInServer("stand-in", standInDelayMs, 0, 0);
+            standIn.setBoxes(standInBoxes);
+            address = standIn.getAddress();
+            System.out.println("Stand-in server on " + address + ", answering after " + standInDelayMs + " ms with "
+                + standInBoxes + (standInBoxes == 1 ? " box" : " boxes"));
+        } else {
+            address = parseAddress(server);
+        }
+
+        List<Phone> phones = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            phones.add(new Phone(i, rates[i % rates.length], replay, transport, inFlight));
+        }
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(
+            Math.max(1, Math.min(clients, Runtime.getRuntime().availableProcessors())));
+        try {
+            System.out.println("Connecting " + clients + " phones to " + address);
+            for (Phone phone : phones) {
+                phone.client.connect(address);
+            }
+            // Every phone starts at once, so rates are over the same interval
+            List<Phone> connected = new ArrayList<>();
+            for (Phone phone : phones) {
+                if (phone.connected.await(CONNECT_TIMEOUT_S, TimeUnit.SECONDS)) {
+                    connected.add(phone);
+                } else {
+                    System.err.println("Phone " + phone.index + " did not connect: " + phone.lastError);
+                }
+            }
+            Random random = new Random(1);
+            long startNs = System.nanoTime();
+            for (Phone phone : connected) {
+                phone.start(scheduler, random);
+            }
+            Thread.sleep(durationS * 1000L);
+            for (Phone phone : phones) {
+                phone.stop();
+            }
+            long sendingNs = System.nanoTime() - startNs;
+            // Give results for the last frames time to arrive
+            Thread.sleep(1000);
+            report(phones, sendingNs / 1e9, System.out);
+            if (standIn != null) {
+                System.out.println("Stand-in received " + standIn.getFramesReceived() + " frames, answered "
+                    + standIn.getFramesAnswered());
+            }
+        } finally {
+            scheduler.shutdownNow();
+            for (Phone phone : phones) {
+                phone.client.shutdown();
+            }
+            if (standIn != null) {
+                standIn.close();
+            }
+        }
+        // The clients' executors are not daemon threads
+        System.exit(0);
+    }
+
+    static void report(List<Phone> phones, double seconds, PrintStream out) {
+        out.println(String.format(Locale.ROOT, "%-6s %6s %8s %8s %8s %8s %7s %8s %8s %8s %8s",
+            "phone", "fps", "sent/s", "resp/s", "Mbit/s", "dropped", "drop%", "p50 ms", "p95 ms", "p99 ms", "max ms"));
+        LatencyHistogram all = new LatencyHistogram();
+        long frames = 0;
+        long sent = 0;
+        long answered = 0;
+        long bytes = 0;
+        float fps = 0;
+        for (Phone phone : phones) {
+            LatencyHistogram rtt = phone.detectionRoundTrip();
+            all.add(rtt);
+            long phoneFrames = phone.frames.get();
+            long phoneSent = phone.client.getFramesSent();
+            long phoneAnswered = phone.answered();
+            long phoneBytes = phone.client.getBytesSent();
+            frames += phoneFrames;
+            sent += phoneSent;
+            answered += phoneAnswered;
+            bytes += phoneBytes;
+            fps += phone.fps;
+            out.println(row(String.valueOf(phone.index), phone.fps, phoneFrames, phoneSent, phoneAnswered,
+                phoneBytes, seconds, rtt));
+        }
+        out.println(row("total", fps, frames, sent, answered, bytes, seconds, all));
+    }
+
+    private static String row(String name, float fps, long frames, long sent, long answered, long bytes,
+                              double seconds, LatencyHistogram rtt) {
+        long dropped = Math.max(0, frames - answered);
+        return String.format(Locale.ROOT, "%-6s %6.1f %8.1f %8.1f %8.2f %8d %6.1f%% %8.1f %8.1f %8.1f %8.1f",
+            name, fps, sent / seconds, answered / seconds, bytes * 8 / seconds / 1e6, dropped,
+            frames > 0 ? 100.0 * dropped / frames : 0,
+            rtt.getPercentileMicros(50) / 1000.0, rtt.getPercentileMicros(95) / 1000.0,
+            rtt.getPercentileMicros(99) / 1000.0, rtt.getMaxMicros() / 1000.0);
+    }
+
+    private static InetSocketAddress parseAddress(String server) {
+        int colon = server.lastIndexOf(':');
+        if (colon < 0) {
+            return new InetSocketAddress(server, DEFAULT_PORT);
+        }
+        return new InetSocketAddress(server.substring(0, colon), Integer.parseInt(server.substring(colon + 1)));
+    }
+
+    private static Frame syntheticFrame() {
+        byte[] data = new byte[SYNTHETIC_FRAME_BYTES];
+        new Random(7).nextBytes(data);
+        return new Frame(data, 640, 480, FrameCodec.FORMAT_JPEG);
+    }
+
+    private static List<Frame> loadFrames(List<String> paths) throws IOException {
+        List<File> files = new ArrayList<>();
+        for (String path : paths) {
+            File file = new File(path);
+            File[] children = file.listFiles((dir, name) -> {
+                String lower = name.toLowerCase(Locale.ROOT);
+                return lower.endsWith(".jpg") || lower.endsWith(".jpeg");
+            });
+            if (children != null) {
+                Arrays.sort(children);
+                files.addAll(Arrays.asList(children));
+            } else {
+                files.add(file);
+            }
+        }
+        if (files.isEmpty()) {
+            throw new IOException("No JPEG files in " + paths);
+        }
+        List<Frame> frames = new ArrayList<>();
+        for (File file : files) {
+            byte[] data = Files.readAllBytes(file.toPath());
+            int[] size = jpegSize(data);
+            if (size == null) {
+                throw new IOException(file + " is not a JPEG file");
+            }
+            frames.add(new Frame(data, size[0], size[1], FrameCodec.FORMAT_JPEG));
+        }
+        return frames;
+    }
+
+    private static List<Frame> loadRecording(File directory) throws IOException {
+        List<Frame> frames = new ArrayList<>();
+        try (SessionRecording recording = SessionRecording.open(directory)) {
+            FrameBuffer payload = new FrameBufferPool("recording", 1).acquire(0);
+            FrameCodec.FrameHeader header = new FrameCodec.FrameHeader();
+            for (int i = 0; i < recording.getFrameCount(); i++) {
+                recording.readFrame(i, header, payload);
+                byte[] data = new byte[payload.length()];
+                payload.byteBuffer().get(data);
+                frames.add(new Frame(data, header.width, header.height, header.format));
+            }
+            payload.release();
+        }
+        if (frames.isEmpty()) {
+            throw new IOException("No frames in " + directory);
+        }
+        return frames;
+    }
+
+    /** Width and height from a JPEG's start-of-frame segment, or null if there is none. */
+    static int[] jpegSize(byte[] jpeg) {
+        if (jpeg.length < 4 || (jpeg[0] & 0xFF) != 0xFF || (jpeg[1] & 0xFF) != 0xD8) {
+            return null;
+        }
+        int i = 2;
+        while (i + 9 < jpeg.length) {
+            if ((jpeg[i] & 0xFF) != 0xFF) {
+                return null;
+            }
+            int marker = jpeg[i + 1] & 0xFF;
+            int length = (jpeg[i + 2] & 0xFF) << 8 | (jpeg[i + 3] & 0xFF);
+            // SOF0-SOF15, except DHT (C4), JPG (C8) and DAC (CC)
+            if (marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+                int height = (jpeg[i + 5] & 0xFF) << 8 | (jpeg[i + 6] & 0xFF);
+                int width = (jpeg[i + 7] & 0xFF) << 8 | (jpeg[i + 8] & 0xFF);
+                return new int[]{width, height};
+            }
+            i += 2 + length;
+        }
+        return null;
+    }
+}
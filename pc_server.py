@@ -20,9 +20,143 @@ import platform
 import argparse
 import os
 
+try:
+    import av  # PyAV, optional: decodes H.264/HEVC frames
+except ImportError:
+    av = None
+try:
+    import lz4.block  # optional: decodes LZ4-compressed raw frames
+except ImportError:
+    lz4 = None
+
+# Binary frame header, must match FrameCodec.java
+FRAME_MAGIC = 0x59465046  # "YFPF"
+FRAME_PROTOCOL_VERSION = 1
+FRAME_HEADER = struct.Struct('>IBBBBqqiiI')
+FRAME_FORMATS = {1: 'JPEG', 2: 'H264', 3: 'HEVC', 4: 'NV21', 5: 'NV21_LZ4', 6: 'GRAY', 7: 'GRAY_LZ4'}
+VIDEO_DECODERS = {'H264': 'h264', 'HEVC': 'hevc'}  # PyAV codec names
+
+# Prefix of H.264/HEVC frame payloads, must match VideoPacketizer.java
+VIDEO_PREFIX = struct.Struct('>IB3x')  # Sequence number, flags
+VIDEO_FLAG_KEYFRAME = 0x01
+VIDEO_FLAG_CONFIG = 0x02
+MAX_FRAME_PAYLOAD = 16 * 1024 * 1024
+
+# Prefix of raw frame payloads, must match RawFrameEncoder.java
+RAW_PREFIX = struct.Struct('>II')  # Row stride, uncompressed length of the planes
+RAW_FORMATS = ('NV21', 'GRAY')
+LZ4_FORMATS = ('NV21_LZ4', 'GRAY_LZ4')
+
+# Binary DETECTIONS datagram, must match DetectionsCodec.java
+DETECTIONS_MAGIC = 0x59465044  # "YFPD"
+DETECTIONS_PROTOCOL_VERSION = 1
+DETECTIONS_HEADER = struct.Struct('>IBBHqI')
+DETECTION_RECORD = struct.Struct('>HHHHHH')
+DETECTIONS_FLAG_SERVER_TIMES = 0x01
+DETECTIONS_FLAG_SKIPPED = 0x02  # Frame read but not run through the model
+DETECTIONS_SERVER_TIMES = struct.Struct('>qq')  # Receive and send, time.monotonic_ns()
+MAX_DATAGRAM_SIZE = 4096  # Receive buffer of clients that do not take fragments
+MAX_BINARY_DETECTIONS = ((MAX_DATAGRAM_SIZE - DETECTIONS_HEADER.size - DETECTIONS_SERVER_TIMES.size)
+                         // DETECTION_RECORD.size)
+
+# Fragments of results longer than the client's max_datagram_size, must match ResultFragments.java
+FRAGMENT_MAGIC = 0x59465043  # "YFPC"
+FRAGMENT_VERSION = 1
+FRAGMENT_HEADER = struct.Struct('>IBBBxIII')  # Index, count, sequence, message length, offset
+MAX_FRAGMENTS = 64
+
+
+def max_result_size(client_info):
+    """Longest result the client can take, whole or in fragments"""
+    datagram_size = client_info.get('max_datagram_size', 0)
+    if not datagram_size:
+        return MAX_DATAGRAM_SIZE
+    return MAX_FRAGMENTS * (datagram_size - FRAGMENT_HEADER.size)
+
+
+def max_binary_detections(client_info):
+    """Most boxes a binary DETECTIONS message to this client can hold"""
+    return min(0xFFFF, (max_result_size(client_info) - DETECTIONS_HEADER.size - DETECTIONS_SERVER_TIMES.size)
+               // DETECTION_RECORD.size)
+
+
+def split_result(data, sequence, datagram_size):
+    """The datagrams carrying one result: the result itself if it fits, else its fragments"""
+    if not datagram_size or len(data) <= datagram_size:
+        return [data]
+    chunk = datagram_size - FRAGMENT_HEADER.size
+    count = (len(data) + chunk - 1) // chunk
+    return [FRAGMENT_HEADER.pack(FRAGMENT_MAGIC, FRAGMENT_VERSION, index, count, sequence & 0xFFFFFFFF,
+                                 len(data), index * chunk) + data[index * chunk:(index + 1) * chunk]
+            for index in range(count)]
+
+def supported_frame_formats():
+    """Frame formats this server can decode"""
+    return (['JPEG'] + (list(VIDEO_DECODERS) if av is not None else []) + list(RAW_FORMATS)
+            + (list(LZ4_FORMATS) if lz4 is not None else []))
+
+
+def decode_raw_frame(format_name, payload, width, height):
+    """Decode an NV21 or grayscale payload to a BGR image, or None if malformed"""
+    if len(payload) < RAW_PREFIX.size:
+        return None
+    stride, length = RAW_PREFIX.unpack_from(payload)
+    planes = memoryview(payload)[RAW_PREFIX.size:]
+    if format_name in LZ4_FORMATS:
+        try:
+            planes = lz4.block.decompress(bytes(planes), uncompressed_size=length)
+        except lz4.block.LZ4BlockError:
+            return None
+    gray = format_name in ('GRAY', 'GRAY_LZ4')
+    rows = height if gray else height * 3 // 2
+    if stride < width or len(planes) != length or length < stride * rows:
+        return None
+    image = np.frombuffer(planes, np.uint8, stride * rows).reshape(rows, stride)[:, :width]
+    if gray:
+        return cv2.cvtColor(image, cv2.COLOR_GRAY2BGR)
+    return cv2.cvtColor(np.ascontiguousarray(image), cv2.COLOR_YUV2BGR_NV21)
+
+
+class VideoStreamDecoder:
+    """Decodes one client's H.264 or HEVC frames, mirroring VideoDepacketizer.java
+
+    The stream can only start at a keyframe with codec config, and a lost access unit
+    breaks decoding until the next keyframe, so until then frames are dropped.
+    """
+
+    def __init__(self, codec_name):
+        self.codec = av.CodecContext.create(codec_name, 'r')
+        self.synced = False
+        self.expected_sequence = 0
+
+    def decode(self, payload):
+        """Return the frame as a BGR image, or None if it cannot be decoded yet"""
+        if len(payload) < VIDEO_PREFIX.size:
+            raise ValueError(f"video payload too short: {len(payload)}")
+        sequence, flags = VIDEO_PREFIX.unpack_from(payload)
+        if self.synced and sequence != self.expected_sequence:
+            print(f"BASIC_DEBUG: Video frame lost before {sequence}, waiting for a keyframe")
+            self.synced = False
+        self.expected_sequence = (sequence + 1) & 0xFFFFFFFF
+        if not self.synced:
+            required = VIDEO_FLAG_KEYFRAME | VIDEO_FLAG_CONFIG
+            if flags & required != required:
+                return None
+            self.synced = True
+
+        image = None
+        try:
+            for frame in self.codec.decode(av.Packet(payload[VIDEO_PREFIX.size:])):
+                image = frame.to_ndarray(format='bgr24')
+        except Exception as e:
+            print(f"BASIC_DEBUG: Video decode failed ({e}), waiting for a keyframe")
+            self.synced = False
+        return image
+
+
 class YFPServer:
-    def __init__(self, model_path=None):
-        self.SERVER_PORT = 8888
+    def __init__(self, model_path=None, port=8888):
+        self.SERVER_PORT = port
         self.DISCOVERY_PORT = 8889
         self.running = False
         self.clients = {}
@@ -39,7 +173,11 @@ class YFPServer:
             'avg_detection_time': 0,
             'fps': 0,
             'last_fps_time': time.time(),
-            'frames_since_fps': 0
+            'frames_since_fps': 0,
+            # Fraction of the last second spent running the model, advertised in discovery
+            'load': 0.0,
+            'busy_ms': 0,
+            'last_load_time': time.time()
         }
         
         # GUI
@@ -176,6 +314,9 @@ class YFPServer:
             if self.model:  # Only update if model loaded successfully
                 self.current_model_label.config(text=f"Model: {os.path.basename(self.model_path)}")
                 self.log_message(f"Model changed from {old_model_name} to {os.path.basename(self.model_path)}")
+                # Class ids refer to the new model now, so resend the table
+                for client_info in list(self.clients.values()):
+                    self.send_connect_ack(client_info)
 
     def create_hotspot(self):
         """Create a WiFi hotspot (Windows specific)"""
@@ -213,6 +354,8 @@ class YFPServer:
             
             # Start discovery server
             self.discovery_socket = socket.socket(socket.AF_INET, socket.SOCK_DGRAM)
+            # Several servers on one PC can all answer the broadcast
+            self.discovery_socket.setsockopt(socket.SOL_SOCKET, socket.SO_REUSEADDR, 1)
             self.discovery_socket.bind(('0.0.0.0', self.DISCOVERY_PORT))
             
             # Start server threads
@@ -224,7 +367,7 @@ class YFPServer:
             self.start_btn.config(state=tk.DISABLED)
             self.stop_btn.config(state=tk.NORMAL)
             self.status_label.config(text="Server running", foreground="green")
-            self.log_message("Server started on port 8888")
+            self.log_message(f"Server started on port {self.SERVER_PORT}")
             
         except Exception as e:
             self.log_message(f"Error starting server: {e}")
@@ -256,12 +399,17 @@ class YFPServer:
                 message = json.loads(data.decode())
                 
                 if message.get('type') == 'DISCOVER':
+                    # Clients spread frames over every server that answers, by capacity and load
+                    avg_ms = self.metrics['avg_detection_time']
                     response = {
                         'type': 'DISCOVER',
                         'timestamp': int(time.time() * 1000),
                         'data': {
                             'server_name': 'YOLO Feed Server',
-                            'version': '1.0'
+                            'version': '1.0',
+                            'port': self.SERVER_PORT,
+                            'capacity_fps': 1000.0 / avg_ms if avg_ms > 0 else 0.0,
+                            'load': self.metrics['load']
                         }
                     }
                     
@@ -278,16 +426,23 @@ class YFPServer:
         while self.running:
             try:
                 data, addr = self.udp_socket.recvfrom(4096)
+                received_ns = time.monotonic_ns()
                 message = json.loads(data.decode())
                 
                 client_id = f"{addr[0]}:{addr[1]}"
                 
                 if message.get('type') == 'CONNECT':
-                    # Clean up any existing entries for this IP (handles reconnection)
+                    connect_data = message.get('data') or {}
+                    # Clients that name their frame connection's port can share an IP
+                    # (the load generator); their old entries go when the frame
+                    # connection closes. Otherwise clean up any existing entries for
+                    # this IP (handles reconnection)
+                    frame_port = connect_data.get('frame_port', 0)
                     client_ip = addr[0]
                     clients_to_remove = []
-                    for existing_id, existing_info in self.clients.items():
-                        if existing_info['addr'][0] == client_ip:
+                    for existing_id, existing_info in list(self.clients.items()):
+                        if existing_info['addr'][0] == client_ip and (
+                                not frame_port or not existing_info.get('frame_port')):
                             clients_to_remove.append(existing_id)
                             print(f"BASIC_DEBUG: Removing old client entry for reconnection: {existing_id}")
 
@@ -295,20 +450,50 @@ class YFPServer:
                         del self.clients[old_client_id]
 
                     # Add the new client entry
+                    if connect_data.get('frame_protocol_version') != FRAME_PROTOCOL_VERSION:
+                        self.log_message(f"Client {addr[0]} uses unsupported frame protocol version "
+                                         f"{connect_data.get('frame_protocol_version')}")
+
+                    # First format in the client's order of preference that we can decode
+                    supported = supported_frame_formats()
+                    offered = connect_data.get('frame_formats') or ['JPEG']
+                    frame_format = next((f for f in offered if f in supported), 'JPEG')
+                    # The client may switch between any of these per frame
+                    accepted_formats = [f for f in offered if f in supported]
+
                     self.clients[client_id] = {
                         'addr': addr,
                         'udp_addr': addr,  # Store UDP address for responses
                         'connected_time': time.time(),
-                        'frames_received': 0
+                        'frames_received': 0,
+                        'frame_protocol_version': connect_data.get('frame_protocol_version', 0),
+                        'detections_protocol_version': connect_data.get('detections_protocol_version', 0),
+                        'frame_format': frame_format,
+                        'frame_formats': accepted_formats,
+                        'frame_port': frame_port,
+                        # Results longer than this are fragmented; 0 for older clients
+                        'max_datagram_size': (connect_data.get('max_datagram_size', 0)
+                                              if FRAGMENT_HEADER.size < connect_data.get('max_datagram_size', 0)
+                                              <= MAX_DATAGRAM_SIZE else 0),
+                        'result_sequence': 0
                     }
                     print(f"BASIC_DEBUG: Client UDP address stored: {addr}")
-                    self.log_message(f"Client connected: {addr[0]}")
+                    self.log_message(f"Client connected: {addr[0]}, frame format {frame_format}")
+                    self.send_connect_ack(self.clients[client_id])
                     
                 elif message.get('type') == 'PING':
-                    # Send pong response
+                    # Echo the client's send time with ours, for its clock offset estimate
+                    # (see ClockOffsetEstimator.java); the clock is monotonic, not wall time
+                    ping = message.get('data') or {}
                     pong = {
                         'type': 'PONG',
-                        'timestamp': int(time.time() * 1000)
+                        'timestamp': int(time.time() * 1000),
+                        'data': {
+                            'seq': ping.get('seq', 0),
+                            'client_send_ns': ping.get('client_send_ns', 0),
+                            'server_receive_ns': received_ns,
+                            'server_send_ns': time.monotonic_ns()
+                        }
                     }
                     response_data = json.dumps(pong).encode()
                     self.udp_socket.sendto(response_data, addr)
@@ -317,6 +502,56 @@ class YFPServer:
                 if self.running:
                     self.log_message(f"UDP handler error: {e}")
     
+    def class_names(self):
+        """Model class names as a list indexed by class id"""
+        if not self.model:
+            return []
+        names = self.model.names
+        if isinstance(names, dict):
+            return [names.get(i, str(i)) for i in range(max(names.keys(), default=-1) + 1)]
+        return list(names)
+
+    def send_connect_ack(self, client_info):
+        """Send the class table and detections encoding, once per connection or model change"""
+        version = DETECTIONS_PROTOCOL_VERSION if client_info.get('detections_protocol_version') == DETECTIONS_PROTOCOL_VERSION else 0
+        ack = {
+            'type': 'CONNECT_ACK',
+            'timestamp': int(time.time() * 1000),
+            'data': {
+                'detections_protocol_version': version,
+                'class_names': self.class_names(),
+                'frame_format': client_info.get('frame_format', 'JPEG'),
+                'frame_formats': client_info.get('frame_formats', ['JPEG'])
+            }
+        }
+        try:
+            self.udp_socket.sendto(json.dumps(ack).encode(), client_info['udp_addr'])
+        except Exception as e:
+            self.log_message(f"Error sending CONNECT_ACK: {e}")
+
+    @staticmethod
+    def encode_detections(detections, frame_id, detection_time, receive_ns, send_ns,
+                          max_detections=MAX_BINARY_DETECTIONS, skipped=False):
+        """Pack detections into a binary DETECTIONS message (see DetectionsCodec.java)"""
+        def unit(value):
+            return int(round(min(max(value, 0.0), 1.0) * 65535))
+
+        detections = detections[:max_detections]
+        buf = bytearray(DETECTIONS_HEADER.size + DETECTION_RECORD.size * len(detections)
+                        + DETECTIONS_SERVER_TIMES.size)
+        DETECTIONS_HEADER.pack_into(buf, 0, DETECTIONS_MAGIC, DETECTIONS_PROTOCOL_VERSION,
+                                    DETECTIONS_FLAG_SERVER_TIMES | (DETECTIONS_FLAG_SKIPPED if skipped else 0),
+                                    len(detections), frame_id,
+                                    max(0, detection_time))
+        offset = DETECTIONS_HEADER.size
+        for det in detections:
+            DETECTION_RECORD.pack_into(buf, offset, unit(det['x']), unit(det['y']),
+                                       unit(det['width']), unit(det['height']),
+                                       det['class_id'] & 0xFFFF, unit(det['confidence']))
+            offset += DETECTION_RECORD.size
+        DETECTIONS_SERVER_TIMES.pack_into(buf, offset, receive_ns, send_ns)
+        return bytes(buf)
+
     def tcp_handler(self):
         """Handle TCP connections for image data"""
         while self.running:
@@ -331,67 +566,50 @@ class YFPServer:
         """Handle image data from a specific client"""
         self.log_message(f"Image connection from {addr[0]}")
         print(f"BASIC_DEBUG: Starting image handler for client {addr}")
+        video_decoders = {}  # Format name -> VideoStreamDecoder, for this connection
 
         while self.running:
             try:
-                # Read header length (4 bytes, big-endian integer)
-                header_length_data = client_socket.recv(4)
-                if not header_length_data or len(header_length_data) != 4:
+                # Read fixed-size binary frame header (see FrameCodec.java)
+                header_data = self.recv_exact(client_socket, FRAME_HEADER.size)
+                if header_data is None:
                     break
-                    
-                header_length = struct.unpack('>I', header_length_data)[0]
-                
-                if header_length <= 0 or header_length > 10000:  # Sanity check
-                    self.log_message(f"Client {addr[0]} error: invalid header length: {header_length}")
+
+                (magic, version, frame_format, quality, flags, frame_id, capture_ts_ns,
+                 width, height, payload_length) = FRAME_HEADER.unpack(header_data)
+
+                if magic != FRAME_MAGIC or version != FRAME_PROTOCOL_VERSION:
+                    self.log_message(f"Client {addr[0]} error: bad frame header (magic=0x{magic:08x}, version={version})")
                     break
-                
-                # Read header
-                header_data = b''
-                while len(header_data) < header_length:
-                    chunk = client_socket.recv(header_length - len(header_data))
-                    if not chunk:
-                        break
-                    header_data += chunk
-                
-                if len(header_data) != header_length:
-                    self.log_message(f"Client {addr[0]} error: incomplete header")
+
+                if payload_length > MAX_FRAME_PAYLOAD:  # Sanity check
+                    self.log_message(f"Client {addr[0]} error: invalid payload length: {payload_length}")
                     break
-                
-                try:
-                    header = json.loads(header_data.decode('utf-8'))
-                except json.JSONDecodeError as e:
-                    self.log_message(f"Client {addr[0]} error: invalid JSON header: {e}")
+
+                # Read exactly payload_length bytes, no end-marker scanning needed
+                image_data = self.recv_exact(client_socket, payload_length)
+                if image_data is None:
+                    self.log_message(f"Client {addr[0]} error: incomplete frame payload")
                     break
-                
-                # Read image data - read until we get a complete JPEG
-                frame_data = header.get('data', {})
-                image_data = b''
-                
-                # Read in chunks and try to decode JPEG until we get a valid image
-                max_image_size = 2000000  # 2MB max
-                while len(image_data) < max_image_size:
-                    chunk = client_socket.recv(32768)  # 32KB chunks
-                    if not chunk:
-                        break
-                    image_data += chunk
-                    
-                    # Try to decode JPEG to see if we have complete image
-                    # JPEG files end with FFD9, so check for that
-                    if len(image_data) > 1000 and image_data[-2:] == b'\xff\xd9':
-                        try:
-                            np_arr = np.frombuffer(image_data, np.uint8)
-                            img = cv2.imdecode(np_arr, cv2.IMREAD_COLOR)
-                            if img is not None:
-                                self.log_message(f"Received complete JPEG image: {len(image_data)} bytes")
-                                break
-                        except:
-                            continue
-                
-                if image_data and len(image_data) > 0:
-                    print(f"BASIC_DEBUG: Processing frame from {addr}, size={len(image_data)} bytes")
-                    self.process_frame(image_data, frame_data, addr)
-                else:
-                    print(f"BASIC_DEBUG: No valid image data received from {addr}")
+                received_ns = time.monotonic_ns()
+
+                frame_data = {
+                    'frame_id': frame_id,
+                    'capture_timestamp_ns': capture_ts_ns,
+                    'width': width,
+                    'height': height,
+                    'format': FRAME_FORMATS.get(frame_format, 'UNKNOWN'),
+                    'quality': quality,
+                    'received_ns': received_ns
+                }
+
+                print(f"BASIC_DEBUG: Processing frame {frame_id} from {addr}, size={len(image_data)} bytes")
+                # Video frames are decoded even without a model, to keep the reference chain intact
+                img = self.decode_frame(frame_data['format'], image_data, video_decoders, width, height)
+                if img is None or not self.process_frame(img, frame_data, addr):
+                    # Skipped frames get an empty result too, so the client's credit and
+                    # round-trip accounting never wait on a frame that will not be answered
+                    self.send_detections([], frame_id, 0, received_ns, addr, skipped=True)
                     
             except Exception as e:
                 if self.running:
@@ -400,36 +618,66 @@ class YFPServer:
                 
         client_socket.close()
 
-        # Clean up client entries for this IP address
-        client_ip = addr[0]
-        clients_to_remove = []
-        for client_id, client_info in self.clients.items():
-            if client_info['addr'][0] == client_ip:
-                clients_to_remove.append(client_id)
-
-        for client_id in clients_to_remove:
-            del self.clients[client_id]
+        # Clean up the client entry for this frame connection
+        client_id = self.frame_client_id(addr)
+        if client_id is not None:
+            self.clients.pop(client_id, None)
             print(f"BASIC_DEBUG: Cleaned up client entry: {client_id}")
 
         self.log_message(f"Client {addr[0]} disconnected and cleaned up")
     
-    def process_frame(self, image_data, frame_info, client_addr):
-        """Process received frame with YOLO detection"""
+    def frame_client_id(self, tcp_addr):
+        """The client entry for the frame connection from tcp_addr, or None.
+        The port a client reports is only what it bound locally; a NAT that rewrites
+        ports hides it, so when no entry from the IP names this port, the newest
+        entry from the IP is taken (one client per IP, as without frame_port)."""
+        same_ip = [(client_id, info) for client_id, info in list(self.clients.items())
+                   if info['addr'][0] == tcp_addr[0]]
+        for client_id, info in same_ip:
+            if info.get('frame_port') == tcp_addr[1]:
+                return client_id
+        if not same_ip:
+            return None
+        return max(same_ip, key=lambda entry: entry[1]['connected_time'])[0]
+
+    @staticmethod
+    def recv_exact(sock, length):
+        """Read exactly length bytes, or return None if the connection closed"""
+        buf = bytearray(length)
+        view = memoryview(buf)
+        received = 0
+        while received < length:
+            n = sock.recv_into(view[received:], length - received)
+            if n == 0:
+                return None
+            received += n
+        return bytes(buf)
+
+    def decode_frame(self, format_name, payload, video_decoders, width, height):
+        """Decode a frame payload to a BGR image, or None if it cannot be decoded (yet)"""
+        if format_name == 'JPEG':
+            return cv2.imdecode(np.frombuffer(payload, np.uint8), cv2.IMREAD_COLOR)
+        if format_name in RAW_FORMATS or (format_name in LZ4_FORMATS and lz4 is not None):
+            return decode_raw_frame(format_name, payload, width, height)
+        if format_name in VIDEO_DECODERS and av is not None:
+            decoder = video_decoders.get(format_name)
+            if decoder is None:
+                decoder = video_decoders[format_name] = VideoStreamDecoder(VIDEO_DECODERS[format_name])
+            return decoder.decode(payload)
+        print(f"BASIC_DEBUG: Dropping frame in unsupported format {format_name}")
+        return None
+
+    def process_frame(self, img, frame_info, client_addr):
+        """Process a decoded frame with YOLO detection; returns whether detections were sent"""
         print(f"BASIC_DEBUG: process_frame called for {client_addr}")
         if not self.model:
             print("BASIC_DEBUG: No YOLO model loaded, skipping detection")
-            return
+            return False
 
         start_time = time.time()
+        sent = False
         
         try:
-            # Decode image
-            np_arr = np.frombuffer(image_data, np.uint8)
-            img = cv2.imdecode(np_arr, cv2.IMREAD_COLOR)
-            
-            if img is None:
-                return
-                
             # Run YOLO detection
             results = self.model(img)
             
@@ -461,6 +709,7 @@ class YFPServer:
                             'width': width,
                             'height': height,
                             'class_name': self.model.names[cls],
+                            'class_id': cls,
                             'confidence': conf
                         }
                         detections.append(detection)
@@ -479,37 +728,53 @@ class YFPServer:
             self.metrics['frames_processed'] += 1
             self.metrics['total_detections'] += len(detections)
             self.metrics['avg_detection_time'] = ((self.metrics['avg_detection_time'] * (self.metrics['frames_processed'] - 1)) + detection_time) / self.metrics['frames_processed']
+            self.metrics['busy_ms'] += detection_time
             
             # Send detections back to client
-            self.send_detections(detections, frame_info.get('frame_id', 0), detection_time, client_addr)
+            self.send_detections(detections, frame_info.get('frame_id', 0), detection_time,
+                                 frame_info.get('received_ns', 0), client_addr)
+            sent = True
             
             # Update GUI display
             self.update_video_display(img)
             
         except Exception as e:
             self.log_message(f"Frame processing error: {e}")
+        return sent
     
-    def send_detections(self, detections, frame_id, detection_time, tcp_client_addr):
-        """Send detection results back to client"""
+    def send_detections(self, detections, frame_id, detection_time, received_ns, tcp_client_addr,
+                        skipped=False):
+        """Send detection results back to client, or an empty skipped answer"""
         try:
             # Find the UDP address for this client
             client_ip = tcp_client_addr[0]
             udp_addr = None
+            binary = False
+            target = None
 
             print(f"DETECTION_DEBUG: Looking for UDP address for TCP client {tcp_client_addr}")
             print(f"DETECTION_DEBUG: Current clients: {list(self.clients.keys())}")
 
-            # Look for a client with matching IP address
-            for client_id, client_info in self.clients.items():
-                print(f"DETECTION_DEBUG: Checking client {client_id}: addr={client_info['addr']}, udp_addr={client_info['udp_addr']}")
-                if client_info['addr'][0] == client_ip:
-                    udp_addr = client_info['udp_addr']
-                    print(f"DETECTION_DEBUG: Found matching UDP address: {udp_addr}")
-                    break
+            # Look for the client that owns this frame connection
+            client_id = self.frame_client_id(tcp_client_addr)
+            client_info = self.clients.get(client_id) if client_id is not None else None
+            if client_info is not None:
+                udp_addr = client_info['udp_addr']
+                binary = client_info.get('detections_protocol_version') == DETECTIONS_PROTOCOL_VERSION
+                target = client_info
+                print(f"DETECTION_DEBUG: Found matching UDP address {udp_addr} for client {client_id}")
 
             if not udp_addr:
                 print(f"BASIC_DEBUG: No UDP address found for client {client_ip}, cannot send detections")
-                print(f"BASIC_DEBUG: Available clients: {[(k, v['addr']) for k, v in self.clients.items()]}")
+                print(f"BASIC_DEBUG: Available clients: {[(k, v['addr']) for k, v in list(self.clients.items())]}")
+                return
+
+            if binary:
+                response_data = self.encode_detections(detections, frame_id, detection_time,
+                                                       received_ns, time.monotonic_ns(),
+                                                       max_binary_detections(target), skipped)
+                self.send_result(response_data, target)
+                print(f"DETECTION_DEBUG: Sent {len(detections)} binary detections ({len(response_data)} bytes) to UDP {udp_addr}")
                 return
 
             response = {
@@ -518,9 +783,14 @@ class YFPServer:
                 'data': {
                     'frame_id': frame_id,
                     'detections': detections,
-                    'processing_time_ms': detection_time
+                    'processing_time_ms': detection_time,
+                    'server_receive_ns': received_ns,
+                    'server_send_ns': time.monotonic_ns()
                 }
             }
+            if skipped:
+                # Keeps the boxes on screen, like the binary skipped flag
+                response['data']['skipped'] = True
 
             print(f"DETECTION_DEBUG: Sending {len(detections)} detections to UDP {udp_addr} (TCP was {tcp_client_addr})")
             print(f"DETECTION_DEBUG: Frame ID: {frame_id}, Processing time: {detection_time}ms")
@@ -531,13 +801,24 @@ class YFPServer:
             print(f"DETECTION_DEBUG: JSON response length: {len(response_data)} bytes")
             print(f"DETECTION_DEBUG: JSON response: {response_data.decode()[:200]}...")  # First 200 chars
 
-            self.udp_socket.sendto(response_data, udp_addr)
+            if len(response_data) > max_result_size(target):
+                self.log_message(f"Dropping {len(detections)} detections for frame {frame_id}: "
+                                 f"{len(response_data)} bytes of JSON is too long for {udp_addr}")
+                return
+            self.send_result(response_data, target)
             print(f"DETECTION_DEBUG: Successfully sent detection response to UDP {udp_addr}")
 
         except Exception as e:
             print(f"DETECTION_DEBUG: Error sending detections: {e}")
             self.log_message(f"Error sending detections: {e}")
     
+    def send_result(self, data, client_info):
+        """Send a result whole, or in fragments if it is longer than the client asked for"""
+        sequence = client_info['result_sequence']
+        client_info['result_sequence'] = sequence + 1
+        for datagram in split_result(data, sequence, client_info.get('max_datagram_size', 0)):
+            self.udp_socket.sendto(datagram, client_info['udp_addr'])
+
     def update_video_display(self, img):
         """Update the GUI video display"""
         try:
@@ -568,6 +849,12 @@ class YFPServer:
                     self.metrics['fps'] = self.metrics['frames_since_fps'] / (current_time - self.metrics['last_fps_time'])
                     self.metrics['frames_since_fps'] = 0
                     self.metrics['last_fps_time'] = current_time
+
+                load_elapsed = current_time - self.metrics['last_load_time']
+                if load_elapsed >= 1.0:
+                    self.metrics['load'] = min(1.0, self.metrics['busy_ms'] / (load_elapsed * 1000))
+                    self.metrics['busy_ms'] = 0
+                    self.metrics['last_load_time'] = current_time
                 
                 # Update GUI metrics
                 self.fps_label.config(text=f"FPS: {self.metrics['fps']:.1f}")
@@ -592,10 +879,12 @@ if __name__ == "__main__":
     parser = argparse.ArgumentParser(description='YOLO Feed PC Server')
     parser.add_argument('--model', '-m', type=str, default=None,
                        help='Path to YOLO model file (default: yolov8n.pt)')
+    parser.add_argument('--port', '-p', type=int, default=8888,
+                       help='Port for control messages and frames (default: 8888)')
     parser.add_argument('--verbose', '-v', action='store_true',
                        help='Enable verbose logging')
 
     args = parser.parse_args()
 
-    server = YFPServer(model_path=args.model)
+    server = YFPServer(model_path=args.model, port=args.port)
     server.run()
\ No newline at end of file
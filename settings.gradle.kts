@@ -21,4 +21,5 @@ dependencyResolutionManagement {
 
 rootProject.name = "Yolo and feed on pc and camera on phone"
 include(":app")
- 
\ No newline at end of file
+include(":benchmarks")
+include(":loadgen")